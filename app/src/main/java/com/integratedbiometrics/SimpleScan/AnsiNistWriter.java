@@ -0,0 +1,445 @@
+/* *************************************************************************************************
+ * AnsiNistWriter.java
+ *
+ * DESCRIPTION:
+ *     Streaming ANSI/NIST-ITL transaction writer for SimpleScan demo app for IBScanUltimate
+ *     http://www.integratedbiometrics.com
+ *
+ * NOTES:
+ *     Copyright (c) Integrated Biometrics, 2012-2013
+ *
+ * HISTORY:
+ *     2026/10/19  First version.
+************************************************************************************************ */
+
+package com.integratedbiometrics.ibsimplescan;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+import com.integratedbiometrics.ibscanultimate.IBScanDevice;
+import com.integratedbiometrics.ibscanultimate.IBScanDevice.ImageData;
+import com.integratedbiometrics.ibscanultimate.IBScanException;
+
+/**
+ * Writes an ANSI/NIST-ITL 1-2011 transaction of Type-4 and Type-14 fingerprint records with
+ * WSQ-compressed images.  Images are added as references to capture buffers or finger segments and
+ * are not touched until the transaction is written.  WSQ is defined only up to 500 ppi, so images
+ * captured at a higher resolution are reduced to 500 ppi as they are compressed.  The Type-1
+ * record needs only the list of records, so it is written first; then each image in turn is
+ * compressed by the SDK into a temporary file, whose length completes its record header, and the
+ * file is copied to the output and deleted.  At most one image is compressed or copied at a time,
+ * whatever the number of records.
+ */
+public class AnsiNistWriter
+{
+	/* *********************************************************************************************
+	 * PUBLIC CONSTANTS
+	 ******************************************************************************************** */
+
+	/* Impression types. */
+	public static final int IMPRESSION_PLAIN    = 0;
+	public static final int IMPRESSION_ROLLED   = 1;
+
+	/* Finger positions; the fingers of each hand follow its index finger in order. */
+	public static final int FINGER_UNKNOWN      = 0;
+	public static final int FINGER_RIGHT_INDEX  = 2;
+	public static final int FINGER_LEFT_INDEX   = 7;
+	public static final int FINGER_RIGHT_FOUR   = 13;
+	public static final int FINGER_LEFT_FOUR    = 14;
+	public static final int FINGER_THUMBS       = 15;
+
+	/* *********************************************************************************************
+	 * PRIVATE CONSTANTS
+	 ******************************************************************************************** */
+
+	/* The separators of records, fields, subfields and items. */
+	private static final byte   FS             = 0x1C;
+	private static final byte   GS             = 0x1D;
+	private static final byte   RS             = 0x1E;
+	private static final byte   US             = 0x1F;
+
+	/* The version of the standard. */
+	private static final String VERSION        = "0500";
+
+	/* The resolution of Type-4 images, and the most for WSQ, in pixels per inch and pixels per millimetre. */
+	private static final int    TYPE_4_PPI     = 500;
+	private static final String TYPE_4_PPMM    = "19.69";
+
+	/* The scanning and transmitting resolution of a transaction without Type-4 records. */
+	private static final String NO_TYPE_4_PPMM = "00.00";
+
+	/* The size of a Type-4 record header. */
+	private static final int    TYPE_4_HEADER  = 18;
+
+	/* The compression algorithm codes of Type-4 and Type-14 records. */
+	private static final int    TYPE_4_WSQ     = 1;
+	private static final String TYPE_14_WSQ    = "WSQ20";
+
+	/* The WSQ bit rate. */
+	private static final double WSQ_BIT_RATE   = 0.75;
+
+	/* The size of the buffer used to copy compressed images. */
+	private static final int    COPY_BUFFER    = 16 * 1024;
+
+	/* *********************************************************************************************
+	 * PRIVATE CLASSES
+	 ******************************************************************************************** */
+
+	/*
+	 * An image record to be written.  The image is reduced by a factor from its source size and
+	 * resolution to those recorded.
+	 */
+	private static class Record
+	{
+		final int    type;
+		final byte[] buffer;
+		final int    pitch;
+		final int    sourceWidth;
+		final int    sourceHeight;
+		final int    factor;
+		final int    width;
+		final int    height;
+		final int    resolution;
+		final FingerSegment segment;
+		final int    fingerPosition;
+		final int    impression;
+
+		Record(final int type, final byte[] buffer, final int pitch, final int width, final int height,
+				final int resolution, final FingerSegment segment, final int fingerPosition, final int impression)
+		{
+			this.type           = type;
+			this.buffer         = buffer;
+			this.pitch          = pitch;
+			this.sourceWidth    = width;
+			this.sourceHeight   = height;
+			this.factor         = Integer.highestOneBit(Math.max(1, resolution / TYPE_4_PPI));
+			this.width          = width / this.factor;
+			this.height         = height / this.factor;
+			this.resolution     = resolution / this.factor;
+			this.segment        = segment;
+			this.fingerPosition = fingerPosition;
+			this.impression     = impression;
+		}
+	}
+
+	/* *********************************************************************************************
+	 * PRIVATE FIELDS
+	 ******************************************************************************************** */
+
+	/* The scanner whose SDK compresses images, and the directory for compressed images. */
+	private final IBScanDevice m_encoder;
+	private final File         m_tempDir;
+
+	/* The transaction type, destination agency, originating agency and control number. */
+	private final String       m_tot;
+	private final String       m_dai;
+	private final String       m_ori;
+	private final String       m_tcn;
+
+	/* The image records in order. */
+	private final List<Record> m_records = new ArrayList<Record>();
+
+	/* *********************************************************************************************
+	 * CONSTRUCTOR
+	 ******************************************************************************************** */
+
+	public AnsiNistWriter(final IBScanDevice encoder, final File tempDir, final String tot, final String dai,
+			final String ori, final String tcn)
+	{
+		this.m_encoder = encoder;
+		this.m_tempDir = tempDir;
+		this.m_tot     = tot;
+		this.m_dai     = dai;
+		this.m_ori     = ori;
+		this.m_tcn     = tcn;
+	}
+
+	/* *********************************************************************************************
+	 * PUBLIC METHODS
+	 ******************************************************************************************** */
+
+	/*
+	 * Add a Type-4 record for a single-finger image, which must be 500 ppi.
+	 */
+	public void addType4(final ImageData image, final int fingerPosition, final int impression)
+	{
+		if (resolutionOf(image.resolutionX) != TYPE_4_PPI)
+		{
+			throw new IllegalArgumentException("Type-4 images must be " + TYPE_4_PPI + " ppi");
+		}
+		add(new Record(4, image.buffer, image.pitch, image.width, image.height, TYPE_4_PPI, null,
+				fingerPosition, impression));
+	}
+
+	/*
+	 * Add a Type-14 record for a whole image, reduced to 500 ppi if captured at more.
+	 */
+	public void addType14(final ImageData image, final int fingerPosition, final int impression)
+	{
+		add(new Record(14, image.buffer, image.pitch, image.width, image.height, resolutionOf(image.resolutionX),
+				null, fingerPosition, impression));
+	}
+
+	/*
+	 * Add a Type-14 record for one finger of a capture, reduced to 500 ppi if captured at more.  The
+	 * finger is cropped only when written.
+	 */
+	public void addType14(final FingerSegment segment, final int fingerPosition, final int impression)
+	{
+		add(new Record(14, null, 0, segment.width, segment.height, resolutionOf(segment.resolution),
+				segment, fingerPosition, impression));
+	}
+
+	/*
+	 * Get the number of image records added.
+	 */
+	public int getRecordCount()
+	{
+		return (this.m_records.size());
+	}
+
+	/*
+	 * Write the transaction to a stream, which is left open.
+	 */
+	public void write(final OutputStream out) throws IOException
+	{
+		final String date = new SimpleDateFormat("yyyyMMdd", Locale.US).format(new Date());
+		writeType1(out, date);
+		for (int i = 0; i < this.m_records.size(); i++)
+		{
+			writeImageRecord(out, this.m_records.get(i), i + 1, date);
+		}
+		out.flush();
+	}
+
+	/* *********************************************************************************************
+	 * PRIVATE METHODS
+	 ******************************************************************************************** */
+
+	private void add(final Record record)
+	{
+		if (this.m_records.size() >= 99)
+		{
+			throw new IllegalStateException("too many records");
+		}
+		this.m_records.add(record);
+	}
+
+	/*
+	 * Write the transaction record, which lists every record that follows.
+	 */
+	private void writeType1(final OutputStream out, final String date) throws IOException
+	{
+		final StringBuilder cnt = new StringBuilder();
+		cnt.append("1").append((char)US).append(this.m_records.size());
+		for (int i = 0; i < this.m_records.size(); i++)
+		{
+			cnt.append((char)RS).append(this.m_records.get(i).type).append((char)US).append(i + 1);
+		}
+
+		/* The scanning resolutions are those of Type-4 images, if there are any. */
+		String ppmm = NO_TYPE_4_PPMM;
+		for (Record record : this.m_records)
+		{
+			if (record.type == 4)
+			{
+				ppmm = TYPE_4_PPMM;
+			}
+		}
+
+		final ByteArrayOutputStream fields = new ByteArrayOutputStream();
+		appendField(fields, "1.002", VERSION);
+		appendField(fields, "1.003", cnt.toString());
+		appendField(fields, "1.004", this.m_tot);
+		appendField(fields, "1.005", date);
+		appendField(fields, "1.007", this.m_dai);
+		appendField(fields, "1.008", this.m_ori);
+		appendField(fields, "1.009", this.m_tcn);
+		appendField(fields, "1.011", ppmm);
+		appendField(fields, "1.012", ppmm);
+		writeTagged(out, "1", fields.toByteArray(), null, 0);
+	}
+
+	/*
+	 * Compress an image and write its record.
+	 */
+	private void writeImageRecord(final OutputStream out, final Record record, final int idc, final String date)
+			throws IOException
+	{
+		final File wsq = File.createTempFile("ansinist", ".wsq", this.m_tempDir);
+		try
+		{
+			encode(record, wsq);
+			final long dataLength = wsq.length();
+			if (record.type == 4)
+			{
+				final long length = TYPE_4_HEADER + dataLength;
+				writeInt(out, (int)length, 4);
+				out.write(idc);
+				out.write(record.impression);
+				out.write(record.fingerPosition);
+				for (int i = 1; i < 6; i++)
+				{
+					out.write(0xFF);
+				}
+				out.write(0);
+				writeInt(out, record.width, 2);
+				writeInt(out, record.height, 2);
+				out.write(TYPE_4_WSQ);
+				copy(wsq, out);
+			}
+			else
+			{
+				final String scale = Integer.toString(record.resolution);
+				final ByteArrayOutputStream fields = new ByteArrayOutputStream();
+				appendField(fields, "14.002", Integer.toString(idc));
+				appendField(fields, "14.003", Integer.toString(record.impression));
+				appendField(fields, "14.004", this.m_ori);
+				appendField(fields, "14.005", date);
+				appendField(fields, "14.006", Integer.toString(record.width));
+				appendField(fields, "14.007", Integer.toString(record.height));
+				appendField(fields, "14.008", "1");
+				appendField(fields, "14.009", scale);
+				appendField(fields, "14.010", scale);
+				appendField(fields, "14.011", TYPE_14_WSQ);
+				appendField(fields, "14.012", "8");
+				appendField(fields, "14.013", Integer.toString(record.fingerPosition));
+				writeTagged(out, "14", fields.toByteArray(), wsq, dataLength);
+			}
+		}
+		finally
+		{
+			wsq.delete();
+		}
+	}
+
+	/*
+	 * Compress the image of a record into a WSQ file, reducing it first if needed.
+	 */
+	private void encode(final Record record, final File wsq) throws IOException
+	{
+		byte[] buffer = record.buffer;
+		int    pitch  = record.pitch;
+		if (record.segment != null)
+		{
+			buffer = record.segment.crop();
+			pitch  = record.sourceWidth;
+		}
+		if (record.factor > 1)
+		{
+			final byte[] reduced = new byte[record.width * record.height];
+			for (int y = 0; y < record.height; y++)
+			{
+				ImagePyramid.reduceRow(buffer, pitch, record.sourceWidth, record.sourceHeight, record.factor, y,
+						reduced, y * record.width);
+			}
+			buffer = reduced;
+			pitch  = record.width;
+		}
+
+		try
+		{
+			this.m_encoder.wsqEncodeToFile(wsq.getPath(), buffer, record.width, record.height, pitch, 8,
+					record.resolution, WSQ_BIT_RATE, "");
+		}
+		catch (IBScanException ibse)
+		{
+			throw new IOException("could not compress image " + ibse.getType().toString());
+		}
+	}
+
+	/*
+	 * Write a tagged record: its length field, the given fields and, if any, the binary data field
+	 * 999 copied from a file, then the record separator.
+	 */
+	private static void writeTagged(final OutputStream out, final String type, final byte[] fields,
+			final File data, final long dataLength) throws IOException
+	{
+		/* Everything after the length: separators, fields and data. */
+		final byte[] dataTag = (type + ".999:").getBytes("US-ASCII");
+		final long   rest    = (data == null) ? (fields.length + 1)
+				: (fields.length + 2 + dataTag.length + dataLength);
+
+		/* The length counts its own digits, which may change the number of digits. */
+		final String prefix = type + ".001:";
+		long length = prefix.length() + rest;
+		while (length != prefix.length() + Long.toString(length).length() + rest)
+		{
+			length = prefix.length() + Long.toString(length).length() + rest;
+		}
+
+		out.write((prefix + length).getBytes("US-ASCII"));
+		out.write(GS);
+		if (data == null)
+		{
+			/* Replace the trailing group separator by the record separator. */
+			out.write(fields, 0, fields.length - 1);
+		}
+		else
+		{
+			out.write(fields);
+			out.write(dataTag);
+			copy(data, out);
+		}
+		out.write(FS);
+	}
+
+	/*
+	 * Append a field followed by a group separator.
+	 */
+	private static void appendField(final ByteArrayOutputStream fields, final String tag, final String value)
+			throws IOException
+	{
+		fields.write((tag + ":" + value).getBytes("US-ASCII"));
+		fields.write(GS);
+	}
+
+	/*
+	 * Write an unsigned big-endian integer of the given number of bytes.
+	 */
+	private static void writeInt(final OutputStream out, final int value, final int bytes) throws IOException
+	{
+		for (int i = bytes - 1; i >= 0; i--)
+		{
+			out.write((value >>> (8 * i)) & 0xFF);
+		}
+	}
+
+	/*
+	 * Copy a file to a stream.
+	 */
+	private static void copy(final File file, final OutputStream out) throws IOException
+	{
+		final byte[]          buffer = new byte[COPY_BUFFER];
+		final FileInputStream in     = new FileInputStream(file);
+		try
+		{
+			int count;
+			while ((count = in.read(buffer)) > 0)
+			{
+				out.write(buffer, 0, count);
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	/*
+	 * Round a resolution reported by the SDK to whole pixels per inch, assuming 500 if none.
+	 */
+	private static int resolutionOf(final double resolution)
+	{
+		return ((resolution > 0) ? (int)Math.round(resolution) : TYPE_4_PPI);
+	}
+}
@@ -0,0 +1,270 @@
+/* *************************************************************************************************
+ * BreakRecoveryEngine.java
+ *
+ * DESCRIPTION:
+ *     Recovery from communication breaks for SimpleScan demo app for IBScanUltimate
+ *     http://www.integratedbiometrics.com
+ *
+ * NOTES:
+ *     Copyright (c) Integrated Biometrics, 2012-2013
+ *
+ * HISTORY:
+ *     2026/10/19  First version.
+************************************************************************************************ */
+
+package com.integratedbiometrics.ibsimplescan;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Re-opens a scanner after a communication break without the operator.  A recovery runs on its own
+ * thread: it waits, tries to open the scanner with the same serial number and restore the state the
+ * app had set on it, and on failure waits twice as long before trying again, up to MAX_ATTEMPTS.
+ * A listener hears of the re-opened scanner or of the recovery giving up, on the recovery thread.
+ *
+ * The scanner is reached only through a Link, so the engine can be driven by a simulated scanner
+ * that fails on demand.  The engine keeps the time from each break to recovery so the mean time to
+ * recover can be reported.
+ */
+final class BreakRecoveryEngine<D>
+{
+	/* *********************************************************************************************
+	 * PUBLIC INTERFACES
+	 ******************************************************************************************** */
+
+	/*
+	 * Opens, restores and closes scanners for the engine.
+	 */
+	interface Link<D>
+	{
+		/*
+		 * Open the scanner with a serial number; fails if it is not attached yet.
+		 */
+		D open(String serialNumber) throws Exception;
+
+		/*
+		 * Restore the state the app had set on the scanner before the break.
+		 */
+		void restore(D device) throws Exception;
+
+		/*
+		 * Close a scanner that could not be restored or is no longer wanted, ignoring errors.
+		 */
+		void close(D device);
+	}
+
+	/*
+	 * Hears how a recovery ended.
+	 */
+	interface Listener<D>
+	{
+		/*
+		 * The scanner was re-opened and restored after some attempts and time since the break.
+		 */
+		void onRecovered(D device, int attempts, long millis);
+
+		/*
+		 * The scanner could not be re-opened in MAX_ATTEMPTS attempts.
+		 */
+		void onFailed(int attempts, long millis);
+	}
+
+	/* *********************************************************************************************
+	 * PRIVATE CONSTANTS
+	 ******************************************************************************************** */
+
+	/* The tag for log messages. */
+	private static final String TAG                 = "BreakRecoveryEngine";
+
+	/* The most attempts at re-opening the scanner. */
+	private static final int    MAX_ATTEMPTS        = 8;
+
+	/* The wait before the first attempt, which gives the scanner time to enumerate again. */
+	private static final long   FIRST_DELAY_MILLIS  = 250;
+
+	/* The longest wait between attempts. */
+	private static final long   MAX_DELAY_MILLIS    = 4000;
+
+	/* *********************************************************************************************
+	 * PRIVATE FIELDS
+	 ******************************************************************************************** */
+
+	/* Opens the scanners. */
+	private final Link<D> m_link;
+
+	/* Numbers each recovery; a recovery whose number is no longer current has been cancelled. */
+	private int           m_generation;
+
+	/* The thread of the current recovery, or null if none is running. */
+	private Thread        m_thread;
+
+	/* The recoveries that succeeded and their total and longest time, and those that failed. */
+	private int           m_recovered;
+	private long          m_totalMillis;
+	private long          m_maxMillis;
+	private int           m_failed;
+
+	/* *********************************************************************************************
+	 * CONSTRUCTOR
+	 ******************************************************************************************** */
+
+	BreakRecoveryEngine(final Link<D> link)
+	{
+		this.m_link = link;
+	}
+
+	/* *********************************************************************************************
+	 * PUBLIC METHODS
+	 ******************************************************************************************** */
+
+	/*
+	 * Start recovering the scanner with a serial number after a break, cancelling any recovery
+	 * already running.
+	 */
+	synchronized void start(final String serialNumber, final Listener<D> listener)
+	{
+		cancelLocked();
+		final int  generation = this.m_generation;
+		final long breakTime  = SystemClock.uptimeMillis();
+
+		this.m_thread = new Thread("BreakRecovery")
+		{
+			@Override
+			public void run()
+			{
+				recover(generation, breakTime, serialNumber, listener);
+			}
+		};
+		this.m_thread.start();
+	}
+
+	/*
+	 * Cancel the running recovery, if any.  Its listener will not be called, and a scanner it opens
+	 * afterward is closed.
+	 */
+	synchronized void cancel()
+	{
+		cancelLocked();
+	}
+
+	/*
+	 * Determine whether a recovery is running.
+	 */
+	synchronized boolean isRecovering()
+	{
+		return (this.m_thread != null);
+	}
+
+	/*
+	 * Get the mean time from break to recovery, or -1 if no recovery has succeeded.
+	 */
+	synchronized long getMeanTimeToRecover()
+	{
+		return ((this.m_recovered > 0) ? (this.m_totalMillis / this.m_recovered) : -1);
+	}
+
+	/*
+	 * Describe the recoveries so far.
+	 */
+	synchronized String getReport()
+	{
+		final String times = (this.m_recovered > 0)
+				? (" in " + getMeanTimeToRecover() + " ms mean, " + this.m_maxMillis + " ms max") : "";
+		return ("recovered " + this.m_recovered + times + ", failed " + this.m_failed);
+	}
+
+	/* *********************************************************************************************
+	 * PRIVATE METHODS
+	 ******************************************************************************************** */
+
+	private void cancelLocked()
+	{
+		this.m_generation++;
+		if (this.m_thread != null)
+		{
+			this.m_thread.interrupt();
+			this.m_thread = null;
+		}
+	}
+
+	/*
+	 * Try to re-open and restore the scanner, on the recovery thread.
+	 */
+	private void recover(final int generation, final long breakTime, final String serialNumber,
+			final Listener<D> listener)
+	{
+		long delay = FIRST_DELAY_MILLIS;
+		for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++)
+		{
+			try
+			{
+				Thread.sleep(delay);
+			}
+			catch (InterruptedException ie)
+			{
+				return;
+			}
+			delay = Math.min(MAX_DELAY_MILLIS, delay * 2);
+
+			/* A recovery cancelled during a failed attempt, which clears the interrupt, stops here. */
+			synchronized (this)
+			{
+				if (generation != this.m_generation)
+				{
+					return;
+				}
+			}
+
+			D device = null;
+			try
+			{
+				device = this.m_link.open(serialNumber);
+				this.m_link.restore(device);
+			}
+			catch (Exception e)
+			{
+				Log.w(TAG, "Attempt " + attempt + " to recover " + serialNumber + " failed " + e.toString());
+				if (device != null)
+				{
+					this.m_link.close(device);
+				}
+				continue;
+			}
+
+			/* The link is called outside the lock, as closing a scanner can take a while. */
+			final long    millis = SystemClock.uptimeMillis() - breakTime;
+			final boolean cancelled;
+			synchronized (this)
+			{
+				cancelled = (generation != this.m_generation);
+				if (!cancelled)
+				{
+					this.m_thread       = null;
+					this.m_recovered++;
+					this.m_totalMillis += millis;
+					this.m_maxMillis    = Math.max(this.m_maxMillis, millis);
+				}
+			}
+			if (cancelled)
+			{
+				this.m_link.close(device);
+				return;
+			}
+			listener.onRecovered(device, attempt, millis);
+			return;
+		}
+
+		final long millis = SystemClock.uptimeMillis() - breakTime;
+		synchronized (this)
+		{
+			if (generation != this.m_generation)
+			{
+				return;
+			}
+			this.m_thread = null;
+			this.m_failed++;
+		}
+		listener.onFailed(MAX_ATTEMPTS, millis);
+	}
+}
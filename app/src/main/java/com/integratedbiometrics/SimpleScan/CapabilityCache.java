@@ -0,0 +1,212 @@
+/* *************************************************************************************************
+ * CapabilityCache.java
+ *
+ * DESCRIPTION:
+ *     Persistent cache of scanner capture availability for SimpleScan demo app for IBScanUltimate
+ *     http://www.integratedbiometrics.com
+ *
+ * NOTES:
+ *     Copyright (c) Integrated Biometrics, 2012-2013
+ *
+ * HISTORY:
+ *     2026/10/19  First version.
+************************************************************************************************ */
+
+package com.integratedbiometrics.ibsimplescan;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Properties;
+
+import android.util.Log;
+
+import com.integratedbiometrics.ibscanultimate.IBScanDevice.ImageResolution;
+import com.integratedbiometrics.ibscanultimate.IBScanDevice.ImageType;
+
+/**
+ * Remembers which image types each scanner can capture, keyed by serial number and firmware, so
+ * that reopening a known scanner does not need to probe every image type through the SDK.  The
+ * cache is a properties file mapping "serial/firmware" to the names of the available image types.
+ * Names rather than ordinals are stored so that the file survives SDK updates that add types.
+ * Types available above 500 ppi carry the resolution's name after a marker, so entries written
+ * before high resolutions were probed still read as 500 ppi only.  The file is rewritten through a
+ * temporary file so that a crash never leaves it half-written.
+ */
+public class CapabilityCache
+{
+	/* *********************************************************************************************
+	 * PRIVATE CONSTANTS
+	 ******************************************************************************************** */
+
+	/* The tag for log messages. */
+	private static final String TAG       = "CapabilityCache";
+
+	/* The separator between image type names, and the marker before a resolution name. */
+	private static final String SEPARATOR = ",";
+	private static final String MARKER    = "@";
+
+	/* *********************************************************************************************
+	 * PRIVATE FIELDS
+	 ******************************************************************************************** */
+
+	/* The cache file. */
+	private final File       m_file;
+
+	/* The cache contents, loaded on first use. */
+	private Properties       m_entries;
+
+	/* *********************************************************************************************
+	 * CONSTRUCTOR
+	 ******************************************************************************************** */
+
+	public CapabilityCache(final File file)
+	{
+		this.m_file = file;
+	}
+
+	/* *********************************************************************************************
+	 * PUBLIC METHODS
+	 ******************************************************************************************** */
+
+	/*
+	 * Get the capture availability of each image type at each resolution, by
+	 * DeviceProfile.availabilityIndex(), for a scanner, or null if the scanner is not in the cache.
+	 */
+	public synchronized boolean[] get(final String serialNumber, final String firmware)
+	{
+		final String value = load().getProperty(key(serialNumber, firmware));
+		if (value == null)
+		{
+			return (null);
+		}
+
+		final boolean[] available = new boolean[DeviceProfile.availabilityLength()];
+		for (String name : value.split(SEPARATOR))
+		{
+			for (ImageResolution resolution : ImageResolution.values())
+			{
+				for (ImageType imageType : ImageType.values())
+				{
+					if (name(imageType, resolution).equals(name))
+					{
+						available[DeviceProfile.availabilityIndex(imageType, resolution)] = true;
+					}
+				}
+			}
+		}
+		return (available);
+	}
+
+	/*
+	 * Record the capture availability of each image type at each resolution, by
+	 * DeviceProfile.availabilityIndex(), for a scanner and save the cache.
+	 */
+	public synchronized void put(final String serialNumber, final String firmware, final boolean[] available)
+	{
+		final StringBuilder value = new StringBuilder();
+		for (ImageResolution resolution : ImageResolution.values())
+		{
+			for (ImageType imageType : ImageType.values())
+			{
+				if (available[DeviceProfile.availabilityIndex(imageType, resolution)])
+				{
+					if (value.length() > 0)
+					{
+						value.append(SEPARATOR);
+					}
+					value.append(name(imageType, resolution));
+				}
+			}
+		}
+		load().setProperty(key(serialNumber, firmware), value.toString());
+		save();
+	}
+
+	/* *********************************************************************************************
+	 * PRIVATE METHODS
+	 ******************************************************************************************** */
+
+	/*
+	 * Form the name of an image type at a resolution; the name at 500 ppi is the type's alone.
+	 */
+	private static String name(final ImageType imageType, final ImageResolution resolution)
+	{
+		if (resolution == ImageResolution.RESOLUTION_500)
+		{
+			return (imageType.name());
+		}
+		return (imageType.name() + MARKER + resolution.name());
+	}
+
+	/*
+	 * Form the key of a scanner.
+	 */
+	private static String key(final String serialNumber, final String firmware)
+	{
+		return (serialNumber + "/" + firmware);
+	}
+
+	/*
+	 * Load the cache file if it has not been loaded.  A missing or unreadable file is an empty cache.
+	 */
+	private Properties load()
+	{
+		if (this.m_entries == null)
+		{
+			this.m_entries = new Properties();
+			if (this.m_file.exists())
+			{
+				try
+				{
+					final FileInputStream in = new FileInputStream(this.m_file);
+					try
+					{
+						this.m_entries.load(in);
+					}
+					finally
+					{
+						in.close();
+					}
+				}
+				catch (IOException ioe)
+				{
+					Log.e(TAG, "Could not read capability cache " + ioe.getMessage());
+					this.m_entries.clear();
+				}
+			}
+		}
+		return (this.m_entries);
+	}
+
+	/*
+	 * Write the cache file through a temporary file.
+	 */
+	private void save()
+	{
+		final File temp = new File(this.m_file.getPath() + ".tmp");
+		try
+		{
+			final FileOutputStream out = new FileOutputStream(temp);
+			try
+			{
+				this.m_entries.store(out, null);
+				out.getFD().sync();
+			}
+			finally
+			{
+				out.close();
+			}
+			if (!temp.renameTo(this.m_file))
+			{
+				throw new IOException("could not replace " + this.m_file.getPath());
+			}
+		}
+		catch (IOException ioe)
+		{
+			Log.e(TAG, "Could not write capability cache " + ioe.getMessage());
+			temp.delete();
+		}
+	}
+}
@@ -0,0 +1,518 @@
+/* *************************************************************************************************
+ * CaptureService.java
+ *
+ * DESCRIPTION:
+ *     Bound capture service for SimpleScan demo app for IBScanUltimate
+ *     http://www.integratedbiometrics.com
+ *
+ * NOTES:
+ *     Copyright (c) Integrated Biometrics, 2012-2013
+ *
+ * HISTORY:
+ *     2026/10/19  First version.
+************************************************************************************************ */
+
+package com.integratedbiometrics.ibsimplescan;
+
+import java.io.IOException;
+
+import android.app.Service;
+import android.content.Intent;
+import android.os.IBinder;
+import android.os.ParcelFileDescriptor;
+import android.os.RemoteCallbackList;
+import android.os.RemoteException;
+import android.util.Log;
+
+import com.integratedbiometrics.ibscanultimate.IBScan;
+import com.integratedbiometrics.ibscanultimate.IBScanDevice;
+import com.integratedbiometrics.ibscanultimate.IBScanDevice.FingerCountState;
+import com.integratedbiometrics.ibscanultimate.IBScanDevice.FingerQualityState;
+import com.integratedbiometrics.ibscanultimate.IBScanDevice.ImageData;
+import com.integratedbiometrics.ibscanultimate.IBScanDevice.ImageType;
+import com.integratedbiometrics.ibscanultimate.IBScanDevice.PlatenState;
+import com.integratedbiometrics.ibscanultimate.IBScanDevice.SegmentPosition;
+import com.integratedbiometrics.ibscanultimate.IBScanDeviceListener;
+import com.integratedbiometrics.ibscanultimate.IBScanException;
+
+/**
+ * Lets other apps capture fingerprints through a bound service.  A client opens a session on a
+ * scanner and receives a SharedFrameRegion descriptor; preview frames and the result image are
+ * written into the region and only the slot and sequence number of each frame cross the binder,
+ * through one-way callbacks, so previews reach the client at the scanner's frame rate without
+ * parcelling pixels.  One session is served at a time, and it ends when the client closes it,
+ * unbinds or dies.  Binding requires the signature permission declared in the manifest.
+ *
+ * The service and the SimpleScan activity share the scanners through ScannerOwnership: a session
+ * cannot open while the activity has a scanner open, and the client hears "Scanner busy" instead,
+ * and while a session is open the activity refuses to open a scanner.
+ */
+public class CaptureService extends Service implements IBScanDeviceListener
+{
+	/* *********************************************************************************************
+	 * PRIVATE CONSTANTS
+	 ******************************************************************************************** */
+
+	/* The tag for log messages. */
+	private static final String TAG         = "CaptureService";
+
+	/* The name of the shared region. */
+	private static final String REGION_NAME = "ibsimplescan-frames";
+
+	/* The name under which a session owns the scanners, shown to the activity's operator. */
+	private static final String OWNER_NAME  = "a capture service client";
+
+	/* *********************************************************************************************
+	 * PRIVATE FIELDS
+	 ******************************************************************************************** */
+
+	/* The scanner library. */
+	private IBScan                     m_ibScan;
+
+	/* The open scanner, its profile and the shared region of the session, or null if none. */
+	private IBScanDevice               m_device;
+	private DeviceProfile              m_profile;
+	private volatile SharedFrameRegion m_region;
+
+	/* The callback of the session's client; it closes the session if the client dies. */
+	private final RemoteCallbackList<ICaptureCallback> m_callbacks = new RemoteCallbackList<ICaptureCallback>()
+	{
+		@Override
+		public void onCallbackDied(final ICaptureCallback callback)
+		{
+			closeSession();
+		}
+	};
+
+	/* *********************************************************************************************
+	 * SERVICE METHODS
+	 ******************************************************************************************** */
+
+	@Override
+	public void onCreate()
+	{
+		super.onCreate();
+		this.m_ibScan = IBScan.getInstance(getApplicationContext());
+	}
+
+	@Override
+	public IBinder onBind(final Intent intent)
+	{
+		return (this.m_binder);
+	}
+
+	@Override
+	public boolean onUnbind(final Intent intent)
+	{
+		closeSession();
+		return (false);
+	}
+
+	@Override
+	public void onDestroy()
+	{
+		closeSession();
+		this.m_callbacks.kill();
+		super.onDestroy();
+	}
+
+	/* *********************************************************************************************
+	 * BINDER
+	 ******************************************************************************************** */
+
+	private final ICaptureService.Stub m_binder = new ICaptureService.Stub()
+	{
+		@Override
+		public int getDeviceCount() throws RemoteException
+		{
+			try
+			{
+				return (CaptureService.this.m_ibScan.getDeviceCount());
+			}
+			catch (IBScanException ibse)
+			{
+				Log.e(TAG, "Could not get device count " + ibse.getType().toString());
+				return (0);
+			}
+		}
+
+		@Override
+		public ParcelFileDescriptor openSession(final int deviceIndex, final ICaptureCallback callback) throws RemoteException
+		{
+			return (CaptureService.this.openSession(deviceIndex, callback));
+		}
+
+		@Override
+		public int getRegionSize() throws RemoteException
+		{
+			final SharedFrameRegion region = CaptureService.this.m_region;
+			return ((region != null) ? region.getSize() : 0);
+		}
+
+		@Override
+		public boolean beginCapture(final String imageType) throws RemoteException
+		{
+			return (CaptureService.this.beginCapture(imageType));
+		}
+
+		@Override
+		public void cancelCapture() throws RemoteException
+		{
+			CaptureService.this.cancelCapture();
+		}
+
+		@Override
+		public void closeSession() throws RemoteException
+		{
+			CaptureService.this.closeSession();
+		}
+	};
+
+	/* *********************************************************************************************
+	 * PRIVATE METHODS
+	 ******************************************************************************************** */
+
+	/*
+	 * Open a scanner and its shared region, unless a session is active or the activity owns the
+	 * scanners.
+	 */
+	private synchronized ParcelFileDescriptor openSession(final int deviceIndex, final ICaptureCallback callback)
+	{
+		if ((this.m_device != null) || (callback == null))
+		{
+			return (null);
+		}
+		if (!SharedFrameRegion.isSupported())
+		{
+			refuse(callback, "Frame sharing is not supported on this Android release");
+			return (null);
+		}
+		if (!ScannerOwnership.acquire(this, OWNER_NAME))
+		{
+			refuse(callback, "Scanner busy: in use by " + ScannerOwnership.getOwnerName());
+			return (null);
+		}
+
+		IBScanDevice      device = null;
+		SharedFrameRegion region = null;
+		try
+		{
+			device = this.m_ibScan.openDevice(deviceIndex);
+			final DeviceProfile profile = DeviceProfileRegistry.resolve(device);
+			region = new SharedFrameRegion(REGION_NAME, profile.maxCaptureWidth, profile.maxCaptureHeight);
+			final ParcelFileDescriptor descriptor = region.getDescriptor();
+
+			this.m_callbacks.register(callback);
+			this.m_device  = device;
+			this.m_profile = profile;
+			this.m_region  = region;
+			device.setScanDeviceListener(this);
+			return (descriptor);
+		}
+		catch (IBScanException ibse)
+		{
+			Log.e(TAG, "Could not open scanner " + ibse.getType().toString());
+		}
+		catch (IOException ioe)
+		{
+			Log.e(TAG, "Could not create shared region " + ioe.getMessage());
+		}
+
+		if (region != null)
+		{
+			region.close();
+		}
+		if (device != null)
+		{
+			try
+			{
+				device.close();
+			}
+			catch (IBScanException ibse)
+			{
+				Log.e(TAG, "Could not close scanner " + ibse.getType().toString());
+			}
+		}
+		ScannerOwnership.release(this);
+		return (null);
+	}
+
+	/*
+	 * Tell a client why its session was not opened.
+	 */
+	private static void refuse(final ICaptureCallback callback, final String message)
+	{
+		try
+		{
+			callback.onError(message);
+		}
+		catch (RemoteException re)
+		{
+			/* The client has died. */
+		}
+	}
+
+	/*
+	 * Begin capturing an image of a type, if the scanner offers it.
+	 */
+	private synchronized boolean beginCapture(final String imageTypeName)
+	{
+		if (this.m_device == null)
+		{
+			return (false);
+		}
+		try
+		{
+			final ImageType imageType = ImageType.valueOf(imageTypeName);
+			if (!this.m_profile.isCaptureAvailable(imageType))
+			{
+				return (false);
+			}
+			this.m_device.beginCaptureImage(imageType, this.m_profile.getCaptureResolution(imageType),
+					IBScanDevice.OPTION_AUTO_CAPTURE | IBScanDevice.OPTION_AUTO_CONTRAST);
+			return (true);
+		}
+		catch (IllegalArgumentException iae)
+		{
+			return (false);
+		}
+		catch (IBScanException ibse)
+		{
+			Log.e(TAG, "Could not begin capture " + ibse.getType().toString());
+			return (false);
+		}
+	}
+
+	private synchronized void cancelCapture()
+	{
+		if (this.m_device == null)
+		{
+			return;
+		}
+		try
+		{
+			if (this.m_device.isCaptureActive())
+			{
+				this.m_device.cancelCaptureImage();
+			}
+		}
+		catch (IBScanException ibse)
+		{
+			Log.e(TAG, "Could not cancel capture " + ibse.getType().toString());
+		}
+	}
+
+	/*
+	 * Close the scanner and the shared region, if a session is active.  The client's mapping of the
+	 * region stays valid until it unmaps it.
+	 */
+	private synchronized void closeSession()
+	{
+		final IBScanDevice device = this.m_device;
+		if (device == null)
+		{
+			return;
+		}
+		this.m_device  = null;
+		this.m_profile = null;
+
+		device.setScanDeviceListener(null);
+		try
+		{
+			device.close();
+		}
+		catch (IBScanException ibse)
+		{
+			Log.e(TAG, "Could not close scanner " + ibse.getType().toString());
+		}
+		ScannerOwnership.release(this);
+
+		/* Stop writers before closing the region. */
+		final SharedFrameRegion region = this.m_region;
+		this.m_region = null;
+		synchronized (region)
+		{
+			region.close();
+		}
+
+		synchronized (this.m_callbacks)
+		{
+			final int count = this.m_callbacks.beginBroadcast();
+			final ICaptureCallback[] callbacks = new ICaptureCallback[count];
+			for (int i = 0; i < count; i++)
+			{
+				callbacks[i] = this.m_callbacks.getBroadcastItem(i);
+			}
+			this.m_callbacks.finishBroadcast();
+			for (ICaptureCallback callback : callbacks)
+			{
+				this.m_callbacks.unregister(callback);
+			}
+		}
+	}
+
+	/*
+	 * Tell the client that a frame was written.
+	 */
+	private void notifyFrame(final int slot, final long sequence, final int fingerCount, final boolean result)
+	{
+		synchronized (this.m_callbacks)
+		{
+			final int count = this.m_callbacks.beginBroadcast();
+			for (int i = 0; i < count; i++)
+			{
+				try
+				{
+					if (result)
+					{
+						this.m_callbacks.getBroadcastItem(i).onResult(slot, sequence, fingerCount);
+					}
+					else
+					{
+						this.m_callbacks.getBroadcastItem(i).onPreviewFrame(slot, sequence);
+					}
+				}
+				catch (RemoteException re)
+				{
+					/* The list drops dead clients itself. */
+				}
+			}
+			this.m_callbacks.finishBroadcast();
+		}
+	}
+
+	private void notifyError(final String message)
+	{
+		synchronized (this.m_callbacks)
+		{
+			final int count = this.m_callbacks.beginBroadcast();
+			for (int i = 0; i < count; i++)
+			{
+				try
+				{
+					this.m_callbacks.getBroadcastItem(i).onError(message);
+				}
+				catch (RemoteException re)
+				{
+					/* The list drops dead clients itself. */
+				}
+			}
+			this.m_callbacks.finishBroadcast();
+		}
+	}
+
+	/*
+	 * Write a frame to the shared region, unless the session has closed, and tell the client.
+	 */
+	private void deliver(final ImageData image, final boolean result, final int fingerCount)
+	{
+		final SharedFrameRegion region = this.m_region;
+		if (region == null)
+		{
+			return;
+		}
+		final int  slot;
+		final long sequence;
+		synchronized (region)
+		{
+			if (this.m_region != region)
+			{
+				return;
+			}
+			try
+			{
+				slot     = result ? region.writeResult(image) : region.writePreview(image);
+				sequence = region.getSequence();
+			}
+			catch (IOException ioe)
+			{
+				Log.e(TAG, "Could not write frame " + ioe.getMessage());
+				return;
+			}
+		}
+		notifyFrame(slot, sequence, fingerCount, result);
+	}
+
+	/* *********************************************************************************************
+	 * IBScanDeviceListener METHODS
+	 ******************************************************************************************** */
+
+	@Override
+	public void deviceCommunicationBroken(final IBScanDevice device)
+	{
+		notifyError("Communication break");
+
+		/* The SDK must not be called back into from its own callback. */
+		Thread threadClose = new Thread()
+		{
+			@Override
+			public void run()
+			{
+				closeSession();
+			}
+		};
+		threadClose.start();
+	}
+
+	@Override
+	public void deviceImagePreviewAvailable(final IBScanDevice device, final ImageData image)
+	{
+		deliver(image, false, 0);
+	}
+
+	@Override
+	public void deviceFingerCountChanged(final IBScanDevice device, final FingerCountState fingerState)
+	{
+	}
+
+	@Override
+	public void deviceFingerQualityChanged(final IBScanDevice device, final FingerQualityState[] fingerQualities)
+	{
+	}
+
+	@Override
+	public void deviceAcquisitionBegun(final IBScanDevice device, final ImageType imageType)
+	{
+	}
+
+	@Override
+	public void deviceAcquisitionCompleted(final IBScanDevice device, final ImageType imageType)
+	{
+	}
+
+	@Override
+	public void deviceImageResultAvailable(final IBScanDevice device, final ImageData image,
+			final ImageType imageType, final ImageData[] splitImageArray)
+	{
+		/* The extended result is delivered instead. */
+	}
+
+	@Override
+	public void deviceImageResultExtendedAvailable(final IBScanDevice device, final IBScanException imageStatus,
+			final ImageData image, final ImageType imageType, final int detectedFingerCount,
+			final ImageData[] segmentImageArray, final SegmentPosition[] segmentPositionArray)
+	{
+		if (imageStatus != null)
+		{
+			notifyError("Image capture ended with error: " + imageStatus.getType().toString());
+			return;
+		}
+		deliver(image, true, detectedFingerCount);
+	}
+
+	@Override
+	public void devicePlatenStateChanged(final IBScanDevice device, final PlatenState platenState)
+	{
+	}
+
+	@Override
+	public void deviceWarningReceived(final IBScanDevice device, final IBScanException warning)
+	{
+		Log.w(TAG, "Warning received " + warning.getType().toString());
+	}
+
+	@Override
+	public void devicePressedKeyButtons(final IBScanDevice device, final int pressedKeyButtons)
+	{
+	}
+}
@@ -0,0 +1,212 @@
+/* *************************************************************************************************
+ * CaptureTrigger.java
+ *
+ * DESCRIPTION:
+ *     Early capture decision from the preview quality trend for SimpleScan demo app for
+ *     IBScanUltimate
+ *     http://www.integratedbiometrics.com
+ *
+ * NOTES:
+ *     Copyright (c) Integrated Biometrics, 2012-2013
+ *
+ * HISTORY:
+ *     2026/10/19  First version.
+************************************************************************************************ */
+
+package com.integratedbiometrics.ibsimplescan;
+
+import com.integratedbiometrics.ibscanultimate.IBScanDevice.FingerQualityState;
+import com.integratedbiometrics.ibscanultimate.IBScanDevice.ImageType;
+
+/**
+ * Decides when a flat capture can be finalized before the SDK's own auto-capture fires.  The
+ * trigger watches the smoothed preview quality score and the fingers reported by the SDK.  It
+ * fires once per capture, when the expected number of fingers has been placed without any poor
+ * or misplaced finger, the score is high enough, and the score has stopped improving: the spread
+ * over the last few frames is small and the frames have lasted a minimum time.
+ *
+ * The trigger holds no device state, so a recorded session (scores, ready finger counts and frame
+ * times) can be replayed through replay() to check a change to the policy offline.
+ */
+public class CaptureTrigger
+{
+	/* *********************************************************************************************
+	 * PRIVATE CONSTANTS
+	 ******************************************************************************************** */
+
+	/* The number of recent frames over which the score must be steady. */
+	private static final int  PLATEAU_FRAMES   = 5;
+
+	/* The largest spread of scores over the recent frames that counts as steady. */
+	private static final int  PLATEAU_SPREAD   = 4;
+
+	/* The lowest score at which the capture may be finalized (predicted NFIQ 2 or better). */
+	private static final int  MIN_SCORE        = 55;
+
+	/* The shortest time the fingers must have been ready, in milliseconds. */
+	private static final long MIN_READY_MILLIS = 300;
+
+	/* *********************************************************************************************
+	 * PRIVATE FIELDS
+	 ******************************************************************************************** */
+
+	/* The number of fingers the capture expects, or zero if the trigger is disabled. */
+	private int         m_expectedFingers;
+
+	/* The number of fingers currently placed well, and whether any finger is poor or misplaced. */
+	private int         m_readyFingers;
+	private boolean     m_placementProblem;
+
+	/* The scores of the recent ready frames, as a ring. */
+	private final int[] m_scores = new int[PLATEAU_FRAMES];
+	private int         m_scoreCount;
+
+	/* The time the fingers became ready, or -1 if they are not ready. */
+	private long        m_readySince = -1;
+
+	/* Whether the trigger has fired for this capture. */
+	private boolean     m_fired;
+
+	/* *********************************************************************************************
+	 * PUBLIC METHODS
+	 ******************************************************************************************** */
+
+	/*
+	 * Prepare for a new capture that expects the given number of fingers; zero disables the
+	 * trigger, as for rolled captures, which must run to completion.
+	 */
+	public synchronized void reset(final int expectedFingers)
+	{
+		this.m_expectedFingers  = expectedFingers;
+		this.m_readyFingers     = 0;
+		this.m_placementProblem = false;
+		this.m_scoreCount       = 0;
+		this.m_readySince       = -1;
+		this.m_fired            = false;
+	}
+
+	/*
+	 * Update the finger placement from the qualities reported by the SDK.
+	 */
+	public synchronized void setFingerQualities(final FingerQualityState[] fingerQualities)
+	{
+		int     ready   = 0;
+		boolean problem = false;
+		for (FingerQualityState quality : fingerQualities)
+		{
+			switch (quality)
+			{
+				case GOOD:
+				case FAIR:
+					ready++;
+					break;
+				case FINGER_NOT_PRESENT:
+					break;
+				default:
+					problem = true;
+					break;
+			}
+		}
+		setPlacement(ready, problem);
+	}
+
+	/*
+	 * Add the smoothed quality score of a preview frame and return true if the capture should be
+	 * finalized now.  Returns true at most once per capture.
+	 */
+	public synchronized boolean onFrame(final int score, final long timeMillis)
+	{
+		if ((this.m_expectedFingers == 0) || this.m_fired)
+		{
+			return (false);
+		}
+
+		/* Restart the trend whenever the fingers are not all placed well. */
+		if (this.m_placementProblem || (this.m_readyFingers != this.m_expectedFingers))
+		{
+			this.m_readySince = -1;
+			this.m_scoreCount = 0;
+			return (false);
+		}
+		if (this.m_readySince < 0)
+		{
+			this.m_readySince = timeMillis;
+		}
+
+		this.m_scores[this.m_scoreCount % PLATEAU_FRAMES] = score;
+		this.m_scoreCount++;
+		if ((this.m_scoreCount < PLATEAU_FRAMES) || (score < MIN_SCORE)
+				|| (timeMillis - this.m_readySince < MIN_READY_MILLIS))
+		{
+			return (false);
+		}
+
+		int min = Integer.MAX_VALUE;
+		int max = Integer.MIN_VALUE;
+		for (int s : this.m_scores)
+		{
+			min = Math.min(min, s);
+			max = Math.max(max, s);
+		}
+		if (max - min > PLATEAU_SPREAD)
+		{
+			return (false);
+		}
+		this.m_fired = true;
+		return (true);
+	}
+
+	/*
+	 * Replay a recorded capture and return the index of the frame at which the trigger fires, or
+	 * -1 if it never fires.
+	 */
+	public static int replay(final int expectedFingers, final int[] scores, final int[] readyFingers,
+			final long[] timesMillis)
+	{
+		final CaptureTrigger trigger = new CaptureTrigger();
+		trigger.reset(expectedFingers);
+		for (int i = 0; i < scores.length; i++)
+		{
+			trigger.setPlacement(readyFingers[i], false);
+			if (trigger.onFrame(scores[i], timesMillis[i]))
+			{
+				return (i);
+			}
+		}
+		return (-1);
+	}
+
+	/*
+	 * Get the number of fingers a capture of the given type expects, or zero if the capture must not
+	 * be finalized early.
+	 */
+	public static int getExpectedFingers(final ImageType imageType)
+	{
+		switch (imageType)
+		{
+			case FLAT_SINGLE_FINGER:
+				return (1);
+			case FLAT_TWO_FINGERS:
+				return (2);
+			case FLAT_THREE_FINGERS:
+				return (3);
+			case FLAT_FOUR_FINGERS:
+				return (4);
+			default:
+				return (0);
+		}
+	}
+
+	/* *********************************************************************************************
+	 * PRIVATE METHODS
+	 ******************************************************************************************** */
+
+	/*
+	 * Set the number of fingers placed well and whether any finger is poor or misplaced.
+	 */
+	private synchronized void setPlacement(final int readyFingers, final boolean placementProblem)
+	{
+		this.m_readyFingers     = readyFingers;
+		this.m_placementProblem = placementProblem;
+	}
+}
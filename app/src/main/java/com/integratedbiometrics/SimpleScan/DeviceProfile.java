@@ -0,0 +1,212 @@
+/* *************************************************************************************************
+ * DeviceProfile.java
+ *
+ * DESCRIPTION:
+ *     Capabilities of an opened scanner for SimpleScan demo app for IBScanUltimate
+ *     http://www.integratedbiometrics.com
+ *
+ * NOTES:
+ *     Copyright (c) Integrated Biometrics, 2012-2013
+ *
+ * HISTORY:
+ *     2026/10/19  First version.
+************************************************************************************************ */
+
+package com.integratedbiometrics.ibsimplescan;
+
+import java.util.Vector;
+
+import com.integratedbiometrics.ibscanultimate.IBScanDevice.ImageResolution;
+import com.integratedbiometrics.ibscanultimate.IBScanDevice.ImageType;
+
+/**
+ * The capabilities of a scanner model at a firmware version, resolved once when the scanner is
+ * opened.  All fields are final, so the preview and result callbacks can read them on every frame
+ * without locking, parsing or comparing model names.  Profiles are created by
+ * DeviceProfileRegistry.
+ *
+ * Image sizes are at 500 ppi, the resolution of preview and display buffers.  A scanner that can
+ * capture some image type at 1000 ppi delivers images up to twice as wide and high; work on those
+ * is done at the 500 ppi sizes, reducing the image a band of rows at a time, and only buffers that
+ * must hold a whole capture are sized for the capture size.
+ */
+public final class DeviceProfile
+{
+	/* *********************************************************************************************
+	 * PUBLIC CONSTANTS
+	 ******************************************************************************************** */
+
+	/* The capture type descriptions added for scanners that capture each hand's four fingers separately. */
+	public static final String LEFT_FOUR_DESCRIPTION  = "Left Four-finger flat fingerprint";
+	public static final String RIGHT_FOUR_DESCRIPTION = "Right Four-finger flat fingerprint";
+
+	/* *********************************************************************************************
+	 * PUBLIC FIELDS
+	 ******************************************************************************************** */
+
+	/* The product identifier and firmware version that key the profile. */
+	public final String   productId;
+	public final String   firmware;
+
+	/* The size of flat images. */
+	public final int      imageWidth;
+	public final int      imageHeight;
+
+	/* Whether rolled images have their own size and display buffer, and that size. */
+	public final boolean  separateRollImage;
+	public final int      rollImageWidth;
+	public final int      rollImageHeight;
+
+	/* The largest image of any type, for sizing work buffers. */
+	public final int      maxImageWidth;
+	public final int      maxImageHeight;
+
+	/* Whether any image type can be captured at 1000 ppi, and the largest captured image. */
+	public final boolean  highResolution;
+	public final int      maxCaptureWidth;
+	public final int      maxCaptureHeight;
+
+	/* Whether the scanner has per-finger LEDs and captures each hand's four fingers separately. */
+	public final boolean  fingerLeds;
+
+	/* Whether the capture availability came from the persistent cache rather than the scanner. */
+	public final boolean  availabilityCached;
+
+	/* The capture type descriptions to offer, in spinner order. */
+	private final String[] m_captureTypes;
+
+	/* Whether each image type can be captured at each resolution, by availabilityIndex(). */
+	private final boolean[] m_available;
+
+	/* *********************************************************************************************
+	 * CONSTRUCTOR
+	 ******************************************************************************************** */
+
+	DeviceProfile(final String productId, final String firmware, final int imageWidth, final int imageHeight,
+			final boolean separateRollImage, final int rollImageWidth, final int rollImageHeight,
+			final boolean splitFourFingers, final boolean[] available, final boolean availabilityCached)
+	{
+		this.productId          = productId;
+		this.firmware           = firmware;
+		this.imageWidth         = imageWidth;
+		this.imageHeight        = imageHeight;
+		this.separateRollImage  = separateRollImage;
+		this.rollImageWidth     = separateRollImage ? rollImageWidth : imageWidth;
+		this.rollImageHeight    = separateRollImage ? rollImageHeight : imageHeight;
+		this.maxImageWidth      = Math.max(this.imageWidth, this.rollImageWidth);
+		this.maxImageHeight     = Math.max(this.imageHeight, this.rollImageHeight);
+		this.m_available        = available.clone();
+		this.availabilityCached = availabilityCached;
+
+		boolean high = false;
+		for (ImageType imageType : ImageType.values())
+		{
+			high |= this.m_available[availabilityIndex(imageType, ImageResolution.RESOLUTION_1000)];
+		}
+		this.highResolution     = high;
+		this.maxCaptureWidth    = high ? 2 * this.maxImageWidth : this.maxImageWidth;
+		this.maxCaptureHeight   = high ? 2 * this.maxImageHeight : this.maxImageHeight;
+
+		/*
+		 * A scanner that captures each hand separately offers left and right four-finger captures
+		 * in place of the combined one, once the list is long enough to include it.
+		 */
+		final Vector<String> typeVector = new Vector<String>();
+		boolean split = false;
+		for (ImageType imageType : ImageType.values())
+		{
+			if (isCaptureAvailable(imageType))
+			{
+				typeVector.add(imageType.toDescription());
+				split = false;
+			}
+			if ((typeVector.size() > 4) && splitFourFingers)
+			{
+				typeVector.remove(3);
+				typeVector.add(LEFT_FOUR_DESCRIPTION);
+				typeVector.add(RIGHT_FOUR_DESCRIPTION);
+				split = true;
+			}
+		}
+		this.m_captureTypes = typeVector.toArray(new String[0]);
+		this.fingerLeds     = split;
+	}
+
+	/* *********************************************************************************************
+	 * PUBLIC METHODS
+	 ******************************************************************************************** */
+
+	/*
+	 * Get the index of an image type and resolution in arrays of capture availability.
+	 */
+	public static int availabilityIndex(final ImageType imageType, final ImageResolution resolution)
+	{
+		return (resolution.ordinal() * ImageType.values().length + imageType.ordinal());
+	}
+
+	/*
+	 * Get the length of arrays of capture availability.
+	 */
+	public static int availabilityLength()
+	{
+		return (ImageResolution.values().length * ImageType.values().length);
+	}
+
+	/*
+	 * Determine whether an image type can be captured at any resolution.
+	 */
+	public boolean isCaptureAvailable(final ImageType imageType)
+	{
+		for (ImageResolution resolution : ImageResolution.values())
+		{
+			if (this.m_available[availabilityIndex(imageType, resolution)])
+			{
+				return (true);
+			}
+		}
+		return (false);
+	}
+
+	/*
+	 * Determine whether an image type can be captured at a resolution.
+	 */
+	public boolean isCaptureAvailable(final ImageType imageType, final ImageResolution resolution)
+	{
+		return (this.m_available[availabilityIndex(imageType, resolution)]);
+	}
+
+	/*
+	 * Get the highest resolution at which an image type can be captured.
+	 */
+	public ImageResolution getCaptureResolution(final ImageType imageType)
+	{
+		return (isCaptureAvailable(imageType, ImageResolution.RESOLUTION_1000) 
+				? ImageResolution.RESOLUTION_1000 : ImageResolution.RESOLUTION_500);
+	}
+
+	/*
+	 * Get a copy of the capture availability of each image type at each resolution, by
+	 * availabilityIndex().
+	 */
+	public boolean[] getCaptureAvailability()
+	{
+		return (this.m_available.clone());
+	}
+
+	/*
+	 * Get the capture type descriptions to offer, in spinner order.
+	 */
+	public String[] getCaptureTypes()
+	{
+		return (this.m_captureTypes.clone());
+	}
+
+	/*
+	 * Determine whether images of a type are displayed in the separate roll buffer rather than the
+	 * flat one.
+	 */
+	public boolean usesRollBuffer(final ImageType imageType)
+	{
+		return (this.separateRollImage && (imageType == ImageType.ROLL_SINGLE_FINGER));
+	}
+}
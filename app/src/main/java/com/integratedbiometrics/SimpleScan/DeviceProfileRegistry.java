@@ -0,0 +1,212 @@
+/* *************************************************************************************************
+ * DeviceProfileRegistry.java
+ *
+ * DESCRIPTION:
+ *     Resolution and caching of scanner capability profiles for SimpleScan demo app for
+ *     IBScanUltimate
+ *     http://www.integratedbiometrics.com
+ *
+ * NOTES:
+ *     Copyright (c) Integrated Biometrics, 2012-2013
+ *
+ * HISTORY:
+ *     2026/10/19  First version.
+************************************************************************************************ */
+
+package com.integratedbiometrics.ibsimplescan;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import android.util.Log;
+
+import com.integratedbiometrics.ibscanultimate.IBScanDevice;
+import com.integratedbiometrics.ibscanultimate.IBScanDevice.ImageResolution;
+import com.integratedbiometrics.ibscanultimate.IBScanDevice.ImageType;
+import com.integratedbiometrics.ibscanultimate.IBScanDevice.PropertyId;
+import com.integratedbiometrics.ibscanultimate.IBScanException;
+
+/**
+ * Resolves an opened scanner to its DeviceProfile.  Model traits that the SDK does not report
+ * (a separate roll image, per-finger LEDs) come from a table keyed by product identifier; image
+ * sizes and capture availability are queried from the scanner.  Resolved profiles are kept for the
+ * life of the process keyed by product identifier, firmware and serial number, since availability
+ * can differ between units of a model, so reopening the same scanner costs only the two property
+ * reads that form the key.  Capture availability, which takes one call to the scanner per image
+ * type, is also kept across runs in a CapabilityCache keyed by serial number; a profile built from
+ * the cache should be confirmed with revalidate() off the UI thread.
+ */
+public final class DeviceProfileRegistry
+{
+	/* *********************************************************************************************
+	 * PRIVATE CONSTANTS
+	 ******************************************************************************************** */
+
+	/* The tag for log messages. */
+	private static final String   TAG                  = "DeviceProfileRegistry";
+
+	/* Models whose rolled images have their own size. */
+	private static final String[] SEPARATE_ROLL_MODELS = {"KOJAK", "FIVE-0"};
+
+	/* Models with per-finger LEDs that capture each hand's four fingers separately. */
+	private static final String[] SPLIT_FOUR_MODELS    = {"KOJAK"};
+
+	/* *********************************************************************************************
+	 * PRIVATE FIELDS
+	 ******************************************************************************************** */
+
+	/* The profiles resolved so far, keyed by product identifier, firmware and serial number. */
+	private static final HashMap<String, DeviceProfile> s_profiles = new HashMap<String, DeviceProfile>();
+
+	/* *********************************************************************************************
+	 * PUBLIC METHODS
+	 ******************************************************************************************** */
+
+	private DeviceProfileRegistry()
+	{
+	}
+
+	/*
+	 * Get the profile of an opened scanner whose serial number is not known, querying the scanner
+	 * only if no such scanner of the same model and firmware has been resolved before.
+	 */
+	public static DeviceProfile resolve(final IBScanDevice device) throws IBScanException
+	{
+		return (resolve(device, null, null));
+	}
+
+	/*
+	 * Get the profile of an opened scanner with the given serial number, taking capture availability
+	 * from the persistent cache if the scanner is in it.  The cache is updated after a probe.  A null
+	 * cache disables persistence.
+	 */
+	public static DeviceProfile resolve(final IBScanDevice device, final String serialNumber,
+			final CapabilityCache cache) throws IBScanException
+	{
+		final String productId = device.getProperty(PropertyId.PRODUCT_ID);
+		final String firmware  = device.getProperty(PropertyId.FIRMWARE);
+		final String key       = key(productId, firmware, serialNumber);
+
+		synchronized (s_profiles)
+		{
+			final DeviceProfile cached = s_profiles.get(key);
+			if (cached != null)
+			{
+				return (cached);
+			}
+		}
+
+		final boolean   persistent = (cache != null) && (serialNumber != null);
+		boolean[]       available  = persistent ? cache.get(serialNumber, firmware) : null;
+		final boolean   fromCache  = (available != null);
+		if (!fromCache)
+		{
+			available = probeAvailability(device);
+			if (persistent)
+			{
+				cache.put(serialNumber, firmware, available);
+			}
+		}
+		final DeviceProfile profile = create(device, productId, firmware, available, fromCache);
+
+		synchronized (s_profiles)
+		{
+			s_profiles.put(key, profile);
+		}
+		return (profile);
+	}
+
+	/*
+	 * Probe the scanner for the capture availability behind a profile built from the persistent cache.
+	 * Returns a corrected profile if the scanner disagrees with the cache, or null if it agrees.
+	 */
+	public static DeviceProfile revalidate(final IBScanDevice device, final DeviceProfile profile,
+			final String serialNumber, final CapabilityCache cache) throws IBScanException
+	{
+		final boolean[] available = probeAvailability(device);
+		if (Arrays.equals(available, profile.getCaptureAvailability()))
+		{
+			return (null);
+		}
+
+		cache.put(serialNumber, profile.firmware, available);
+		final DeviceProfile corrected = create(device, profile.productId, profile.firmware, available, false);
+		synchronized (s_profiles)
+		{
+			s_profiles.put(key(profile.productId, profile.firmware, serialNumber), corrected);
+		}
+		return (corrected);
+	}
+
+	/*
+	 * Ask the scanner which image types it can capture at each resolution.
+	 */
+	static boolean[] probeAvailability(final IBScanDevice device)
+	{
+		final boolean[] available = new boolean[DeviceProfile.availabilityLength()];
+		for (ImageResolution resolution : ImageResolution.values())
+		{
+			for (ImageType imageType : ImageType.values())
+			{
+				try
+				{
+					available[DeviceProfile.availabilityIndex(imageType, resolution)] = 
+							device.isCaptureAvailable(imageType, resolution);
+				}
+				catch (IBScanException ibse)
+				{
+					Log.e(TAG, "Could not check capture availability " + ibse.getType().toString());
+				}
+			}
+		}
+		return (available);
+	}
+
+	/*
+	 * Build a profile for a scanner whose capture availability is already known.
+	 */
+	static DeviceProfile create(final IBScanDevice device, final String productId, final String firmware,
+			final boolean[] available, final boolean availabilityCached) throws IBScanException
+	{
+		final boolean separateRoll = contains(SEPARATE_ROLL_MODELS, productId);
+		final int     imageWidth   = Integer.parseInt(device.getProperty(PropertyId.IMAGE_WIDTH));
+		final int     imageHeight  = Integer.parseInt(device.getProperty(PropertyId.IMAGE_HEIGHT));
+		int           rollWidth    = imageWidth;
+		int           rollHeight   = imageHeight;
+		if (separateRoll)
+		{
+			rollWidth  = Integer.parseInt(device.getProperty(PropertyId.ROLLED_IMAGE_WIDTH));
+			rollHeight = Integer.parseInt(device.getProperty(PropertyId.ROLLED_IMAGE_HEIGHT));
+		}
+		return (new DeviceProfile(productId, firmware, imageWidth, imageHeight, separateRoll, rollWidth,
+				rollHeight, contains(SPLIT_FOUR_MODELS, productId), available, availabilityCached));
+	}
+
+	/* *********************************************************************************************
+	 * PRIVATE METHODS
+	 ******************************************************************************************** */
+
+	/*
+	 * Get the key of a resolved profile.  A null serial number keeps the profile apart from those of
+	 * scanners whose serial number is known.
+	 */
+	private static String key(final String productId, final String firmware, final String serialNumber)
+	{
+		return (productId + "/" + firmware + "/" + ((serialNumber != null) ? serialNumber : ""));
+	}
+
+	/*
+	 * Determine whether a model is in a table.
+	 */
+	private static boolean contains(final String[] models, final String productId)
+	{
+		for (String model : models)
+		{
+			if (model.equals(productId))
+			{
+				return (true);
+			}
+		}
+		return (false);
+	}
+}
@@ -0,0 +1,142 @@
+/* *************************************************************************************************
+ * DeviceRefreshEngine.java
+ *
+ * DESCRIPTION:
+ *     Coalescing of scanner list refreshes for SimpleScan demo app for IBScanUltimate
+ *     http://www.integratedbiometrics.com
+ *
+ * NOTES:
+ *     Copyright (c) Integrated Biometrics, 2012-2013
+ *
+ * HISTORY:
+ *     2026/10/19  First version.
+************************************************************************************************ */
+
+package com.integratedbiometrics.ibsimplescan;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import android.hardware.usb.UsbDevice;
+import android.os.SystemClock;
+
+import com.integratedbiometrics.ibscanultimate.IBScan;
+
+/**
+ * Keeps bursts of attach, detach, permission and count callbacks from each causing a full
+ * enumeration of USB devices and scanners.  Refresh requests are debounced: each request pushes
+ * the refresh back by a short quiet period, but never beyond a maximum delay after the first
+ * request of the burst.  When the refresh runs, the USB device list is compared with the last one
+ * so that only newly attached devices are checked for being scanners, and the scanner list is
+ * compared with the last one so that the display changes only when the topology really changes.
+ */
+final class DeviceRefreshEngine
+{
+	/* *********************************************************************************************
+	 * PRIVATE CONSTANTS
+	 ******************************************************************************************** */
+
+	/* The quiet period after the last request before a refresh runs. */
+	private static final long QUIET_MILLIS     = 250;
+
+	/* The longest a refresh is deferred after the first request of a burst. */
+	private static final long MAX_DELAY_MILLIS = 1000;
+
+	/* *********************************************************************************************
+	 * PRIVATE FIELDS
+	 ******************************************************************************************** */
+
+	/* The time of the first request of the pending burst, or -1 if none is pending. */
+	private long                           m_burstStart = -1;
+
+	/* The USB devices seen at the last refresh, by device name, and whether each is a scanner. */
+	private final HashMap<String, Boolean> m_usbDevices = new HashMap<String, Boolean>();
+
+	/* The scanner descriptions seen at the last refresh, or null if there has been none. */
+	private String[]                       m_scanners;
+
+	/* *********************************************************************************************
+	 * PUBLIC METHODS
+	 ******************************************************************************************** */
+
+	/*
+	 * Note a refresh request and return the delay, in milliseconds, after which the refresh should
+	 * run.  The caller replaces any refresh already scheduled.
+	 */
+	synchronized long requestDelay()
+	{
+		final long now = SystemClock.uptimeMillis();
+		if (this.m_burstStart < 0)
+		{
+			this.m_burstStart = now;
+		}
+		return (Math.max(0, Math.min(now + QUIET_MILLIS, this.m_burstStart + MAX_DELAY_MILLIS) - now));
+	}
+
+	/*
+	 * Note that a refresh has started, ending the pending burst.
+	 */
+	synchronized void refreshStarted()
+	{
+		this.m_burstStart = -1;
+	}
+
+	/*
+	 * Forget everything seen, so the next refresh enumerates every device and reports the scanner
+	 * list as changed.
+	 */
+	synchronized void invalidate()
+	{
+		this.m_usbDevices.clear();
+		this.m_scanners = null;
+	}
+
+	/*
+	 * Compare the current USB device list with the last one and return the scanners attached
+	 * since.  Devices that are no longer attached are forgotten.
+	 */
+	synchronized List<UsbDevice> updateUsbDevices(final Map<String, UsbDevice> deviceList)
+	{
+		final Iterator<String> known = this.m_usbDevices.keySet().iterator();
+		while (known.hasNext())
+		{
+			if (!deviceList.containsKey(known.next()))
+			{
+				known.remove();
+			}
+		}
+
+		final List<UsbDevice> added = new ArrayList<UsbDevice>();
+		for (Map.Entry<String, UsbDevice> entry : deviceList.entrySet())
+		{
+			if (!this.m_usbDevices.containsKey(entry.getKey()))
+			{
+				final boolean isScanDevice = IBScan.isScanDevice(entry.getValue());
+				this.m_usbDevices.put(entry.getKey(), isScanDevice);
+				if (isScanDevice)
+				{
+					added.add(entry.getValue());
+				}
+			}
+		}
+		return (added);
+	}
+
+	/*
+	 * Record the scanner descriptions found by a refresh and return true if they differ from the
+	 * last refresh.
+	 */
+	synchronized boolean updateScanners(final String[] scanners)
+	{
+		if ((this.m_scanners != null) && Arrays.equals(this.m_scanners, scanners))
+		{
+			return (false);
+		}
+		this.m_scanners = scanners.clone();
+		return (true);
+	}
+}
@@ -0,0 +1,455 @@
+/* *************************************************************************************************
+ * DuplicateFingerDetector.java
+ *
+ * DESCRIPTION:
+ *     In-session duplicate finger detection for SimpleScan demo app for IBScanUltimate
+ *     http://www.integratedbiometrics.com
+ *
+ * NOTES:
+ *     Copyright (c) Integrated Biometrics, 2012-2013
+ *
+ * HISTORY:
+ *     2026/10/19  First version.
+************************************************************************************************ */
+
+package com.integratedbiometrics.ibsimplescan;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import com.integratedbiometrics.ibscanultimate.IBScanDevice.ImageData;
+
+/**
+ * Detects the same finger being captured more than once in a session, or the same hand being
+ * presented for two different slaps.  Each segment of a capture is reduced to a compact descriptor
+ * (a 32x32 grid of quantized ridge orientations centered on the finger) and compared against the
+ * descriptors of all earlier captures.  A capture without segments, such as a single flat or rolled
+ * finger, is described by its whole image instead.  Each earlier segment is matched by at most one
+ * segment of the new capture, the best-scoring pairs first, so one earlier finger cannot make two
+ * new fingers look like the same hand.  Descriptor extraction and comparison are split across the
+ * shared processing pool so a four-finger slap is checked in a few tens of milliseconds.
+ */
+public class DuplicateFingerDetector
+{
+	/* *********************************************************************************************
+	 * PUBLIC CLASSES
+	 ******************************************************************************************** */
+
+	/*
+	 * A segment of the latest capture that resembles a segment of an earlier capture.
+	 */
+	public static class Match
+	{
+		/* The segment of the latest capture. */
+		public final int   segmentIndex;
+
+		/* The earlier capture and its segment. */
+		public final int   earlierCaptureIndex;
+		public final int   earlierSegmentIndex;
+
+		/* The similarity of the two descriptors, in [0, 1]. */
+		public final float score;
+
+		Match(final int segmentIndex, final int earlierCaptureIndex, final int earlierSegmentIndex,
+				final float score)
+		{
+			this.segmentIndex        = segmentIndex;
+			this.earlierCaptureIndex = earlierCaptureIndex;
+			this.earlierSegmentIndex = earlierSegmentIndex;
+			this.score               = score;
+		}
+	}
+
+	/*
+	 * The result of checking one capture against the session.
+	 */
+	public static class Result
+	{
+		/* The index of the capture within the session, or -1 if the session was reset meanwhile. */
+		public final int         captureIndex;
+
+		/* The match of each duplicated segment, each to a different earlier segment. */
+		public final List<Match> matches;
+
+		/* The time spent checking the capture, in milliseconds. */
+		public final long        elapsedMillis;
+
+		Result(final int captureIndex, final List<Match> matches, final long elapsedMillis)
+		{
+			this.captureIndex  = captureIndex;
+			this.matches       = Collections.unmodifiableList(matches);
+			this.elapsedMillis = elapsedMillis;
+		}
+
+		/*
+		 * Determine whether any segment duplicates an earlier one.
+		 */
+		public boolean hasDuplicate()
+		{
+			return (!this.matches.isEmpty());
+		}
+
+		/*
+		 * Determine whether at least two segments match the same earlier capture, which indicates
+		 * that the same hand was presented twice.
+		 */
+		public boolean isHandDuplicate()
+		{
+			for (int i = 0; i < this.matches.size(); i++)
+			{
+				int count = 0;
+				for (int j = 0; j < this.matches.size(); j++)
+				{
+					if (this.matches.get(j).earlierCaptureIndex == this.matches.get(i).earlierCaptureIndex)
+					{
+						count++;
+					}
+				}
+				if (count >= 2)
+				{
+					return (true);
+				}
+			}
+			return (false);
+		}
+	}
+
+	/* *********************************************************************************************
+	 * PRIVATE CONSTANTS
+	 ******************************************************************************************** */
+
+	/* The size of an orientation block, in pixels (about 0.6 mm at 500 ppi). */
+	private static final int   BLOCK_SIZE       = 12;
+
+	/* The number of descriptor cells on each side of the grid. */
+	private static final int   GRID_SIZE        = 32;
+
+	/* The number of orientation quantization steps over 180 degrees. */
+	private static final int   ANGLE_STEPS      = 120;
+
+	/* The descriptor value of a cell with no usable ridge structure. */
+	private static final byte  CELL_EMPTY       = (byte)0xFF;
+
+	/* The thresholds for a block to count as finger rather than background. */
+	private static final float MIN_VARIANCE     = 100.0f;
+	private static final float MIN_COHERENCE    = 0.25f;
+
+	/* The largest shift, in cells, tried when aligning two descriptors. */
+	private static final int   MAX_SHIFT        = 3;
+
+	/* The largest orientation difference, in steps, for two cells to agree (about 12 degrees). */
+	private static final int   MAX_ANGLE_DIFF   = 8;
+
+	/* The smallest number of overlapping cells for a comparison to be meaningful. */
+	private static final int   MIN_OVERLAP      = 80;
+
+	/* The score at or above which two segments are reported as the same finger. */
+	private static final float MATCH_THRESHOLD  = 0.82f;
+
+	/* *********************************************************************************************
+	 * PRIVATE FIELDS
+	 ******************************************************************************************** */
+
+	/* Descriptors of earlier captures, indexed by capture, then by segment. */
+	private final List<byte[][]> m_captures = new ArrayList<byte[][]>();
+
+	/* Numbers each session; a check begun in an earlier session is not added to this one. */
+	private int                  m_generation;
+
+	/* *********************************************************************************************
+	 * PUBLIC METHODS
+	 ******************************************************************************************** */
+
+	/*
+	 * Forget all earlier captures, for example when a new enrollee starts.
+	 */
+	public synchronized void reset()
+	{
+		this.m_captures.clear();
+		this.m_generation++;
+	}
+
+	/*
+	 * Get the number of captures checked in this session.
+	 */
+	public synchronized int getCaptureCount()
+	{
+		return (this.m_captures.size());
+	}
+
+	/*
+	 * Check the segments of a capture against all earlier captures and then add them to the
+	 * session; if the capture has no segments, its whole image is checked and added.  Blocks until
+	 * the check is complete; call from a background thread.  If the session is reset during the
+	 * check, the capture is not added and no matches are reported.
+	 */
+	public Result addCapture(final ImageData image, final ImageData[] segments) throws InterruptedException
+	{
+		final ImageData[] fingers   = ((segments != null) && (segments.length > 0))
+				? segments : new ImageData[] {image};
+		final long        startTime = System.currentTimeMillis();
+		final int  generation;
+		synchronized (this)
+		{
+			generation = this.m_generation;
+		}
+
+		/* Extract one descriptor per segment in parallel. */
+		final List<Callable<byte[]>> extractTasks = new ArrayList<Callable<byte[]>>();
+		for (final ImageData segment : fingers)
+		{
+			extractTasks.add(new Callable<byte[]>()
+			{
+				@Override
+				public byte[] call()
+				{
+					return (computeDescriptor(segment.buffer, segment.width, segment.height));
+				}
+			});
+		}
+		final byte[][] descriptors = ProcessingPool.invokeAll(extractTasks).toArray(new byte[0][]);
+
+		/* Snapshot the earlier captures so that comparison runs without holding the lock. */
+		final List<byte[][]> earlier;
+		final int            captureIndex;
+		synchronized (this)
+		{
+			if (generation != this.m_generation)
+			{
+				return (new Result(-1, new ArrayList<Match>(), System.currentTimeMillis() - startTime));
+			}
+			earlier      = new ArrayList<byte[][]>(this.m_captures);
+			captureIndex = this.m_captures.size();
+			this.m_captures.add(descriptors);
+		}
+
+		final List<Match> matches = new ArrayList<Match>();
+		if (!earlier.isEmpty())
+		{
+			/* Compare each new segment against a slice of the earlier segments on each worker. */
+			final List<Callable<List<Match>>> compareTasks = new ArrayList<Callable<List<Match>>>();
+			final int parallelism = ProcessingPool.getParallelism();
+			final int sliceSize   = (earlier.size() + parallelism - 1) / parallelism;
+			for (int first = 0; first < earlier.size(); first += sliceSize)
+			{
+				final int sliceFirst = first;
+				final int sliceLast  = Math.min(earlier.size(), first + sliceSize);
+				compareTasks.add(new Callable<List<Match>>()
+				{
+					@Override
+					public List<Match> call()
+					{
+						return (findMatches(descriptors, earlier, sliceFirst, sliceLast));
+					}
+				});
+			}
+
+			final List<Match> candidates = new ArrayList<Match>();
+			for (List<Match> sliceMatches : ProcessingPool.invokeAll(compareTasks))
+			{
+				candidates.addAll(sliceMatches);
+			}
+			matches.addAll(pairMatches(candidates, descriptors.length));
+		}
+
+		/* Matches against a session that has since been reset are of no interest. */
+		synchronized (this)
+		{
+			if (generation != this.m_generation)
+			{
+				matches.clear();
+				return (new Result(-1, matches, System.currentTimeMillis() - startTime));
+			}
+		}
+		return (new Result(captureIndex, matches, System.currentTimeMillis() - startTime));
+	}
+
+	/* *********************************************************************************************
+	 * PRIVATE METHODS
+	 ******************************************************************************************** */
+
+	/*
+	 * Find every pair of a new descriptor and an earlier segment of captures [first, last) that
+	 * scores at or above threshold.
+	 */
+	private static List<Match> findMatches(final byte[][] descriptors, final List<byte[][]> earlier,
+			final int first, final int last)
+	{
+		final List<Match> matches = new ArrayList<Match>();
+		for (int i = 0; i < descriptors.length; i++)
+		{
+			for (int c = first; c < last; c++)
+			{
+				final byte[][] capture = earlier.get(c);
+				for (int s = 0; s < capture.length; s++)
+				{
+					final float score = compareDescriptors(descriptors[i], capture[s]);
+					if (score >= MATCH_THRESHOLD)
+					{
+						matches.add(new Match(i, c, s, score));
+					}
+				}
+			}
+		}
+		return (matches);
+	}
+
+	/*
+	 * Choose at most one match for each new segment and each earlier segment, taking the highest
+	 * scores first, and return them in order of new segment.
+	 */
+	private static List<Match> pairMatches(final List<Match> candidates, final int segmentCount)
+	{
+		Collections.sort(candidates, new Comparator<Match>()
+		{
+			@Override
+			public int compare(final Match a, final Match b)
+			{
+				return (Float.compare(b.score, a.score));
+			}
+		});
+
+		final Match[]   chosen = new Match[segmentCount];
+		final Set<Long> used   = new HashSet<Long>();
+		for (Match match : candidates)
+		{
+			final Long earlierSegment = ((long)match.earlierCaptureIndex << 32) | match.earlierSegmentIndex;
+			if ((chosen[match.segmentIndex] == null) && used.add(earlierSegment))
+			{
+				chosen[match.segmentIndex] = match;
+			}
+		}
+
+		final List<Match> matches = new ArrayList<Match>();
+		for (Match match : chosen)
+		{
+			if (match != null)
+			{
+				matches.add(match);
+			}
+		}
+		return (matches);
+	}
+
+	/*
+	 * Reduce a segment image to a grid of quantized ridge orientations centered on the foreground.
+	 */
+	static byte[] computeDescriptor(final byte[] buffer, final int width, final int height)
+	{
+		final OrientationField field = new OrientationField(width, height, BLOCK_SIZE);
+		field.compute(buffer, 0, width, width, height);
+
+		/* Find the centroid of the foreground blocks. */
+		long sumX  = 0;
+		long sumY  = 0;
+		int  count = 0;
+		for (int by = 0; by < field.rows; by++)
+		{
+			for (int bx = 0; bx < field.cols; bx++)
+			{
+				if (field.isForeground(by * field.cols + bx, MIN_VARIANCE, MIN_COHERENCE))
+				{
+					sumX += bx;
+					sumY += by;
+					count++;
+				}
+			}
+		}
+
+		final byte[] descriptor = new byte[GRID_SIZE * GRID_SIZE];
+		Arrays.fill(descriptor, CELL_EMPTY);
+		if (count == 0)
+		{
+			return (descriptor);
+		}
+
+		final int originX = (int)(sumX / count) - GRID_SIZE / 2;
+		final int originY = (int)(sumY / count) - GRID_SIZE / 2;
+		for (int gy = 0; gy < GRID_SIZE; gy++)
+		{
+			final int by = originY + gy;
+			if ((by < 0) || (by >= field.rows))
+			{
+				continue;
+			}
+			for (int gx = 0; gx < GRID_SIZE; gx++)
+			{
+				final int bx = originX + gx;
+				if ((bx < 0) || (bx >= field.cols))
+				{
+					continue;
+				}
+				final int index = by * field.cols + bx;
+				if (field.isForeground(index, MIN_VARIANCE, MIN_COHERENCE))
+				{
+					final int step = (int)(field.angle[index] * ANGLE_STEPS / Math.PI);
+					descriptor[gy * GRID_SIZE + gx] = (byte)Math.min(step, ANGLE_STEPS - 1);
+				}
+			}
+		}
+		return (descriptor);
+	}
+
+	/*
+	 * Compare two descriptors over a small range of translations and return the best fraction of
+	 * overlapping cells whose orientations agree.
+	 */
+	static float compareDescriptors(final byte[] a, final byte[] b)
+	{
+		float bestScore = 0.0f;
+
+		for (int dy = -MAX_SHIFT; dy <= MAX_SHIFT; dy++)
+		{
+			for (int dx = -MAX_SHIFT; dx <= MAX_SHIFT; dx++)
+			{
+				int overlap = 0;
+				int agree   = 0;
+
+				final int yFirst = Math.max(0, -dy);
+				final int yLast  = Math.min(GRID_SIZE, GRID_SIZE - dy);
+				final int xFirst = Math.max(0, -dx);
+				final int xLast  = Math.min(GRID_SIZE, GRID_SIZE - dx);
+				for (int y = yFirst; y < yLast; y++)
+				{
+					final int rowA = y * GRID_SIZE;
+					final int rowB = (y + dy) * GRID_SIZE + dx;
+					for (int x = xFirst; x < xLast; x++)
+					{
+						final byte cellA = a[rowA + x];
+						final byte cellB = b[rowB + x];
+						if ((cellA == CELL_EMPTY) || (cellB == CELL_EMPTY))
+						{
+							continue;
+						}
+						int diff = Math.abs(cellA - cellB);
+						if (diff > ANGLE_STEPS / 2)
+						{
+							diff = ANGLE_STEPS - diff;
+						}
+						overlap++;
+						if (diff <= MAX_ANGLE_DIFF)
+						{
+							agree++;
+						}
+					}
+				}
+
+				if (overlap >= MIN_OVERLAP)
+				{
+					final float score = (float)agree / overlap;
+					if (score > bestScore)
+					{
+						bestScore = score;
+					}
+				}
+			}
+		}
+		return (bestScore);
+	}
+}
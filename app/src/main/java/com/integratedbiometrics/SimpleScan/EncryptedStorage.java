@@ -0,0 +1,652 @@
+/* *************************************************************************************************
+ * EncryptedStorage.java
+ *
+ * DESCRIPTION:
+ *     Chunked authenticated encryption of stored captures for SimpleScan demo app for IBScanUltimate
+ *     http://www.integratedbiometrics.com
+ *
+ * NOTES:
+ *     Copyright (c) Integrated Biometrics, 2012-2013
+ *
+ * HISTORY:
+ *     2026/10/19  First version.
+************************************************************************************************ */
+
+package com.integratedbiometrics.ibsimplescan;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+import java.security.spec.AlgorithmParameterSpec;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import android.os.Build;
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyProperties;
+
+/**
+ * Encrypts files written by the app with AES-GCM in fixed-size chunks, so that data streams to
+ * disk a chunk at a time and any range of a file can be read back by decrypting only the chunks
+ * it covers.  Each chunk is sealed separately under a 12-byte nonce made of a random prefix chosen
+ * per file, a flag marking the last chunk and the chunk's index, so chunks cannot be reordered,
+ * moved between files or dropped from the end without failing authentication.
+ *
+ * A file is a header (magic "IBES", version, chunk size and nonce prefix) followed by the sealed
+ * chunks, each CHUNK_SIZE bytes of data plus a 16-byte tag; the last chunk may be shorter or
+ * empty.  The 256-bit key is generated on first use and kept in a file in the app's private
+ * storage.  From API 23 the key file is itself sealed with AES-GCM under a key held in the
+ * AndroidKeyStore, which cannot be read out of the device; older releases have no keystore for
+ * AES keys and keep the key file plain.  The files are meant for data kept at rest on the device,
+ * not for files shared with others, who have no way to decrypt them.
+ */
+public class EncryptedStorage
+{
+	/* *********************************************************************************************
+	 * PUBLIC CONSTANTS
+	 ******************************************************************************************** */
+
+	/* The file extension of encrypted files. */
+	public static final String FILE_EXTENSION = "enc";
+
+	/* The size of a chunk of data. */
+	public static final int    CHUNK_SIZE     = 64 * 1024;
+
+	/* *********************************************************************************************
+	 * PRIVATE CONSTANTS
+	 ******************************************************************************************** */
+
+	/* The magic number and version of files. */
+	private static final byte[] MAGIC          = {'I', 'B', 'E', 'S'};
+	private static final int    VERSION        = 1;
+
+	/* The sizes of the nonce prefix, the header, the nonce and the tag. */
+	private static final int    PREFIX_SIZE    = 7;
+	private static final int    HEADER_SIZE    = 9 + PREFIX_SIZE;
+	private static final int    NONCE_SIZE     = 12;
+	private static final int    TAG_SIZE       = 16;
+
+	/* The size of the key. */
+	private static final int    KEY_SIZE       = 32;
+
+	/* The cipher and the algorithm of the key. */
+	private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+	private static final String ALGORITHM      = "AES";
+
+	/* The keystore, and the alias of the key that seals the key file in it. */
+	private static final String KEYSTORE       = "AndroidKeyStore";
+	private static final String WRAP_ALIAS     = "SimpleScan.storage";
+
+	/* The magic number of a sealed key file, which is followed by the nonce and the sealed key. */
+	private static final byte[] WRAP_MAGIC     = {'I', 'B', 'K', 'W'};
+
+	/* *********************************************************************************************
+	 * PRIVATE FIELDS
+	 ******************************************************************************************** */
+
+	/* The key file. */
+	private final File         m_keyFile;
+
+	/* The key, loaded or generated on first use. */
+	private SecretKey          m_key;
+
+	/* The source of nonce prefixes and keys. */
+	private final SecureRandom m_random = new SecureRandom();
+
+	/* *********************************************************************************************
+	 * CONSTRUCTOR
+	 ******************************************************************************************** */
+
+	public EncryptedStorage(final File keyFile)
+	{
+		this.m_keyFile = keyFile;
+	}
+
+	/* *********************************************************************************************
+	 * PUBLIC METHODS
+	 ******************************************************************************************** */
+
+	/*
+	 * Open a stream that encrypts to a file.  Data is written a chunk at a time; the last chunk is
+	 * written when the stream is closed, and a file whose stream was not closed cannot be read.
+	 */
+	public OutputStream openOutput(final File file) throws IOException
+	{
+		final byte[] prefix = new byte[PREFIX_SIZE];
+		this.m_random.nextBytes(prefix);
+		return (new EncryptingOutputStream(getKey(), prefix, new FileOutputStream(file)));
+	}
+
+	/*
+	 * Open an encrypted file for reading any range of it.
+	 */
+	public Reader openReader(final File file) throws IOException
+	{
+		return (new Reader(getKey(), file));
+	}
+
+	/*
+	 * Open a stream that decrypts a file from its start.
+	 */
+	public InputStream openInput(final File file) throws IOException
+	{
+		return (new DecryptingInputStream(openReader(file)));
+	}
+
+	/*
+	 * Decrypt a whole file to a stream, which is left open.
+	 */
+	public void decrypt(final File file, final OutputStream out) throws IOException
+	{
+		final Reader reader = openReader(file);
+		try
+		{
+			final byte[] buffer = new byte[CHUNK_SIZE];
+			long position = 0;
+			int  count;
+			while ((count = reader.read(position, buffer, 0, buffer.length)) > 0)
+			{
+				out.write(buffer, 0, count);
+				position += count;
+			}
+			out.flush();
+		}
+		finally
+		{
+			reader.close();
+		}
+	}
+
+	/* *********************************************************************************************
+	 * PUBLIC CLASSES
+	 ******************************************************************************************** */
+
+	/*
+	 * Reads ranges of an encrypted file, decrypting the chunks they cover.  The last chunk decrypted
+	 * is kept, so reading a file in order decrypts each chunk once.
+	 */
+	public static class Reader
+	{
+		private final Cipher           m_cipher;
+		private final SecretKey        m_key;
+		private final RandomAccessFile m_file;
+		private final byte[]           m_prefix = new byte[PREFIX_SIZE];
+		private final int              m_chunkSize;
+		private final long             m_chunks;
+		private final long             m_length;
+
+		/* The sealed and the decrypted data of the last chunk read, and its index. */
+		private final byte[]           m_sealed;
+		private final byte[]           m_chunk;
+		private long                   m_chunkIndex  = -1;
+		private int                    m_chunkLength;
+
+		Reader(final SecretKey key, final File file) throws IOException
+		{
+			this.m_key  = key;
+			this.m_file = new RandomAccessFile(file, "r");
+			try
+			{
+				final byte[] header = new byte[HEADER_SIZE];
+				this.m_file.readFully(header);
+				if ((header[0] != MAGIC[0]) || (header[1] != MAGIC[1]) || (header[2] != MAGIC[2])
+						|| (header[3] != MAGIC[3]) || (header[4] != VERSION))
+				{
+					throw new IOException("not an encrypted file");
+				}
+				this.m_chunkSize = ((header[5] & 0xFF) << 24) | ((header[6] & 0xFF) << 16)
+						| ((header[7] & 0xFF) << 8) | (header[8] & 0xFF);
+				System.arraycopy(header, 9, this.m_prefix, 0, PREFIX_SIZE);
+
+				/* Every file has at least one chunk; only the last may be short. */
+				final long sealedSize = (long)this.m_chunkSize + TAG_SIZE;
+				final long body       = this.m_file.length() - HEADER_SIZE;
+				if ((this.m_chunkSize <= 0) || (this.m_chunkSize > 16 * CHUNK_SIZE) || (body < TAG_SIZE))
+				{
+					throw new IOException("corrupt encrypted file");
+				}
+				this.m_chunks = (body - TAG_SIZE) / sealedSize + 1;
+				final long last = body - (this.m_chunks - 1) * sealedSize - TAG_SIZE;
+				this.m_length = (this.m_chunks - 1) * this.m_chunkSize + last;
+
+				this.m_cipher = Cipher.getInstance(TRANSFORMATION);
+				this.m_sealed = new byte[this.m_chunkSize + TAG_SIZE];
+				this.m_chunk  = new byte[this.m_chunkSize];
+			}
+			catch (GeneralSecurityException gse)
+			{
+				this.m_file.close();
+				throw new IOException("cipher unavailable", gse);
+			}
+			catch (IOException ioe)
+			{
+				this.m_file.close();
+				throw ioe;
+			}
+		}
+
+		/*
+		 * Get the length of the decrypted data.
+		 */
+		public long length()
+		{
+			return (this.m_length);
+		}
+
+		/*
+		 * Read decrypted data from a position, returning the number of bytes read or -1 at the end.
+		 */
+		public int read(final long position, final byte[] buffer, final int offset, final int count) throws IOException
+		{
+			if (position >= this.m_length)
+			{
+				return (-1);
+			}
+			int  read    = 0;
+			long current = position;
+			while ((read < count) && (current < this.m_length))
+			{
+				final long index = current / this.m_chunkSize;
+				loadChunk(index);
+				final int start = (int)(current - index * this.m_chunkSize);
+				final int n     = Math.min(count - read, this.m_chunkLength - start);
+				System.arraycopy(this.m_chunk, start, buffer, offset + read, n);
+				read    += n;
+				current += n;
+			}
+			return (read);
+		}
+
+		public void close() throws IOException
+		{
+			this.m_file.close();
+		}
+
+		/*
+		 * Read and decrypt a chunk unless it is the last one decrypted.
+		 */
+		private void loadChunk(final long index) throws IOException
+		{
+			if (index == this.m_chunkIndex)
+			{
+				return;
+			}
+			final boolean last   = (index == this.m_chunks - 1);
+			final int     sealed = last ? (int)(this.m_length - index * this.m_chunkSize) + TAG_SIZE
+					: this.m_chunkSize + TAG_SIZE;
+			this.m_file.seek(HEADER_SIZE + index * ((long)this.m_chunkSize + TAG_SIZE));
+			this.m_file.readFully(this.m_sealed, 0, sealed);
+			try
+			{
+				this.m_cipher.init(Cipher.DECRYPT_MODE, this.m_key, parameters(this.m_prefix, last, index));
+				this.m_chunkLength = this.m_cipher.doFinal(this.m_sealed, 0, sealed, this.m_chunk, 0);
+				this.m_chunkIndex  = index;
+			}
+			catch (GeneralSecurityException gse)
+			{
+				this.m_chunkIndex = -1;
+				throw new IOException("chunk " + index + " failed authentication", gse);
+			}
+		}
+	}
+
+	/* *********************************************************************************************
+	 * PRIVATE CLASSES
+	 ******************************************************************************************** */
+
+	/*
+	 * Reads a file in order through a Reader, which decrypts each chunk once.
+	 */
+	private static class DecryptingInputStream extends InputStream
+	{
+		private final Reader m_reader;
+		private long         m_position;
+
+		DecryptingInputStream(final Reader reader)
+		{
+			this.m_reader = reader;
+		}
+
+		@Override
+		public int read() throws IOException
+		{
+			final byte[] b = new byte[1];
+			return ((read(b, 0, 1) > 0) ? (b[0] & 0xFF) : -1);
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len) throws IOException
+		{
+			if (len == 0)
+			{
+				return (0);
+			}
+			final int count = this.m_reader.read(this.m_position, b, off, len);
+			if (count > 0)
+			{
+				this.m_position += count;
+			}
+			return (count);
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			this.m_reader.close();
+		}
+	}
+
+	/*
+	 * Buffers a chunk of data and seals it into the file once more data follows it, or on close.
+	 */
+	private static class EncryptingOutputStream extends OutputStream
+	{
+		private final Cipher           m_cipher;
+		private final SecretKey        m_key;
+		private final byte[]           m_prefix;
+		private final FileOutputStream m_out;
+		private final byte[]           m_chunk  = new byte[CHUNK_SIZE];
+		private final byte[]           m_sealed = new byte[CHUNK_SIZE + TAG_SIZE];
+		private int                    m_count;
+		private long                   m_index;
+		private boolean                m_closed;
+
+		EncryptingOutputStream(final SecretKey key, final byte[] prefix, final FileOutputStream out) throws IOException
+		{
+			this.m_key    = key;
+			this.m_prefix = prefix;
+			this.m_out    = out;
+			try
+			{
+				this.m_cipher = Cipher.getInstance(TRANSFORMATION);
+
+				final byte[] header = new byte[HEADER_SIZE];
+				System.arraycopy(MAGIC, 0, header, 0, MAGIC.length);
+				header[4] = (byte)VERSION;
+				header[5] = (byte)(CHUNK_SIZE >>> 24);
+				header[6] = (byte)(CHUNK_SIZE >>> 16);
+				header[7] = (byte)(CHUNK_SIZE >>> 8);
+				header[8] = (byte)CHUNK_SIZE;
+				System.arraycopy(prefix, 0, header, 9, PREFIX_SIZE);
+				out.write(header);
+			}
+			catch (GeneralSecurityException gse)
+			{
+				out.close();
+				throw new IOException("cipher unavailable", gse);
+			}
+			catch (IOException ioe)
+			{
+				out.close();
+				throw ioe;
+			}
+		}
+
+		@Override
+		public void write(final int b) throws IOException
+		{
+			if (this.m_count == CHUNK_SIZE)
+			{
+				seal(false);
+			}
+			this.m_chunk[this.m_count++] = (byte)b;
+		}
+
+		@Override
+		public void write(final byte[] b, int off, int len) throws IOException
+		{
+			while (len > 0)
+			{
+				if (this.m_count == CHUNK_SIZE)
+				{
+					seal(false);
+				}
+				final int n = Math.min(len, CHUNK_SIZE - this.m_count);
+				System.arraycopy(b, off, this.m_chunk, this.m_count, n);
+				this.m_count += n;
+				off          += n;
+				len          -= n;
+			}
+		}
+
+		@Override
+		public void flush() throws IOException
+		{
+			this.m_out.flush();
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			if (this.m_closed)
+			{
+				return;
+			}
+			this.m_closed = true;
+			try
+			{
+				seal(true);
+			}
+			finally
+			{
+				this.m_out.close();
+			}
+		}
+
+		private void seal(final boolean last) throws IOException
+		{
+			try
+			{
+				this.m_cipher.init(Cipher.ENCRYPT_MODE, this.m_key, parameters(this.m_prefix, last, this.m_index));
+				final int sealed = this.m_cipher.doFinal(this.m_chunk, 0, this.m_count, this.m_sealed, 0);
+				this.m_out.write(this.m_sealed, 0, sealed);
+			}
+			catch (GeneralSecurityException gse)
+			{
+				throw new IOException("could not encrypt chunk " + this.m_index, gse);
+			}
+			this.m_index++;
+			this.m_count = 0;
+		}
+	}
+
+	/* *********************************************************************************************
+	 * PRIVATE METHODS
+	 ******************************************************************************************** */
+
+	/*
+	 * Get the parameters of a chunk.  GCMParameterSpec only exists from API 19; older providers take
+	 * the nonce as an IvParameterSpec and use a 16-byte tag.
+	 */
+	private static AlgorithmParameterSpec parameters(final byte[] prefix, final boolean last, final long index)
+	{
+		final byte[] nonce = new byte[NONCE_SIZE];
+		System.arraycopy(prefix, 0, nonce, 0, PREFIX_SIZE);
+		nonce[PREFIX_SIZE]     = (byte)(last ? 1 : 0);
+		nonce[PREFIX_SIZE + 1] = (byte)(index >>> 24);
+		nonce[PREFIX_SIZE + 2] = (byte)(index >>> 16);
+		nonce[PREFIX_SIZE + 3] = (byte)(index >>> 8);
+		nonce[PREFIX_SIZE + 4] = (byte)index;
+		if (Build.VERSION.SDK_INT >= 19)
+		{
+			return (new GCMParameterSpec(8 * TAG_SIZE, nonce));
+		}
+		return (new IvParameterSpec(nonce));
+	}
+
+	/*
+	 * Get the key, reading it from the key file or generating and saving it if there is none.  A plain
+	 * key file left by an older release is sealed once the keystore is available.
+	 */
+	private synchronized SecretKey getKey() throws IOException
+	{
+		if (this.m_key == null)
+		{
+			byte[] key;
+			if (this.m_keyFile.exists())
+			{
+				final byte[] contents = readKeyFile();
+				if (contents.length == KEY_SIZE)
+				{
+					key = contents;
+					if (Build.VERSION.SDK_INT >= 23)
+					{
+						writeKeyFile(wrap(key));
+					}
+				}
+				else
+				{
+					key = unwrap(contents);
+				}
+			}
+			else
+			{
+				key = new byte[KEY_SIZE];
+				this.m_random.nextBytes(key);
+				writeKeyFile((Build.VERSION.SDK_INT >= 23) ? wrap(key) : key);
+			}
+			this.m_key = new SecretKeySpec(key, ALGORITHM);
+		}
+		return (this.m_key);
+	}
+
+	/*
+	 * Read the whole key file.
+	 */
+	private byte[] readKeyFile() throws IOException
+	{
+		final byte[]          contents = new byte[(int)Math.min(this.m_keyFile.length(), 1024)];
+		final FileInputStream in       = new FileInputStream(this.m_keyFile);
+		try
+		{
+			int count = 0;
+			while (count < contents.length)
+			{
+				final int n = in.read(contents, count, contents.length - count);
+				if (n < 0)
+				{
+					throw new IOException("key file too short");
+				}
+				count += n;
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+		return (contents);
+	}
+
+	/*
+	 * Write the key file through a temporary file so that a crash never leaves it half-written.
+	 */
+	private void writeKeyFile(final byte[] contents) throws IOException
+	{
+		final File             temp = new File(this.m_keyFile.getPath() + ".tmp");
+		final FileOutputStream out  = new FileOutputStream(temp);
+		try
+		{
+			out.write(contents);
+			out.getFD().sync();
+		}
+		finally
+		{
+			out.close();
+		}
+		if (!temp.renameTo(this.m_keyFile))
+		{
+			temp.delete();
+			throw new IOException("could not save key " + this.m_keyFile.getPath());
+		}
+	}
+
+	/*
+	 * Seal a key under the keystore key, which the keystore gives a fresh random nonce.
+	 */
+	private static byte[] wrap(final byte[] key) throws IOException
+	{
+		try
+		{
+			final Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+			cipher.init(Cipher.ENCRYPT_MODE, getWrapKey());
+			final byte[] nonce  = cipher.getIV();
+			final byte[] sealed = cipher.doFinal(key);
+			if (nonce.length != NONCE_SIZE)
+			{
+				throw new IOException("unexpected nonce size " + nonce.length);
+			}
+
+			final byte[] contents = new byte[WRAP_MAGIC.length + NONCE_SIZE + sealed.length];
+			System.arraycopy(WRAP_MAGIC, 0, contents, 0, WRAP_MAGIC.length);
+			System.arraycopy(nonce, 0, contents, WRAP_MAGIC.length, NONCE_SIZE);
+			System.arraycopy(sealed, 0, contents, WRAP_MAGIC.length + NONCE_SIZE, sealed.length);
+			return (contents);
+		}
+		catch (GeneralSecurityException gse)
+		{
+			throw new IOException("could not seal key", gse);
+		}
+	}
+
+	/*
+	 * Open a key sealed by wrap().
+	 */
+	private static byte[] unwrap(final byte[] contents) throws IOException
+	{
+		if ((Build.VERSION.SDK_INT < 23) || (contents.length != WRAP_MAGIC.length + NONCE_SIZE + KEY_SIZE + TAG_SIZE)
+				|| (contents[0] != WRAP_MAGIC[0]) || (contents[1] != WRAP_MAGIC[1])
+				|| (contents[2] != WRAP_MAGIC[2]) || (contents[3] != WRAP_MAGIC[3]))
+		{
+			throw new IOException("unreadable key file");
+		}
+		try
+		{
+			final Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+			final byte[] nonce  = new byte[NONCE_SIZE];
+			System.arraycopy(contents, WRAP_MAGIC.length, nonce, 0, NONCE_SIZE);
+			cipher.init(Cipher.DECRYPT_MODE, getWrapKey(), new GCMParameterSpec(8 * TAG_SIZE, nonce));
+			final int offset = WRAP_MAGIC.length + NONCE_SIZE;
+			final byte[] key = cipher.doFinal(contents, offset, contents.length - offset);
+			return (key);
+		}
+		catch (GeneralSecurityException gse)
+		{
+			throw new IOException("could not open key", gse);
+		}
+	}
+
+	/*
+	 * Get the keystore key that seals the key file, generating it on first use.  Only called from
+	 * API 23.
+	 */
+	private static SecretKey getWrapKey() throws GeneralSecurityException, IOException
+	{
+		final KeyStore keyStore = KeyStore.getInstance(KEYSTORE);
+		keyStore.load(null);
+		if (keyStore.containsAlias(WRAP_ALIAS))
+		{
+			return ((SecretKey)keyStore.getKey(WRAP_ALIAS, null));
+		}
+
+		final KeyGenerator generator = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES, KEYSTORE);
+		generator.init(new KeyGenParameterSpec.Builder(WRAP_ALIAS,
+				KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
+				.setBlockModes(KeyProperties.BLOCK_MODE_GCM)
+				.setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_NONE)
+				.setKeySize(8 * KEY_SIZE)
+				.build());
+		return (generator.generateKey());
+	}
+}
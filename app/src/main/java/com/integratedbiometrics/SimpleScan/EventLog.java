@@ -0,0 +1,492 @@
+/* *************************************************************************************************
+ * EventLog.java
+ *
+ * DESCRIPTION:
+ *     Asynchronous structured event log for SimpleScan demo app for IBScanUltimate
+ *     http://www.integratedbiometrics.com
+ *
+ * NOTES:
+ *     Copyright (c) Integrated Biometrics, 2012-2013
+ *
+ * HISTORY:
+ *     2026/10/19  First version.
+************************************************************************************************ */
+
+package com.integratedbiometrics.ibsimplescan;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * A structured event log that callers on hot paths, such as the preview callback, can write to
+ * without locking, formatting or allocating.  An event is a level, a name, an optional text and two
+ * numbers; the name and text are kept by reference, so callers pass constants or enum names rather
+ * than strings built for the event.  Events go into a ring of SLOTS fixed slots: a writer claims a
+ * slot with a compare-and-set on the claim counter, fills it, and publishes it by storing its
+ * sequence number.  A writer that finds the ring full drops its event and counts the drop rather
+ * than wait.
+ *
+ * A background thread drains published slots in order every FLUSH_INTERVAL_MILLIS, or sooner once
+ * the ring is half full, and appends them to the newest of MAX_FILES rotating files of up to
+ * MAX_FILE_BYTES each.  Warnings and errors are also passed on to the system log from that thread.
+ * Optionally the system log lines of this process, which include the SDK's trace output once it is
+ * enabled with IBScan.enableTraceLog(), are read back into the ring as LOGCAT events.
+ *
+ * Files are written big-endian as:
+ *
+ *     "IBEL"  version (short)  wall-clock time (long)  uptime (long)
+ *     then records until end of file:
+ *     uptime (long)  level (byte)  name (UTF)  text (UTF)  number (long)  number (long)
+ *
+ * A name or text longer than MAX_TEXT_LENGTH characters is truncated, which keeps it within the
+ * limit of a UTF string.  An event that cannot be written is counted as dropped.
+ */
+public class EventLog
+{
+	/* *********************************************************************************************
+	 * PUBLIC CONSTANTS
+	 ******************************************************************************************** */
+
+	/* The levels of events. */
+	public static final int     DEBUG                 = 0;
+	public static final int     INFO                  = 1;
+	public static final int     WARN                  = 2;
+	public static final int     ERROR                 = 3;
+
+	/* The name of events read from the system log. */
+	public static final String  LOGCAT                = "logcat";
+
+	/* The version of the file format. */
+	public static final short   VERSION               = 1;
+
+	/* *********************************************************************************************
+	 * PRIVATE CONSTANTS
+	 ******************************************************************************************** */
+
+	/* The tag for log messages. */
+	private static final String TAG                   = "EventLog";
+
+	/* The identifier at the start of a file. */
+	private static final byte[] MAGIC                 = {'I', 'B', 'E', 'L'};
+
+	/* The number of slots in the ring, a power of two. */
+	private static final int    SLOTS                 = 4096;
+
+	/* The longest time between flushes. */
+	private static final long   FLUSH_INTERVAL_MILLIS = 250;
+
+	/* The size past which a file is rotated, and the number of files kept. */
+	private static final long   MAX_FILE_BYTES        = 1024 * 1024;
+	private static final int    MAX_FILES             = 4;
+
+	/* The name and extension of files; the newest is number 0. */
+	private static final String FILE_PREFIX           = "events.";
+	private static final String FILE_EXTENSION        = ".ibel";
+
+	/* The name of the event recording how many events were dropped. */
+	private static final String DROPPED               = "dropped";
+
+	/* The longest name or text written, short enough to fit a UTF string in any encoding. */
+	private static final int    MAX_TEXT_LENGTH       = 4096;
+
+	/* *********************************************************************************************
+	 * PRIVATE FIELDS
+	 ******************************************************************************************** */
+
+	/* The directory of files, and the lowest level logged. */
+	private final File            m_directory;
+	private volatile int          m_minLevel          = DEBUG;
+
+	/* The slots of the ring. */
+	private final long[]          m_uptimes           = new long[SLOTS];
+	private final byte[]          m_levels            = new byte[SLOTS];
+	private final String[]        m_names             = new String[SLOTS];
+	private final String[]        m_texts             = new String[SLOTS];
+	private final long[]          m_numbers0          = new long[SLOTS];
+	private final long[]          m_numbers1          = new long[SLOTS];
+
+	/* The sequence number published in each slot plus one, or zero if none yet. */
+	private final AtomicLongArray m_published         = new AtomicLongArray(SLOTS);
+
+	/* The next sequence number to claim and to drain, and the number of events dropped. */
+	private final AtomicLong      m_claimed           = new AtomicLong();
+	private volatile long         m_drained;
+	private final AtomicLong      m_dropped           = new AtomicLong();
+
+	/* The thread that drains the ring, and whether it should keep running. */
+	private final Thread          m_flushThread;
+	private volatile boolean      m_running           = true;
+
+	/* The file being written, opened by the flush thread. */
+	private DataOutputStream      m_out;
+	private long                  m_fileBytes;
+
+	/* The system log reader, while one is running. */
+	private volatile java.lang.Process m_logcat;
+
+	/* *********************************************************************************************
+	 * CONSTRUCTOR
+	 ******************************************************************************************** */
+
+	/*
+	 * Create a log writing files in a directory, which is created if necessary.
+	 */
+	public EventLog(final File directory)
+	{
+		this.m_directory   = directory;
+		this.m_flushThread = new Thread("EventLog")
+		{
+			@Override
+			public void run()
+			{
+				Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+				flushLoop();
+			}
+		};
+		this.m_flushThread.setDaemon(true);
+		this.m_flushThread.start();
+	}
+
+	/* *********************************************************************************************
+	 * PUBLIC METHODS
+	 ******************************************************************************************** */
+
+	/*
+	 * Set the lowest level logged; events below it are discarded at once.
+	 */
+	public void setMinLevel(final int level)
+	{
+		this.m_minLevel = level;
+	}
+
+	public void log(final int level, final String name)
+	{
+		log(level, name, null, 0, 0);
+	}
+
+	public void log(final int level, final String name, final String text)
+	{
+		log(level, name, text, 0, 0);
+	}
+
+	/*
+	 * Log an event.  Never blocks; if the ring is full, the event is dropped and counted.
+	 */
+	public void log(final int level, final String name, final String text, final long number0, final long number1)
+	{
+		if (level < this.m_minLevel)
+		{
+			return;
+		}
+
+		/* Claim a slot, unless that would overwrite one not yet drained. */
+		long sequence;
+		do
+		{
+			sequence = this.m_claimed.get();
+			if (sequence - this.m_drained >= SLOTS)
+			{
+				this.m_dropped.incrementAndGet();
+				return;
+			}
+		}
+		while (!this.m_claimed.compareAndSet(sequence, sequence + 1));
+
+		/* Fill the slot, then publish it. */
+		final int slot = (int)sequence & (SLOTS - 1);
+		this.m_uptimes[slot]  = SystemClock.uptimeMillis();
+		this.m_levels[slot]   = (byte)level;
+		this.m_names[slot]    = name;
+		this.m_texts[slot]    = text;
+		this.m_numbers0[slot] = number0;
+		this.m_numbers1[slot] = number1;
+		this.m_published.set(slot, sequence + 1);
+
+		/* Wake the flush thread early once the ring is half full. */
+		if (sequence - this.m_drained == SLOTS / 2)
+		{
+			LockSupport.unpark(this.m_flushThread);
+		}
+	}
+
+	/*
+	 * Get the number of events dropped because the ring was full.
+	 */
+	public long getDroppedCount()
+	{
+		return (this.m_dropped.get());
+	}
+
+	/*
+	 * Start or stop reading the system log lines of this process into the log.  Enable the SDK's
+	 * trace output with IBScan.enableTraceLog() to include it.
+	 */
+	public synchronized void setLogcatCapture(final boolean capture)
+	{
+		if (capture && (this.m_logcat == null))
+		{
+			try
+			{
+				final java.lang.Process logcat = Runtime.getRuntime().exec(new String[] {"logcat", "-v", "brief"});
+				this.m_logcat = logcat;
+				Thread threadLogcat = new Thread("EventLog logcat")
+				{
+					@Override
+					public void run()
+					{
+						Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+						readLogcat(logcat);
+					}
+				};
+				threadLogcat.setDaemon(true);
+				threadLogcat.start();
+			}
+			catch (IOException ioe)
+			{
+				Log.e(TAG, "Could not read system log " + ioe.getMessage());
+			}
+		}
+		else if (!capture && (this.m_logcat != null))
+		{
+			this.m_logcat.destroy();
+			this.m_logcat = null;
+		}
+	}
+
+	/*
+	 * Stop capturing the system log, write out the events logged so far and close the file.
+	 */
+	public void close()
+	{
+		setLogcatCapture(false);
+		this.m_running = false;
+		LockSupport.unpark(this.m_flushThread);
+		try
+		{
+			this.m_flushThread.join();
+		}
+		catch (InterruptedException ie)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/* *********************************************************************************************
+	 * PRIVATE METHODS
+	 ******************************************************************************************** */
+
+	/*
+	 * Drain the ring until closed.
+	 */
+	private void flushLoop()
+	{
+		while (this.m_running)
+		{
+			drain();
+			LockSupport.parkNanos(FLUSH_INTERVAL_MILLIS * 1000000L);
+		}
+		drain();
+		closeFile();
+	}
+
+	/*
+	 * Write every published slot, in order, and the number of events dropped since the last drain.
+	 * If a write fails, its slot is still released and counted as dropped, and the file is closed so
+	 * that the next drain starts a new one.
+	 */
+	private void drain()
+	{
+		long sequence = this.m_drained;
+		while (true)
+		{
+			final int slot = (int)sequence & (SLOTS - 1);
+			if (this.m_published.get(slot) != sequence + 1)
+			{
+				break;
+			}
+			boolean written = false;
+			try
+			{
+				write(this.m_uptimes[slot], this.m_levels[slot], this.m_names[slot], this.m_texts[slot],
+						this.m_numbers0[slot], this.m_numbers1[slot]);
+				written = true;
+			}
+			catch (IOException ioe)
+			{
+				Log.e(TAG, "Could not write event log " + ioe.getMessage());
+				this.m_dropped.incrementAndGet();
+				closeFile();
+			}
+			this.m_names[slot] = null;
+			this.m_texts[slot] = null;
+			sequence++;
+			this.m_drained = sequence;
+			if (!written)
+			{
+				return;
+			}
+		}
+
+		try
+		{
+			final long dropped = this.m_dropped.getAndSet(0);
+			if (dropped > 0)
+			{
+				write(SystemClock.uptimeMillis(), WARN, DROPPED, null, dropped, 0);
+			}
+			if (this.m_out != null)
+			{
+				this.m_out.flush();
+			}
+		}
+		catch (IOException ioe)
+		{
+			Log.e(TAG, "Could not write event log " + ioe.getMessage());
+			closeFile();
+		}
+	}
+
+	/*
+	 * Write one record, rotating files first if necessary, and pass warnings and errors on to the
+	 * system log.
+	 */
+	private void write(final long uptime, final int level, final String name, final String text,
+			final long number0, final long number1) throws IOException
+	{
+		if ((this.m_out == null) || (this.m_fileBytes >= MAX_FILE_BYTES))
+		{
+			rotate();
+		}
+
+		final String textOrEmpty = (text != null) ? text : "";
+		final int    before      = this.m_out.size();
+		this.m_out.writeLong(uptime);
+		this.m_out.writeByte(level);
+		this.m_out.writeUTF(truncate(name));
+		this.m_out.writeUTF(truncate(textOrEmpty));
+		this.m_out.writeLong(number0);
+		this.m_out.writeLong(number1);
+		this.m_fileBytes += this.m_out.size() - before;
+
+		if ((level >= WARN) && !LOGCAT.equals(name))
+		{
+			Log.println((level >= ERROR) ? Log.ERROR : Log.WARN, TAG, name + " " + textOrEmpty + " " + number0 + " " + number1);
+		}
+	}
+
+	/*
+	 * Close the current file, shift the older files up by one and start a new file 0.
+	 */
+	private void rotate() throws IOException
+	{
+		closeFile();
+		if (!this.m_directory.isDirectory() && !this.m_directory.mkdirs())
+		{
+			throw new IOException("could not create " + this.m_directory.getPath());
+		}
+		new File(this.m_directory, FILE_PREFIX + (MAX_FILES - 1) + FILE_EXTENSION).delete();
+		for (int i = MAX_FILES - 2; i >= 0; i--)
+		{
+			final File file = new File(this.m_directory, FILE_PREFIX + i + FILE_EXTENSION);
+			if (file.exists())
+			{
+				file.renameTo(new File(this.m_directory, FILE_PREFIX + (i + 1) + FILE_EXTENSION));
+			}
+		}
+
+		this.m_out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(new File(this.m_directory, FILE_PREFIX + 0 + FILE_EXTENSION))));
+		this.m_out.write(MAGIC);
+		this.m_out.writeShort(VERSION);
+		this.m_out.writeLong(System.currentTimeMillis());
+		this.m_out.writeLong(SystemClock.uptimeMillis());
+		this.m_fileBytes = this.m_out.size();
+	}
+
+	/*
+	 * Close the current file, if any.  The file is given up even if closing it fails.
+	 */
+	private void closeFile()
+	{
+		final DataOutputStream out = this.m_out;
+		if (out != null)
+		{
+			this.m_out = null;
+			try
+			{
+				out.close();
+			}
+			catch (IOException ioe)
+			{
+				Log.e(TAG, "Could not close event log " + ioe.getMessage());
+			}
+		}
+	}
+
+	/*
+	 * Cut a name or text down to at most MAX_TEXT_LENGTH characters.
+	 */
+	private static String truncate(final String text)
+	{
+		if (text == null)
+		{
+			return ("");
+		}
+		return ((text.length() <= MAX_TEXT_LENGTH) ? text : text.substring(0, MAX_TEXT_LENGTH));
+	}
+
+	/*
+	 * Log the system log lines of this process until the reader is stopped.  In the brief format a
+	 * line reads "L/tag(  pid): message".
+	 */
+	private void readLogcat(final java.lang.Process logcat)
+	{
+		final String pid = Integer.toString(Process.myPid());
+		try
+		{
+			final BufferedReader reader = new BufferedReader(new InputStreamReader(logcat.getInputStream()));
+			try
+			{
+				String line;
+				while ((line = reader.readLine()) != null)
+				{
+					final int open  = line.indexOf('(');
+					final int close = line.indexOf("):", open + 1);
+					if ((open < 2) || (close < 0) || !line.substring(open + 1, close).trim().equals(pid))
+					{
+						continue;
+					}
+					final String tag = line.substring(2, open);
+					if (tag.equals(TAG))
+					{
+						continue;
+					}
+					final char priority = line.charAt(0);
+					final int  level    = (priority == 'E') ? ERROR : (priority == 'W') ? WARN
+							: (priority == 'I') ? INFO : DEBUG;
+					log(level, LOGCAT, tag + ":" + line.substring(close + 2));
+				}
+			}
+			finally
+			{
+				reader.close();
+			}
+		}
+		catch (IOException ioe)
+		{
+			/* The reader was stopped. */
+		}
+	}
+}
@@ -0,0 +1,196 @@
+/* *************************************************************************************************
+ * ExportProvider.java
+ *
+ * DESCRIPTION:
+ *     Content provider sharing exported files for SimpleScan demo app for IBScanUltimate
+ *     http://www.integratedbiometrics.com
+ *
+ * NOTES:
+ *     Copyright (c) Integrated Biometrics, 2012-2013
+ *
+ * HISTORY:
+ *     2026/10/19  First version.
+************************************************************************************************ */
+
+package com.integratedbiometrics.ibsimplescan;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.Locale;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.provider.OpenableColumns;
+
+/**
+ * Hands exported captures to an e-mail client without putting them on shared storage.  Exports are
+ * written to a directory in the app's private cache, and the client is given a content URI naming
+ * the file together with a one-time grant to read it.  The provider is not exported, so no other
+ * app can read an export without such a grant, and it serves files read-only.  The activity deletes
+ * each export once the share has completed, and any left behind by a killed process at startup.
+ */
+public class ExportProvider extends ContentProvider
+{
+	/* *********************************************************************************************
+	 * PUBLIC CONSTANTS
+	 ******************************************************************************************** */
+
+	/* The authority of the provider, as declared in the manifest. */
+	public static final String AUTHORITY = "com.integratedbiometrics.ibsimplescan.exports";
+
+	/* *********************************************************************************************
+	 * PRIVATE CONSTANTS
+	 ******************************************************************************************** */
+
+	/* The directory of exports in the app's cache. */
+	private static final String   DIRECTORY_NAME = "exports";
+
+	/* The columns clients may ask for. */
+	private static final String[] COLUMNS        = {OpenableColumns.DISPLAY_NAME, OpenableColumns.SIZE};
+
+	/* *********************************************************************************************
+	 * PUBLIC METHODS
+	 ******************************************************************************************** */
+
+	/*
+	 * Get the directory of exports, creating it if needed.
+	 */
+	public static File getDirectory(final Context context)
+	{
+		final File directory = new File(context.getCacheDir(), DIRECTORY_NAME);
+		directory.mkdirs();
+		return (directory);
+	}
+
+	/*
+	 * Get the content URI of an export in the directory of exports.
+	 */
+	public static Uri getUri(final File file)
+	{
+		return (Uri.parse("content://" + AUTHORITY + "/" + Uri.encode(file.getName())));
+	}
+
+	/*
+	 * Delete every export, such as those left behind when the process was killed mid-share.
+	 */
+	public static void deleteAll(final Context context)
+	{
+		final File[] files = getDirectory(context).listFiles();
+		if (files != null)
+		{
+			for (File file : files)
+			{
+				file.delete();
+			}
+		}
+	}
+
+	/* *********************************************************************************************
+	 * ContentProvider METHODS
+	 ******************************************************************************************** */
+
+	@Override
+	public boolean onCreate()
+	{
+		return (true);
+	}
+
+	@Override
+	public Cursor query(final Uri uri, final String[] projection, final String selection,
+			final String[] selectionArgs, final String sortOrder)
+	{
+		final File file;
+		try
+		{
+			file = getFile(uri);
+		}
+		catch (FileNotFoundException fnfe)
+		{
+			return (null);
+		}
+
+		/* Answer only the columns asked for, in the order asked. */
+		final String[] columns = (projection != null) ? projection : COLUMNS;
+		final Object[] values  = new Object[columns.length];
+		for (int i = 0; i < columns.length; i++)
+		{
+			if (OpenableColumns.DISPLAY_NAME.equals(columns[i]))
+			{
+				values[i] = file.getName();
+			}
+			else if (OpenableColumns.SIZE.equals(columns[i]))
+			{
+				values[i] = Long.valueOf(file.length());
+			}
+		}
+		final MatrixCursor cursor = new MatrixCursor(columns, 1);
+		cursor.addRow(values);
+		return (cursor);
+	}
+
+	@Override
+	public String getType(final Uri uri)
+	{
+		final String name = uri.getLastPathSegment();
+		if ((name != null) && name.toLowerCase(Locale.US).endsWith(".png"))
+		{
+			return ("image/png");
+		}
+		return ("application/octet-stream");
+	}
+
+	@Override
+	public ParcelFileDescriptor openFile(final Uri uri, final String mode) throws FileNotFoundException
+	{
+		if (!"r".equals(mode))
+		{
+			throw new FileNotFoundException("exports are read-only");
+		}
+		return (ParcelFileDescriptor.open(getFile(uri), ParcelFileDescriptor.MODE_READ_ONLY));
+	}
+
+	@Override
+	public Uri insert(final Uri uri, final ContentValues values)
+	{
+		throw new UnsupportedOperationException("exports are read-only");
+	}
+
+	@Override
+	public int update(final Uri uri, final ContentValues values, final String selection, final String[] selectionArgs)
+	{
+		throw new UnsupportedOperationException("exports are read-only");
+	}
+
+	@Override
+	public int delete(final Uri uri, final String selection, final String[] selectionArgs)
+	{
+		throw new UnsupportedOperationException("exports are read-only");
+	}
+
+	/* *********************************************************************************************
+	 * PRIVATE METHODS
+	 ******************************************************************************************** */
+
+	/*
+	 * Get the export a URI names, refusing names that would leave the directory of exports.
+	 */
+	private File getFile(final Uri uri) throws FileNotFoundException
+	{
+		final String name = uri.getLastPathSegment();
+		if ((name == null) || (uri.getPathSegments().size() != 1) || name.contains("/") || name.startsWith("."))
+		{
+			throw new FileNotFoundException("no export " + uri);
+		}
+		final File file = new File(getDirectory(getContext()), name);
+		if (!file.isFile())
+		{
+			throw new FileNotFoundException("no export " + uri);
+		}
+		return (file);
+	}
+}
@@ -0,0 +1,411 @@
+/* *************************************************************************************************
+ * FingerImageRecordWriter.java
+ *
+ * DESCRIPTION:
+ *     ISO/IEC 19794-4 finger image record writer for SimpleScan demo app for IBScanUltimate
+ *     http://www.integratedbiometrics.com
+ *
+ * NOTES:
+ *     Copyright (c) Integrated Biometrics, 2012-2013
+ *
+ * HISTORY:
+ *     2026/10/19  First version.
+************************************************************************************************ */
+
+package com.integratedbiometrics.ibsimplescan;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import com.integratedbiometrics.ibscanultimate.IBScanDevice;
+import com.integratedbiometrics.ibscanultimate.IBScanDevice.ImageData;
+import com.integratedbiometrics.ibscanultimate.IBScanException;
+
+/**
+ * Writes a capture as an ISO/IEC 19794-4:2005 finger image record, one finger image per segment
+ * (or the whole image if it has no segments).  The fingers are cropped and compressed concurrently
+ * on the processing pool, each WSQ image into its own temporary file, so a slap takes about as long
+ * as its slowest finger; the record header, which needs the total length, is then written and the
+ * finger images streamed after it in order.  The time spent in each stage is returned.
+ *
+ * The lossless option writes uncompressed images.  The record's compression codes name only
+ * standard codecs (bit packing, WSQ, JPEG, JPEG 2000 and PNG), so the app's own lossless codec
+ * cannot be signalled in it, and a recipient could not decode it anyway.
+ */
+public class FingerImageRecordWriter
+{
+	/* *********************************************************************************************
+	 * PUBLIC CONSTANTS
+	 ******************************************************************************************** */
+
+	/* Impression types. */
+	public static final int IMPRESSION_PLAIN  = 0;
+	public static final int IMPRESSION_ROLLED = 1;
+
+	/* Finger positions. */
+	public static final int FINGER_UNKNOWN    = 0;
+	public static final int FINGER_RIGHT_FOUR = 13;
+	public static final int FINGER_LEFT_FOUR  = 14;
+
+	/* *********************************************************************************************
+	 * PUBLIC CLASSES
+	 ******************************************************************************************** */
+
+	/*
+	 * The compression of finger images, with its code in the record.
+	 */
+	public enum Compression
+	{
+		UNCOMPRESSED(0),
+		WSQ(2);
+
+		private final int m_code;
+
+		private Compression(final int code)
+		{
+			this.m_code = code;
+		}
+
+		public int getCode()
+		{
+			return (this.m_code);
+		}
+	}
+
+	/*
+	 * The time spent writing a record, in milliseconds.
+	 */
+	public static class Timings
+	{
+		/* The time to crop and to compress each finger. */
+		public final long[] cropMillis;
+		public final long[] encodeMillis;
+
+		/* The elapsed time of the concurrent crop and compression of all fingers. */
+		public final long   encodeWallMillis;
+
+		/* The time to write the record once the fingers are compressed. */
+		public final long   writeMillis;
+
+		/* The total time. */
+		public final long   totalMillis;
+
+		Timings(final long[] cropMillis, final long[] encodeMillis, final long encodeWallMillis,
+				final long writeMillis, final long totalMillis)
+		{
+			this.cropMillis       = cropMillis;
+			this.encodeMillis     = encodeMillis;
+			this.encodeWallMillis = encodeWallMillis;
+			this.writeMillis      = writeMillis;
+			this.totalMillis      = totalMillis;
+		}
+	}
+
+	/* *********************************************************************************************
+	 * PRIVATE CONSTANTS
+	 ******************************************************************************************** */
+
+	/* The format identifier and version of the record. */
+	private static final byte[] FORMAT_ID            = {'F', 'I', 'R', 0};
+	private static final byte[] VERSION              = {'0', '1', '0', 0};
+
+	/* The sizes of the general header and of each finger image header. */
+	private static final int    GENERAL_HEADER_SIZE  = 32;
+	private static final int    FINGER_HEADER_SIZE   = 14;
+
+	/* The image acquisition levels at 500 and 1000 ppi. */
+	private static final int    ACQUISITION_500      = 31;
+	private static final int    ACQUISITION_1000     = 41;
+
+	/* Scale units of pixels per inch. */
+	private static final int    SCALE_UNITS_PPI      = 1;
+
+	/* The finger image quality written, meaning not reported. */
+	private static final int    QUALITY_NONE         = 0;
+
+	/* The WSQ bit rate. */
+	private static final double WSQ_BIT_RATE         = 0.75;
+
+	/* The size of the buffer used to copy compressed images. */
+	private static final int    COPY_BUFFER          = 16 * 1024;
+
+	/* *********************************************************************************************
+	 * PRIVATE CLASSES
+	 ******************************************************************************************** */
+
+	/*
+	 * One finger image, compressed.
+	 */
+	private static class EncodedFinger
+	{
+		/* The size of the image. */
+		int    width;
+		int    height;
+
+		/* The image data in memory, or the file holding it. */
+		byte[] data;
+		File   file;
+		long   length;
+
+		/* The time to crop and to compress the finger. */
+		long   cropMillis;
+		long   encodeMillis;
+	}
+
+	/* *********************************************************************************************
+	 * PRIVATE FIELDS
+	 ******************************************************************************************** */
+
+	/* The scanner whose SDK compresses images, and the directory for compressed images. */
+	private final IBScanDevice m_encoder;
+	private final File         m_tempDir;
+
+	/* The compression of finger images. */
+	private final Compression  m_compression;
+
+	/* *********************************************************************************************
+	 * CONSTRUCTOR
+	 ******************************************************************************************** */
+
+	public FingerImageRecordWriter(final IBScanDevice encoder, final File tempDir, final Compression compression)
+	{
+		this.m_encoder     = encoder;
+		this.m_tempDir     = tempDir;
+		this.m_compression = compression;
+	}
+
+	/* *********************************************************************************************
+	 * PUBLIC METHODS
+	 ******************************************************************************************** */
+
+	/*
+	 * Write the record of a capture to a stream, which is left open.  Each segment is one finger
+	 * image at the corresponding finger position; with no segments, the whole image is one finger
+	 * image at the first finger position.
+	 */
+	public Timings write(final ImageData image, final FingerSegment[] segments, final int[] fingerPositions,
+			final int impression, final OutputStream out) throws IOException, InterruptedException
+	{
+		final long startTime = System.currentTimeMillis();
+
+		/* Crop and compress the fingers concurrently. */
+		final boolean whole = (segments == null) || (segments.length == 0);
+		final int     count = whole ? 1 : segments.length;
+		final List<Callable<EncodedFinger>> tasks = new ArrayList<Callable<EncodedFinger>>(count);
+		for (int i = 0; i < count; i++)
+		{
+			final FingerSegment segment = whole ? null : segments[i];
+			tasks.add(new Callable<EncodedFinger>()
+			{
+				@Override
+				public EncodedFinger call() throws IOException
+				{
+					return ((segment != null) ? encode(segment) : encode(image));
+				}
+			});
+		}
+
+		final List<EncodedFinger> fingers;
+		try
+		{
+			fingers = ProcessingPool.invokeAll(tasks);
+		}
+		catch (RuntimeException re)
+		{
+			if (re.getCause() instanceof IOException)
+			{
+				throw (IOException)re.getCause();
+			}
+			throw re;
+		}
+		final long encodedTime = System.currentTimeMillis();
+
+		/* Write the header and stream the finger images in order. */
+		final long[] cropMillis   = new long[count];
+		final long[] encodeMillis = new long[count];
+		try
+		{
+			long length = GENERAL_HEADER_SIZE;
+			for (EncodedFinger finger : fingers)
+			{
+				length += FINGER_HEADER_SIZE + finger.length;
+			}
+			final int resolution = (image.resolutionX > 0) ? (int)Math.round(image.resolutionX) : 500;
+			writeGeneralHeader(out, length, count, resolution);
+
+			for (int i = 0; i < count; i++)
+			{
+				final EncodedFinger finger = fingers.get(i);
+				final int position = (i < fingerPositions.length) ? fingerPositions[i] : 0;
+				writeInt(out, FINGER_HEADER_SIZE + finger.length, 4);
+				out.write(position);
+				out.write(1);
+				out.write(1);
+				out.write(QUALITY_NONE);
+				out.write(impression);
+				writeInt(out, finger.width, 2);
+				writeInt(out, finger.height, 2);
+				out.write(0);
+				if (finger.file != null)
+				{
+					copy(finger.file, out);
+				}
+				else
+				{
+					out.write(finger.data);
+				}
+				cropMillis[i]   = finger.cropMillis;
+				encodeMillis[i] = finger.encodeMillis;
+			}
+			out.flush();
+		}
+		finally
+		{
+			for (EncodedFinger finger : fingers)
+			{
+				if (finger.file != null)
+				{
+					finger.file.delete();
+				}
+			}
+		}
+
+		final long endTime = System.currentTimeMillis();
+		return (new Timings(cropMillis, encodeMillis, encodedTime - startTime, endTime - encodedTime,
+				endTime - startTime));
+	}
+
+	/* *********************************************************************************************
+	 * PRIVATE METHODS
+	 ******************************************************************************************** */
+
+	/*
+	 * Crop and compress one finger.
+	 */
+	private EncodedFinger encode(final FingerSegment segment) throws IOException
+	{
+		final long   startTime = System.currentTimeMillis();
+		final byte[] pixels    = segment.crop();
+		final EncodedFinger finger = compress(pixels, segment.width, segment.width, segment.height,
+				(int)Math.round(segment.resolution));
+		finger.cropMillis = System.currentTimeMillis() - startTime - finger.encodeMillis;
+		return (finger);
+	}
+
+	/*
+	 * Compress a whole image, turning it upright first if it is stored bottom-up.
+	 */
+	private EncodedFinger encode(final ImageData image) throws IOException
+	{
+		final long startTime = System.currentTimeMillis();
+		final int  stride    = Math.max(Math.abs(image.pitch), image.width);
+		byte[]     pixels    = image.buffer;
+		if ((image.pitch < 0) || (stride != image.width))
+		{
+			pixels = new byte[image.width * image.height];
+			for (int y = 0; y < image.height; y++)
+			{
+				final int row = (image.pitch < 0) ? (image.height - 1 - y) : y;
+				System.arraycopy(image.buffer, row * stride, pixels, y * image.width, image.width);
+			}
+		}
+		final EncodedFinger finger = compress(pixels, image.width, image.width, image.height,
+				(int)Math.round(image.resolutionX));
+		finger.cropMillis = System.currentTimeMillis() - startTime - finger.encodeMillis;
+		return (finger);
+	}
+
+	/*
+	 * Compress top-down pixels.
+	 */
+	private EncodedFinger compress(final byte[] pixels, final int pitch, final int width, final int height,
+			final int resolution) throws IOException
+	{
+		final long          startTime = System.currentTimeMillis();
+		final EncodedFinger finger    = new EncodedFinger();
+		finger.width  = width;
+		finger.height = height;
+		if (this.m_compression == Compression.WSQ)
+		{
+			final File file = File.createTempFile("finger", ".wsq", this.m_tempDir);
+			try
+			{
+				this.m_encoder.wsqEncodeToFile(file.getPath(), pixels, width, height, pitch, 8,
+						(resolution > 0) ? resolution : 500, WSQ_BIT_RATE, "");
+			}
+			catch (IBScanException ibse)
+			{
+				file.delete();
+				throw new IOException("could not compress finger " + ibse.getType().toString());
+			}
+			finger.file   = file;
+			finger.length = file.length();
+		}
+		else
+		{
+			finger.data   = pixels;
+			finger.length = pixels.length;
+		}
+		finger.encodeMillis = System.currentTimeMillis() - startTime;
+		return (finger);
+	}
+
+	/*
+	 * Write the general record header.
+	 */
+	private void writeGeneralHeader(final OutputStream out, final long length, final int count,
+			final int resolution) throws IOException
+	{
+		out.write(FORMAT_ID);
+		out.write(VERSION);
+		writeInt(out, length, 6);
+		writeInt(out, 0, 2);
+		writeInt(out, (resolution >= 1000) ? ACQUISITION_1000 : ACQUISITION_500, 2);
+		out.write(count);
+		out.write(SCALE_UNITS_PPI);
+		writeInt(out, resolution, 2);
+		writeInt(out, resolution, 2);
+		writeInt(out, resolution, 2);
+		writeInt(out, resolution, 2);
+		out.write(8);
+		out.write(this.m_compression.getCode());
+		writeInt(out, 0, 2);
+	}
+
+	/*
+	 * Write an unsigned big-endian integer of the given number of bytes.
+	 */
+	private static void writeInt(final OutputStream out, final long value, final int bytes) throws IOException
+	{
+		for (int i = bytes - 1; i >= 0; i--)
+		{
+			out.write((int)(value >>> (8 * i)) & 0xFF);
+		}
+	}
+
+	/*
+	 * Copy a file to a stream.
+	 */
+	private static void copy(final File file, final OutputStream out) throws IOException
+	{
+		final byte[]          buffer = new byte[COPY_BUFFER];
+		final FileInputStream in     = new FileInputStream(file);
+		try
+		{
+			int count;
+			while ((count = in.read(buffer)) > 0)
+			{
+				out.write(buffer, 0, count);
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,220 @@
+/* *************************************************************************************************
+ * FingerSegment.java
+ *
+ * DESCRIPTION:
+ *     View of one finger within a captured image for SimpleScan demo app for IBScanUltimate
+ *     http://www.integratedbiometrics.com
+ *
+ * NOTES:
+ *     Copyright (c) Integrated Biometrics, 2012-2013
+ *
+ * HISTORY:
+ *     2026/10/19  First version.
+************************************************************************************************ */
+
+package com.integratedbiometrics.ibsimplescan;
+
+import com.integratedbiometrics.ibscanultimate.IBScanDevice.ImageData;
+import com.integratedbiometrics.ibscanultimate.IBScanDevice.SegmentPosition;
+
+/**
+ * Describes one finger of a multi-finger capture as a window into the captured image's buffer,
+ * without copying pixels.  The window is the bounding box of the quadrilateral the SDK reports for
+ * the finger: pixel (x, y) of the window is buffer[offset + y * stride + x], rows top-down.  For an
+ * image stored bottom-up the stride is negative, so consumers that index rows this way need not
+ * care.  Consumers that need contiguous pixels can copy the window with crop(), or resample the
+ * quadrilateral upright with cropUpright().  The corners of the quadrilateral are taken in the
+ * SDK's order around the finger, starting at the top left.
+ */
+public class FingerSegment
+{
+	/* *********************************************************************************************
+	 * PRIVATE CONSTANTS
+	 ******************************************************************************************** */
+
+	/* The value of pixels outside the image when resampling. */
+	private static final int BACKGROUND = 0xFF;
+
+	/* *********************************************************************************************
+	 * PUBLIC FIELDS
+	 ******************************************************************************************** */
+
+	/* The captured image's buffer, and the index and row step of the window's first pixel. */
+	public final byte[] buffer;
+	public final int    offset;
+	public final int    stride;
+
+	/* The window within the captured image. */
+	public final int    left;
+	public final int    top;
+	public final int    width;
+	public final int    height;
+
+	/* The angle of the finger's top edge, in radians clockwise from horizontal. */
+	public final double angle;
+
+	/* The resolution of the captured image. */
+	public final double resolution;
+
+	/* *********************************************************************************************
+	 * PRIVATE FIELDS
+	 ******************************************************************************************** */
+
+	/* The corners of the quadrilateral in image coordinates. */
+	private final int[] m_cornersX;
+	private final int[] m_cornersY;
+
+	/* The size of the image, the distance between its rows, and whether they are stored bottom-up. */
+	private final int     m_imageWidth;
+	private final int     m_imageHeight;
+	private final int     m_imageStride;
+	private final boolean m_bottomUp;
+
+	/* *********************************************************************************************
+	 * CONSTRUCTOR
+	 ******************************************************************************************** */
+
+	public FingerSegment(final ImageData image, final SegmentPosition position)
+	{
+		this.m_cornersX    = new int[] {position.x1, position.x2, position.x3, position.x4};
+		this.m_cornersY    = new int[] {position.y1, position.y2, position.y3, position.y4};
+		this.m_imageWidth  = image.width;
+		this.m_imageHeight = image.height;
+		this.m_imageStride = Math.max(Math.abs(image.pitch), image.width);
+		this.m_bottomUp    = (image.pitch < 0);
+
+		/* Clip the bounding box of the corners to the image. */
+		int minX = image.width;
+		int minY = image.height;
+		int maxX = 0;
+		int maxY = 0;
+		for (int i = 0; i < 4; i++)
+		{
+			minX = Math.min(minX, this.m_cornersX[i]);
+			minY = Math.min(minY, this.m_cornersY[i]);
+			maxX = Math.max(maxX, this.m_cornersX[i] + 1);
+			maxY = Math.max(maxY, this.m_cornersY[i] + 1);
+		}
+		this.left   = Math.max(0, Math.min(minX, image.width));
+		this.top    = Math.max(0, Math.min(minY, image.height));
+		this.width  = Math.max(0, Math.min(maxX, image.width) - this.left);
+		this.height = Math.max(0, Math.min(maxY, image.height) - this.top);
+
+		this.buffer     = image.buffer;
+		this.offset     = rowStart(this.top) + this.left;
+		this.stride     = this.m_bottomUp ? -this.m_imageStride : this.m_imageStride;
+		this.angle      = Math.atan2(position.y2 - position.y1, position.x2 - position.x1);
+		this.resolution = image.resolutionX;
+	}
+
+	/* *********************************************************************************************
+	 * PUBLIC METHODS
+	 ******************************************************************************************** */
+
+	/*
+	 * Get the fingers of a capture, one per reported position, or an empty array if there are none.
+	 */
+	public static FingerSegment[] fromResult(final ImageData image, final SegmentPosition[] positions)
+	{
+		if (positions == null)
+		{
+			return (new FingerSegment[0]);
+		}
+		final FingerSegment[] segments = new FingerSegment[positions.length];
+		for (int i = 0; i < positions.length; i++)
+		{
+			segments[i] = new FingerSegment(image, positions[i]);
+		}
+		return (segments);
+	}
+
+	/*
+	 * Get a pixel of the window.
+	 */
+	public int getPixel(final int x, final int y)
+	{
+		return (this.buffer[this.offset + y * this.stride + x] & 0xFF);
+	}
+
+	/*
+	 * Copy the window into a new top-down array of width * height pixels.
+	 */
+	public byte[] crop()
+	{
+		final byte[] pixels = new byte[this.width * this.height];
+		for (int y = 0; y < this.height; y++)
+		{
+			System.arraycopy(this.buffer, this.offset + y * this.stride, pixels, y * this.width, this.width);
+		}
+		return (pixels);
+	}
+
+	/*
+	 * Get the width and height of the finger turned upright: the lengths of its top and left edges.
+	 */
+	public int getUprightWidth()
+	{
+		return ((int)Math.round(Math.hypot(this.m_cornersX[1] - this.m_cornersX[0], this.m_cornersY[1] - this.m_cornersY[0])));
+	}
+
+	public int getUprightHeight()
+	{
+		return ((int)Math.round(Math.hypot(this.m_cornersX[3] - this.m_cornersX[0], this.m_cornersY[3] - this.m_cornersY[0])));
+	}
+
+	/*
+	 * Resample the finger upright into a new top-down array of getUprightWidth() *
+	 * getUprightHeight() pixels, interpolating bilinearly.  Pixels outside the image are white.
+	 */
+	public byte[] cropUpright()
+	{
+		final int    outWidth  = getUprightWidth();
+		final int    outHeight = getUprightHeight();
+		final byte[] pixels    = new byte[outWidth * outHeight];
+		if ((outWidth == 0) || (outHeight == 0))
+		{
+			return (pixels);
+		}
+
+		/* Step along the top edge for each column and along the left edge for each row. */
+		final double stepXx = (double)(this.m_cornersX[1] - this.m_cornersX[0]) / outWidth;
+		final double stepXy = (double)(this.m_cornersY[1] - this.m_cornersY[0]) / outWidth;
+		final double stepYx = (double)(this.m_cornersX[3] - this.m_cornersX[0]) / outHeight;
+		final double stepYy = (double)(this.m_cornersY[3] - this.m_cornersY[0]) / outHeight;
+		for (int v = 0; v < outHeight; v++)
+		{
+			double sx = this.m_cornersX[0] + v * stepYx;
+			double sy = this.m_cornersY[0] + v * stepYy;
+			for (int u = 0; u < outWidth; u++, sx += stepXx, sy += stepXy)
+			{
+				final int x0 = (int)Math.floor(sx);
+				final int y0 = (int)Math.floor(sy);
+				int value = BACKGROUND;
+				if ((x0 >= 0) && (y0 >= 0) && (x0 + 1 < this.m_imageWidth) && (y0 + 1 < this.m_imageHeight))
+				{
+					final double fx = sx - x0;
+					final double fy = sy - y0;
+					final int    r0 = rowStart(y0) + x0;
+					final int    r1 = rowStart(y0 + 1) + x0;
+					final double upper = (this.buffer[r0] & 0xFF) * (1 - fx) + (this.buffer[r0 + 1] & 0xFF) * fx;
+					final double lower = (this.buffer[r1] & 0xFF) * (1 - fx) + (this.buffer[r1 + 1] & 0xFF) * fx;
+					value = (int)(upper * (1 - fy) + lower * fy + 0.5);
+				}
+				pixels[v * outWidth + u] = (byte)value;
+			}
+		}
+		return (pixels);
+	}
+
+	/* *********************************************************************************************
+	 * PRIVATE METHODS
+	 ******************************************************************************************** */
+
+	/*
+	 * Get the index of the first pixel of an image row, counting rows top-down.
+	 */
+	private int rowStart(final int y)
+	{
+		return ((this.m_bottomUp ? (this.m_imageHeight - 1 - y) : y) * this.m_imageStride);
+	}
+}
@@ -0,0 +1,271 @@
+/* *************************************************************************************************
+ * FingerTemplate.java
+ *
+ * DESCRIPTION:
+ *     Minutiae template and ISO/IEC 19794-2 / ANSI INCITS 378 record coding for SimpleScan demo app
+ *     for IBScanUltimate
+ *     http://www.integratedbiometrics.com
+ *
+ * NOTES:
+ *     Copyright (c) Integrated Biometrics, 2012-2013
+ *
+ * HISTORY:
+ *     2026/10/19  First version.
+************************************************************************************************ */
+
+package com.integratedbiometrics.ibsimplescan;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The minutiae of a single finger view.  Minutiae are held in parallel primitive arrays in
+ * template coordinates: origin at the top-left pixel, angles counter-clockwise from the x axis in
+ * units of 360/256 degrees.  Templates can be written to an ISO/IEC 19794-2:2005 or ANSI INCITS
+ * 378-2004 finger minutiae record, one finger view per template, and read back from one.
+ */
+public class FingerTemplate
+{
+	/* *********************************************************************************************
+	 * PUBLIC CLASSES
+	 ******************************************************************************************** */
+
+	/*
+	 * Enum representing the supported record formats.
+	 */
+	public static enum Format
+	{
+		ISO_19794_2,
+		ANSI_378;
+	}
+
+	/* *********************************************************************************************
+	 * PUBLIC CONSTANTS
+	 ******************************************************************************************** */
+
+	/* The minutia types, as coded in the record. */
+	public static final int TYPE_OTHER        = 0;
+	public static final int TYPE_RIDGE_ENDING = 1;
+	public static final int TYPE_BIFURCATION  = 2;
+
+	/* The maximum number of minutiae in a finger view. */
+	public static final int MAX_MINUTIAE      = 255;
+
+	/* Finger position code for an unknown finger. */
+	public static final int POSITION_UNKNOWN  = 0;
+
+	/* *********************************************************************************************
+	 * PRIVATE CONSTANTS
+	 ******************************************************************************************** */
+
+	/* The format identifier and version of both record formats. */
+	private static final int FORMAT_ID           = 0x464D5200;  /* "FMR\0" */
+	private static final int FORMAT_VERSION      = 0x20323000;  /* " 20\0" */
+
+	/* The sizes of the fixed record parts. */
+	private static final int ISO_HEADER_LENGTH   = 24;
+	private static final int ANSI_HEADER_LENGTH  = 26;
+	private static final int VIEW_HEADER_LENGTH  = 4;
+	private static final int MINUTIA_LENGTH      = 6;
+	private static final int EXTENDED_LENGTH     = 2;
+
+	/* Impression type for a live-scan plain impression. */
+	private static final int IMPRESSION_LIVE_PLAIN = 0;
+
+	/* *********************************************************************************************
+	 * PUBLIC FIELDS
+	 ******************************************************************************************** */
+
+	/* The size and resolution (pixels per inch) of the source image. */
+	public final int     width;
+	public final int     height;
+	public final int     resolution;
+
+	/* The finger position code and finger quality (0-100). */
+	public int           fingerPosition = POSITION_UNKNOWN;
+	public int           fingerQuality;
+
+	/* The number of minutiae. */
+	public int           count;
+
+	/* Per-minutia coordinates, angle (0-255), type and quality (0-100). */
+	public final short[] x       = new short[MAX_MINUTIAE];
+	public final short[] y       = new short[MAX_MINUTIAE];
+	public final byte[]  angle   = new byte[MAX_MINUTIAE];
+	public final byte[]  type    = new byte[MAX_MINUTIAE];
+	public final byte[]  quality = new byte[MAX_MINUTIAE];
+
+	/* *********************************************************************************************
+	 * CONSTRUCTOR
+	 ******************************************************************************************** */
+
+	public FingerTemplate(final int width, final int height, final int resolution)
+	{
+		this.width      = width;
+		this.height     = height;
+		this.resolution = resolution;
+	}
+
+	/* *********************************************************************************************
+	 * PUBLIC METHODS
+	 ******************************************************************************************** */
+
+	/*
+	 * Append a minutia.  Returns false if the template is full.
+	 */
+	public boolean add(final int x, final int y, final int angle, final int type, final int quality)
+	{
+		if (this.count >= MAX_MINUTIAE)
+		{
+			return (false);
+		}
+		this.x[this.count]       = (short)x;
+		this.y[this.count]       = (short)y;
+		this.angle[this.count]   = (byte)angle;
+		this.type[this.count]    = (byte)type;
+		this.quality[this.count] = (byte)quality;
+		this.count++;
+		return (true);
+	}
+
+	/*
+	 * Get the angle of a minutia in radians.
+	 */
+	public double getAngleRadians(final int index)
+	{
+		return ((this.angle[index] & 0xFF) * 2 * Math.PI / 256);
+	}
+
+	/*
+	 * Write the template as a single-view finger minutiae record.
+	 */
+	public byte[] toRecord(final Format format)
+	{
+		return (toRecord(format, new FingerTemplate[] {this}));
+	}
+
+	/*
+	 * Write several finger views, such as the segments of a slap, as one finger minutiae record.
+	 * The image size in the record header is the largest of the views.
+	 */
+	public static byte[] toRecord(final Format format, final FingerTemplate[] views)
+	{
+		final boolean iso          = (format == Format.ISO_19794_2);
+		final int     headerLength = iso ? ISO_HEADER_LENGTH : ANSI_HEADER_LENGTH;
+		int           recordLength = headerLength + EXTENDED_LENGTH * views.length;
+		int           width        = 0;
+		int           height       = 0;
+		for (FingerTemplate view : views)
+		{
+			recordLength += VIEW_HEADER_LENGTH + view.count * MINUTIA_LENGTH;
+			width  = Math.max(width, view.width);
+			height = Math.max(height, view.height);
+		}
+		final int pixelsPerCm = (int)Math.round(views[0].resolution / 2.54);
+
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(recordLength);
+		final DataOutputStream      out   = new DataOutputStream(bytes);
+		try
+		{
+			/* Record header. */
+			out.writeInt(FORMAT_ID);
+			out.writeInt(FORMAT_VERSION);
+			if (iso)
+			{
+				out.writeInt(recordLength);
+			}
+			else
+			{
+				out.writeShort(recordLength);
+				out.writeInt(0);            /* CBEFF product identifier. */
+			}
+			out.writeShort(0);              /* Capture equipment compliance and identifier. */
+			out.writeShort(width);
+			out.writeShort(height);
+			out.writeShort(pixelsPerCm);
+			out.writeShort(pixelsPerCm);
+			out.writeByte(views.length);    /* Number of finger views. */
+			out.writeByte(0);               /* Reserved. */
+
+			for (FingerTemplate view : views)
+			{
+				/* Finger view header. */
+				out.writeByte(view.fingerPosition);
+				out.writeByte(IMPRESSION_LIVE_PLAIN);   /* View number 0, impression type. */
+				out.writeByte(view.fingerQuality);
+				out.writeByte(view.count);
+
+				/* Minutiae.  ANSI angles are in units of two degrees. */
+				for (int i = 0; i < view.count; i++)
+				{
+					final int angle = iso ? (view.angle[i] & 0xFF) : ((view.angle[i] & 0xFF) * 180 / 256);
+					out.writeShort((view.type[i] << 14) | (view.x[i] & 0x3FFF));
+					out.writeShort(view.y[i] & 0x3FFF);
+					out.writeByte(angle);
+					out.writeByte(view.quality[i]);
+				}
+
+				/* No extended data. */
+				out.writeShort(0);
+			}
+			out.flush();
+		}
+		catch (IOException ioe)
+		{
+			/* Cannot happen when writing to memory. */
+			throw new IllegalStateException(ioe);
+		}
+		return (bytes.toByteArray());
+	}
+
+	/*
+	 * Read the first finger view of a finger minutiae record in either format.
+	 */
+	public static FingerTemplate fromRecord(final byte[] record)
+	{
+		final ByteBuffer in = ByteBuffer.wrap(record);
+		if ((in.getInt() != FORMAT_ID) || (in.getInt() != FORMAT_VERSION))
+		{
+			throw new IllegalArgumentException("not a finger minutiae record");
+		}
+
+		/*
+		 * The ANSI record length is two bytes (or six when the short value is zero), followed by a
+		 * four-byte product identifier; the ISO record length is four bytes.  Tell them apart by
+		 * which interpretation matches the record size.
+		 */
+		final boolean iso = (in.getInt(8) == record.length);
+		if (iso)
+		{
+			in.position(12);
+		}
+		else
+		{
+			in.position(((in.getShort(8) & 0xFFFF) == 0) ? 18 : 14);
+		}
+		in.getShort();                             /* Capture equipment. */
+		final int width       = in.getShort() & 0xFFFF;
+		final int height      = in.getShort() & 0xFFFF;
+		final int pixelsPerCm = in.getShort() & 0xFFFF;
+		in.getShort();
+		in.get();                                  /* Number of finger views. */
+		in.get();                                  /* Reserved. */
+
+		final FingerTemplate template = new FingerTemplate(width, height, (int)Math.round(pixelsPerCm * 2.54));
+		template.fingerPosition = in.get() & 0xFF;
+		in.get();                                  /* View number and impression type. */
+		template.fingerQuality  = in.get() & 0xFF;
+		final int count         = in.get() & 0xFF;
+		for (int i = 0; i < count; i++)
+		{
+			final int typeX = in.getShort() & 0xFFFF;
+			final int y     = in.getShort() & 0x3FFF;
+			final int angle = in.get() & 0xFF;
+			final int q     = in.get() & 0xFF;
+			template.add(typeX & 0x3FFF, y, iso ? angle : (angle * 256 / 180) & 0xFF, typeX >> 14, q);
+		}
+		return (template);
+	}
+}
@@ -0,0 +1,431 @@
+/* *************************************************************************************************
+ * FlightRecorder.java
+ *
+ * DESCRIPTION:
+ *     Rolling record of recent frames and events for SimpleScan demo app for IBScanUltimate
+ *     http://www.integratedbiometrics.com
+ *
+ * NOTES:
+ *     Copyright (c) Integrated Biometrics, 2012-2013
+ *
+ * HISTORY:
+ *     2026/10/19  First version.
+************************************************************************************************ */
+
+package com.integratedbiometrics.ibsimplescan;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import android.os.SystemClock;
+
+/**
+ * Keeps the last few seconds of preview frames, callback events and state transitions in a
+ * fixed-size ring outside the Java heap, so that a communication break or a failed capture in the
+ * field can be diagnosed afterwards.  Frames are reduced by REDUCTION in each direction and recorded
+ * at most every FRAME_INTERVAL_MILLIS, which keeps the cost per preview frame to a few tens of
+ * thousands of byte reads.  When the ring is full, the oldest records are overwritten.
+ * <p>
+ * A dump is written big-endian as:
+ * <pre>
+ *     "IBFR"  version (short)  wall-clock time of dump (long)  uptime of dump (long)
+ *     then records until end of file, oldest first:
+ *     type (byte)  uptime (long)  payload length (int)  payload
+ * </pre>
+ * A FRAME payload is width (short), height (short), reduction (byte), preview score 0-100 or -1
+ * (byte), then the reduced pixels top-down; an EVENT or STATE payload is UTF-8 text, a STATE being
+ * "FROM>TO".
+ */
+public class FlightRecorder
+{
+	/* *********************************************************************************************
+	 * PUBLIC CONSTANTS
+	 ******************************************************************************************** */
+
+	/* The record types. */
+	public static final byte    TYPE_FRAME            = 1;
+	public static final byte    TYPE_EVENT            = 2;
+	public static final byte    TYPE_STATE            = 3;
+
+	/* The version of the dump format. */
+	public static final short   VERSION               = 1;
+
+	/* *********************************************************************************************
+	 * PUBLIC INTERFACES
+	 ******************************************************************************************** */
+
+	/*
+	 * Receives the frames of a dump as it is played back.
+	 */
+	public interface FrameHandler
+	{
+		/*
+		 * Handle a reduced frame recorded at an uptime with its preview score, 0-100 or -1 if none
+		 * was estimated; the pixels are top-down and only valid during the call.
+		 */
+		void onFrame(long uptime, int width, int height, int score, byte[] pixels);
+	}
+
+	/*
+	 * Receives the events and state transitions of a dump as it is played back.
+	 */
+	public interface EventHandler
+	{
+		/*
+		 * Handle the text of an EVENT or STATE record made at an uptime.
+		 */
+		void onEvent(long uptime, byte type, String text);
+	}
+
+	/* *********************************************************************************************
+	 * PRIVATE CONSTANTS
+	 ******************************************************************************************** */
+
+	/* The identifier at the start of a dump. */
+	private static final byte[] MAGIC                 = {'I', 'B', 'F', 'R'};
+
+	/* The size of a record header: type, time and payload length. */
+	private static final int    RECORD_HEADER_SIZE    = 1 + 8 + 4;
+
+	/* The size of a frame payload header: width, height, reduction and score. */
+	private static final int    FRAME_HEADER_SIZE     = 2 + 2 + 1 + 1;
+
+	/* The reduction of recorded frames in each direction. */
+	private static final int    REDUCTION             = 4;
+
+	/* The shortest time between recorded frames. */
+	private static final long   FRAME_INTERVAL_MILLIS = 250;
+
+	/* The character set of event text. */
+	private static final Charset UTF8                 = Charset.forName("UTF-8");
+
+	/* *********************************************************************************************
+	 * PRIVATE FIELDS
+	 ******************************************************************************************** */
+
+	/* The ring of records. */
+	private final ByteBuffer m_ring;
+	private final int        m_capacity;
+
+	/* How far back a dump reaches. */
+	private final long       m_windowMillis;
+
+	/* The total bytes written and the start of the oldest record kept, as offsets since creation. */
+	private long             m_head;
+	private long             m_tail;
+
+	/* The time the last frame was recorded, or 0 if none. */
+	private long             m_lastFrameTime;
+
+	/* Work buffers for record headers and reduced frames, reused from record to record. */
+	private final ByteBuffer m_header = ByteBuffer.allocate(RECORD_HEADER_SIZE + FRAME_HEADER_SIZE);
+	private byte[]           m_reduced = new byte[0];
+
+	/* *********************************************************************************************
+	 * CONSTRUCTOR
+	 ******************************************************************************************** */
+
+	public FlightRecorder(final int capacity, final long windowMillis)
+	{
+		this.m_ring         = ByteBuffer.allocateDirect(capacity);
+		this.m_capacity     = capacity;
+		this.m_windowMillis = windowMillis;
+	}
+
+	/* *********************************************************************************************
+	 * PUBLIC METHODS
+	 ******************************************************************************************** */
+
+	/*
+	 * Record a preview frame with its preview score (-1 if none), unless a frame was recorded too
+	 * recently.  The caller keeps its reference to the frame.
+	 */
+	public synchronized void recordFrame(final FrameStore.Frame frame, final int score)
+	{
+		final long now = SystemClock.uptimeMillis();
+		if ((this.m_lastFrameTime != 0) && (now - this.m_lastFrameTime < FRAME_INTERVAL_MILLIS))
+		{
+			return;
+		}
+		this.m_lastFrameTime = now;
+
+		/* Reduce the frame by sampling, turning bottom-up frames upright. */
+		final ByteBuffer pixels        = frame.view();
+		final int        stride        = frame.getStride();
+		final int        height        = frame.getHeight();
+		final int        reducedWidth  = frame.getWidth() / REDUCTION;
+		final int        reducedHeight = height / REDUCTION;
+		final int        length        = reducedWidth * reducedHeight;
+		if (this.m_reduced.length < length)
+		{
+			this.m_reduced = new byte[length];
+		}
+		for (int y = 0; y < reducedHeight; y++)
+		{
+			final int row = frame.isBottomUp() ? (height - 1 - y * REDUCTION) : (y * REDUCTION);
+			final int in  = row * stride;
+			final int out = y * reducedWidth;
+			for (int x = 0; x < reducedWidth; x++)
+			{
+				this.m_reduced[out + x] = pixels.get(in + x * REDUCTION);
+			}
+		}
+
+		final ByteBuffer header = beginRecord(TYPE_FRAME, now, FRAME_HEADER_SIZE + length);
+		if (header == null)
+		{
+			return;
+		}
+		header.putShort((short)reducedWidth);
+		header.putShort((short)reducedHeight);
+		header.put((byte)REDUCTION);
+		header.put((byte)Math.max(-1, Math.min(100, score)));
+		put(header.array(), 0, header.position());
+		put(this.m_reduced, 0, length);
+	}
+
+	/*
+	 * Record a callback event.
+	 */
+	public void recordEvent(final String event)
+	{
+		record(TYPE_EVENT, event);
+	}
+
+	/*
+	 * Record a state transition.
+	 */
+	public void recordState(final String from, final String to)
+	{
+		record(TYPE_STATE, from + ">" + to);
+	}
+
+	/*
+	 * Write the records of the last window to a stream, which is left open.  Only the copy out of
+	 * the ring holds up recording; the stream is written afterwards.
+	 */
+	public void dump(final OutputStream ostream) throws IOException
+	{
+		final byte[] records;
+		final long   now = SystemClock.uptimeMillis();
+		synchronized (this)
+		{
+			/* Skip records older than the window. */
+			long start = this.m_tail;
+			while (start < this.m_head)
+			{
+				final long time = getLong(start + 1);
+				if (now - time <= this.m_windowMillis)
+				{
+					break;
+				}
+				start += RECORD_HEADER_SIZE + getInt(start + 9);
+			}
+
+			records = new byte[(int)(this.m_head - start)];
+			get(start, records);
+		}
+
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(ostream));
+		out.write(MAGIC);
+		out.writeShort(VERSION);
+		out.writeLong(System.currentTimeMillis());
+		out.writeLong(now);
+		out.write(records);
+		out.flush();
+	}
+
+	/*
+	 * Read a dump from a stream, passing its frames to a handler in order and skipping other
+	 * records.  Timing is left to the handler.
+	 */
+	public static void play(final InputStream istream, final FrameHandler handler) throws IOException
+	{
+		play(istream, handler, null);
+	}
+
+	/*
+	 * Read a dump from a stream, passing its frames and its events and state transitions to the
+	 * handlers in the order recorded.  A null handler skips its records.
+	 */
+	public static void play(final InputStream istream, final FrameHandler frameHandler,
+			final EventHandler eventHandler) throws IOException
+	{
+		final DataInputStream in    = new DataInputStream(new BufferedInputStream(istream));
+		final byte[]          magic = new byte[MAGIC.length];
+		in.readFully(magic);
+		if (!Arrays.equals(magic, MAGIC) || (in.readShort() != VERSION))
+		{
+			throw new IOException("not a flight recording");
+		}
+		in.readLong();
+		in.readLong();
+
+		byte[] pixels = new byte[0];
+		while (true)
+		{
+			final int type = in.read();
+			if (type < 0)
+			{
+				break;
+			}
+			final long time   = in.readLong();
+			final int  length = in.readInt();
+			if (length < 0)
+			{
+				throw new IOException("corrupt flight recording");
+			}
+			if ((type == TYPE_FRAME) && (length >= FRAME_HEADER_SIZE))
+			{
+				final int width  = in.readShort();
+				final int height = in.readShort();
+				in.readByte();
+				final int score  = in.readByte();
+				final int size   = length - FRAME_HEADER_SIZE;
+				if (size != width * height)
+				{
+					throw new IOException("corrupt flight recording frame");
+				}
+				if (pixels.length < size)
+				{
+					pixels = new byte[size];
+				}
+				in.readFully(pixels, 0, size);
+				if (frameHandler != null)
+				{
+					frameHandler.onFrame(time, width, height, score, pixels);
+				}
+			}
+			else if (((type == TYPE_EVENT) || (type == TYPE_STATE)) && (eventHandler != null))
+			{
+				final byte[] text = new byte[length];
+				in.readFully(text);
+				eventHandler.onEvent(time, (byte)type, new String(text, UTF8));
+			}
+			else
+			{
+				int skipped = 0;
+				while (skipped < length)
+				{
+					final int count = in.skipBytes(length - skipped);
+					if (count <= 0)
+					{
+						throw new EOFException();
+					}
+					skipped += count;
+				}
+			}
+		}
+	}
+
+	/* *********************************************************************************************
+	 * PRIVATE METHODS
+	 ******************************************************************************************** */
+
+	/*
+	 * Record a text record.
+	 */
+	private void record(final byte type, final String text)
+	{
+		final long   now     = SystemClock.uptimeMillis();
+		final byte[] payload = text.getBytes(UTF8);
+		synchronized (this)
+		{
+			final ByteBuffer header = beginRecord(type, now, payload.length);
+			if (header != null)
+			{
+				put(header.array(), 0, header.position());
+				put(payload, 0, payload.length);
+			}
+		}
+	}
+
+	/*
+	 * Make room for a record, dropping the oldest records, and return the work buffer holding the
+	 * record header, or null if the record is too large for the ring.
+	 */
+	private ByteBuffer beginRecord(final byte type, final long time, final int payloadLength)
+	{
+		final int size = RECORD_HEADER_SIZE + payloadLength;
+		if (size > this.m_capacity / 2)
+		{
+			return (null);
+		}
+		while (this.m_head + size - this.m_tail > this.m_capacity)
+		{
+			this.m_tail += RECORD_HEADER_SIZE + getInt(this.m_tail + 9);
+		}
+
+		final ByteBuffer header = this.m_header;
+		header.clear();
+		header.put(type);
+		header.putLong(time);
+		header.putInt(payloadLength);
+		return (header);
+	}
+
+	/*
+	 * Append bytes at the head of the ring.
+	 */
+	private void put(final byte[] src, final int offset, final int length)
+	{
+		final int position = (int)(this.m_head % this.m_capacity);
+		final int first    = Math.min(length, this.m_capacity - position);
+		this.m_ring.position(position);
+		this.m_ring.put(src, offset, first);
+		if (first < length)
+		{
+			this.m_ring.position(0);
+			this.m_ring.put(src, offset + first, length - first);
+		}
+		this.m_head += length;
+	}
+
+	/*
+	 * Copy bytes out of the ring from an offset.
+	 */
+	private void get(final long offset, final byte[] dst)
+	{
+		final int position = (int)(offset % this.m_capacity);
+		final int first    = Math.min(dst.length, this.m_capacity - position);
+		this.m_ring.position(position);
+		this.m_ring.get(dst, 0, first);
+		if (first < dst.length)
+		{
+			this.m_ring.position(0);
+			this.m_ring.get(dst, first, dst.length - first);
+		}
+	}
+
+	/*
+	 * Read a big-endian value at an offset, which may wrap around the end of the ring.
+	 */
+	private long getLong(final long offset)
+	{
+		long value = 0;
+		for (int i = 0; i < 8; i++)
+		{
+			value = (value << 8) | (this.m_ring.get((int)((offset + i) % this.m_capacity)) & 0xFF);
+		}
+		return (value);
+	}
+
+	private int getInt(final long offset)
+	{
+		int value = 0;
+		for (int i = 0; i < 4; i++)
+		{
+			value = (value << 8) | (this.m_ring.get((int)((offset + i) % this.m_capacity)) & 0xFF);
+		}
+		return (value);
+	}
+}
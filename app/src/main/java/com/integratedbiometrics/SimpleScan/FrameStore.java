@@ -0,0 +1,274 @@
+/* *************************************************************************************************
+ * FrameStore.java
+ *
+ * DESCRIPTION:
+ *     Pool of direct buffers holding image frames for SimpleScan demo app for IBScanUltimate
+ *     http://www.integratedbiometrics.com
+ *
+ * NOTES:
+ *     Copyright (c) Integrated Biometrics, 2012-2013
+ *
+ * HISTORY:
+ *     2026/10/19  First version.
+************************************************************************************************ */
+
+package com.integratedbiometrics.ibsimplescan;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.integratedbiometrics.ibscanultimate.IBScanDevice.ImageData;
+
+/**
+ * Holds copies of image frames in a fixed pool of direct buffers, allocated once for the largest
+ * image of the open scanner, so that consumers that keep a frame beyond the SDK callback do not each
+ * allocate a copy on the Java heap.  A frame is copied into the pool once and then shared: every
+ * consumer that keeps it calls retain(), reads it through a read-only view, and calls release()
+ * when done.  The buffer returns to the pool when the last reference is released.  If every buffer
+ * is in use, a new frame is dropped rather than allocated.  An image larger than the store was
+ * sized for, such as a 1000 ppi frame in a store sized for 500 ppi, is reduced a row at a time by
+ * the smallest power of two that fits, so high-resolution capture does not enlarge the pool.
+ */
+public class FrameStore
+{
+	/* *********************************************************************************************
+	 * PUBLIC CLASSES
+	 ******************************************************************************************** */
+
+	/*
+	 * A frame held in the pool.
+	 */
+	public static final class Frame
+	{
+		/* The store that owns the frame's buffer. */
+		private final FrameStore    m_store;
+
+		/* The buffer and the number of references to it. */
+		private final ByteBuffer    m_buffer;
+		private final AtomicInteger m_references = new AtomicInteger();
+
+		/* The size of the image, the distance between rows, and whether rows run bottom-up. */
+		private int                 m_width;
+		private int                 m_height;
+		private int                 m_stride;
+		private boolean             m_bottomUp;
+
+		/* The resolution and the SDK frame time of the image. */
+		private double              m_resolution;
+		private double              m_frameTime;
+
+		/* The sequence number of the frame within the store. */
+		private long                m_sequence;
+
+		Frame(final FrameStore store, final int capacity)
+		{
+			this.m_store  = store;
+			this.m_buffer = ByteBuffer.allocateDirect(capacity);
+		}
+
+		/*
+		 * Get a read-only view of the pixels, positioned at the first stored row.
+		 */
+		public ByteBuffer view()
+		{
+			final ByteBuffer view = this.m_buffer.asReadOnlyBuffer();
+			view.position(0);
+			view.limit(this.m_stride * this.m_height);
+			return (view);
+		}
+
+		public int getWidth()
+		{
+			return (this.m_width);
+		}
+
+		public int getHeight()
+		{
+			return (this.m_height);
+		}
+
+		public int getStride()
+		{
+			return (this.m_stride);
+		}
+
+		public boolean isBottomUp()
+		{
+			return (this.m_bottomUp);
+		}
+
+		public double getResolution()
+		{
+			return (this.m_resolution);
+		}
+
+		public double getFrameTime()
+		{
+			return (this.m_frameTime);
+		}
+
+		public long getSequence()
+		{
+			return (this.m_sequence);
+		}
+
+		/*
+		 * Add a reference to the frame.  Returns this frame.
+		 */
+		public Frame retain()
+		{
+			if (this.m_references.getAndIncrement() <= 0)
+			{
+				throw new IllegalStateException("frame has been released");
+			}
+			return (this);
+		}
+
+		/*
+		 * Drop a reference to the frame; the last release returns its buffer to the pool.
+		 */
+		public void release()
+		{
+			final int references = this.m_references.decrementAndGet();
+			if (references == 0)
+			{
+				this.m_store.recycle(this);
+			}
+			else if (references < 0)
+			{
+				throw new IllegalStateException("frame released too often");
+			}
+		}
+	}
+
+	/* *********************************************************************************************
+	 * PRIVATE FIELDS
+	 ******************************************************************************************** */
+
+	/* The capacity of each buffer, in bytes, and the largest image it holds unreduced. */
+	private final int              m_capacity;
+	private final int              m_maxWidth;
+	private final int              m_maxHeight;
+
+	/* A row of a reduced image, filled before it is put into a buffer. */
+	private final byte[]           m_row;
+
+	/* The frames not in use. */
+	private final ArrayDeque<Frame> m_free;
+
+	/* The number of frames stored and dropped. */
+	private long                   m_stored;
+	private long                   m_dropped;
+
+	/* *********************************************************************************************
+	 * CONSTRUCTOR
+	 ******************************************************************************************** */
+
+	public FrameStore(final int maxWidth, final int maxHeight, final int frames)
+	{
+		this.m_capacity  = maxWidth * maxHeight;
+		this.m_maxWidth  = maxWidth;
+		this.m_maxHeight = maxHeight;
+		this.m_row       = new byte[maxWidth];
+		this.m_free      = new ArrayDeque<Frame>(frames);
+		for (int i = 0; i < frames; i++)
+		{
+			this.m_free.add(new Frame(this, this.m_capacity));
+		}
+	}
+
+	/* *********************************************************************************************
+	 * PUBLIC METHODS
+	 ******************************************************************************************** */
+
+	/*
+	 * Copy an image delivered by the SDK into the pool and return the frame with one reference held
+	 * by the caller, or null if the pool is exhausted or the image does not fit.  An image too large
+	 * for the buffers is stored reduced, top-down.
+	 */
+	public Frame store(final ImageData image)
+	{
+		final int stride = Math.max(Math.abs(image.pitch), image.width);
+		final int length = stride * image.height;
+		if (length > image.buffer.length)
+		{
+			return (null);
+		}
+		final boolean fits   = (length <= this.m_capacity) && (image.width <= this.m_maxWidth)
+				&& (image.height <= this.m_maxHeight);
+		final int     factor = fits ? 1 : Math.max(2, ImagePyramid.getReduction(image.width, image.height,
+				this.m_maxWidth, this.m_maxHeight));
+
+		final Frame frame;
+		synchronized (this)
+		{
+			frame = this.m_free.poll();
+			if (frame == null)
+			{
+				this.m_dropped++;
+				return (null);
+			}
+			frame.m_sequence = this.m_stored++;
+		}
+
+		frame.m_buffer.clear();
+		if (factor == 1)
+		{
+			frame.m_buffer.put(image.buffer, 0, length);
+			frame.m_width    = image.width;
+			frame.m_height   = image.height;
+			frame.m_stride   = stride;
+			frame.m_bottomUp = (image.pitch < 0);
+		}
+		else
+		{
+			final int width  = image.width / factor;
+			final int height = image.height / factor;
+			synchronized (this.m_row)
+			{
+				for (int y = 0; y < height; y++)
+				{
+					ImagePyramid.reduceRow(image.buffer, image.pitch, image.width, image.height, factor, y, this.m_row, 0);
+					frame.m_buffer.put(this.m_row, 0, width);
+				}
+			}
+			frame.m_width    = width;
+			frame.m_height   = height;
+			frame.m_stride   = width;
+			frame.m_bottomUp = false;
+		}
+		frame.m_resolution = image.resolutionX / factor;
+		frame.m_frameTime  = image.frameTime;
+		frame.m_references.set(1);
+		return (frame);
+	}
+
+	/*
+	 * Get the number of frames stored so far.
+	 */
+	public synchronized long getStoredCount()
+	{
+		return (this.m_stored);
+	}
+
+	/*
+	 * Get the number of frames dropped because every buffer was in use.
+	 */
+	public synchronized long getDroppedCount()
+	{
+		return (this.m_dropped);
+	}
+
+	/* *********************************************************************************************
+	 * PRIVATE METHODS
+	 ******************************************************************************************** */
+
+	/*
+	 * Return a frame's buffer to the pool.
+	 */
+	private synchronized void recycle(final Frame frame)
+	{
+		this.m_free.add(frame);
+	}
+}
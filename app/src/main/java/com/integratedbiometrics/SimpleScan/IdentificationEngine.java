@@ -0,0 +1,264 @@
+/* *************************************************************************************************
+ * IdentificationEngine.java
+ *
+ * DESCRIPTION:
+ *     Parallel 1:N identification against a template gallery for SimpleScan demo app for
+ *     IBScanUltimate
+ *     http://www.integratedbiometrics.com
+ *
+ * NOTES:
+ *     Copyright (c) Integrated Biometrics, 2012-2013
+ *
+ * HISTORY:
+ *     2026/10/19  First version.
+************************************************************************************************ */
+
+package com.integratedbiometrics.ibsimplescan;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Searches a template gallery for the best candidates for a probe template.  The gallery is split
+ * into one slice per worker of the shared processing pool; each worker keeps its own top-k list in
+ * primitive arrays, and the lists are merged at the end.  The search stops early when any worker
+ * finds a score at or above the hit threshold, or when the latency budget is spent.
+ */
+public class IdentificationEngine
+{
+	/* *********************************************************************************************
+	 * PUBLIC CLASSES
+	 ******************************************************************************************** */
+
+	/*
+	 * The outcome of one identification.
+	 */
+	public static class Result
+	{
+		/* The candidates' gallery indices, subject identifiers and scores, best first. */
+		public final int[]   indices;
+		public final int[]   ids;
+		public final int[]   scores;
+
+		/* The number of gallery templates compared. */
+		public final int     searched;
+
+		/* Whether the search ended early on a hit or on the latency budget. */
+		public final boolean stoppedOnHit;
+		public final boolean stoppedOnBudget;
+
+		/* The time spent, in milliseconds. */
+		public final long    elapsedMillis;
+
+		Result(final int[] indices, final int[] ids, final int[] scores, final int searched,
+				final boolean stoppedOnHit, final boolean stoppedOnBudget, final long elapsedMillis)
+		{
+			this.indices         = indices;
+			this.ids             = ids;
+			this.scores          = scores;
+			this.searched        = searched;
+			this.stoppedOnHit    = stoppedOnHit;
+			this.stoppedOnBudget = stoppedOnBudget;
+			this.elapsedMillis   = elapsedMillis;
+		}
+	}
+
+	/* *********************************************************************************************
+	 * PRIVATE CONSTANTS
+	 ******************************************************************************************** */
+
+	/* The number of comparisons between checks of the stop flag and the clock. */
+	private static final int CHECK_INTERVAL = 64;
+
+	/* *********************************************************************************************
+	 * PRIVATE FIELDS
+	 ******************************************************************************************** */
+
+	/* The gallery searched. */
+	private final TemplateGallery   m_gallery;
+
+	/* One matcher per worker, reused across searches. */
+	private final TemplateMatcher[] m_matchers;
+
+	/* *********************************************************************************************
+	 * CONSTRUCTOR
+	 ******************************************************************************************** */
+
+	public IdentificationEngine(final TemplateGallery gallery)
+	{
+		this.m_gallery  = gallery;
+		this.m_matchers = new TemplateMatcher[ProcessingPool.getParallelism()];
+		for (int i = 0; i < this.m_matchers.length; i++)
+		{
+			this.m_matchers[i] = new TemplateMatcher();
+		}
+	}
+
+	/* *********************************************************************************************
+	 * PUBLIC METHODS
+	 ******************************************************************************************** */
+
+	/*
+	 * Get the gallery searched.
+	 */
+	public TemplateGallery getGallery()
+	{
+		return (this.m_gallery);
+	}
+
+	/*
+	 * Search the whole gallery in storage order.
+	 */
+	public Result identify(final FingerTemplate probe, final int maxCandidates, final int hitThreshold,
+			final long budgetMillis) throws InterruptedException
+	{
+		return (identify(probe, null, this.m_gallery.getCount(), maxCandidates, hitThreshold, budgetMillis));
+	}
+
+	/*
+	 * Search the first searchCount gallery indices of searchOrder (or the gallery in storage order
+	 * if searchOrder is null) and return up to maxCandidates candidates with non-zero scores.  A
+	 * hitThreshold of zero disables stopping on a hit; a budgetMillis of zero disables the
+	 * latency budget.
+	 */
+	public synchronized Result identify(final FingerTemplate probe, final int[] searchOrder,
+			final int searchCount, final int maxCandidates, final int hitThreshold, final long budgetMillis)
+			throws InterruptedException
+	{
+		final long          startTime = System.currentTimeMillis();
+		final long          deadline  = (budgetMillis > 0) ? startTime + budgetMillis : Long.MAX_VALUE;
+		final AtomicBoolean hit       = new AtomicBoolean();
+		final AtomicBoolean overtime  = new AtomicBoolean();
+
+		/* Interleave the slices so that the front of searchOrder is covered first by all workers. */
+		final int workers = Math.max(1, Math.min(this.m_matchers.length, searchCount));
+		final List<Callable<int[][]>> tasks = new ArrayList<Callable<int[][]>>();
+		for (int w = 0; w < workers; w++)
+		{
+			final int             first   = w;
+			final TemplateMatcher matcher = this.m_matchers[w];
+			tasks.add(new Callable<int[][]>()
+			{
+				@Override
+				public int[][] call()
+				{
+					return (searchSlice(matcher, probe, searchOrder, searchCount, first, workers,
+							maxCandidates, hitThreshold, deadline, hit, overtime));
+				}
+			});
+		}
+
+		/* Merge the per-worker top-k lists. */
+		final int[] indices  = new int[maxCandidates];
+		final int[] scores   = new int[maxCandidates];
+		int         count    = 0;
+		int         searched = 0;
+		for (int[][] slice : ProcessingPool.invokeAll(tasks))
+		{
+			searched += slice[2][0];
+			for (int i = 0; i < slice[0].length; i++)
+			{
+				count = insertCandidate(indices, scores, count, slice[0][i], slice[1][i]);
+			}
+		}
+
+		final int[] resultIndices = new int[count];
+		final int[] resultIds     = new int[count];
+		final int[] resultScores  = new int[count];
+		for (int i = 0; i < count; i++)
+		{
+			resultIndices[i] = indices[i];
+			resultIds[i]     = this.m_gallery.getId(indices[i]);
+			resultScores[i]  = scores[i];
+		}
+		return (new Result(resultIndices, resultIds, resultScores, searched, hit.get(), overtime.get(),
+				System.currentTimeMillis() - startTime));
+	}
+
+	/* *********************************************************************************************
+	 * PRIVATE METHODS
+	 ******************************************************************************************** */
+
+	/*
+	 * Compare the probe with every step-th entry of the search order starting at first.  Returns
+	 * {candidate indices, candidate scores, {number searched}}.
+	 */
+	private int[][] searchSlice(final TemplateMatcher matcher, final FingerTemplate probe,
+			final int[] searchOrder, final int searchCount, final int first, final int step,
+			final int maxCandidates, final int hitThreshold, final long deadline,
+			final AtomicBoolean hit, final AtomicBoolean overtime)
+	{
+		final ByteBuffer view     = this.m_gallery.newView();
+		final int[]      indices  = new int[maxCandidates];
+		final int[]      scores   = new int[maxCandidates];
+		int              count    = 0;
+		int              searched = 0;
+
+		matcher.setProbe(probe);
+		for (int n = first; n < searchCount; n += step)
+		{
+			if ((searched % CHECK_INTERVAL) == 0)
+			{
+				if (hit.get() || overtime.get())
+				{
+					break;
+				}
+				if (System.currentTimeMillis() > deadline)
+				{
+					overtime.set(true);
+					break;
+				}
+			}
+
+			final int index   = (searchOrder != null) ? searchOrder[n] : n;
+			final int loaded  = this.m_gallery.copyMinutiae(view, index, matcher.galleryX, matcher.galleryY,
+					matcher.galleryAngle, matcher.galleryType);
+			final int score   = matcher.compare(loaded);
+			searched++;
+			if (score > 0)
+			{
+				count = insertCandidate(indices, scores, count, index, score);
+				if ((hitThreshold > 0) && (score >= hitThreshold))
+				{
+					hit.set(true);
+				}
+			}
+		}
+
+		final int[] outIndices = new int[count];
+		final int[] outScores  = new int[count];
+		System.arraycopy(indices, 0, outIndices, 0, count);
+		System.arraycopy(scores, 0, outScores, 0, count);
+		return (new int[][] {outIndices, outScores, {searched}});
+	}
+
+	/*
+	 * Insert a candidate into a list sorted by descending score, dropping the lowest if the list is
+	 * full, and return the new list length.
+	 */
+	private static int insertCandidate(final int[] indices, final int[] scores, int count,
+			final int index, final int score)
+	{
+		if ((count == scores.length) && ((count == 0) || (score <= scores[count - 1])))
+		{
+			return (count);
+		}
+		if (count < scores.length)
+		{
+			count++;
+		}
+		int position = count - 1;
+		while ((position > 0) && (scores[position - 1] < score))
+		{
+			indices[position] = indices[position - 1];
+			scores[position]  = scores[position - 1];
+			position--;
+		}
+		indices[position] = index;
+		scores[position]  = score;
+		return (count);
+	}
+}
@@ -0,0 +1,253 @@
+/* *************************************************************************************************
+ * ImagePyramid.java
+ *
+ * DESCRIPTION:
+ *     Multi-resolution tiled image for SimpleScan demo app for IBScanUltimate
+ *     http://www.integratedbiometrics.com
+ *
+ * NOTES:
+ *     Copyright (c) Integrated Biometrics, 2012-2013
+ *
+ * HISTORY:
+ *     2026/10/19  First version.
+************************************************************************************************ */
+
+package com.integratedbiometrics.ibsimplescan;
+
+import java.util.ArrayList;
+
+import com.integratedbiometrics.ibscanultimate.IBScanDevice.ImageData;
+
+/**
+ * Holds a grayscale image at successively halved resolutions, down to a level that fits in one tile,
+ * and supplies square tiles of any level as ARGB pixels for display.  The full-resolution level
+ * shares the SDK's buffer when its rows run top-down, so the whole pyramid costs about a third of
+ * the image in extra memory, against four times the image for an ARGB bitmap of it.
+ */
+public class ImagePyramid
+{
+	/* *********************************************************************************************
+	 * PUBLIC CONSTANTS
+	 ******************************************************************************************** */
+
+	/* The width and height of a tile. */
+	public static final int TILE_SIZE = 256;
+
+	/* *********************************************************************************************
+	 * PRIVATE FIELDS
+	 ******************************************************************************************** */
+
+	/* The pixels, distance between rows and size of each level, from full resolution down. */
+	private final byte[][] m_levels;
+	private final int[]    m_strides;
+	private final int[]    m_widths;
+	private final int[]    m_heights;
+
+	/* *********************************************************************************************
+	 * CONSTRUCTOR
+	 ******************************************************************************************** */
+
+	/*
+	 * Build the pyramid of an image delivered by the SDK.
+	 */
+	public ImagePyramid(final ImageData image)
+	{
+		this(image.buffer, image.pitch, image.width, image.height);
+	}
+
+	/*
+	 * Build the pyramid of a raw 8-bit image; a negative pitch means rows run bottom-up.
+	 */
+	public ImagePyramid(final byte[] buffer, final int pitch, final int width, final int height)
+	{
+		final ArrayList<byte[]> levels  = new ArrayList<byte[]>();
+		final ArrayList<int[]>  sizes   = new ArrayList<int[]>();
+
+		/* The full-resolution level, turned upright if necessary. */
+		int stride = Math.max(Math.abs(pitch), width);
+		if (pitch >= 0)
+		{
+			levels.add(buffer);
+		}
+		else
+		{
+			final byte[] upright = new byte[width * height];
+			for (int y = 0; y < height; y++)
+			{
+				System.arraycopy(buffer, (height - 1 - y) * stride, upright, y * width, width);
+			}
+			levels.add(upright);
+			stride = width;
+		}
+		sizes.add(new int[] {stride, width, height});
+
+		/* Average each 2x2 pixel group of a level into the next until one tile holds the level. */
+		int levelWidth  = width;
+		int levelHeight = height;
+		while ((levelWidth > TILE_SIZE) || (levelHeight > TILE_SIZE))
+		{
+			final byte[] source      = levels.get(levels.size() - 1);
+			final int    nextWidth   = Math.max(1, levelWidth / 2);
+			final int    nextHeight  = Math.max(1, levelHeight / 2);
+			final byte[] next        = new byte[nextWidth * nextHeight];
+			for (int y = 0; y < nextHeight; y++)
+			{
+				final int row0 = Math.min(2 * y, levelHeight - 1) * stride;
+				final int row1 = Math.min(2 * y + 1, levelHeight - 1) * stride;
+				for (int x = 0; x < nextWidth; x++)
+				{
+					final int x0  = Math.min(2 * x, levelWidth - 1);
+					final int x1  = Math.min(2 * x + 1, levelWidth - 1);
+					final int sum = (source[row0 + x0] & 0xFF) + (source[row0 + x1] & 0xFF)
+							+ (source[row1 + x0] & 0xFF) + (source[row1 + x1] & 0xFF);
+					next[y * nextWidth + x] = (byte)(sum >> 2);
+				}
+			}
+			levels.add(next);
+			sizes.add(new int[] {nextWidth, nextWidth, nextHeight});
+			stride      = nextWidth;
+			levelWidth  = nextWidth;
+			levelHeight = nextHeight;
+		}
+
+		final int count = levels.size();
+		this.m_levels  = levels.toArray(new byte[count][]);
+		this.m_strides = new int[count];
+		this.m_widths  = new int[count];
+		this.m_heights = new int[count];
+		for (int i = 0; i < count; i++)
+		{
+			this.m_strides[i] = sizes.get(i)[0];
+			this.m_widths[i]  = sizes.get(i)[1];
+			this.m_heights[i] = sizes.get(i)[2];
+		}
+	}
+
+	/* *********************************************************************************************
+	 * PUBLIC METHODS
+	 ******************************************************************************************** */
+
+	/*
+	 * Get the number of levels; level 0 is full resolution and each level halves the one before.
+	 */
+	public int getLevelCount()
+	{
+		return (this.m_levels.length);
+	}
+
+	public int getWidth(final int level)
+	{
+		return (this.m_widths[level]);
+	}
+
+	public int getHeight(final int level)
+	{
+		return (this.m_heights[level]);
+	}
+
+	/*
+	 * Get the number of tile columns and rows of a level.
+	 */
+	public int getTileColumns(final int level)
+	{
+		return ((this.m_widths[level] + TILE_SIZE - 1) / TILE_SIZE);
+	}
+
+	public int getTileRows(final int level)
+	{
+		return ((this.m_heights[level] + TILE_SIZE - 1) / TILE_SIZE);
+	}
+
+	/*
+	 * Get the width and height of a tile; tiles on the right and bottom edges may be smaller.
+	 */
+	public int getTileWidth(final int level, final int column)
+	{
+		return (Math.min(TILE_SIZE, this.m_widths[level] - column * TILE_SIZE));
+	}
+
+	public int getTileHeight(final int level, final int row)
+	{
+		return (Math.min(TILE_SIZE, this.m_heights[level] - row * TILE_SIZE));
+	}
+
+	/*
+	 * Get the smallest power-of-two factor that reduces an image to fit within a maximum size.
+	 */
+	public static int getReduction(final int width, final int height, final int maxWidth, final int maxHeight)
+	{
+		int factor = 1;
+		while ((width / factor > maxWidth) || (height / factor > maxHeight))
+		{
+			factor *= 2;
+		}
+		return (factor);
+	}
+
+	/*
+	 * Average each factor x factor pixel group of one row of a reduced image into an array, so that
+	 * an image can be reduced a band of rows at a time without a copy of it.  The factor must be a
+	 * power of two.  Rows of the reduced image run top-down; a negative pitch means rows of the
+	 * source run bottom-up.
+	 */
+	public static void reduceRow(final byte[] buffer, final int pitch, final int width, final int height,
+			final int factor, final int row, final byte[] out, final int offset)
+	{
+		final int stride       = Math.max(Math.abs(pitch), width);
+		final int reducedWidth = width / factor;
+		final int shift        = Integer.numberOfTrailingZeros(factor * factor);
+
+		/* Halving, the usual case of a 1000 ppi image, reads the two source rows directly. */
+		if (factor == 2)
+		{
+			final int row0 = ((pitch < 0) ? (height - 1 - 2 * row) : (2 * row)) * stride;
+			final int row1 = row0 + ((pitch < 0) ? -stride : stride);
+			for (int x = 0; x < reducedWidth; x++)
+			{
+				final int sum = (buffer[row0 + 2 * x] & 0xFF) + (buffer[row0 + 2 * x + 1] & 0xFF)
+						+ (buffer[row1 + 2 * x] & 0xFF) + (buffer[row1 + 2 * x + 1] & 0xFF);
+				out[offset + x] = (byte)(sum >> 2);
+			}
+			return;
+		}
+
+		for (int x = 0; x < reducedWidth; x++)
+		{
+			int sum = 0;
+			for (int dy = 0; dy < factor; dy++)
+			{
+				final int y  = row * factor + dy;
+				final int in = ((pitch < 0) ? (height - 1 - y) : y) * stride + x * factor;
+				for (int dx = 0; dx < factor; dx++)
+				{
+					sum += buffer[in + dx] & 0xFF;
+				}
+			}
+			out[offset + x] = (byte)(sum >> shift);
+		}
+	}
+
+	/*
+	 * Fill an array of at least TILE_SIZE * TILE_SIZE entries with the opaque gray ARGB pixels of a
+	 * tile, TILE_SIZE to a row.
+	 */
+	public void getTile(final int level, final int column, final int row, final int[] argb)
+	{
+		final byte[] pixels     = this.m_levels[level];
+		final int    stride     = this.m_strides[level];
+		final int    tileWidth  = getTileWidth(level, column);
+		final int    tileHeight = getTileHeight(level, row);
+		final int    left       = column * TILE_SIZE;
+		final int    top        = row * TILE_SIZE;
+		for (int y = 0; y < tileHeight; y++)
+		{
+			final int in  = (top + y) * stride + left;
+			final int out = y * TILE_SIZE;
+			for (int x = 0; x < tileWidth; x++)
+			{
+				final int gray = pixels[in + x] & 0xFF;
+				argb[out + x] = 0xFF000000 | (gray << 16) | (gray << 8) | gray;
+			}
+		}
+	}
+}
@@ -0,0 +1,737 @@
+/* *************************************************************************************************
+ * LosslessImageCodec.java
+ *
+ * DESCRIPTION:
+ *     Lossless codec for 8-bit grayscale images for SimpleScan demo app for IBScanUltimate
+ *     http://www.integratedbiometrics.com
+ *
+ * NOTES:
+ *     Copyright (c) Integrated Biometrics, 2012-2013
+ *
+ * HISTORY:
+ *     2026/10/19  First version.
+************************************************************************************************ */
+
+package com.integratedbiometrics.ibsimplescan;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import com.integratedbiometrics.ibscanultimate.IBScanDevice.ImageData;
+
+/**
+ * Compresses 8-bit grayscale images losslessly, reading the SDK's buffer directly.  The coder
+ * follows LOCO-I (JPEG-LS): each pixel is predicted from its left, upper and upper-left neighbours
+ * by the median edge detector, the prediction is corrected by a bias learned for the pixel's
+ * context of local gradients, and the residual is written with a Golomb-Rice code whose parameter
+ * adapts per context.  Where the neighbours are flat, as in the white background around fingers,
+ * whole runs of the background value are written as one run length.  The image is cut into strips
+ * of rows that are coded independently on the processing pool, so both coding and decoding scale
+ * with the number of cores.
+ *
+ * The stream is a header (magic "IBLS", version, width, height, rows per strip, number of strips,
+ * and the length of each strip, big-endian) followed by the strips.  The stream is not a standard
+ * format and only this class decodes it, so it suits archive masters kept with the app; images
+ * shared with others are written as PNG.
+ */
+public class LosslessImageCodec
+{
+	/* *********************************************************************************************
+	 * PUBLIC CONSTANTS
+	 ******************************************************************************************** */
+
+	/* The file extension of compressed images. */
+	public static final String FILE_EXTENSION = "ibls";
+
+	/* *********************************************************************************************
+	 * PRIVATE CONSTANTS
+	 ******************************************************************************************** */
+
+	/* The magic number and version of the stream. */
+	private static final byte[] MAGIC             = {'I', 'B', 'L', 'S'};
+	private static final int    VERSION           = 1;
+
+	/* The size of the header before the strip lengths. */
+	private static final int    HEADER_SIZE       = 21;
+
+	/* The fewest rows in a strip, and the number of strips per worker thread. */
+	private static final int    MIN_STRIP_ROWS    = 32;
+	private static final int    STRIPS_PER_THREAD = 2;
+
+	/* The gradient thresholds of context quantization, the JPEG-LS defaults for 8-bit samples. */
+	private static final int    T1                = 3;
+	private static final int    T2                = 7;
+	private static final int    T3                = 21;
+
+	/* The number of regular contexts. */
+	private static final int    CONTEXTS          = 365;
+
+	/* The count at which context statistics are halved. */
+	private static final int    RESET             = 64;
+
+	/* The longest unary prefix before a residual or run length is written raw. */
+	private static final int    LIMIT             = 23;
+
+	/* The bits of a raw residual and of a raw run length. */
+	private static final int    RAW_BITS          = 8;
+	private static final int    RUN_RAW_BITS      = 16;
+
+	/* *********************************************************************************************
+	 * PUBLIC METHODS
+	 ******************************************************************************************** */
+
+	/*
+	 * Compress an image delivered by the SDK.
+	 */
+	public static byte[] encode(final ImageData image) throws InterruptedException
+	{
+		return (encode(image.buffer, image.pitch, image.width, image.height));
+	}
+
+	/*
+	 * Compress a raw 8-bit image; a negative pitch means rows run bottom-up.  The compressed image is
+	 * always top-down.
+	 */
+	public static byte[] encode(final byte[] buffer, final int pitch, final int width, final int height)
+			throws InterruptedException
+	{
+		final int stride    = Math.max(Math.abs(pitch), width);
+		final int stripRows = getStripRows(height);
+		final int strips    = (height + stripRows - 1) / stripRows;
+
+		final List<Callable<byte[]>> tasks = new ArrayList<Callable<byte[]>>(strips);
+		for (int i = 0; i < strips; i++)
+		{
+			final int firstRow = i * stripRows;
+			final int rows     = Math.min(stripRows, height - firstRow);
+			tasks.add(new Callable<byte[]>()
+			{
+				@Override
+				public byte[] call()
+				{
+					return (encodeStrip(buffer, stride, pitch < 0, width, height, firstRow, rows));
+				}
+			});
+		}
+		final List<byte[]> coded = ProcessingPool.invokeAll(tasks);
+
+		int length = HEADER_SIZE + 4 * strips;
+		for (byte[] strip : coded)
+		{
+			length += strip.length;
+		}
+		final byte[] data = new byte[length];
+		System.arraycopy(MAGIC, 0, data, 0, MAGIC.length);
+		data[4] = (byte)VERSION;
+		putInt(data, 5, width);
+		putInt(data, 9, height);
+		putInt(data, 13, stripRows);
+		putInt(data, 17, strips);
+		int position = HEADER_SIZE + 4 * strips;
+		for (int i = 0; i < strips; i++)
+		{
+			final byte[] strip = coded.get(i);
+			putInt(data, HEADER_SIZE + 4 * i, strip.length);
+			System.arraycopy(strip, 0, data, position, strip.length);
+			position += strip.length;
+		}
+		return (data);
+	}
+
+	/*
+	 * Compress an image delivered by the SDK to a stream, which is left open.
+	 */
+	public static void write(final ImageData image, final OutputStream out) throws IOException, InterruptedException
+	{
+		out.write(encode(image));
+		out.flush();
+	}
+
+	/*
+	 * Get the width and height of a compressed image.
+	 */
+	public static int getWidth(final byte[] data) throws IOException
+	{
+		checkHeader(data);
+		return (getInt(data, 5));
+	}
+
+	public static int getHeight(final byte[] data) throws IOException
+	{
+		checkHeader(data);
+		return (getInt(data, 9));
+	}
+
+	/*
+	 * Decompress an image into a new top-down array of width * height pixels.
+	 */
+	public static byte[] decode(final byte[] data) throws IOException, InterruptedException
+	{
+		checkHeader(data);
+		final int width     = getInt(data, 5);
+		final int height    = getInt(data, 9);
+		final int stripRows = getInt(data, 13);
+		final int strips    = getInt(data, 17);
+		if ((width <= 0) || (height <= 0) || (stripRows <= 0) || (strips != (height + stripRows - 1) / stripRows)
+				|| (data.length < HEADER_SIZE + 4 * strips))
+		{
+			throw new IOException("corrupt image header");
+		}
+
+		final byte[] pixels = new byte[width * height];
+		final List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(strips);
+		int position = HEADER_SIZE + 4 * strips;
+		for (int i = 0; i < strips; i++)
+		{
+			final int start    = position;
+			final int length   = getInt(data, HEADER_SIZE + 4 * i);
+			final int firstRow = i * stripRows;
+			final int rows     = Math.min(stripRows, height - firstRow);
+			if ((length < 0) || (start + length > data.length))
+			{
+				throw new IOException("corrupt image strip");
+			}
+			position += length;
+			tasks.add(new Callable<Void>()
+			{
+				@Override
+				public Void call() throws IOException
+				{
+					decodeStrip(data, start, start + length, pixels, width, firstRow, rows);
+					return (null);
+				}
+			});
+		}
+		try
+		{
+			ProcessingPool.invokeAll(tasks);
+		}
+		catch (RuntimeException re)
+		{
+			if (re.getCause() instanceof IOException)
+			{
+				throw (IOException)re.getCause();
+			}
+			throw re;
+		}
+		return (pixels);
+	}
+
+	/* *********************************************************************************************
+	 * PRIVATE CLASSES
+	 ******************************************************************************************** */
+
+	/*
+	 * The adaptive statistics of one strip: per context, the sum of absolute residuals, the sum of
+	 * residuals, the bias correction and the count; and the same sums for run lengths.
+	 */
+	private static class Contexts
+	{
+		final int[] a = new int[CONTEXTS];
+		final int[] b = new int[CONTEXTS];
+		final int[] c = new int[CONTEXTS];
+		final int[] n = new int[CONTEXTS];
+		int         runA = 4;
+		int         runN = 1;
+
+		Contexts()
+		{
+			for (int i = 0; i < CONTEXTS; i++)
+			{
+				this.a[i] = 4;
+				this.n[i] = 1;
+			}
+		}
+
+		/*
+		 * Get the Golomb-Rice parameter of a context.
+		 */
+		int getK(final int q)
+		{
+			int k = 0;
+			while ((this.n[q] << k) < this.a[q])
+			{
+				k++;
+			}
+			return (k);
+		}
+
+		int getRunK()
+		{
+			int k = 0;
+			while ((this.runN << k) < this.runA)
+			{
+				k++;
+			}
+			return (k);
+		}
+
+		/*
+		 * Update a context with a coded residual and adjust its bias correction.
+		 */
+		void update(final int q, final int error)
+		{
+			this.b[q] += error;
+			this.a[q] += Math.abs(error);
+			if (this.n[q] == RESET)
+			{
+				this.a[q] >>= 1;
+				this.b[q] >>= 1;
+				this.n[q] >>= 1;
+			}
+			this.n[q]++;
+
+			if (this.b[q] <= -this.n[q])
+			{
+				this.b[q] += this.n[q];
+				if (this.c[q] > -128)
+				{
+					this.c[q]--;
+				}
+				if (this.b[q] <= -this.n[q])
+				{
+					this.b[q] = -this.n[q] + 1;
+				}
+			}
+			else if (this.b[q] > 0)
+			{
+				this.b[q] -= this.n[q];
+				if (this.c[q] < 127)
+				{
+					this.c[q]++;
+				}
+				if (this.b[q] > 0)
+				{
+					this.b[q] = 0;
+				}
+			}
+		}
+
+		void updateRun(final int length)
+		{
+			this.runA += length;
+			if (this.runN == RESET)
+			{
+				this.runA >>= 1;
+				this.runN >>= 1;
+			}
+			this.runN++;
+		}
+	}
+
+	/*
+	 * Writes bits most significant first into a growing array.
+	 */
+	private static class BitWriter
+	{
+		private byte[] m_data;
+		private int    m_length;
+		private long   m_bits;
+		private int    m_count;
+
+		BitWriter(final int capacity)
+		{
+			this.m_data = new byte[Math.max(16, capacity)];
+		}
+
+		/*
+		 * Write the low bits of a value, at most 32.
+		 */
+		void write(final int value, final int bits)
+		{
+			this.m_bits   = (this.m_bits << bits) | (value & ((1L << bits) - 1));
+			this.m_count += bits;
+			while (this.m_count >= 8)
+			{
+				this.m_count -= 8;
+				put((int)(this.m_bits >>> this.m_count));
+			}
+		}
+
+		/*
+		 * Write a count of zeros followed by a one.
+		 */
+		void writeUnary(int zeros)
+		{
+			while (zeros > 24)
+			{
+				write(0, 24);
+				zeros -= 24;
+			}
+			write(1, zeros + 1);
+		}
+
+		/*
+		 * Pad the last byte with zeros and get the bytes written.
+		 */
+		byte[] finish()
+		{
+			if (this.m_count > 0)
+			{
+				put((int)(this.m_bits << (8 - this.m_count)));
+				this.m_count = 0;
+			}
+			final byte[] data = new byte[this.m_length];
+			System.arraycopy(this.m_data, 0, data, 0, this.m_length);
+			return (data);
+		}
+
+		private void put(final int value)
+		{
+			if (this.m_length == this.m_data.length)
+			{
+				final byte[] data = new byte[this.m_data.length * 2];
+				System.arraycopy(this.m_data, 0, data, 0, this.m_length);
+				this.m_data = data;
+			}
+			this.m_data[this.m_length++] = (byte)value;
+		}
+	}
+
+	/*
+	 * Reads bits most significant first from part of an array; past its end the bits are zero.
+	 */
+	private static class BitReader
+	{
+		private final byte[] m_data;
+		private final int    m_end;
+		private int          m_position;
+		private long         m_bits;
+		private int          m_count;
+
+		BitReader(final byte[] data, final int start, final int end)
+		{
+			this.m_data     = data;
+			this.m_position = start;
+			this.m_end      = end;
+		}
+
+		/*
+		 * Read a value of at most 32 bits.
+		 */
+		int read(final int bits)
+		{
+			while (this.m_count < bits)
+			{
+				final int value = (this.m_position < this.m_end) ? (this.m_data[this.m_position] & 0xFF) : 0;
+				this.m_position++;
+				this.m_bits   = (this.m_bits << 8) | value;
+				this.m_count += 8;
+			}
+			this.m_count -= bits;
+			return ((int)((this.m_bits >>> this.m_count) & ((1L << bits) - 1)));
+		}
+
+		/*
+		 * Read zeros up to a one, returning their count, or fail if there are more than the limit.
+		 */
+		int readUnary(final int limit) throws IOException
+		{
+			int zeros = 0;
+			while (read(1) == 0)
+			{
+				if (++zeros > limit)
+				{
+					throw new IOException("corrupt image data");
+				}
+			}
+			return (zeros);
+		}
+	}
+
+	/* *********************************************************************************************
+	 * PRIVATE METHODS
+	 ******************************************************************************************** */
+
+	/*
+	 * Choose the rows per strip so that there are a few strips per worker thread.
+	 */
+	private static int getStripRows(final int height)
+	{
+		final int strips = ProcessingPool.getParallelism() * STRIPS_PER_THREAD;
+		return (Math.max(MIN_STRIP_ROWS, (height + strips - 1) / strips));
+	}
+
+	/*
+	 * Code rows of an image, predicting the first row from the left only.
+	 */
+	private static byte[] encodeStrip(final byte[] buffer, final int stride, final boolean bottomUp, final int width,
+			final int height, final int firstRow, final int rows)
+	{
+		final Contexts  contexts = new Contexts();
+		final BitWriter writer   = new BitWriter(width * rows / 2);
+		int previous = -1;
+		for (int y = 0; y < rows; y++)
+		{
+			final int row = (bottomUp ? (height - 1 - firstRow - y) : (firstRow + y)) * stride;
+			int     x           = 0;
+			boolean interrupted = false;
+			while (x < width)
+			{
+				final int a = (x > 0) ? (buffer[row + x - 1] & 0xFF) : ((previous >= 0) ? (buffer[previous] & 0xFF) : 0);
+				final int b = (previous >= 0) ? (buffer[previous + x] & 0xFF) : a;
+				final int c = (previous >= 0) ? ((x > 0) ? (buffer[previous + x - 1] & 0xFF) : b) : a;
+				final int d = (previous >= 0) ? ((x < width - 1) ? (buffer[previous + x + 1] & 0xFF) : b) : a;
+
+				/* Code the run of pixels equal to a flat neighbourhood; the pixel that ends it is coded regularly. */
+				if (!interrupted && (a == b) && (b == c) && (c == d))
+				{
+					int run = 0;
+					while ((x + run < width) && ((buffer[row + x + run] & 0xFF) == a))
+					{
+						run++;
+					}
+					writeRun(writer, contexts, run);
+					x          += run;
+					interrupted = true;
+				}
+				else
+				{
+					encodePixel(writer, contexts, buffer[row + x] & 0xFF, a, b, c, d);
+					x++;
+					interrupted = false;
+				}
+			}
+			previous = row;
+		}
+		return (writer.finish());
+	}
+
+	/*
+	 * Decode rows of an image, mirroring encodeStrip().
+	 */
+	private static void decodeStrip(final byte[] data, final int start, final int end, final byte[] pixels,
+			final int width, final int firstRow, final int rows) throws IOException
+	{
+		final Contexts  contexts = new Contexts();
+		final BitReader reader   = new BitReader(data, start, end);
+		int previous = -1;
+		for (int y = 0; y < rows; y++)
+		{
+			final int row = (firstRow + y) * width;
+			int     x           = 0;
+			boolean interrupted = false;
+			while (x < width)
+			{
+				final int a = (x > 0) ? (pixels[row + x - 1] & 0xFF) : ((previous >= 0) ? (pixels[previous] & 0xFF) : 0);
+				final int b = (previous >= 0) ? (pixels[previous + x] & 0xFF) : a;
+				final int c = (previous >= 0) ? ((x > 0) ? (pixels[previous + x - 1] & 0xFF) : b) : a;
+				final int d = (previous >= 0) ? ((x < width - 1) ? (pixels[previous + x + 1] & 0xFF) : b) : a;
+
+				if (!interrupted && (a == b) && (b == c) && (c == d))
+				{
+					final int run = readRun(reader, contexts);
+					if (x + run > width)
+					{
+						throw new IOException("corrupt image data");
+					}
+					for (int i = 0; i < run; i++)
+					{
+						pixels[row + x + i] = (byte)a;
+					}
+					x          += run;
+					interrupted = true;
+				}
+				else
+				{
+					pixels[row + x] = (byte)decodePixel(reader, contexts, a, b, c, d);
+					x++;
+					interrupted = false;
+				}
+			}
+			previous = row;
+		}
+	}
+
+	/*
+	 * Code one pixel in regular mode.
+	 */
+	private static void encodePixel(final BitWriter writer, final Contexts contexts, final int value,
+			final int a, final int b, final int c, final int d)
+	{
+		int q = context(d - b, b - c, c - a);
+		final int sign = (q < 0) ? -1 : 1;
+		q *= sign;
+
+		final int prediction = predict(a, b, c, sign * contexts.c[q]);
+		int error = sign * (value - prediction);
+		if (error < -128)
+		{
+			error += 256;
+		}
+		else if (error >= 128)
+		{
+			error -= 256;
+		}
+
+		final int k = contexts.getK(q);
+		final int mapped;
+		if ((k == 0) && (2 * contexts.b[q] <= -contexts.n[q]))
+		{
+			mapped = (error >= 0) ? (2 * error + 1) : (-2 * (error + 1));
+		}
+		else
+		{
+			mapped = (error >= 0) ? (2 * error) : (-2 * error - 1);
+		}
+		if ((mapped >> k) < LIMIT)
+		{
+			writer.writeUnary(mapped >> k);
+			writer.write(mapped, k);
+		}
+		else
+		{
+			writer.writeUnary(LIMIT);
+			writer.write(mapped, RAW_BITS);
+		}
+		contexts.update(q, error);
+	}
+
+	/*
+	 * Decode one pixel in regular mode.
+	 */
+	private static int decodePixel(final BitReader reader, final Contexts contexts, final int a, final int b,
+			final int c, final int d) throws IOException
+	{
+		int q = context(d - b, b - c, c - a);
+		final int sign = (q < 0) ? -1 : 1;
+		q *= sign;
+
+		final int prediction = predict(a, b, c, sign * contexts.c[q]);
+		final int k          = contexts.getK(q);
+		final int prefix     = reader.readUnary(LIMIT);
+		final int mapped     = (prefix < LIMIT) ? ((prefix << k) | reader.read(k)) : reader.read(RAW_BITS);
+		final int error;
+		if ((k == 0) && (2 * contexts.b[q] <= -contexts.n[q]))
+		{
+			error = ((mapped & 1) != 0) ? ((mapped - 1) / 2) : (-(mapped / 2) - 1);
+		}
+		else
+		{
+			error = ((mapped & 1) == 0) ? (mapped / 2) : (-(mapped + 1) / 2);
+		}
+		contexts.update(q, error);
+		return ((prediction + sign * error) & 0xFF);
+	}
+
+	/*
+	 * Code and decode the length of a run.
+	 */
+	private static void writeRun(final BitWriter writer, final Contexts contexts, final int run)
+	{
+		final int k = contexts.getRunK();
+		if ((run >> k) < LIMIT)
+		{
+			writer.writeUnary(run >> k);
+			writer.write(run, k);
+		}
+		else
+		{
+			writer.writeUnary(LIMIT);
+			writer.write(run, RUN_RAW_BITS);
+		}
+		contexts.updateRun(run);
+	}
+
+	private static int readRun(final BitReader reader, final Contexts contexts) throws IOException
+	{
+		final int k      = contexts.getRunK();
+		final int prefix = reader.readUnary(LIMIT);
+		final int run    = (prefix < LIMIT) ? ((prefix << k) | reader.read(k)) : reader.read(RUN_RAW_BITS);
+		contexts.updateRun(run);
+		return (run);
+	}
+
+	/*
+	 * Predict a pixel with the median edge detector, corrected for the context's bias.
+	 */
+	private static int predict(final int a, final int b, final int c, final int correction)
+	{
+		int prediction;
+		if (c >= Math.max(a, b))
+		{
+			prediction = Math.min(a, b);
+		}
+		else if (c <= Math.min(a, b))
+		{
+			prediction = Math.max(a, b);
+		}
+		else
+		{
+			prediction = a + b - c;
+		}
+		prediction += correction;
+		return (Math.max(0, Math.min(255, prediction)));
+	}
+
+	/*
+	 * Get the signed context of three local gradients, between -364 and 364.
+	 */
+	private static int context(final int d1, final int d2, final int d3)
+	{
+		return ((quantize(d1) * 9 + quantize(d2)) * 9 + quantize(d3));
+	}
+
+	private static int quantize(final int gradient)
+	{
+		if (gradient <= -T3)
+		{
+			return (-4);
+		}
+		if (gradient <= -T2)
+		{
+			return (-3);
+		}
+		if (gradient <= -T1)
+		{
+			return (-2);
+		}
+		if (gradient < 0)
+		{
+			return (-1);
+		}
+		if (gradient == 0)
+		{
+			return (0);
+		}
+		if (gradient < T1)
+		{
+			return (1);
+		}
+		if (gradient < T2)
+		{
+			return (2);
+		}
+		if (gradient < T3)
+		{
+			return (3);
+		}
+		return (4);
+	}
+
+	private static void checkHeader(final byte[] data) throws IOException
+	{
+		if ((data.length < HEADER_SIZE) || (data[0] != MAGIC[0]) || (data[1] != MAGIC[1]) || (data[2] != MAGIC[2])
+				|| (data[3] != MAGIC[3]) || (data[4] != VERSION))
+		{
+			throw new IOException("not a compressed image");
+		}
+	}
+
+	private static void putInt(final byte[] data, final int offset, final int value)
+	{
+		data[offset]     = (byte)(value >>> 24);
+		data[offset + 1] = (byte)(value >>> 16);
+		data[offset + 2] = (byte)(value >>> 8);
+		data[offset + 3] = (byte)value;
+	}
+
+	private static int getInt(final byte[] data, final int offset)
+	{
+		return (((data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16)
+				| ((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF));
+	}
+}
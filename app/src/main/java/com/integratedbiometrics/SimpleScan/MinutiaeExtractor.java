@@ -0,0 +1,630 @@
+/* *************************************************************************************************
+ * MinutiaeExtractor.java
+ *
+ * DESCRIPTION:
+ *     Pure-Java minutiae extraction for SimpleScan demo app for IBScanUltimate
+ *     http://www.integratedbiometrics.com
+ *
+ * NOTES:
+ *     Copyright (c) Integrated Biometrics, 2012-2013
+ *
+ * HISTORY:
+ *     2026/10/19  First version.
+************************************************************************************************ */
+
+package com.integratedbiometrics.ibsimplescan;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import com.integratedbiometrics.ibscanultimate.IBScanDevice.ImageData;
+
+/**
+ * Extracts ridge endings and bifurcations from an 8-bit grayscale fingerprint image.  The image is
+ * segmented and binarized block by block, thinned to a one-pixel skeleton, and scanned for
+ * crossing-number minutiae; minutiae near the edge of the print or too close to each other are
+ * discarded.  Every stage is split into horizontal strips that run on the shared processing pool.
+ * All work arrays are allocated once for the largest image, so an extractor should be kept and
+ * reused; an extractor processes one image at a time.
+ */
+public class MinutiaeExtractor
+{
+	/* *********************************************************************************************
+	 * PRIVATE CONSTANTS
+	 ******************************************************************************************** */
+
+	/* The size of an orientation and segmentation block, in pixels. */
+	private static final int   BLOCK_SIZE         = 16;
+
+	/* The thresholds for a block to count as finger rather than background. */
+	private static final float MIN_VARIANCE       = 150.0f;
+	private static final float MIN_COHERENCE      = 0.2f;
+
+	/* The number of skeleton pixels followed to determine a minutia's direction. */
+	private static final int   TRACE_LENGTH       = 10;
+
+	/* Minutiae closer than this, in pixels, are treated as noise (broken or bridged ridges). */
+	private static final int   MIN_DISTANCE       = 8;
+
+	/* The number of strips per worker; more strips than workers balances uneven work. */
+	private static final int   STRIPS_PER_WORKER  = 2;
+
+	/* The offsets of the eight neighbours P2..P9, clockwise from the top. */
+	private static final int[] NEIGHBOR_DX        = { 0,  1, 1, 1, 0, -1, -1, -1};
+	private static final int[] NEIGHBOR_DY        = {-1, -1, 0, 1, 1,  1,  0, -1};
+
+	/* *********************************************************************************************
+	 * PRIVATE FIELDS
+	 ******************************************************************************************** */
+
+	/* The largest image this extractor can process. */
+	private final int              m_maxWidth;
+	private final int              m_maxHeight;
+
+	/* The block orientation field. */
+	private final OrientationField m_field;
+
+	/* Per-block foreground flags, eroded so that the print edge is excluded. */
+	private final boolean[]        m_foreground;
+	private final boolean[]        m_interior;
+
+	/* The binarized image (1 = ridge), thinned in place, and the thinning deletion flags. */
+	private final byte[]           m_skeleton;
+	private final byte[]           m_delete;
+
+	/* The size, row layout and orientation of the image being processed. */
+	private byte[]                 m_buffer;
+	private int                    m_stride;
+	private int                    m_width;
+	private int                    m_height;
+
+	/* The time spent on the last extraction, in milliseconds. */
+	private long                   m_lastElapsedMillis;
+
+	/* *********************************************************************************************
+	 * CONSTRUCTOR
+	 ******************************************************************************************** */
+
+	public MinutiaeExtractor(final int maxWidth, final int maxHeight)
+	{
+		this.m_maxWidth   = maxWidth;
+		this.m_maxHeight  = maxHeight;
+		this.m_field      = new OrientationField(maxWidth, maxHeight, BLOCK_SIZE);
+		this.m_foreground = new boolean[this.m_field.maxCols * this.m_field.maxRows];
+		this.m_interior   = new boolean[this.m_field.maxCols * this.m_field.maxRows];
+		this.m_skeleton   = new byte[maxWidth * maxHeight];
+		this.m_delete     = new byte[maxWidth * maxHeight];
+	}
+
+	/* *********************************************************************************************
+	 * PUBLIC METHODS
+	 ******************************************************************************************** */
+
+	/*
+	 * Extract a template from an image delivered by the SDK.  A negative pitch indicates that rows
+	 * are stored bottom-up.
+	 */
+	public FingerTemplate extract(final ImageData image, final int resolution) throws InterruptedException
+	{
+		final int stride = Math.max(Math.abs(image.pitch), image.width);
+		return (extract(image.buffer, stride, image.width, image.height, image.pitch < 0, resolution));
+	}
+
+	/*
+	 * Extract a template from a raw 8-bit image.  Blocks until done.
+	 */
+	public synchronized FingerTemplate extract(final byte[] buffer, final int stride, final int width,
+			final int height, final boolean bottomUp, final int resolution) throws InterruptedException
+	{
+		if ((width > this.m_maxWidth) || (height > this.m_maxHeight))
+		{
+			throw new IllegalArgumentException("image " + width + "x" + height + " exceeds extractor capacity");
+		}
+
+		final long startTime = System.currentTimeMillis();
+		this.m_buffer = buffer;
+		this.m_stride = stride;
+		this.m_width  = width;
+		this.m_height = height;
+
+		computeField();
+		binarize();
+		thin();
+		final FingerTemplate template = detect(bottomUp, resolution);
+
+		this.m_buffer = null;
+		this.m_lastElapsedMillis = System.currentTimeMillis() - startTime;
+		return (template);
+	}
+
+	/*
+	 * Get the time spent on the last extraction, in milliseconds.
+	 */
+	public long getLastElapsedMillis()
+	{
+		return (this.m_lastElapsedMillis);
+	}
+
+	/* *********************************************************************************************
+	 * PRIVATE METHODS (STAGES)
+	 ******************************************************************************************** */
+
+	/*
+	 * Compute the orientation field and the foreground and interior block masks.
+	 */
+	private void computeField() throws InterruptedException
+	{
+		final OrientationField field = this.m_field;
+		final int              rows  = field.setSize(this.m_width, this.m_height);
+
+		runStrips(rows, new StripTask()
+		{
+			@Override
+			public int run(final int first, final int last)
+			{
+				field.computeRows(MinutiaeExtractor.this.m_buffer, 0, MinutiaeExtractor.this.m_stride,
+						MinutiaeExtractor.this.m_width, MinutiaeExtractor.this.m_height, first, last);
+				return (0);
+			}
+		});
+
+		final int cols = field.cols;
+		for (int i = 0; i < rows * cols; i++)
+		{
+			this.m_foreground[i] = field.isForeground(i, MIN_VARIANCE, MIN_COHERENCE);
+		}
+
+		/* A block is interior if it and its eight neighbours are all foreground. */
+		for (int by = 0; by < rows; by++)
+		{
+			for (int bx = 0; bx < cols; bx++)
+			{
+				boolean interior = (by > 0) && (by < rows - 1) && (bx > 0) && (bx < cols - 1);
+				for (int dy = -1; interior && (dy <= 1); dy++)
+				{
+					for (int dx = -1; interior && (dx <= 1); dx++)
+					{
+						interior = this.m_foreground[(by + dy) * cols + bx + dx];
+					}
+				}
+				this.m_interior[by * cols + bx] = interior;
+			}
+		}
+	}
+
+	/*
+	 * Binarize the image: a pixel is ridge if its 3x3 average is darker than its block mean.
+	 */
+	private void binarize() throws InterruptedException
+	{
+		runStrips(this.m_height, new StripTask()
+		{
+			@Override
+			public int run(final int first, final int last)
+			{
+				final byte[]           buffer   = MinutiaeExtractor.this.m_buffer;
+				final byte[]           skeleton = MinutiaeExtractor.this.m_skeleton;
+				final OrientationField field    = MinutiaeExtractor.this.m_field;
+				final int              stride   = MinutiaeExtractor.this.m_stride;
+				final int              width    = MinutiaeExtractor.this.m_width;
+				final int              height   = MinutiaeExtractor.this.m_height;
+
+				for (int y = first; y < last; y++)
+				{
+					final int by = Math.min(y / BLOCK_SIZE, field.rows - 1);
+					for (int x = 0; x < width; x++)
+					{
+						final int bx    = Math.min(x / BLOCK_SIZE, field.cols - 1);
+						final int block = by * field.cols + bx;
+						if ((x == 0) || (y == 0) || (x == width - 1) || (y == height - 1) || !MinutiaeExtractor.this.m_foreground[block])
+						{
+							skeleton[y * width + x] = 0;
+							continue;
+						}
+						int sum = 0;
+						for (int dy = -1; dy <= 1; dy++)
+						{
+							final int row = (y + dy) * stride + x;
+							sum += (buffer[row - 1] & 0xFF) + (buffer[row] & 0xFF) + (buffer[row + 1] & 0xFF);
+						}
+						skeleton[y * width + x] = (byte)((sum < field.mean[block] * 9) ? 1 : 0);
+					}
+				}
+				return (0);
+			}
+		});
+	}
+
+	/*
+	 * Thin the binary image to a one-pixel skeleton (Zhang-Suen).  Each sub-iteration marks pixels
+	 * in parallel strips, then deletes them, so strips never see each other's partial updates.
+	 */
+	private void thin() throws InterruptedException
+	{
+		boolean changed = true;
+		while (changed)
+		{
+			changed = false;
+			for (int pass = 0; pass < 2; pass++)
+			{
+				final int subIteration = pass;
+				final int marked = runStrips(this.m_height, new StripTask()
+				{
+					@Override
+					public int run(final int first, final int last)
+					{
+						return (markForDeletion(subIteration, first, last));
+					}
+				});
+				if (marked > 0)
+				{
+					changed = true;
+					runStrips(this.m_height, new StripTask()
+					{
+						@Override
+						public int run(final int first, final int last)
+						{
+							final byte[] skeleton = MinutiaeExtractor.this.m_skeleton;
+							final byte[] delete   = MinutiaeExtractor.this.m_delete;
+							for (int i = first * MinutiaeExtractor.this.m_width; i < last * MinutiaeExtractor.this.m_width; i++)
+							{
+								if (delete[i] != 0)
+								{
+									skeleton[i] = 0;
+									delete[i]   = 0;
+								}
+							}
+							return (0);
+						}
+					});
+				}
+			}
+		}
+	}
+
+	/*
+	 * Mark removable ridge pixels in rows [first, last) for one Zhang-Suen sub-iteration and return
+	 * the number marked.
+	 */
+	private int markForDeletion(final int subIteration, final int first, final int last)
+	{
+		final byte[] s     = this.m_skeleton;
+		final int    w     = this.m_width;
+		int          count = 0;
+
+		for (int y = Math.max(1, first); y < Math.min(this.m_height - 1, last); y++)
+		{
+			for (int x = 1; x < w - 1; x++)
+			{
+				final int i = y * w + x;
+				if (s[i] == 0)
+				{
+					continue;
+				}
+				final int p2 = s[i - w];
+				final int p3 = s[i - w + 1];
+				final int p4 = s[i + 1];
+				final int p5 = s[i + w + 1];
+				final int p6 = s[i + w];
+				final int p7 = s[i + w - 1];
+				final int p8 = s[i - 1];
+				final int p9 = s[i - w - 1];
+
+				final int b = p2 + p3 + p4 + p5 + p6 + p7 + p8 + p9;
+				if ((b < 2) || (b > 6))
+				{
+					continue;
+				}
+				final int a = ((p2 == 0 && p3 == 1) ? 1 : 0) + ((p3 == 0 && p4 == 1) ? 1 : 0)
+						+ ((p4 == 0 && p5 == 1) ? 1 : 0) + ((p5 == 0 && p6 == 1) ? 1 : 0)
+						+ ((p6 == 0 && p7 == 1) ? 1 : 0) + ((p7 == 0 && p8 == 1) ? 1 : 0)
+						+ ((p8 == 0 && p9 == 1) ? 1 : 0) + ((p9 == 0 && p2 == 1) ? 1 : 0);
+				if (a != 1)
+				{
+					continue;
+				}
+				final boolean remove = (subIteration == 0)
+						? ((p2 * p4 * p6 == 0) && (p4 * p6 * p8 == 0))
+						: ((p2 * p4 * p8 == 0) && (p2 * p6 * p8 == 0));
+				if (remove)
+				{
+					this.m_delete[i] = 1;
+					count++;
+				}
+			}
+		}
+		return (count);
+	}
+
+	/*
+	 * Find crossing-number minutiae in interior blocks, remove clustered minutiae, and build the
+	 * template.
+	 */
+	private FingerTemplate detect(final boolean bottomUp, final int resolution) throws InterruptedException
+	{
+		final List<int[]> candidates = new ArrayList<int[]>();
+		final List<Callable<List<int[]>>> tasks = new ArrayList<Callable<List<int[]>>>();
+		final int stripRows = stripRows(this.m_height);
+		for (int first = 0; first < this.m_height; first += stripRows)
+		{
+			final int stripFirst = first;
+			final int stripLast  = Math.min(this.m_height, first + stripRows);
+			tasks.add(new Callable<List<int[]>>()
+			{
+				@Override
+				public List<int[]> call()
+				{
+					return (detectRows(stripFirst, stripLast));
+				}
+			});
+		}
+		for (List<int[]> strip : ProcessingPool.invokeAll(tasks))
+		{
+			candidates.addAll(strip);
+		}
+
+		/* Drop both minutiae of any pair that is too close together. */
+		final boolean[] dropped = new boolean[candidates.size()];
+		for (int i = 0; i < candidates.size(); i++)
+		{
+			for (int j = i + 1; j < candidates.size(); j++)
+			{
+				final int dx = candidates.get(i)[0] - candidates.get(j)[0];
+				final int dy = candidates.get(i)[1] - candidates.get(j)[1];
+				if (dx * dx + dy * dy < MIN_DISTANCE * MIN_DISTANCE)
+				{
+					dropped[i] = true;
+					dropped[j] = true;
+				}
+			}
+		}
+
+		final FingerTemplate template = new FingerTemplate(this.m_width, this.m_height, resolution);
+		final OrientationField field  = this.m_field;
+		float qualitySum   = 0.0f;
+		int   qualityCount = 0;
+		for (int i = 0; i < field.rows * field.cols; i++)
+		{
+			if (this.m_foreground[i])
+			{
+				qualitySum += field.coherence[i];
+				qualityCount++;
+			}
+		}
+		template.fingerQuality = (qualityCount > 0) ? Math.round(100 * qualitySum / qualityCount) : 0;
+
+		/* Keep the best-quality minutiae if there are more than a record can hold. */
+		for (int minQuality = 0; minQuality <= 100; minQuality += 5)
+		{
+			int kept = 0;
+			for (int i = 0; i < candidates.size(); i++)
+			{
+				if (!dropped[i] && (candidates.get(i)[4] >= minQuality))
+				{
+					kept++;
+				}
+			}
+			if (kept <= FingerTemplate.MAX_MINUTIAE)
+			{
+				for (int i = 0; i < candidates.size(); i++)
+				{
+					final int[] c = candidates.get(i);
+					if (!dropped[i] && (c[4] >= minQuality))
+					{
+						/* Template coordinates have y growing downward and angles counter-clockwise. */
+						final int y     = bottomUp ? (this.m_height - 1 - c[1]) : c[1];
+						final int angle = bottomUp ? (256 - c[2]) & 0xFF : c[2];
+						template.add(c[0], y, angle, c[3], c[4]);
+					}
+				}
+				break;
+			}
+		}
+		return (template);
+	}
+
+	/*
+	 * Find minutia candidates in rows [first, last).  Each candidate is {x, y, angle, type, quality}
+	 * in buffer coordinates, with the angle counter-clockwise in the buffer's row order.
+	 */
+	private List<int[]> detectRows(final int first, final int last)
+	{
+		final List<int[]>      found = new ArrayList<int[]>();
+		final byte[]           s     = this.m_skeleton;
+		final int              w     = this.m_width;
+		final OrientationField field = this.m_field;
+		final int[]            trace = new int[TRACE_LENGTH + 1];
+
+		for (int y = Math.max(1, first); y < Math.min(this.m_height - 1, last); y++)
+		{
+			final int by = y / BLOCK_SIZE;
+			if (by >= field.rows)
+			{
+				break;
+			}
+			for (int x = 1; x < w - 1; x++)
+			{
+				final int i = y * w + x;
+				final int bx = x / BLOCK_SIZE;
+				if ((s[i] == 0) || (bx >= field.cols) || !this.m_interior[by * field.cols + bx])
+				{
+					continue;
+				}
+
+				/* Crossing number: half the number of 0/1 transitions around the pixel. */
+				int transitions = 0;
+				for (int k = 0; k < 8; k++)
+				{
+					final int a = s[i + NEIGHBOR_DY[k] * w + NEIGHBOR_DX[k]];
+					final int b = s[i + NEIGHBOR_DY[(k + 1) & 7] * w + NEIGHBOR_DX[(k + 1) & 7]];
+					transitions += (a != b) ? 1 : 0;
+				}
+				final int crossing = transitions / 2;
+
+				int    type;
+				double direction;
+				if (crossing == 1)
+				{
+					/* Ridge ending: direction points from the ridge toward its end. */
+					final int length = traceRidge(i, -1, trace);
+					if (length < TRACE_LENGTH / 2)
+					{
+						continue;
+					}
+					type      = FingerTemplate.TYPE_RIDGE_ENDING;
+					direction = Math.atan2(y - trace[length] / w, x - trace[length] % w);
+				}
+				else if (crossing == 3)
+				{
+					/* Bifurcation: direction points along the stem, away from the two branches. */
+					final double[] vx = new double[3];
+					final double[] vy = new double[3];
+					int branches = 0;
+					for (int k = 0; (k < 8) && (branches < 3); k++)
+					{
+						final int n = i + NEIGHBOR_DY[k] * w + NEIGHBOR_DX[k];
+						final int prev = i + NEIGHBOR_DY[(k + 7) & 7] * w + NEIGHBOR_DX[(k + 7) & 7];
+						if ((s[n] != 0) && (s[prev] == 0))
+						{
+							final int length = traceRidge(n, i, trace);
+							vx[branches] = trace[length] % w - x;
+							vy[branches] = trace[length] / w - y;
+							branches++;
+						}
+					}
+					if (branches < 3)
+					{
+						continue;
+					}
+					int    stem     = 0;
+					double stemDot  = Double.MAX_VALUE;
+					for (int k = 0; k < 3; k++)
+					{
+						final double dot = vx[k] * (vx[(k + 1) % 3] + vx[(k + 2) % 3]) + vy[k] * (vy[(k + 1) % 3] + vy[(k + 2) % 3]);
+						if (dot < stemDot)
+						{
+							stemDot = dot;
+							stem    = k;
+						}
+					}
+					type      = FingerTemplate.TYPE_BIFURCATION;
+					direction = Math.atan2(vy[stem], vx[stem]);
+				}
+				else
+				{
+					continue;
+				}
+
+				/* Buffer y grows downward, so negate it for a counter-clockwise angle. */
+				int angle = (int)Math.round(-direction * 256 / (2 * Math.PI));
+				angle = ((angle % 256) + 256) % 256;
+				final int quality = Math.round(100 * field.coherence[by * field.cols + bx]);
+				found.add(new int[] {x, y, angle, type, quality});
+			}
+		}
+		return (found);
+	}
+
+	/*
+	 * Follow the skeleton from a pixel, not stepping back onto the given previous pixel, for up to
+	 * TRACE_LENGTH steps or until a junction.  The visited pixel indices are stored in trace; the
+	 * number of steps taken is returned.
+	 */
+	private int traceRidge(final int start, final int previous, final int[] trace)
+	{
+		final byte[] s = this.m_skeleton;
+		final int    w = this.m_width;
+		int current = start;
+		int length  = 0;
+		trace[0] = start;
+
+		while (length < TRACE_LENGTH)
+		{
+			int next  = -1;
+			int count = 0;
+			final int cx = current % w;
+			final int cy = current / w;
+			if ((cx < 1) || (cy < 1) || (cx >= w - 1) || (cy >= this.m_height - 1))
+			{
+				break;
+			}
+			for (int k = 0; k < 8; k++)
+			{
+				final int n = current + NEIGHBOR_DY[k] * w + NEIGHBOR_DX[k];
+				if ((s[n] == 0) || (n == previous))
+				{
+					continue;
+				}
+				boolean visited = false;
+				for (int t = 0; t <= length; t++)
+				{
+					visited |= (trace[t] == n);
+				}
+				if (!visited)
+				{
+					next = n;
+					count++;
+				}
+			}
+			if (count != 1)
+			{
+				break;
+			}
+			length++;
+			trace[length] = next;
+			current = next;
+		}
+		return (length);
+	}
+
+	/* *********************************************************************************************
+	 * PRIVATE METHODS (PARALLELISM)
+	 ******************************************************************************************** */
+
+	/*
+	 * A unit of work over a range of rows.
+	 */
+	private static interface StripTask
+	{
+		int run(int first, int last);
+	}
+
+	/*
+	 * Get the number of rows per strip when dividing the given number of rows.
+	 */
+	private static int stripRows(final int rows)
+	{
+		final int strips = ProcessingPool.getParallelism() * STRIPS_PER_WORKER;
+		return (Math.max(1, (rows + strips - 1) / strips));
+	}
+
+	/*
+	 * Run the task over [0, rows) in strips on the shared pool and return the sum of the results.
+	 */
+	private static int runStrips(final int rows, final StripTask task) throws InterruptedException
+	{
+		final List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+		final int stripRows = stripRows(rows);
+		for (int first = 0; first < rows; first += stripRows)
+		{
+			final int stripFirst = first;
+			final int stripLast  = Math.min(rows, first + stripRows);
+			tasks.add(new Callable<Integer>()
+			{
+				@Override
+				public Integer call()
+				{
+					return (task.run(stripFirst, stripLast));
+				}
+			});
+		}
+
+		int total = 0;
+		for (Integer result : ProcessingPool.invokeAll(tasks))
+		{
+			total += result;
+		}
+		return (total);
+	}
+}
@@ -0,0 +1,166 @@
+/* *************************************************************************************************
+ * OrientationField.java
+ *
+ * DESCRIPTION:
+ *     Block-wise ridge orientation field for SimpleScan demo app for IBScanUltimate
+ *     http://www.integratedbiometrics.com
+ *
+ * NOTES:
+ *     Copyright (c) Integrated Biometrics, 2012-2013
+ *
+ * HISTORY:
+ *     2026/10/19  First version.
+************************************************************************************************ */
+
+package com.integratedbiometrics.ibsimplescan;
+
+/**
+ * Computes the ridge orientation, coherence, mean and variance of each square block of an 8-bit
+ * grayscale image using the least-squares gradient method.  All arrays are allocated once for the
+ * largest image the field will be used with, so the same object can be reused frame after frame.
+ * Rows of blocks are independent; callers may compute disjoint row ranges on different threads.
+ */
+final class OrientationField
+{
+	/* *********************************************************************************************
+	 * PUBLIC FIELDS
+	 ******************************************************************************************** */
+
+	/* The size of a block, in pixels. */
+	final int     blockSize;
+
+	/* The maximum number of block columns and rows this field can hold. */
+	final int     maxCols;
+	final int     maxRows;
+
+	/* The number of block columns and rows of the last computed image. */
+	int           cols;
+	int           rows;
+
+	/* Ridge orientation of each block in radians, in [0, PI). */
+	final float[] angle;
+
+	/* Consistency of the gradients in each block, in [0, 1]. */
+	final float[] coherence;
+
+	/* Mean and variance of the gray levels in each block. */
+	final float[] mean;
+	final float[] variance;
+
+	/* *********************************************************************************************
+	 * CONSTRUCTOR
+	 ******************************************************************************************** */
+
+	OrientationField(final int maxWidth, final int maxHeight, final int blockSize)
+	{
+		this.blockSize = blockSize;
+		this.maxCols   = (maxWidth + blockSize - 1) / blockSize;
+		this.maxRows   = (maxHeight + blockSize - 1) / blockSize;
+		this.angle     = new float[this.maxCols * this.maxRows];
+		this.coherence = new float[this.maxCols * this.maxRows];
+		this.mean      = new float[this.maxCols * this.maxRows];
+		this.variance  = new float[this.maxCols * this.maxRows];
+	}
+
+	/* *********************************************************************************************
+	 * PUBLIC METHODS
+	 ******************************************************************************************** */
+
+	/*
+	 * Prepare the field for an image of the given size and return the number of block rows.  Must
+	 * be called before computeRows().
+	 */
+	int setSize(final int width, final int height)
+	{
+		final int cols = width / this.blockSize;
+		final int rows = height / this.blockSize;
+		if ((cols > this.maxCols) || (rows > this.maxRows))
+		{
+			throw new IllegalArgumentException("image " + width + "x" + height + " exceeds field capacity");
+		}
+		this.cols = cols;
+		this.rows = rows;
+		return (rows);
+	}
+
+	/*
+	 * Compute the whole field for an image on the calling thread.
+	 */
+	void compute(final byte[] buffer, final int offset, final int stride, final int width, final int height)
+	{
+		final int rows = setSize(width, height);
+		computeRows(buffer, offset, stride, width, height, 0, rows);
+	}
+
+	/*
+	 * Compute block rows [firstRow, lastRow) of the field.
+	 */
+	void computeRows(final byte[] buffer, final int offset, final int stride, final int width,
+			final int height, final int firstRow, final int lastRow)
+	{
+		final int bs   = this.blockSize;
+		final int area = bs * bs;
+
+		for (int by = firstRow; by < lastRow; by++)
+		{
+			for (int bx = 0; bx < this.cols; bx++)
+			{
+				final int x0 = bx * bs;
+				final int y0 = by * bs;
+
+				long   sum   = 0;
+				long   sumSq = 0;
+				double gxx   = 0;
+				double gyy   = 0;
+				double gxy   = 0;
+
+				for (int y = y0; y < y0 + bs; y++)
+				{
+					final int row = offset + y * stride;
+					for (int x = x0; x < x0 + bs; x++)
+					{
+						final int p = buffer[row + x] & 0xFF;
+						sum   += p;
+						sumSq += p * p;
+
+						/* Central differences; skip the image border. */
+						if ((x > 0) && (x < width - 1) && (y > 0) && (y < height - 1))
+						{
+							final int gx = (buffer[row + x + 1] & 0xFF) - (buffer[row + x - 1] & 0xFF);
+							final int gy = (buffer[row + stride + x] & 0xFF) - (buffer[row - stride + x] & 0xFF);
+							gxx += gx * gx;
+							gyy += gy * gy;
+							gxy += gx * gy;
+						}
+					}
+				}
+
+				final int    index = by * this.cols + bx;
+				final float  m     = (float)sum / area;
+				final double num   = 2 * gxy;
+				final double den   = gxx - gyy;
+				final double total = gxx + gyy;
+
+				this.mean[index]     = m;
+				this.variance[index] = (float)sumSq / area - m * m;
+
+				/* The ridge direction is perpendicular to the dominant gradient direction. */
+				double theta = 0.5 * Math.atan2(num, den) + Math.PI / 2;
+				if (theta >= Math.PI)
+				{
+					theta -= Math.PI;
+				}
+				this.angle[index]     = (float)theta;
+				this.coherence[index] = (total > 0) ? (float)(Math.sqrt(num * num + den * den) / total) : 0.0f;
+			}
+		}
+	}
+
+	/*
+	 * Determine whether a block holds ridge structure rather than background or noise.
+	 */
+	boolean isForeground(final int index, final float minVariance, final float minCoherence)
+	{
+		return ((this.variance[index] >= minVariance) && (this.coherence[index] >= minCoherence));
+	}
+}
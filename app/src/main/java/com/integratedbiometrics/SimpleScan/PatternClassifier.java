@@ -0,0 +1,298 @@
+/* *************************************************************************************************
+ * PatternClassifier.java
+ *
+ * DESCRIPTION:
+ *     Coarse fingerprint pattern classification for SimpleScan demo app for IBScanUltimate
+ *     http://www.integratedbiometrics.com
+ *
+ * NOTES:
+ *     Copyright (c) Integrated Biometrics, 2012-2013
+ *
+ * HISTORY:
+ *     2026/10/19  First version.
+************************************************************************************************ */
+
+package com.integratedbiometrics.ibsimplescan;
+
+import com.integratedbiometrics.ibscanultimate.IBScanDevice.ImageData;
+
+/**
+ * Assigns a finger image to a coarse pattern class from its singular points.  The block
+ * orientation field is smoothed and the Poincare index is computed around every interior block;
+ * an index of +180 degrees marks a core and -180 degrees a delta.  No cores means an arch, one core
+ * a loop (left or right by the side of the delta, or of the core's opening when the delta is off
+ * the image), and two cores or two deltas a whorl.  Work arrays are allocated once for the largest
+ * image; a classifier processes one image at a time.
+ */
+public class PatternClassifier
+{
+	/* *********************************************************************************************
+	 * PUBLIC CLASSES
+	 ******************************************************************************************** */
+
+	/*
+	 * Enum representing the pattern classes.  The codes are stored in template galleries.
+	 */
+	public static enum PatternClass
+	{
+		UNKNOWN,
+		ARCH,
+		LEFT_LOOP,
+		RIGHT_LOOP,
+		WHORL;
+
+		/*
+		 * Get the class for a stored code.
+		 */
+		public static PatternClass fromCode(final int code)
+		{
+			final PatternClass[] values = values();
+			return (((code >= 0) && (code < values.length)) ? values[code] : UNKNOWN);
+		}
+	}
+
+	/* *********************************************************************************************
+	 * PRIVATE CONSTANTS
+	 ******************************************************************************************** */
+
+	/* The size of an orientation block, in pixels. */
+	private static final int   BLOCK_SIZE      = 16;
+
+	/* The thresholds for a block to count as finger rather than background. */
+	private static final float MIN_VARIANCE    = 150.0f;
+	private static final float MIN_COHERENCE   = 0.1f;
+
+	/* Singular points closer than this, in blocks, are merged. */
+	private static final int   MERGE_DISTANCE  = 3;
+
+	/* The most singular points of each kind that are tracked. */
+	private static final int   MAX_POINTS      = 8;
+
+	/* The closed path of eight neighbours around a block, clockwise as displayed (y down). */
+	private static final int[] PATH_DX         = {-1,  0,  1, 1, 1, 0, -1, -1};
+	private static final int[] PATH_DY         = {-1, -1, -1, 0, 1, 1,  1,  0};
+
+	/* *********************************************************************************************
+	 * PRIVATE FIELDS
+	 ******************************************************************************************** */
+
+	/* The raw orientation field. */
+	private final OrientationField m_field;
+
+	/* The smoothed orientation of each block, and whether the block is foreground. */
+	private final float[]          m_smoothed;
+	private final boolean[]        m_foreground;
+
+	/* The singular points found, in block coordinates. */
+	private final int[]            m_coreX  = new int[MAX_POINTS];
+	private final int[]            m_coreY  = new int[MAX_POINTS];
+	private final int[]            m_deltaX = new int[MAX_POINTS];
+	private final int[]            m_deltaY = new int[MAX_POINTS];
+
+	/* *********************************************************************************************
+	 * CONSTRUCTOR
+	 ******************************************************************************************** */
+
+	public PatternClassifier(final int maxWidth, final int maxHeight)
+	{
+		this.m_field      = new OrientationField(maxWidth, maxHeight, BLOCK_SIZE);
+		this.m_smoothed   = new float[this.m_field.maxCols * this.m_field.maxRows];
+		this.m_foreground = new boolean[this.m_field.maxCols * this.m_field.maxRows];
+	}
+
+	/* *********************************************************************************************
+	 * PUBLIC METHODS
+	 ******************************************************************************************** */
+
+	/*
+	 * Classify an image delivered by the SDK.  A negative pitch indicates that rows are stored
+	 * bottom-up; they are read from the last row back so the finger is not flipped, which would
+	 * swap left and right loops.
+	 */
+	public PatternClass classify(final ImageData image)
+	{
+		final int stride = Math.max(Math.abs(image.pitch), image.width);
+		if (image.pitch < 0)
+		{
+			return (classify(image.buffer, (image.height - 1) * stride, -stride, image.width, image.height));
+		}
+		return (classify(image.buffer, 0, stride, image.width, image.height));
+	}
+
+	/*
+	 * Classify one finger of a capture in place.
+	 */
+	public PatternClass classify(final FingerSegment segment)
+	{
+		return (classify(segment.buffer, segment.offset, segment.stride, segment.width, segment.height));
+	}
+
+	/*
+	 * Classify a raw 8-bit image.
+	 */
+	public PatternClass classify(final byte[] buffer, final int stride, final int width, final int height)
+	{
+		return (classify(buffer, 0, stride, width, height));
+	}
+
+	/*
+	 * Classify a raw 8-bit image starting at an offset into a buffer; the stride may be negative.
+	 */
+	public synchronized PatternClass classify(final byte[] buffer, final int offset, final int stride,
+			final int width, final int height)
+	{
+		final OrientationField field = this.m_field;
+		field.compute(buffer, offset, stride, width, height);
+		final int cols = field.cols;
+		final int rows = field.rows;
+
+		for (int i = 0; i < rows * cols; i++)
+		{
+			this.m_foreground[i] = field.isForeground(i, MIN_VARIANCE, MIN_COHERENCE);
+		}
+
+		/* Smooth the doubled-angle vectors over 3x3 foreground blocks, weighted by coherence. */
+		for (int by = 0; by < rows; by++)
+		{
+			for (int bx = 0; bx < cols; bx++)
+			{
+				double sx = 0;
+				double sy = 0;
+				for (int dy = -1; dy <= 1; dy++)
+				{
+					for (int dx = -1; dx <= 1; dx++)
+					{
+						final int x = bx + dx;
+						final int y = by + dy;
+						if ((x < 0) || (y < 0) || (x >= cols) || (y >= rows) || !this.m_foreground[y * cols + x])
+						{
+							continue;
+						}
+						final int    index = y * cols + x;
+						final double a     = 2 * field.angle[index];
+						sx += field.coherence[index] * Math.cos(a);
+						sy += field.coherence[index] * Math.sin(a);
+					}
+				}
+				double angle = 0.5 * Math.atan2(sy, sx);
+				if (angle < 0)
+				{
+					angle += Math.PI;
+				}
+				this.m_smoothed[by * cols + bx] = (float)angle;
+			}
+		}
+
+		/* Compute the Poincare index around each block whose whole path is foreground. */
+		int cores  = 0;
+		int deltas = 0;
+		for (int by = 1; by < rows - 1; by++)
+		{
+			for (int bx = 1; bx < cols - 1; bx++)
+			{
+				boolean inside = true;
+				double  total  = 0;
+				for (int k = 0; inside && (k < PATH_DX.length); k++)
+				{
+					final int a = (by + PATH_DY[k]) * cols + bx + PATH_DX[k];
+					final int b = (by + PATH_DY[(k + 1) % PATH_DX.length]) * cols + bx + PATH_DX[(k + 1) % PATH_DX.length];
+					inside = this.m_foreground[a] && this.m_foreground[b];
+					double d = this.m_smoothed[b] - this.m_smoothed[a];
+					if (d > Math.PI / 2)
+					{
+						d -= Math.PI;
+					}
+					else if (d <= -Math.PI / 2)
+					{
+						d += Math.PI;
+					}
+					total += d;
+				}
+				if (!inside)
+				{
+					continue;
+				}
+
+				if (Math.abs(total - 2 * Math.PI) < Math.PI / 4)
+				{
+					/* The center of a circular whorl counts as two cores. */
+					cores = addPoint(this.m_coreX, this.m_coreY, cores, bx, by);
+					cores = Math.max(cores, 2);
+				}
+				else if (Math.abs(total - Math.PI) < Math.PI / 4)
+				{
+					cores = addPoint(this.m_coreX, this.m_coreY, cores, bx, by);
+				}
+				else if (Math.abs(total + Math.PI) < Math.PI / 4)
+				{
+					deltas = addPoint(this.m_deltaX, this.m_deltaY, deltas, bx, by);
+				}
+			}
+		}
+
+		/* Decide the class from the singular points. */
+		if ((cores >= 2) || (deltas >= 2))
+		{
+			return (PatternClass.WHORL);
+		}
+		else if (cores == 0)
+		{
+			return (PatternClass.ARCH);
+		}
+		else if (deltas == 1)
+		{
+			/* The delta lies on the side opposite the one the ridges enter and leave from. */
+			return ((this.m_deltaX[0] > this.m_coreX[0]) ? PatternClass.LEFT_LOOP : PatternClass.RIGHT_LOOP);
+		}
+		return (loopSideFromCore(this.m_coreX[0], this.m_coreY[0], cols, rows));
+	}
+
+	/* *********************************************************************************************
+	 * PRIVATE METHODS
+	 ******************************************************************************************** */
+
+	/*
+	 * Add a singular point unless it is next to one already found; return the new count.
+	 */
+	private static int addPoint(final int[] xs, final int[] ys, final int count, final int x, final int y)
+	{
+		for (int i = 0; i < count; i++)
+		{
+			if ((Math.abs(xs[i] - x) <= MERGE_DISTANCE) && (Math.abs(ys[i] - y) <= MERGE_DISTANCE))
+			{
+				return (count);
+			}
+		}
+		if (count == xs.length)
+		{
+			return (count);
+		}
+		xs[count] = x;
+		ys[count] = y;
+		return (count + 1);
+	}
+
+	/*
+	 * Decide the side of a loop whose delta is off the image: ridges below the core slope down
+	 * toward the side the loop opens to.
+	 */
+	private PatternClass loopSideFromCore(final int coreX, final int coreY, final int cols, final int rows)
+	{
+		double sx = 0;
+		double sy = 0;
+		for (int by = coreY + 1; by < Math.min(rows, coreY + 4); by++)
+		{
+			for (int bx = Math.max(0, coreX - 3); bx <= Math.min(cols - 1, coreX + 3); bx++)
+			{
+				if (this.m_foreground[by * cols + bx])
+				{
+					final double a = 2 * this.m_smoothed[by * cols + bx];
+					sx += Math.cos(a);
+					sy += Math.sin(a);
+				}
+			}
+		}
+		final double angle = 0.5 * Math.atan2(sy, sx);
+		return ((angle > 0) ? PatternClass.RIGHT_LOOP : PatternClass.LEFT_LOOP);
+	}
+}
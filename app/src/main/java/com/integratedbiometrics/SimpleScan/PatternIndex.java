@@ -0,0 +1,131 @@
+/* *************************************************************************************************
+ * PatternIndex.java
+ *
+ * DESCRIPTION:
+ *     Pattern-class index of a template gallery for SimpleScan demo app for IBScanUltimate
+ *     http://www.integratedbiometrics.com
+ *
+ * NOTES:
+ *     Copyright (c) Integrated Biometrics, 2012-2013
+ *
+ * HISTORY:
+ *     2026/10/19  First version.
+************************************************************************************************ */
+
+package com.integratedbiometrics.ibsimplescan;
+
+import com.integratedbiometrics.ibsimplescan.PatternClassifier.PatternClass;
+
+/**
+ * Partitions a template gallery into bins by pattern class and produces the order in which an
+ * identification should visit the gallery: the probe's own class first, then templates whose class
+ * is unknown, then the classes most often confused with the probe's.  Every gallery template
+ * appears exactly once in the order, so a search that is not cut short still covers the gallery.
+ */
+public class PatternIndex
+{
+	/* *********************************************************************************************
+	 * PRIVATE CONSTANTS
+	 ******************************************************************************************** */
+
+	/*
+	 * The bins to search for a probe of each class, most likely first.  Loops are most often
+	 * confused with whorls, and arches with loops.
+	 */
+	private static final PatternClass[][] SEARCH_BINS =
+		{
+			/* UNKNOWN    */ {PatternClass.UNKNOWN, PatternClass.LEFT_LOOP, PatternClass.RIGHT_LOOP, PatternClass.WHORL, PatternClass.ARCH},
+			/* ARCH       */ {PatternClass.ARCH, PatternClass.UNKNOWN, PatternClass.LEFT_LOOP, PatternClass.RIGHT_LOOP, PatternClass.WHORL},
+			/* LEFT_LOOP  */ {PatternClass.LEFT_LOOP, PatternClass.UNKNOWN, PatternClass.WHORL, PatternClass.ARCH, PatternClass.RIGHT_LOOP},
+			/* RIGHT_LOOP */ {PatternClass.RIGHT_LOOP, PatternClass.UNKNOWN, PatternClass.WHORL, PatternClass.ARCH, PatternClass.LEFT_LOOP},
+			/* WHORL      */ {PatternClass.WHORL, PatternClass.UNKNOWN, PatternClass.LEFT_LOOP, PatternClass.RIGHT_LOOP, PatternClass.ARCH},
+		};
+
+	/* *********************************************************************************************
+	 * PRIVATE FIELDS
+	 ******************************************************************************************** */
+
+	/* The gallery indices in each bin, indexed by class ordinal. */
+	private final int[][] m_bins;
+
+	/* The search order for each probe class, built on first use. */
+	private final int[][] m_orders;
+
+	/* *********************************************************************************************
+	 * CONSTRUCTOR
+	 ******************************************************************************************** */
+
+	public PatternIndex(final TemplateGallery gallery)
+	{
+		final PatternClass[] classes = PatternClass.values();
+		final int            count   = gallery.getCount();
+
+		/* Count, then fill, the bins. */
+		final int[] sizes = new int[classes.length];
+		for (int i = 0; i < count; i++)
+		{
+			sizes[gallery.getPatternClass(i).ordinal()]++;
+		}
+		this.m_bins = new int[classes.length][];
+		for (int c = 0; c < classes.length; c++)
+		{
+			this.m_bins[c] = new int[sizes[c]];
+			sizes[c]       = 0;
+		}
+		for (int i = 0; i < count; i++)
+		{
+			final int c = gallery.getPatternClass(i).ordinal();
+			this.m_bins[c][sizes[c]++] = i;
+		}
+		this.m_orders = new int[classes.length][];
+	}
+
+	/* *********************************************************************************************
+	 * PUBLIC METHODS
+	 ******************************************************************************************** */
+
+	/*
+	 * Get the number of gallery templates in a bin.
+	 */
+	public int getBinSize(final PatternClass patternClass)
+	{
+		return (this.m_bins[patternClass.ordinal()].length);
+	}
+
+	/*
+	 * Get the number of gallery templates in the bins that are searched before any other class for
+	 * a probe of the given class: its own bin and the unknown bin.
+	 */
+	public int getPrimaryCount(final PatternClass patternClass)
+	{
+		final PatternClass[] bins = SEARCH_BINS[patternClass.ordinal()];
+		return (getBinSize(bins[0]) + ((bins[0] != bins[1]) ? getBinSize(bins[1]) : 0));
+	}
+
+	/*
+	 * Get the order in which to search the gallery for a probe of the given class.  The array is
+	 * shared and must not be modified.
+	 */
+	public synchronized int[] getSearchOrder(final PatternClass patternClass)
+	{
+		final int c = patternClass.ordinal();
+		if (this.m_orders[c] == null)
+		{
+			int total = 0;
+			for (int[] bin : this.m_bins)
+			{
+				total += bin.length;
+			}
+			final int[] order    = new int[total];
+			int         position = 0;
+			for (PatternClass binClass : SEARCH_BINS[c])
+			{
+				final int[] bin = this.m_bins[binClass.ordinal()];
+				System.arraycopy(bin, 0, order, position, bin.length);
+				position += bin.length;
+			}
+			this.m_orders[c] = order;
+		}
+		return (this.m_orders[c]);
+	}
+}
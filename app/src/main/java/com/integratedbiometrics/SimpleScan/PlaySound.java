@@ -13,34 +13,41 @@ public class PlaySound
 	private final int duration = 1; // seconds
 	private final int sampleRate = 8000;
 	private final int numSamples = this.duration * this.sampleRate;
-	private final double sample[] = new double[this.numSamples];
 	private final double freqOfTone = 880; // hz
 
 	private final byte generatedSnd[] = new byte[2 * this.numSamples];
+	private boolean generated = false;
 
 	public PlaySound() 
 	{
-		for (int i = 0; i < this.numSamples; ++i) 
+	}
+
+	// synthesize the tone, once; called in the background at startup so that
+	// neither startup nor the first capture pays for it
+	public synchronized void prepare() 
+	{
+		if (this.generated) 
 		{
-			this.sample[i] = Math.sin(2 * Math.PI * i / (this.sampleRate / this.freqOfTone));
+			return;
 		}
 
 		// convert to 16 bit pcm sound array
-		// assumes the sample buffer is normalised.
 		int idx = 0;
-		for (final double dVal : this.sample) 
+		for (int i = 0; i < this.numSamples; ++i) 
 		{
+			final double dVal = Math.sin(2 * Math.PI * i / (this.sampleRate / this.freqOfTone));
 			// scale to maximum amplitude
 			final short val = (short) ((dVal * 32767));
 			// in 16 bit wav PCM, first byte is the low order byte
 			this.generatedSnd[idx++] = (byte) (val & 0x00ff);
 			this.generatedSnd[idx++] = (byte) ((val & 0xff00) >>> 8);
-
 		}
+		this.generated = true;
 	}
 
 	public void playSound() 
 	{
+		prepare();
 		final AudioTrack audioTrack = new AudioTrack(AudioManager.STREAM_MUSIC,
 				this.sampleRate, AudioFormat.CHANNEL_OUT_MONO,
 				AudioFormat.ENCODING_PCM_16BIT, this.numSamples,
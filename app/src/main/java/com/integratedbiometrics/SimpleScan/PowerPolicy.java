@@ -0,0 +1,213 @@
+/* *************************************************************************************************
+ * PowerPolicy.java
+ *
+ * DESCRIPTION:
+ *     Adaptive power-save policy for SimpleScan demo app for IBScanUltimate
+ *     http://www.integratedbiometrics.com
+ *
+ * NOTES:
+ *     Copyright (c) Integrated Biometrics, 2012-2013
+ *
+ * HISTORY:
+ *     2026/10/19  First version.
+************************************************************************************************ */
+
+package com.integratedbiometrics.ibsimplescan;
+
+/**
+ * Decides when an open scanner may sleep in power-save mode and when it should be kept awake, so
+ * that the first capture after a pause does not pay the sensor's wake-up time.  The sensor is kept
+ * awake while a finger is on the platen, while enrollees are queued, while the operator has been
+ * active in the last IDLE_MILLIS, and while captures are coming often enough that the station is
+ * busy.  Otherwise the sensor sleeps, except that it is woken WAKE_LEAD_MILLIS before the next
+ * capture is expected from the smoothed interval between captures, and kept awake for one such
+ * interval after that.
+ *
+ * The policy holds no device state and takes the time of every input, so a recorded session can be
+ * replayed through it to check a change offline.  It also accumulates the time from starting a
+ * capture to its first preview frame, separately for a sleeping and an awake sensor, so the effect
+ * of the policy on first-frame latency can be reported.
+ */
+public class PowerPolicy
+{
+	/* *********************************************************************************************
+	 * PRIVATE CONSTANTS
+	 ******************************************************************************************** */
+
+	/* The time after the last activity until the sensor may sleep. */
+	private static final long  IDLE_MILLIS          = 60000;
+
+	/* How long before an expected capture the sensor is woken. */
+	private static final long  WAKE_LEAD_MILLIS     = 5000;
+
+	/* The mean interval between captures below which the station counts as busy. */
+	private static final long  BUSY_INTERVAL_MILLIS = 30000;
+
+	/* The longest interval between captures that counts toward the mean; longer ones are breaks. */
+	private static final long  MAX_INTERVAL_MILLIS  = 600000;
+
+	/* The weight of the newest interval in the mean. */
+	private static final float SMOOTHING            = 0.3f;
+
+	/* The shortest time until the policy is evaluated again. */
+	private static final long  MIN_EVALUATE_MILLIS  = 1000;
+
+	/* *********************************************************************************************
+	 * PRIVATE FIELDS
+	 ******************************************************************************************** */
+
+	/* The time of the last activity of any kind, and of the last capture started, or -1. */
+	private long         m_lastActivity = -1;
+	private long         m_lastCapture  = -1;
+
+	/* The smoothed interval between captures, or -1 until there are two captures. */
+	private float        m_meanInterval = -1;
+
+	/* Whether a finger is on the platen, and the number of enrollees waiting. */
+	private boolean      m_platenHasFingers;
+	private int          m_queueLength;
+
+	/* The first-frame latencies measured, by whether the sensor was asleep (1) or awake (0). */
+	private final long[] m_latencyCount = new long[2];
+	private final long[] m_latencyTotal = new long[2];
+	private final long[] m_latencyMax   = new long[2];
+
+	/* *********************************************************************************************
+	 * PUBLIC METHODS
+	 ******************************************************************************************** */
+
+	/*
+	 * Note that a capture has started.
+	 */
+	public synchronized void onCaptureStarted(final long now)
+	{
+		if (this.m_lastCapture >= 0)
+		{
+			final long interval = now - this.m_lastCapture;
+			if (interval <= MAX_INTERVAL_MILLIS)
+			{
+				this.m_meanInterval = (this.m_meanInterval < 0) ? interval
+						: this.m_meanInterval + SMOOTHING * (interval - this.m_meanInterval);
+			}
+		}
+		this.m_lastCapture  = now;
+		this.m_lastActivity = now;
+	}
+
+	/*
+	 * Note a change of the platen state reported by the SDK.
+	 */
+	public synchronized void onPlatenState(final boolean hasFingers, final long now)
+	{
+		this.m_platenHasFingers = hasFingers;
+		this.m_lastActivity     = now;
+	}
+
+	/*
+	 * Note that the operator has done something, such as choosing a capture type.
+	 */
+	public synchronized void onOperatorActivity(final long now)
+	{
+		this.m_lastActivity = now;
+	}
+
+	/*
+	 * Set the number of enrollees waiting at the station, for stations that keep a queue.
+	 */
+	public synchronized void setQueueLength(final int queueLength, final long now)
+	{
+		this.m_queueLength  = queueLength;
+		this.m_lastActivity = now;
+	}
+
+	/*
+	 * Determine whether the sensor may sleep now.
+	 */
+	public synchronized boolean shouldSleep(final long now)
+	{
+		if (this.m_platenHasFingers || (this.m_queueLength > 0))
+		{
+			return (false);
+		}
+		if ((this.m_lastActivity >= 0) && (now - this.m_lastActivity < IDLE_MILLIS))
+		{
+			return (false);
+		}
+		if ((this.m_meanInterval >= 0) && (this.m_meanInterval < BUSY_INTERVAL_MILLIS))
+		{
+			return (false);
+		}
+		if (this.m_meanInterval >= 0)
+		{
+			final long expected = this.m_lastCapture + (long)this.m_meanInterval;
+			if ((now >= expected - WAKE_LEAD_MILLIS) && (now < expected + (long)this.m_meanInterval))
+			{
+				return (false);
+			}
+		}
+		return (true);
+	}
+
+	/*
+	 * Get the time until shouldSleep() may change, if no input arrives meanwhile.
+	 */
+	public synchronized long getEvaluateDelay(final long now)
+	{
+		long delay = IDLE_MILLIS;
+		if (this.m_lastActivity >= 0)
+		{
+			delay = nearer(delay, this.m_lastActivity + IDLE_MILLIS - now);
+		}
+		if (this.m_meanInterval >= 0)
+		{
+			final long expected = this.m_lastCapture + (long)this.m_meanInterval;
+			delay = nearer(delay, expected - WAKE_LEAD_MILLIS - now);
+			delay = nearer(delay, expected + (long)this.m_meanInterval - now);
+		}
+		return (Math.max(MIN_EVALUATE_MILLIS, delay));
+	}
+
+	/*
+	 * Record the time from starting a capture to its first preview frame.
+	 */
+	public synchronized void recordFirstFrameLatency(final boolean asleep, final long millis)
+	{
+		final int i = asleep ? 1 : 0;
+		this.m_latencyCount[i]++;
+		this.m_latencyTotal[i] += millis;
+		this.m_latencyMax[i]    = Math.max(this.m_latencyMax[i], millis);
+	}
+
+	/*
+	 * Describe the first-frame latencies measured so far.
+	 */
+	public synchronized String getLatencyReport()
+	{
+		return ("first frame awake " + describe(0) + ", asleep " + describe(1));
+	}
+
+	/* *********************************************************************************************
+	 * PRIVATE METHODS
+	 ******************************************************************************************** */
+
+	/*
+	 * Take the nearer of two delays, ignoring times already past.
+	 */
+	private static long nearer(final long delay, final long candidate)
+	{
+		return ((candidate > 0) ? Math.min(delay, candidate) : delay);
+	}
+
+	/*
+	 * Describe the latencies measured in one state.
+	 */
+	private String describe(final int i)
+	{
+		if (this.m_latencyCount[i] == 0)
+		{
+			return ("n/a");
+		}
+		return ((this.m_latencyTotal[i] / this.m_latencyCount[i]) + " ms mean, " + this.m_latencyMax[i]
+				+ " ms max over " + this.m_latencyCount[i]);
+	}
+}
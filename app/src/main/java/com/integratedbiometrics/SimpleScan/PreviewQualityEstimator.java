@@ -0,0 +1,271 @@
+/* *************************************************************************************************
+ * PreviewQualityEstimator.java
+ *
+ * DESCRIPTION:
+ *     Running quality estimate of preview frames for SimpleScan demo app for IBScanUltimate
+ *     http://www.integratedbiometrics.com
+ *
+ * NOTES:
+ *     Copyright (c) Integrated Biometrics, 2012-2013
+ *
+ * HISTORY:
+ *     2026/10/19  First version.
+************************************************************************************************ */
+
+package com.integratedbiometrics.ibsimplescan;
+
+import java.nio.ByteBuffer;
+
+import com.integratedbiometrics.ibscanultimate.IBScanDevice.ImageData;
+
+/**
+ * Estimates the quality of preview frames while a capture is in progress, so the operator can be
+ * told to correct finger placement before the capture completes.  Each frame is reduced to half
+ * resolution into a buffer that is reused from frame to frame, and block-wise contrast, ridge
+ * clarity (orientation coherence) and foreground coverage are measured on the reduced image.  The
+ * per-frame score is smoothed across frames and mapped to a predicted NFIQ level (1 best, 5 worst).
+ * The mapping is a heuristic; the NFIQ score computed by the SDK after capture remains the
+ * authority.
+ */
+public class PreviewQualityEstimator
+{
+	/* *********************************************************************************************
+	 * PUBLIC CLASSES
+	 ******************************************************************************************** */
+
+	/*
+	 * The quality estimate after one preview frame.
+	 */
+	public static class Estimate
+	{
+		/* The fraction of the frame covered by ridge structure, 0-1. */
+		public final float coverage;
+
+		/* The mean gray-level contrast and ridge clarity of the foreground, each 0-1. */
+		public final float contrast;
+		public final float clarity;
+
+		/* The quality score of this frame and the smoothed score, each 0-100. */
+		public final int   frameScore;
+		public final int   score;
+
+		/* The predicted NFIQ level, 1-5, from the smoothed score. */
+		public final int   predictedNfiq;
+
+		/* The number of frames since the estimate was last reset. */
+		public final int   frames;
+
+		/* The time spent on this frame, in milliseconds. */
+		public final long  elapsedMillis;
+
+		Estimate(final float coverage, final float contrast, final float clarity, final int frameScore,
+				final int score, final int predictedNfiq, final int frames, final long elapsedMillis)
+		{
+			this.coverage      = coverage;
+			this.contrast      = contrast;
+			this.clarity       = clarity;
+			this.frameScore    = frameScore;
+			this.score         = score;
+			this.predictedNfiq = predictedNfiq;
+			this.frames        = frames;
+			this.elapsedMillis = elapsedMillis;
+		}
+	}
+
+	/* *********************************************************************************************
+	 * PRIVATE CONSTANTS
+	 ******************************************************************************************** */
+
+	/* The size of a block in the half-resolution image (16 pixels at full resolution). */
+	private static final int     BLOCK_SIZE        = 8;
+
+	/* The thresholds for a block to count as finger rather than background. */
+	private static final float   MIN_VARIANCE      = 150.0f;
+	private static final float   MIN_COHERENCE     = 0.1f;
+
+	/* The block standard deviation that counts as full contrast. */
+	private static final float   FULL_CONTRAST     = 64.0f;
+
+	/* The coverage below which the score is scaled down, since too little finger is visible. */
+	private static final float   FULL_COVERAGE     = 0.08f;
+
+	/* The weights of clarity and contrast in the frame score. */
+	private static final float   CLARITY_WEIGHT    = 0.6f;
+	private static final float   CONTRAST_WEIGHT   = 0.4f;
+
+	/* The weight of the newest frame in the smoothed score. */
+	private static final float   SMOOTHING         = 0.3f;
+
+	/* The lowest smoothed score for each predicted NFIQ level 1-4; lower scores predict 5. */
+	private static final int[]   NFIQ_THRESHOLDS   = {70, 55, 40, 25};
+
+	/* *********************************************************************************************
+	 * PRIVATE FIELDS
+	 ******************************************************************************************** */
+
+	/* The largest frame that can be estimated. */
+	private final int              m_maxWidth;
+	private final int              m_maxHeight;
+
+	/* The half-resolution frame and its orientation field. */
+	private final byte[]           m_reduced;
+	private final OrientationField m_field;
+
+	/* The smoothed score and the number of frames that contributed to it. */
+	private float                  m_smoothedScore;
+	private int                    m_frames;
+
+	/* *********************************************************************************************
+	 * CONSTRUCTOR
+	 ******************************************************************************************** */
+
+	public PreviewQualityEstimator(final int maxWidth, final int maxHeight)
+	{
+		this.m_maxWidth  = maxWidth;
+		this.m_maxHeight = maxHeight;
+		this.m_reduced   = new byte[(maxWidth / 2) * (maxHeight / 2)];
+		this.m_field     = new OrientationField(maxWidth / 2, maxHeight / 2, BLOCK_SIZE);
+	}
+
+	/* *********************************************************************************************
+	 * PUBLIC METHODS
+	 ******************************************************************************************** */
+
+	/*
+	 * Forget the frames seen so far, for example when a new capture begins.
+	 */
+	public synchronized void reset()
+	{
+		this.m_smoothedScore = 0.0f;
+		this.m_frames        = 0;
+	}
+
+	/*
+	 * Add a preview frame delivered by the SDK and return the updated estimate.
+	 */
+	public Estimate estimate(final ImageData image)
+	{
+		final int stride = Math.max(Math.abs(image.pitch), image.width);
+		return (estimate(image.buffer, stride, image.width, image.height));
+	}
+
+	/*
+	 * Add a preview frame held in a frame store and return the updated estimate, or null if the frame
+	 * is larger than the estimator was sized for.  The caller keeps its reference to the frame.
+	 */
+	public synchronized Estimate estimate(final FrameStore.Frame frame)
+	{
+		final int width  = frame.getWidth();
+		final int height = frame.getHeight();
+		if ((width > this.m_maxWidth) || (height > this.m_maxHeight))
+		{
+			return (null);
+		}
+		final long startTime = System.currentTimeMillis();
+
+		/* Average each 2x2 pixel group into the reduced frame. */
+		final ByteBuffer pixels        = frame.view();
+		final int        stride        = frame.getStride();
+		final int        reducedWidth  = width / 2;
+		final int        reducedHeight = height / 2;
+		for (int y = 0; y < reducedHeight; y++)
+		{
+			final int row0 = 2 * y * stride;
+			final int row1 = row0 + stride;
+			final int out  = y * reducedWidth;
+			for (int x = 0; x < reducedWidth; x++)
+			{
+				final int sum = (pixels.get(row0 + 2 * x) & 0xFF) + (pixels.get(row0 + 2 * x + 1) & 0xFF)
+						+ (pixels.get(row1 + 2 * x) & 0xFF) + (pixels.get(row1 + 2 * x + 1) & 0xFF);
+				this.m_reduced[out + x] = (byte)(sum >> 2);
+			}
+		}
+		return (measure(reducedWidth, reducedHeight, startTime));
+	}
+
+	/*
+	 * Add a raw 8-bit preview frame and return the updated estimate.  A frame larger than the
+	 * estimator was sized for, such as a 1000 ppi frame, is reduced further so that blocks cover the
+	 * same area of the finger.
+	 */
+	public synchronized Estimate estimate(final byte[] buffer, final int stride, final int width, final int height)
+	{
+		final long startTime = System.currentTimeMillis();
+
+		/* Average each pixel group into the reduced frame, a row at a time. */
+		final int factor        = 2 * ImagePyramid.getReduction(width, height, this.m_maxWidth, this.m_maxHeight);
+		final int reducedWidth  = width / factor;
+		final int reducedHeight = height / factor;
+		for (int y = 0; y < reducedHeight; y++)
+		{
+			ImagePyramid.reduceRow(buffer, stride, width, height, factor, y, this.m_reduced, y * reducedWidth);
+		}
+		return (measure(reducedWidth, reducedHeight, startTime));
+	}
+
+	/*
+	 * Map a quality score to a predicted NFIQ level.
+	 */
+	public static int predictNfiq(final int score)
+	{
+		for (int level = 0; level < NFIQ_THRESHOLDS.length; level++)
+		{
+			if (score >= NFIQ_THRESHOLDS[level])
+			{
+				return (level + 1);
+			}
+		}
+		return (NFIQ_THRESHOLDS.length + 1);
+	}
+
+	/* *********************************************************************************************
+	 * PRIVATE METHODS
+	 ******************************************************************************************** */
+
+	/*
+	 * Measure the reduced frame and update the smoothed score.
+	 */
+	private Estimate measure(final int reducedWidth, final int reducedHeight, final long startTime)
+	{
+		/* Measure the foreground blocks. */
+		final OrientationField field = this.m_field;
+		field.compute(this.m_reduced, 0, reducedWidth, reducedWidth, reducedHeight);
+		final int blocks     = field.cols * field.rows;
+		int       foreground = 0;
+		double    contrast   = 0;
+		double    clarity    = 0;
+		for (int i = 0; i < blocks; i++)
+		{
+			if (field.isForeground(i, MIN_VARIANCE, MIN_COHERENCE))
+			{
+				foreground++;
+				contrast += Math.min(1.0, Math.sqrt(field.variance[i]) / FULL_CONTRAST);
+				clarity  += field.coherence[i];
+			}
+		}
+
+		final float coverage = (blocks > 0) ? (float)foreground / blocks : 0.0f;
+		if (foreground > 0)
+		{
+			contrast /= foreground;
+			clarity  /= foreground;
+		}
+		final float frameScore = (float)(100 * (CLARITY_WEIGHT * clarity + CONTRAST_WEIGHT * contrast)
+				* Math.min(1.0f, coverage / FULL_COVERAGE));
+
+		/* Smooth the score; the first frame after a reset or a lift of the finger starts afresh. */
+		if ((this.m_frames == 0) || (foreground == 0))
+		{
+			this.m_smoothedScore = frameScore;
+		}
+		else
+		{
+			this.m_smoothedScore += SMOOTHING * (frameScore - this.m_smoothedScore);
+		}
+		this.m_frames++;
+
+		final int score = Math.round(this.m_smoothedScore);
+		return (new Estimate(coverage, (float)contrast, (float)clarity, Math.round(frameScore), score,
+				predictNfiq(score), this.m_frames, System.currentTimeMillis() - startTime));
+	}
+}
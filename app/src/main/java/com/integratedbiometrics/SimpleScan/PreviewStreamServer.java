@@ -0,0 +1,563 @@
+/* *************************************************************************************************
+ * PreviewStreamServer.java
+ *
+ * DESCRIPTION:
+ *     TCP server streaming preview frames for SimpleScan demo app for IBScanUltimate
+ *     http://www.integratedbiometrics.com
+ *
+ * NOTES:
+ *     Copyright (c) Integrated Biometrics, 2012-2013
+ *
+ * HISTORY:
+ *     2026/10/19  First version.
+************************************************************************************************ */
+
+package com.integratedbiometrics.ibsimplescan;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Streams preview frames over TCP to workstations watching a capture.  Frames are published as
+ * they arrive and each client is sent the newest frame whenever its last one has been written, so
+ * a slow client simply receives fewer frames and never holds up the scanner or other clients.
+ * Each frame is sent as the deflated difference from the frame the client last received, with a
+ * whole frame every KEYFRAME_INTERVAL frames sent and whenever the size changes; the difference
+ * of successive previews is mostly zero, so the fastest deflate level shrinks it cheaply.  All
+ * network work and encoding happen on the server's own threads.
+ * <p>
+ * The stream is not encrypted.  The server listens on the address it is given, normally loopback,
+ * which a workstation reaches through "adb forward"; and since any app on the device can reach
+ * loopback, a client must also present the server's token.  A client opens with "IBPV", a version
+ * byte, the token's length (byte) and the token in UTF-8, and is dropped without a reply unless the
+ * token matches within HANDSHAKE_TIMEOUT_MILLIS.  The server answers with "IBPV" and a version
+ * byte, then carries messages, big-endian:
+ * <pre>
+ *     type 'K' or 'D' (byte)  frame sequence (int)  width (short)  height (short)  length (int)
+ *     then length bytes of deflated pixels, top-down; for 'D', each pixel is the difference
+ *     modulo 256 from the same pixel of the previous message
+ * </pre>
+ * Gaps in the frame sequence show the frames a client skipped.
+ */
+public class PreviewStreamServer
+{
+	/* *********************************************************************************************
+	 * PUBLIC CONSTANTS
+	 ******************************************************************************************** */
+
+	/* The message types. */
+	public static final byte   TYPE_KEYFRAME     = 'K';
+	public static final byte   TYPE_DELTA        = 'D';
+
+	/* The version of the protocol. */
+	public static final int    VERSION           = 2;
+
+	/* *********************************************************************************************
+	 * PRIVATE CONSTANTS
+	 ******************************************************************************************** */
+
+	/* The tag for log messages. */
+	private static final String  TAG                      = "PreviewStreamServer";
+
+	/* The identifier at the start of a connection. */
+	private static final byte[]  MAGIC                    = {'I', 'B', 'P', 'V'};
+
+	/* The number of frames sent between whole frames. */
+	private static final int     KEYFRAME_INTERVAL        = 30;
+
+	/* The most clients served at once. */
+	private static final int     MAX_CLIENTS              = 2;
+
+	/* How long a client waits for a frame before checking whether the server stopped. */
+	private static final long    WAIT_MILLIS              = 500;
+
+	/* How long a client has to present the token. */
+	private static final int     HANDSHAKE_TIMEOUT_MILLIS = 5000;
+
+	/* The encoding of the token. */
+	private static final Charset UTF8                     = Charset.forName("UTF-8");
+
+	/* *********************************************************************************************
+	 * PRIVATE FIELDS
+	 ******************************************************************************************** */
+
+	/* The listening socket, the token clients present, and the clients being served. */
+	private final ServerSocket             m_serverSocket;
+	private final byte[]                   m_token;
+	private final ArrayList<ClientThread>  m_clients = new ArrayList<ClientThread>();
+	private volatile boolean               m_running = true;
+
+	/* The newest frame: either a frame from the store, held with a reference, or top-down pixels. */
+	private FrameStore.Frame               m_frame;
+	private byte[]                         m_pixels;
+	private int                            m_width;
+	private int                            m_height;
+	private int                            m_sequence;
+
+	/* *********************************************************************************************
+	 * CONSTRUCTOR
+	 ******************************************************************************************** */
+
+	/*
+	 * Start listening on a port of an address, normally loopback (127.0.0.1), serving
+	 * clients that present a token of at most 255 bytes in UTF-8.  Port 0 picks a free port.
+	 */
+	public PreviewStreamServer(final int port, final InetAddress address, final String token) throws IOException
+	{
+		this.m_token = token.getBytes(UTF8);
+		if ((this.m_token.length == 0) || (this.m_token.length > 255))
+		{
+			throw new IllegalArgumentException("token must be 1 to 255 bytes");
+		}
+		this.m_serverSocket = new ServerSocket();
+		this.m_serverSocket.setReuseAddress(true);
+		this.m_serverSocket.bind(new InetSocketAddress(address, port));
+
+		Thread threadAccept = new Thread("PreviewStreamServer")
+		{
+			@Override
+			public void run()
+			{
+				accept();
+			}
+		};
+		threadAccept.setDaemon(true);
+		threadAccept.start();
+	}
+
+	/* *********************************************************************************************
+	 * PUBLIC METHODS
+	 ******************************************************************************************** */
+
+	/*
+	 * Get the port the server listens on.
+	 */
+	public int getPort()
+	{
+		return (this.m_serverSocket.getLocalPort());
+	}
+
+	/*
+	 * Publish a frame from the store.  The server takes its own reference, so the caller keeps its.
+	 */
+	public synchronized void publish(final FrameStore.Frame frame)
+	{
+		frame.retain();
+		replace(frame, null, frame.getWidth(), frame.getHeight());
+	}
+
+	/*
+	 * Publish top-down pixels, which the server keeps; the caller must not change them afterwards.
+	 */
+	public synchronized void publish(final byte[] pixels, final int width, final int height)
+	{
+		replace(null, pixels, width, height);
+	}
+
+	/*
+	 * Publish the frames of a flight recording on background thread, at the pace they were recorded.
+	 */
+	public void replay(final InputStream in)
+	{
+		Thread threadReplay = new Thread("PreviewStreamReplay")
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					final long[] start = {-1, 0};
+					FlightRecorder.play(in, new FlightRecorder.FrameHandler()
+					{
+						@Override
+						public void onFrame(final long uptime, final int width, final int height, final int score,
+								final byte[] pixels)
+						{
+							if (!PreviewStreamServer.this.m_running)
+							{
+								return;
+							}
+							if (start[0] < 0)
+							{
+								start[0] = uptime;
+								start[1] = SystemClock.uptimeMillis();
+							}
+							final long delay = (uptime - start[0]) - (SystemClock.uptimeMillis() - start[1]);
+							if (delay > 0)
+							{
+								SystemClock.sleep(delay);
+							}
+							publish(pixels.clone(), width, height);
+						}
+					});
+				}
+				catch (IOException ioe)
+				{
+					Log.e(TAG, "Could not replay recording " + ioe.getMessage());
+				}
+				finally
+				{
+					try
+					{
+						in.close();
+					}
+					catch (IOException ioe)
+					{
+						Log.e(TAG, "Could not close recording " + ioe.getMessage());
+					}
+				}
+			}
+		};
+		threadReplay.setDaemon(true);
+		threadReplay.start();
+	}
+
+	/*
+	 * Stop listening, disconnect the clients and release the newest frame.
+	 */
+	public void stop()
+	{
+		this.m_running = false;
+		try
+		{
+			this.m_serverSocket.close();
+		}
+		catch (IOException ioe)
+		{
+			Log.e(TAG, "Could not close server socket " + ioe.getMessage());
+		}
+
+		final ArrayList<ClientThread> clients;
+		synchronized (this.m_clients)
+		{
+			clients = new ArrayList<ClientThread>(this.m_clients);
+		}
+		for (ClientThread client : clients)
+		{
+			client.close();
+		}
+
+		synchronized (this)
+		{
+			replace(null, null, 0, 0);
+			notifyAll();
+		}
+	}
+
+	/* *********************************************************************************************
+	 * PRIVATE METHODS
+	 ******************************************************************************************** */
+
+	/*
+	 * Make a frame the newest, releasing the one before, and wake the clients.
+	 */
+	private void replace(final FrameStore.Frame frame, final byte[] pixels, final int width, final int height)
+	{
+		if (this.m_frame != null)
+		{
+			this.m_frame.release();
+		}
+		this.m_frame  = frame;
+		this.m_pixels = pixels;
+		this.m_width  = width;
+		this.m_height = height;
+		this.m_sequence++;
+		notifyAll();
+	}
+
+	/*
+	 * Wait for a frame newer than a sequence number and copy it top-down into an array of at least
+	 * width * height bytes, returning its sequence number, or -1 if the server stopped.  The size of
+	 * the frame is left in size[].
+	 */
+	private int takeFrame(final int after, final byte[][] target, final int[] size) throws InterruptedException
+	{
+		final FrameStore.Frame frame;
+		final byte[]           pixels;
+		final int              sequence;
+		synchronized (this)
+		{
+			while (this.m_running && ((this.m_sequence == after) || ((this.m_frame == null) && (this.m_pixels == null))))
+			{
+				wait(WAIT_MILLIS);
+			}
+			if (!this.m_running)
+			{
+				return (-1);
+			}
+			frame    = this.m_frame;
+			pixels   = this.m_pixels;
+			sequence = this.m_sequence;
+			size[0]  = this.m_width;
+			size[1]  = this.m_height;
+			if (frame != null)
+			{
+				frame.retain();
+			}
+		}
+
+		/* Copy outside the lock, so that publishing never waits for a client. */
+		final int width  = size[0];
+		final int height = size[1];
+		if ((target[0] == null) || (target[0].length < width * height))
+		{
+			target[0] = new byte[width * height];
+		}
+		if (frame != null)
+		{
+			try
+			{
+				final ByteBuffer view   = frame.view();
+				final int        stride = frame.getStride();
+				for (int y = 0; y < height; y++)
+				{
+					final int row = frame.isBottomUp() ? (height - 1 - y) : y;
+					view.position(row * stride);
+					view.get(target[0], y * width, width);
+				}
+			}
+			finally
+			{
+				frame.release();
+			}
+		}
+		else
+		{
+			System.arraycopy(pixels, 0, target[0], 0, width * height);
+		}
+		return (sequence);
+	}
+
+	/*
+	 * Accept clients until stopped, refusing those beyond MAX_CLIENTS.
+	 */
+	private void accept()
+	{
+		while (this.m_running)
+		{
+			final Socket socket;
+			try
+			{
+				socket = this.m_serverSocket.accept();
+			}
+			catch (IOException ioe)
+			{
+				if (this.m_running)
+				{
+					Log.e(TAG, "Could not accept client " + ioe.getMessage());
+				}
+				break;
+			}
+
+			synchronized (this.m_clients)
+			{
+				if (!this.m_running || (this.m_clients.size() >= MAX_CLIENTS))
+				{
+					closeQuietly(socket);
+					continue;
+				}
+				final ClientThread client = new ClientThread(socket);
+				this.m_clients.add(client);
+				client.start();
+			}
+		}
+	}
+
+	private static void closeQuietly(final Socket socket)
+	{
+		try
+		{
+			socket.close();
+		}
+		catch (IOException ioe)
+		{
+			Log.e(TAG, "Could not close client socket " + ioe.getMessage());
+		}
+	}
+
+	/* *********************************************************************************************
+	 * PRIVATE CLASSES
+	 ******************************************************************************************** */
+
+	/*
+	 * Sends the newest frame to one client each time the last one has been written.
+	 */
+	private class ClientThread extends Thread
+	{
+		private final Socket   m_socket;
+		private final Deflater m_deflater = new Deflater(Deflater.BEST_SPEED);
+
+		/* The frame being sent, the frame last sent, the payload and the deflated payload. */
+		private final byte[][] m_current  = new byte[1][];
+		private byte[]         m_previous;
+		private byte[]         m_payload  = new byte[0];
+		private byte[]         m_deflated = new byte[0];
+
+		ClientThread(final Socket socket)
+		{
+			super("PreviewStreamClient");
+			this.m_socket = socket;
+			setDaemon(true);
+		}
+
+		@Override
+		public void run()
+		{
+			android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_BACKGROUND);
+			int sent    = 0;
+			int skipped = 0;
+			try
+			{
+				if (!checkHandshake())
+				{
+					Log.w(TAG, "Client " + this.m_socket.getInetAddress() + " refused");
+					return;
+				}
+				this.m_socket.setTcpNoDelay(true);
+				final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(this.m_socket.getOutputStream()));
+				out.write(MAGIC);
+				out.write(VERSION);
+				out.flush();
+
+				final int[] size          = new int[2];
+				int         lastSequence  = 0;
+				int         lastWidth     = 0;
+				int         lastHeight    = 0;
+				int         sinceKeyframe = 0;
+				while (true)
+				{
+					final int sequence = takeFrame(lastSequence, this.m_current, size);
+					if (sequence < 0)
+					{
+						break;
+					}
+					if (sent > 0)
+					{
+						skipped += sequence - lastSequence - 1;
+					}
+					final int width  = size[0];
+					final int height = size[1];
+					final int count  = width * height;
+
+					/* Send a whole frame periodically and whenever the size changes. */
+					final boolean keyframe = (this.m_previous == null) || (width != lastWidth)
+							|| (height != lastHeight) || (sinceKeyframe >= KEYFRAME_INTERVAL);
+					final byte[] current = this.m_current[0];
+					byte[]       payload = current;
+					if (!keyframe)
+					{
+						if (this.m_payload.length < count)
+						{
+							this.m_payload = new byte[count];
+						}
+						payload = this.m_payload;
+						for (int i = 0; i < count; i++)
+						{
+							payload[i] = (byte)(current[i] - this.m_previous[i]);
+						}
+					}
+					final int length = deflate(payload, count);
+
+					out.writeByte(keyframe ? TYPE_KEYFRAME : TYPE_DELTA);
+					out.writeInt(sequence);
+					out.writeShort(width);
+					out.writeShort(height);
+					out.writeInt(length);
+					out.write(this.m_deflated, 0, length);
+					out.flush();
+
+					/* Keep this frame as the reference, reusing the old reference for the next frame. */
+					this.m_current[0] = this.m_previous;
+					this.m_previous   = current;
+					sinceKeyframe     = keyframe ? 1 : (sinceKeyframe + 1);
+					lastSequence      = sequence;
+					lastWidth         = width;
+					lastHeight        = height;
+					sent++;
+				}
+			}
+			catch (IOException ioe)
+			{
+				/* The client went away. */
+			}
+			catch (InterruptedException ie)
+			{
+				/* The server stopped. */
+			}
+			finally
+			{
+				this.m_deflater.end();
+				close();
+				synchronized (PreviewStreamServer.this.m_clients)
+				{
+					PreviewStreamServer.this.m_clients.remove(this);
+				}
+				Log.i(TAG, "Client disconnected after " + sent + " frames, " + skipped + " skipped");
+			}
+		}
+
+		void close()
+		{
+			closeQuietly(this.m_socket);
+		}
+
+		/*
+		 * Read the client's greeting and determine whether it presents the token in time.
+		 */
+		private boolean checkHandshake() throws IOException
+		{
+			this.m_socket.setSoTimeout(HANDSHAKE_TIMEOUT_MILLIS);
+			final DataInputStream in    = new DataInputStream(this.m_socket.getInputStream());
+			final byte[]          magic = new byte[MAGIC.length];
+			in.readFully(magic);
+			if (!Arrays.equals(magic, MAGIC) || (in.readUnsignedByte() != VERSION))
+			{
+				return (false);
+			}
+			final byte[] token = new byte[in.readUnsignedByte()];
+			in.readFully(token);
+			this.m_socket.setSoTimeout(0);
+
+			/* Compare in constant time, so the token cannot be guessed a byte at a time. */
+			return (MessageDigest.isEqual(token, PreviewStreamServer.this.m_token));
+		}
+
+		/*
+		 * Deflate the first count bytes of a payload into m_deflated, returning the deflated length.
+		 */
+		private int deflate(final byte[] payload, final int count)
+		{
+			this.m_deflater.reset();
+			this.m_deflater.setInput(payload, 0, count);
+			this.m_deflater.finish();
+			int length = 0;
+			while (!this.m_deflater.finished())
+			{
+				if (length == this.m_deflated.length)
+				{
+					final byte[] deflated = new byte[Math.max(4096, 2 * this.m_deflated.length)];
+					System.arraycopy(this.m_deflated, 0, deflated, 0, length);
+					this.m_deflated = deflated;
+				}
+				length += this.m_deflater.deflate(this.m_deflated, length, this.m_deflated.length - length);
+			}
+			return (length);
+		}
+	}
+}
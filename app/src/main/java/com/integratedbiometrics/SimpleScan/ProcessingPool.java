@@ -0,0 +1,136 @@
+/* *************************************************************************************************
+ * ProcessingPool.java
+ *
+ * DESCRIPTION:
+ *     Shared worker pool for CPU-bound image processing in SimpleScan demo app for IBScanUltimate
+ *     http://www.integratedbiometrics.com
+ *
+ * NOTES:
+ *     Copyright (c) Integrated Biometrics, 2012-2013
+ *
+ * HISTORY:
+ *     2026/10/19  First version.
+************************************************************************************************ */
+
+package com.integratedbiometrics.ibsimplescan;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A process-wide pool of worker threads, one per core, used to split image processing work
+ * (descriptor extraction, comparison, encoding) across the available CPUs.  The threads are
+ * daemon threads at background priority so that they never keep the app alive or compete with
+ * the UI thread.
+ */
+final class ProcessingPool
+{
+	/* *********************************************************************************************
+	 * PRIVATE FIELDS
+	 ******************************************************************************************** */
+
+	/* The number of worker threads. */
+	private static final int       PARALLELISM = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+	/* The executor, created on first use. */
+	private static ExecutorService s_executor;
+
+	/* *********************************************************************************************
+	 * PUBLIC METHODS
+	 ******************************************************************************************** */
+
+	private ProcessingPool()
+	{
+	}
+
+	/*
+	 * Get the number of worker threads.
+	 */
+	static int getParallelism()
+	{
+		return (PARALLELISM);
+	}
+
+	/*
+	 * Get the shared executor.
+	 */
+	static synchronized ExecutorService getExecutor()
+	{
+		if (s_executor == null)
+		{
+			final AtomicInteger threadCount = new AtomicInteger();
+			s_executor = Executors.newFixedThreadPool(PARALLELISM, new ThreadFactory()
+			{
+				@Override
+				public Thread newThread(final Runnable r)
+				{
+					final Thread t = new Thread(new Runnable()
+					{
+						@Override
+						public void run()
+						{
+							android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_BACKGROUND);
+							r.run();
+						}
+					}, "ProcessingPool-" + threadCount.incrementAndGet());
+					t.setDaemon(true);
+					return (t);
+				}
+			});
+		}
+		return (s_executor);
+	}
+
+	/*
+	 * Run the tasks on the pool and return their results in submission order.  The calling thread
+	 * blocks until all tasks are done.  A failure in any task is rethrown as an unchecked exception.
+	 */
+	static <T> List<T> invokeAll(final List<Callable<T>> tasks) throws InterruptedException
+	{
+		final List<T> results = new ArrayList<T>(tasks.size());
+
+		/* A single task is not worth the hand-off. */
+		if (tasks.size() == 1)
+		{
+			try
+			{
+				results.add(tasks.get(0).call());
+			}
+			catch (RuntimeException re)
+			{
+				throw re;
+			}
+			catch (Exception e)
+			{
+				throw new RuntimeException(e);
+			}
+			return (results);
+		}
+
+		final List<Future<T>> futures = getExecutor().invokeAll(tasks);
+		for (Future<T> future : futures)
+		{
+			try
+			{
+				results.add(future.get());
+			}
+			catch (ExecutionException ee)
+			{
+				final Throwable cause = ee.getCause();
+				if (cause instanceof RuntimeException)
+				{
+					throw (RuntimeException)cause;
+				}
+				throw new RuntimeException(cause);
+			}
+		}
+		return (results);
+	}
+}
@@ -0,0 +1,239 @@
+/* *************************************************************************************************
+ * RollingTracker.java
+ *
+ * DESCRIPTION:
+ *     Asynchronous tracking of the rolling line for SimpleScan demo app for IBScanUltimate
+ *     http://www.integratedbiometrics.com
+ *
+ * NOTES:
+ *     Copyright (c) Integrated Biometrics, 2012-2013
+ *
+ * HISTORY:
+ *     2026/10/19  First version.
+************************************************************************************************ */
+
+package com.integratedbiometrics.ibsimplescan;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.integratedbiometrics.ibscanultimate.IBScanDevice;
+import com.integratedbiometrics.ibscanultimate.IBScanDevice.RollingData;
+import com.integratedbiometrics.ibscanultimate.IBScanDevice.RollingState;
+import com.integratedbiometrics.ibscanultimate.IBScanException;
+
+/**
+ * Keeps the rolling state of a roll capture up to date without blocking the preview callback.  Each
+ * preview frame asks for a fresh reading and immediately gets the latest one; the reading itself
+ * (getRollingInfo(), a round trip to the scanner) is made on a worker thread, at most one at a
+ * time.  Successive readings give the speed and direction of the rolling line, and a roll that is
+ * too fast is flagged while it is still in progress.
+ */
+public class RollingTracker
+{
+	/* *********************************************************************************************
+	 * PUBLIC CLASSES
+	 ******************************************************************************************** */
+
+	/*
+	 * One reading of the rolling state.
+	 */
+	public static class Snapshot
+	{
+		/* The rolling state and the position of the rolling line (negative if none). */
+		public final RollingState rollingState;
+		public final int          rollingLineX;
+
+		/* The smoothed speed of the rolling line in pixels per second; positive to the right. */
+		public final float        speed;
+
+		/* The direction of the roll: -1 left, 1 right, 0 not moving or unknown. */
+		public final int          direction;
+
+		/* Whether the line is moving faster than a good roll. */
+		public final boolean      tooFast;
+
+		/* The time of the reading, from SystemClock.uptimeMillis(). */
+		public final long         timeMillis;
+
+		Snapshot(final RollingState rollingState, final int rollingLineX, final float speed,
+				final int direction, final boolean tooFast, final long timeMillis)
+		{
+			this.rollingState = rollingState;
+			this.rollingLineX = rollingLineX;
+			this.speed        = speed;
+			this.direction    = direction;
+			this.tooFast      = tooFast;
+			this.timeMillis   = timeMillis;
+		}
+	}
+
+	/* *********************************************************************************************
+	 * PRIVATE CONSTANTS
+	 ******************************************************************************************** */
+
+	/* The tag for log messages. */
+	private static final String TAG             = "RollingTracker";
+
+	/* The fastest good roll, in pixels per second at 500 ppi (two inches per second). */
+	private static final float  MAX_SPEED       = 1000.0f;
+
+	/* The slowest movement that counts as rolling, in pixels per second. */
+	private static final float  MIN_SPEED       = 20.0f;
+
+	/* The weight of the newest reading in the smoothed speed. */
+	private static final float  SMOOTHING       = 0.5f;
+
+	/* *********************************************************************************************
+	 * PRIVATE FIELDS
+	 ******************************************************************************************** */
+
+	/* The worker thread that reads the rolling state. */
+	private final ExecutorService  m_worker;
+
+	/* Whether a reading has been requested and not yet made. */
+	private final AtomicBoolean    m_pending = new AtomicBoolean();
+
+	/* The scanner being tracked, or null if tracking is stopped. */
+	private volatile IBScanDevice  m_device;
+
+	/* The latest reading, or null if there is none for this roll. */
+	private volatile Snapshot      m_latest;
+
+	/* Whether the too-fast warning has been given for this roll. */
+	private volatile boolean       m_warned;
+
+	/* *********************************************************************************************
+	 * CONSTRUCTOR
+	 ******************************************************************************************** */
+
+	public RollingTracker()
+	{
+		this.m_worker = Executors.newSingleThreadExecutor(new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(final Runnable r)
+			{
+				final Thread t = new Thread(r, "RollingTracker");
+				t.setDaemon(true);
+				return (t);
+			}
+		});
+	}
+
+	/* *********************************************************************************************
+	 * PUBLIC METHODS
+	 ******************************************************************************************** */
+
+	/*
+	 * Start tracking a roll on a scanner.
+	 */
+	public void start(final IBScanDevice device)
+	{
+		this.m_latest = null;
+		this.m_warned = false;
+		this.m_device = device;
+	}
+
+	/*
+	 * Stop tracking.  A reading in progress is discarded.
+	 */
+	public void stop()
+	{
+		this.m_device = null;
+		this.m_latest = null;
+	}
+
+	/*
+	 * Ask for a fresh reading and return the latest one, or null if there is none yet.  Never
+	 * blocks.
+	 */
+	public Snapshot onFrame()
+	{
+		if ((this.m_device != null) && this.m_pending.compareAndSet(false, true))
+		{
+			this.m_worker.execute(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					try
+					{
+						read();
+					}
+					finally
+					{
+						RollingTracker.this.m_pending.set(false);
+					}
+				}
+			});
+		}
+		return (this.m_latest);
+	}
+
+	/*
+	 * Return true once per roll, the first time the roll is found to be too fast.
+	 */
+	public boolean takeTooFastWarning()
+	{
+		final Snapshot latest = this.m_latest;
+		if ((latest != null) && latest.tooFast && !this.m_warned)
+		{
+			this.m_warned = true;
+			return (true);
+		}
+		return (false);
+	}
+
+	/* *********************************************************************************************
+	 * PRIVATE METHODS
+	 ******************************************************************************************** */
+
+	/*
+	 * Read the rolling state and derive the line's speed from the previous reading.
+	 */
+	private void read()
+	{
+		final IBScanDevice device = this.m_device;
+		if (device == null)
+		{
+			return;
+		}
+
+		final RollingData data;
+		try
+		{
+			data = device.getRollingInfo();
+		}
+		catch (IBScanException ibse)
+		{
+			Log.e(TAG, "failure getting rolling line " + ibse.getType().toString());
+			return;
+		}
+		final long now = SystemClock.uptimeMillis();
+
+		/* Speed is measured only while the line moves during acquisition. */
+		final Snapshot previous = this.m_latest;
+		float speed = 0.0f;
+		if ((previous != null) && (now > previous.timeMillis)
+				&& (data.rollingState == RollingState.TAKE_ACQUISITION) && (data.rollingLineX >= 0)
+				&& (previous.rollingState == RollingState.TAKE_ACQUISITION) && (previous.rollingLineX >= 0))
+		{
+			final float instant = 1000.0f * (data.rollingLineX - previous.rollingLineX) / (now - previous.timeMillis);
+			speed = previous.speed + SMOOTHING * (instant - previous.speed);
+		}
+		final int direction = (speed > MIN_SPEED) ? 1 : ((speed < -MIN_SPEED) ? -1 : 0);
+
+		/* Drop the reading if tracking stopped while it was being made. */
+		if (this.m_device == device)
+		{
+			this.m_latest = new Snapshot(data.rollingState, data.rollingLineX, speed, direction,
+					Math.abs(speed) > MAX_SPEED, now);
+		}
+	}
+}
@@ -0,0 +1,81 @@
+/* *************************************************************************************************
+ * ScannerOwnership.java
+ *
+ * DESCRIPTION:
+ *     Arbitration of the scanners between the activity and the capture service for SimpleScan demo
+ *     app for IBScanUltimate
+ *     http://www.integratedbiometrics.com
+ *
+ * NOTES:
+ *     Copyright (c) Integrated Biometrics, 2012-2013
+ *
+ * HISTORY:
+ *     2026/10/19  First version.
+************************************************************************************************ */
+
+package com.integratedbiometrics.ibsimplescan;
+
+/**
+ * Decides whether the activity or the capture service may open scanners.  Both share the process
+ * and the SDK's single IBScan instance, and neither can use a scanner the other has opened, so
+ * each claims ownership before opening a scanner and gives it up after closing it.  A claim while
+ * the other owns the scanners is refused, and the refused party reports the scanner as busy instead
+ * of racing the owner in openDevice().
+ */
+final class ScannerOwnership
+{
+	/* *********************************************************************************************
+	 * PRIVATE FIELDS
+	 ******************************************************************************************** */
+
+	/* The owner of the scanners and its description, or null if none. */
+	private static Object s_owner;
+	private static String s_ownerName;
+
+	/* *********************************************************************************************
+	 * CONSTRUCTOR
+	 ******************************************************************************************** */
+
+	private ScannerOwnership()
+	{
+	}
+
+	/* *********************************************************************************************
+	 * PUBLIC METHODS
+	 ******************************************************************************************** */
+
+	/*
+	 * Claim the scanners for an owner, returning false if another owner holds them.  Claiming again
+	 * for the current owner succeeds.
+	 */
+	static synchronized boolean acquire(final Object owner, final String name)
+	{
+		if ((s_owner != null) && (s_owner != owner))
+		{
+			return (false);
+		}
+		s_owner     = owner;
+		s_ownerName = name;
+		return (true);
+	}
+
+	/*
+	 * Give up the scanners, if an owner holds them.
+	 */
+	static synchronized void release(final Object owner)
+	{
+		if (s_owner == owner)
+		{
+			s_owner     = null;
+			s_ownerName = null;
+		}
+	}
+
+	/*
+	 * Describe the owner of the scanners, or get null if none.
+	 */
+	static synchronized String getOwnerName()
+	{
+		return (s_ownerName);
+	}
+}
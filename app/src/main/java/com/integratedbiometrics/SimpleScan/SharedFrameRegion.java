@@ -0,0 +1,362 @@
+/* *************************************************************************************************
+ * SharedFrameRegion.java
+ *
+ * DESCRIPTION:
+ *     Shared-memory region of image frames for SimpleScan demo app for IBScanUltimate
+ *     http://www.integratedbiometrics.com
+ *
+ * NOTES:
+ *     Copyright (c) Integrated Biometrics, 2012-2013
+ *
+ * HISTORY:
+ *     2026/10/19  First version.
+************************************************************************************************ */
+
+package com.integratedbiometrics.ibsimplescan;
+
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import android.os.Build;
+import android.os.MemoryFile;
+import android.os.ParcelFileDescriptor;
+
+import com.integratedbiometrics.ibscanultimate.IBScanDevice.ImageData;
+
+/**
+ * A region of shared memory through which the capture service hands frames to client processes
+ * without copying them through parcels.  The region holds a header and a fixed number of slots,
+ * each big enough for the largest image of the scanner: PREVIEW_SLOTS slots that preview frames
+ * cycle through, and one slot for the result image.  The service writes a frame into a slot and
+ * then tells its client the slot and the frame's sequence number through a one-way callback; the
+ * client maps the region once and reads the slot in place.
+ *
+ * Each slot starts with its sequence number, which is odd while the slot is being written, so a
+ * client that reads the same even sequence number before and after copying a frame knows the frame
+ * was not overwritten meanwhile.  A client that falls behind simply finds a newer sequence number
+ * and skips the frame.  Pixels are 8-bit and top-down; all numbers are big-endian.
+ *
+ *     header: "IBSF"  version (int)  slot count (int)  slot size (int)  max width (int)  max height (int)
+ *     slot:   sequence (long)  width (int)  height (int)  resolution (int)  frame time (float, ms)  pixels
+ *
+ * SharedMemory, which would hand out the region directly, needs API 27; below it the region is an
+ * ashmem MemoryFile whose descriptor is duplicated for the client.  The descriptor is reached
+ * through a hidden method, which later releases may block, so the region is only offered up to
+ * MAX_SUPPORTED_SDK; callers check isSupported() and report the service unavailable beyond it.
+ */
+public class SharedFrameRegion
+{
+	/* *********************************************************************************************
+	 * PUBLIC CONSTANTS
+	 ******************************************************************************************** */
+
+	/* The number of preview slots, and the slot of the result image. */
+	public static final int PREVIEW_SLOTS = 3;
+	public static final int RESULT_SLOT   = PREVIEW_SLOTS;
+
+	/* *********************************************************************************************
+	 * PRIVATE CONSTANTS
+	 ******************************************************************************************** */
+
+	/* The magic number and version of the region. */
+	private static final byte[] MAGIC            = {'I', 'B', 'S', 'F'};
+	private static final int    VERSION          = 1;
+
+	/* The sizes of the region header and of each slot header. */
+	private static final int    HEADER_SIZE      = 24;
+	private static final int    SLOT_HEADER_SIZE = 24;
+
+	/* The last release known to let apps reach MemoryFile's hidden getFileDescriptor(). */
+	private static final int    MAX_SUPPORTED_SDK = 27;
+
+	/* *********************************************************************************************
+	 * PUBLIC CLASSES
+	 ******************************************************************************************** */
+
+	/*
+	 * A frame copied out of a slot.
+	 */
+	public static class Frame
+	{
+		/* The sequence number of the frame. */
+		public final long   sequence;
+
+		/* The size and resolution of the image, and its SDK frame time in milliseconds. */
+		public final int    width;
+		public final int    height;
+		public final int    resolution;
+		public final float  frameTime;
+
+		/* The pixels, top-down. */
+		public final byte[] pixels;
+
+		Frame(final long sequence, final int width, final int height, final int resolution, final float frameTime,
+				final byte[] pixels)
+		{
+			this.sequence   = sequence;
+			this.width      = width;
+			this.height     = height;
+			this.resolution = resolution;
+			this.frameTime  = frameTime;
+			this.pixels     = pixels;
+		}
+	}
+
+	/*
+	 * The client's view of a region, mapped from the descriptor the service hands out.
+	 */
+	public static class Reader
+	{
+		private final ByteBuffer m_region;
+		private final int        m_slotCount;
+		private final int        m_slotSize;
+
+		public Reader(final ParcelFileDescriptor descriptor, final int size) throws IOException
+		{
+			final FileInputStream in = new FileInputStream(descriptor.getFileDescriptor());
+			try
+			{
+				this.m_region = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size);
+			}
+			finally
+			{
+				in.close();
+			}
+			if ((this.m_region.get(0) != MAGIC[0]) || (this.m_region.get(1) != MAGIC[1])
+					|| (this.m_region.get(2) != MAGIC[2]) || (this.m_region.get(3) != MAGIC[3])
+					|| (this.m_region.getInt(4) != VERSION))
+			{
+				throw new IOException("not a frame region");
+			}
+			this.m_slotCount = this.m_region.getInt(8);
+			this.m_slotSize  = this.m_region.getInt(12);
+		}
+
+		/*
+		 * Copy the frame in a slot, or return null if the slot no longer holds the frame with the
+		 * given sequence number.  The pixel array is reused if it is large enough.
+		 */
+		public Frame read(final int slot, final long sequence, byte[] pixels)
+		{
+			if ((slot < 0) || (slot >= this.m_slotCount))
+			{
+				return (null);
+			}
+			final ByteBuffer region = this.m_region.duplicate();
+			final int        start  = HEADER_SIZE + slot * this.m_slotSize;
+			if (region.getLong(start) != sequence)
+			{
+				return (null);
+			}
+			final int   width      = region.getInt(start + 8);
+			final int   height     = region.getInt(start + 12);
+			final int   resolution = region.getInt(start + 16);
+			final float frameTime  = region.getFloat(start + 20);
+			final int   size       = width * height;
+			if ((size < 0) || (size > this.m_slotSize - SLOT_HEADER_SIZE))
+			{
+				return (null);
+			}
+			if ((pixels == null) || (pixels.length < size))
+			{
+				pixels = new byte[size];
+			}
+			region.position(start + SLOT_HEADER_SIZE);
+			region.get(pixels, 0, size);
+			if (region.getLong(start) != sequence)
+			{
+				return (null);
+			}
+			return (new Frame(sequence, width, height, resolution, frameTime, pixels));
+		}
+	}
+
+	/* *********************************************************************************************
+	 * PRIVATE FIELDS
+	 ******************************************************************************************** */
+
+	/* The shared memory, and the size of each slot. */
+	private final MemoryFile m_memory;
+	private final int        m_slotSize;
+
+	/* The next preview slot, and the last sequence number written. */
+	private int              m_nextPreviewSlot;
+	private long             m_sequence;
+
+	/* Work buffers for slot headers and for turning frames upright. */
+	private final ByteBuffer m_slotHeader    = ByteBuffer.allocate(SLOT_HEADER_SIZE);
+	private final byte[]     m_sequenceBytes = new byte[8];
+	private byte[]           m_upright;
+
+	/* *********************************************************************************************
+	 * CONSTRUCTOR
+	 ******************************************************************************************** */
+
+	/*
+	 * Create a region for images up to the given size.
+	 */
+	public SharedFrameRegion(final String name, final int maxWidth, final int maxHeight) throws IOException
+	{
+		this.m_slotSize = SLOT_HEADER_SIZE + maxWidth * maxHeight;
+		this.m_memory   = new MemoryFile(name, HEADER_SIZE + (PREVIEW_SLOTS + 1) * this.m_slotSize);
+		this.m_memory.allowPurging(false);
+
+		final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.put(MAGIC);
+		header.putInt(VERSION);
+		header.putInt(PREVIEW_SLOTS + 1);
+		header.putInt(this.m_slotSize);
+		header.putInt(maxWidth);
+		header.putInt(maxHeight);
+		this.m_memory.writeBytes(header.array(), 0, 0, HEADER_SIZE);
+	}
+
+	/* *********************************************************************************************
+	 * PUBLIC METHODS
+	 ******************************************************************************************** */
+
+	/*
+	 * Determine whether regions can be shared with clients on this release.
+	 */
+	public static boolean isSupported()
+	{
+		return (Build.VERSION.SDK_INT <= MAX_SUPPORTED_SDK);
+	}
+
+	/*
+	 * Get the size of the region, which clients need to map it.
+	 */
+	public int getSize()
+	{
+		return (this.m_memory.length());
+	}
+
+	/*
+	 * Get a descriptor of the region to hand to a client.  MemoryFile only exposes its descriptor
+	 * through a hidden method below API 27, so it is reached by reflection, and only on releases
+	 * where isSupported().
+	 */
+	public ParcelFileDescriptor getDescriptor() throws IOException
+	{
+		if (!isSupported())
+		{
+			throw new IOException("sharing memory is not supported on API " + Build.VERSION.SDK_INT);
+		}
+		final Method method;
+		try
+		{
+			method = MemoryFile.class.getDeclaredMethod("getFileDescriptor");
+			method.setAccessible(true);
+		}
+		catch (Exception e)
+		{
+			throw new IOException("MemoryFile hides its descriptor on API " + Build.VERSION.SDK_INT, e);
+		}
+		try
+		{
+			return (ParcelFileDescriptor.dup((FileDescriptor)method.invoke(this.m_memory)));
+		}
+		catch (Exception e)
+		{
+			throw new IOException("could not share memory", e);
+		}
+	}
+
+	/*
+	 * Write a preview frame into the next preview slot, returning the slot.  The frame's sequence
+	 * number is then getSequence().
+	 */
+	public synchronized int writePreview(final ImageData image) throws IOException
+	{
+		final int slot = this.m_nextPreviewSlot;
+		this.m_nextPreviewSlot = (slot + 1) % PREVIEW_SLOTS;
+		write(slot, image);
+		return (slot);
+	}
+
+	/*
+	 * Write the result image into the result slot.
+	 */
+	public synchronized int writeResult(final ImageData image) throws IOException
+	{
+		write(RESULT_SLOT, image);
+		return (RESULT_SLOT);
+	}
+
+	/*
+	 * Get the sequence number of the last frame written.
+	 */
+	public synchronized long getSequence()
+	{
+		return (this.m_sequence);
+	}
+
+	public void close()
+	{
+		this.m_memory.close();
+	}
+
+	/* *********************************************************************************************
+	 * PRIVATE METHODS
+	 ******************************************************************************************** */
+
+	/*
+	 * Write a frame into a slot, marking the slot as being written meanwhile.
+	 */
+	private void write(final int slot, final ImageData image) throws IOException
+	{
+		final int size = image.width * image.height;
+		if (size > this.m_slotSize - SLOT_HEADER_SIZE)
+		{
+			throw new IOException("frame larger than slot");
+		}
+		final int start = HEADER_SIZE + slot * this.m_slotSize;
+
+		/* Mark the slot as being written. */
+		this.m_sequence += 2;
+		putSequence(start, this.m_sequence - 1);
+
+		/* Write the pixels top-down in one copy, turning them upright first if necessary. */
+		final int stride = Math.max(Math.abs(image.pitch), image.width);
+		if (image.pitch == image.width)
+		{
+			this.m_memory.writeBytes(image.buffer, 0, start + SLOT_HEADER_SIZE, size);
+		}
+		else
+		{
+			if ((this.m_upright == null) || (this.m_upright.length < size))
+			{
+				this.m_upright = new byte[size];
+			}
+			for (int y = 0; y < image.height; y++)
+			{
+				final int row = (image.pitch < 0) ? (image.height - 1 - y) : y;
+				System.arraycopy(image.buffer, row * stride, this.m_upright, y * image.width, image.width);
+			}
+			this.m_memory.writeBytes(this.m_upright, 0, start + SLOT_HEADER_SIZE, size);
+		}
+
+		/* Write the header, which publishes the frame. */
+		this.m_slotHeader.clear();
+		this.m_slotHeader.putLong(this.m_sequence);
+		this.m_slotHeader.putInt(image.width);
+		this.m_slotHeader.putInt(image.height);
+		this.m_slotHeader.putInt((int)Math.round(image.resolutionX));
+		this.m_slotHeader.putFloat((float)(image.frameTime * 1000));
+		this.m_memory.writeBytes(this.m_slotHeader.array(), 8, start + 8, SLOT_HEADER_SIZE - 8);
+		putSequence(start, this.m_sequence);
+	}
+
+	private void putSequence(final int start, final long sequence) throws IOException
+	{
+		for (int i = 0; i < 8; i++)
+		{
+			this.m_sequenceBytes[i] = (byte)(sequence >>> (56 - 8 * i));
+		}
+		this.m_memory.writeBytes(this.m_sequenceBytes, 0, start, 8);
+	}
+}
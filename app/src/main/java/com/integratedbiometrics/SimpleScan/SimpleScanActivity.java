@@ -23,17 +23,46 @@
  *     2015/12/11  Updated for IBScanUltimate v1.9.0.
  *     2016/01/21  Updated for IBScanUltimate v1.9.2.
  *     2016/09/22  Updated for IBScanUltimate v1.9.4.
+ *     2026/10/19  Added in-session duplicate finger detection on captured segments.
+ *                 Added on-device minutiae extraction and e-mailing of ISO 19794-2 templates.
+ *                 Added on-device 1:N identification against a memory-mapped watch-list gallery.
+ *                 Added pattern classification of captured fingers to order the watch-list search.
+ *                 Added predicted NFIQ of preview frames to the frame time field.
+ *                 Added early manual capture once the preview quality of flat prints stops improving.
+ *                 Replaced per-frame model name checks with a capability profile resolved on open.
+ *                 Added a persistent cache of capture availability, re-validated in the background.
+ *                 Coalesced bursts of device count changes into one refresh of changed devices only.
+ *                 Moved rolling line reads off the preview callback and added a too-fast roll warning.
+ *                 Added a pooled direct-buffer frame store shared by preview frame consumers.
+ *                 Added a flight recorder of recent frames and events, dumped on errors or on demand.
+ *                 Replaced the enlarged image bitmap with a tiled pyramid viewer with pan and zoom.
+ *                 Kept segment positions of captures as in-place finger views of the captured image.
+ *                 Added e-mailing of the last capture as an ANSI/NIST-ITL transaction with WSQ images.
+ *                 Added e-mailing of ISO 19794-4 finger image records, encoding fingers concurrently.
+ *                 Added a parallel lossless codec for archive masters, working on the SDK buffer.
+ *                 Kept flight recordings in private storage, encrypted with chunked AES-GCM.
+ *                 Added streaming of preview frames to a workstation over TCP, on demand.
+ *                 Added 1000 ppi capture where offered, reducing preview and template work to 500 ppi.
+ *                 Staged startup: SDK loading, tone synthesis and enumeration run after the first frame.
+ *                 Added an asynchronous event log for callbacks, with optional capture of the SDK trace.
+ *                 Replaced the fixed power-save mode with a policy driven by station activity.
+ *                 Recover from communication breaks by re-opening the scanner and resuming capture.
+ *                 Arbitrated the scanners with the capture service, reporting a busy scanner.
+ *                 Limited the preview stream to loopback and a token, and added replay of recordings.
+ *                 Kept e-mailed exports in the private cache, shared through a content provider.
 ************************************************************************************************ */
 
 package com.integratedbiometrics.ibsimplescan;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.OutputStream;
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Vector;
+import java.net.InetAddress;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Locale;
 
 import android.app.Activity;
 import android.app.AlertDialog;
@@ -42,18 +71,18 @@ import android.content.ActivityNotFoundException;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
+import android.content.pm.PackageManager;
 import android.content.res.Configuration;
-import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.Bitmap.CompressFormat;
 import android.graphics.Color;
 import android.hardware.usb.UsbDevice;
 import android.hardware.usb.UsbManager;
-import android.net.Uri;
 import android.os.Bundle;
 import android.os.Environment;
 import android.os.Handler;
 import android.os.Message;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.MenuInflater;
@@ -85,7 +114,6 @@ import com.integratedbiometrics.ibscanultimate.IBScanDevice.ImageResolution;
 import com.integratedbiometrics.ibscanultimate.IBScanDevice.ImageType;
 import com.integratedbiometrics.ibscanultimate.IBScanDevice.PlatenState;
 import com.integratedbiometrics.ibscanultimate.IBScanDevice.PropertyId;
-import com.integratedbiometrics.ibscanultimate.IBScanDevice.RollingData;
 import com.integratedbiometrics.ibscanultimate.IBScanDevice.RollingState;
 import com.integratedbiometrics.ibscanultimate.IBScanDevice.SegmentPosition;
 import com.integratedbiometrics.ibscanultimate.IBScanDeviceListener;
@@ -186,6 +214,66 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 	/* The default file name for images and templates for e-mail. */
 	private static final String FILE_NAME_DEFAULT                = "output";
 
+	/* The resolution assumed for templates when the image does not report one. */
+	private static final int    TEMPLATE_RESOLUTION_DEFAULT      = 500;
+
+	/* The transaction type and agency of ANSI/NIST-ITL transactions. */
+	private static final String ANSI_NIST_TOT                    = "CAR";
+	private static final String ANSI_NIST_AGENCY                 = "IBSIMPLESCAN";
+
+	/* The file name of the watch-list gallery, loaded from external storage at startup. */
+	private static final String GALLERY_FILE_NAME                = "watchlist.gal";
+
+	/* The file name of the capture availability cache, kept in the app's private storage. */
+	private static final String CAPABILITY_CACHE_FILE_NAME       = "capabilities.properties";
+
+	/* The file name of the startup traces, kept in the app's private storage. */
+	private static final String STARTUP_TRACE_FILE_NAME          = "startup.trace";
+
+	/* The directory of event log files, kept in the app's private storage. */
+	private static final String EVENT_LOG_DIRECTORY_NAME         = "events";
+
+	/* The file name of the key of encrypted recordings, kept in the app's private storage. */
+	private static final String STORAGE_KEY_FILE_NAME            = "storage.key";
+
+	/* The number of candidates reported for each identification. */
+	private static final int    IDENTIFY_CANDIDATES              = 5;
+
+	/* The score at which an identification stops searching and reports a hit. */
+	private static final int    IDENTIFY_HIT_SCORE               = 40;
+
+	/* The latency budget for one identification. */
+	private static final int    IDENTIFY_BUDGET_MILLIS           = 500;
+
+	/* The number of rows of a high-resolution image reduced at a time for display. */
+	private static final int    DISPLAY_BAND_ROWS                = 32;
+
+	/* The number of frames held in the frame store. */
+	private static final int    FRAME_STORE_FRAMES               = 6;
+
+	/* The port on which preview frames are streamed to workstations. */
+	private static final int    PREVIEW_STREAM_PORT              = 8765;
+
+	/* The address preview frames are streamed on; workstations reach it through "adb forward". */
+	private static final byte[] PREVIEW_STREAM_ADDRESS           = {127, 0, 0, 1};
+
+	/* The number of random bytes in the token that preview stream clients present. */
+	private static final int    PREVIEW_STREAM_TOKEN_BYTES       = 6;
+
+	/* The request code of sharing an export with an e-mail client. */
+	private static final int    REQUEST_SEND_EXPORT              = 1;
+
+	/* The size of the flight recorder's ring and how far back its dumps reach. */
+	private static final int    FLIGHT_RECORDER_BYTES            = 8 * 1024 * 1024;
+	private static final long   FLIGHT_RECORDER_WINDOW_MILLIS    = 10000;
+
+	/* The directory of flight recorder dumps, kept in the app's private storage. */
+	private static final String FLIGHT_RECORDING_DIRECTORY_NAME  = "recordings";
+
+	/* The file name prefix and extension of flight recorder dumps. */
+	private static final String FLIGHT_RECORDING_PREFIX          = "flight_";
+	private static final String FLIGHT_RECORDING_EXTENSION       = ".ibfr";
+
 	/* The value of AppData.captureType when the capture type has never been set. */
 	private static final int    CAPTURE_TYPE_INVALID             = -1;
 	
@@ -207,6 +295,15 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 	/* The device index which will be initialized. */
 	private static final int    INITIALIZING_DEVICE_INDEX        = 0;
 	
+	/* The name under which the activity owns the scanners, shown to the capture service's clients. */
+	private static final String SCANNER_OWNER_NAME               = "the SimpleScan app";
+	
+	/* The argument of a refresh message whose scanners were listed in the background. */
+	private static final int    REFRESH_LISTED                   = 1;
+	
+	/* The object of a debounced refresh message, so that coalescing removes no other refresh. */
+	private static final Object REFRESH_DEBOUNCE_TOKEN           = new Object();
+	
 	/* The background color of the preview image ImageView. */
 	private static final int    PREVIEW_IMAGE_BACKGROUND         = Color.LTGRAY;
 	
@@ -246,10 +343,17 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 	private Button     m_openScannerBtn;
 	private Button     m_closeScannerBtn;
 	private Button     m_refreshBtn;
-	private Dialog     m_enlargedDialog;
+	private Dialog         m_enlargedDialog;
+	private TiledImageView m_enlargedView;
 	private Bitmap	   m_BitmapImage;
 	private Bitmap	   m_BitmapKojakRollImage;
 	
+	/* 
+	 * A band of rows of a high-resolution image reduced for display, allocated on first use.
+	 */
+	private byte[]     m_displayRow;
+	private int[]      m_displayBand;
+	
 	/* *********************************************************************************************
 	 * PRIVATE FIELDS
 	 ******************************************************************************************** */
@@ -259,7 +363,7 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 	 * the library, for operations like getting the number of scanners (getDeviceCount()) and 
 	 * opening scanners (openDeviceAsync()). 
 	 */
-	private IBScan       m_ibScan;
+	private volatile IBScan m_ibScan;
 
 	/* 
 	 * A handle to the open IBScanDevice (if any) that will be the interface for getting data from
@@ -274,11 +378,152 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 	 */
 	private PlaySound    m_beeper = new PlaySound();
 	
+	/*
+	 * Times the stages of startup, up to the first refresh.
+	 */
+	private StartupTrace m_startupTrace;
+	
+	/*
+	 * Logs events of the scanner callbacks without blocking them, and the SDK's trace while enabled.
+	 */
+	private EventLog     m_eventLog;
+	private boolean      m_sdkTrace;
+	
+	/*
+	 * Checks each capture's segments against earlier captures of the same session.
+	 */
+	private DuplicateFingerDetector m_duplicateDetector = new DuplicateFingerDetector();
+	
+	/*
+	 * Extracts minutiae templates from captured images; sized for the open scanner.
+	 */
+	private MinutiaeExtractor m_minutiaeExtractor;
+	
+	/*
+	 * Classifies captured fingers by pattern; sized for the open scanner.
+	 */
+	private PatternClassifier m_patternClassifier;
+	
+	/*
+	 * Estimates the quality of preview frames during capture; sized for the open scanner.
+	 */
+	private PreviewQualityEstimator m_previewEstimator;
+	
+	/*
+	 * The quality estimate of the last preview frame of the current capture.
+	 */
+	private volatile PreviewQualityEstimator.Estimate m_lastPreviewEstimate;
+	
+	/*
+	 * Decides when the preview quality has settled enough to capture without waiting for the SDK.
+	 */
+	private CaptureTrigger m_captureTrigger = new CaptureTrigger();
+	
+	/*
+	 * Capabilities of the open scanner.
+	 */
+	private volatile DeviceProfile m_deviceProfile;
+	
+	/*
+	 * Capture availability of scanners seen before, and the serial number of the scanner being opened.
+	 */
+	private CapabilityCache m_capabilityCache;
+	private String          m_openingSerialNumber;
+	
+	/*
+	 * Encrypts the files the app keeps in its private storage.  Exports are left plain for their
+	 * recipients, but are only kept in the private cache until they have been shared.
+	 */
+	private EncryptedStorage m_encryptedStorage;
+	
+	/*
+	 * The export handed to an e-mail client, deleted when the share completes.
+	 */
+	private File m_sharedExport;
+	
+	/*
+	 * Coalesces refreshes of the scanner list and tracks the devices seen.
+	 */
+	private DeviceRefreshEngine m_refreshEngine = new DeviceRefreshEngine();
+	
+	/*
+	 * Reads the rolling line of roll captures off the preview callback thread.
+	 */
+	private RollingTracker m_rollingTracker = new RollingTracker();
+	
+	/*
+	 * Holds copies of preview frames for consumers; sized for the open scanner.  The latest preview
+	 * frame is kept with one reference held by the activity.
+	 */
+	private volatile FrameStore m_frameStore;
+	private FrameStore.Frame    m_latestFrame;
+	
+	/*
+	 * Records recent preview frames, callback events and state transitions for diagnosis.
+	 */
+	private FlightRecorder m_flightRecorder = new FlightRecorder(FLIGHT_RECORDER_BYTES, FLIGHT_RECORDER_WINDOW_MILLIS);
+	
+	/*
+	 * Streams preview frames to workstations while streaming is on; null otherwise.
+	 */
+	private volatile PreviewStreamServer m_previewServer;
+	
+	/*
+	 * Decides when the open scanner sleeps in power-save mode; whether it is asleep is null until 
+	 * set for the open scanner.  The uptime at which the current capture started (-1 once its first
+	 * preview frame is timed) and whether the scanner was asleep then time the first frame.
+	 */
+	private PowerPolicy      m_powerPolicy        = new PowerPolicy();
+	private Handler          m_powerHandler       = new Handler();
+	private Boolean          m_powerSave;
+	private volatile long    m_captureStartUptime = -1;
+	private volatile boolean m_captureStartAsleep;
+	
+	/*
+	 * Re-opens the scanner after a communication break.  While recovering, the power-save mode set
+	 * before the break is restored on the re-opened scanner, and the capture type of an interrupted
+	 * capture is resumed (CAPTURE_TYPE_INVALID if none was interrupted).
+	 */
+	private BreakRecoveryEngine<IBScanDevice> m_breakRecovery;
+	private boolean                           m_recovering;
+	private volatile Boolean                  m_recoveryPowerSave;
+	private int                               m_resumeCaptureType = CAPTURE_TYPE_INVALID;
+	
+	/* 
+	 * Templates of the last capture, one per finger.
+	 */
+	private FingerTemplate[] m_lastTemplates;
+	
+	/*
+	 * Searches the watch-list gallery, if one is installed.
+	 */
+	private volatile IdentificationEngine m_identificationEngine;
+	
+	/*
+	 * Pattern-class bins of the watch-list gallery.
+	 */
+	private volatile PatternIndex m_patternIndex;
+	
 	/* 
 	 * Information retained to show view.
 	 */
 	private ImageData    m_lastImage;
 	
+	/*
+	 * The last image at each zoom level for the enlarged view, built in the background after capture.
+	 */
+	private volatile ImagePyramid m_lastPyramid;
+	
+	/*
+	 * The fingers of the last image, as views into its buffer, one per segment position.
+	 */
+	private FingerSegment[] m_lastSegments;
+	
+	/*
+	 * The hand of the last image, as an ANSI/NIST-ITL finger position, if it was a known four-finger slap.
+	 */
+	private int             m_lastSlapPosition = AnsiNistWriter.FINGER_UNKNOWN;
+	
 	/*
 	 * Information retained for orientation changes.
 	 */
@@ -295,16 +540,77 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 	public void onCreate(Bundle savedInstanceState) 
 	{
 		super.onCreate(savedInstanceState);
-		   
-		this.m_ibScan = IBScan.getInstance(this.getApplicationContext());
-  		this.m_ibScan.setScanListener(this);
-	    
-		Resources r = Resources.getSystem();
-		Configuration config = r.getConfiguration();
-		onConfigurationChanged(config);
 		
+		/* 
+		 * Only what the first frame needs is done here; the SDK, the first refresh and the capture
+		 * tone are prepared in background stages. 
+		 */
+		this.m_startupTrace     = new StartupTrace(new File(getFilesDir(), STARTUP_TRACE_FILE_NAME));
+		this.m_eventLog         = new EventLog(new File(getFilesDir(), EVENT_LOG_DIRECTORY_NAME));
+		this.m_breakRecovery    = new BreakRecoveryEngine<IBScanDevice>(this.m_breakRecoveryLink);
+		this.m_capabilityCache  = new CapabilityCache(new File(getFilesDir(), CAPABILITY_CACHE_FILE_NAME));
+		this.m_encryptedStorage = new EncryptedStorage(new File(getFilesDir(), STORAGE_KEY_FILE_NAME));
+		
+		/* Exports left behind by a process killed while sharing them are deleted on a fresh start. */
+		if (savedInstanceState == null)
+		{
+			ExportProvider.deleteAll(this);
+		}
+	    
+		setContentViewForOrientation(getResources().getConfiguration().orientation);
 		resetButtonsForState(AppState.NO_SCANNER_ATTACHED);
-		transitionToRefresh();
+		this.m_startupTrace.mark("layout");
+		getWindow().getDecorView().post(new Runnable() 
+		{
+			@Override
+			public void run()
+			{
+				SimpleScanActivity.this.m_startupTrace.mark("firstFrame");
+			}
+		});
+		
+		/* Load the SDK and list the scanners on background thread, then refresh with the list. */
+		Thread threadStartup = new Thread() 
+		{
+			@Override
+			public void run()
+			{
+				/* Publish the instance first; the listener can be called as soon as it is set. */
+				final IBScan ibScan = IBScan.getInstance(getApplicationContext());
+				SimpleScanActivity.this.m_ibScan = ibScan;
+				ibScan.setScanListener(SimpleScanActivity.this);
+				SimpleScanActivity.this.m_startupTrace.mark("sdk");
+				setSDKVersionInfo();
+				
+				final String[] scanners = listScanners();
+				SimpleScanActivity.this.m_startupTrace.mark("enumerated");
+				transitionToRefresh(scanners);
+			}
+		};
+		threadStartup.start();
+		
+		/* Synthesize the capture tone on background thread. */
+		Thread threadTone = new Thread() 
+		{
+			@Override
+			public void run()
+			{
+				SimpleScanActivity.this.m_beeper.prepare();
+				SimpleScanActivity.this.m_startupTrace.mark("tone");
+			}
+		};
+		threadTone.start();
+		
+		/* Map the watch-list gallery on background thread. */
+		Thread threadGallery = new Thread() 
+		{
+			@Override
+			public void run()
+			{
+				loadGallery();
+			}
+		};
+		threadGallery.start();
 	}
 	
 	@Override
@@ -312,20 +618,7 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 	{
 		super.onConfigurationChanged(newConfig);
 
-		if (newConfig.orientation == Configuration.ORIENTATION_PORTRAIT) 
-		{
-			setContentView(R.layout.ib_scan_port);
-		} 
-		else
-		{
-			setContentView(R.layout.ib_scan_land);
-		}
-		
-		/* Initialize UI fields for new orientation. */
-		initUIFields(); 
-		
-		/* Populate UI with data from old orientation. */
-		populateUI();  
+		setContentViewForOrientation(newConfig.orientation);
 	}
 	
 	/*
@@ -334,9 +627,33 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 	@Override
 	protected void onDestroy() 
 	{
+		final PreviewStreamServer server = this.m_previewServer;
+		if (server != null)
+		{
+			this.m_previewServer = null;
+			server.stop();
+		}
+		this.m_powerHandler.removeCallbacks(this.m_powerPolicyRunnable);
+		this.m_breakRecovery.cancel();
+		this.m_eventLog.close();
+		ScannerOwnership.release(this);
 		super.onDestroy();
 	}
 
+	/*
+	 * Delete an export once the e-mail client it was shared with returns, whether or not it was sent.
+	 */
+	@Override
+	protected void onActivityResult(final int requestCode, final int resultCode, final Intent data)
+	{
+		if (requestCode == REQUEST_SEND_EXPORT)
+		{
+			deleteSharedExport();
+			return;
+		}
+		super.onActivityResult(requestCode, resultCode, data);
+	}
+
 	@Override
 	public void onBackPressed() 
 	{
@@ -351,6 +668,8 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 		 * just close any open device.
 		 */
 		this.m_scanHandler.removeCallbacksAndMessages(null);
+		this.m_powerHandler.removeCallbacks(this.m_powerPolicyRunnable);
+		this.m_breakRecovery.cancel();
         if (this.m_ibScanDevice != null)
         {
         	/* Try to cancel any active capture. */
@@ -377,6 +696,7 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
         	}
         	this.m_ibScanDevice = null;
         }
+        ScannerOwnership.release(this);
         
         return (null);
 	}
@@ -385,6 +705,27 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 	 * PRIVATE METHODS
 	 ******************************************************************************************** */
  
+	/*
+	 * Inflate the layout for an orientation and show the current data in it.
+	 */
+	private void setContentViewForOrientation(final int orientation)
+	{
+		if (orientation == Configuration.ORIENTATION_PORTRAIT) 
+		{
+			setContentView(R.layout.ib_scan_port);
+		} 
+		else
+		{
+			setContentView(R.layout.ib_scan_land);
+		}
+		
+		/* Initialize UI fields for new orientation. */
+		initUIFields(); 
+		
+		/* Populate UI with data from old orientation. */
+		populateUI();  
+	}
+	
 	/*
 	 * Initialize UI fields for new orientation.
 	 */
@@ -500,11 +841,18 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 	{
 		String txtValue;
 
+		/* The SDK is loaded by a startup stage, which sets the version when done. */
+		final IBScan ibScan = this.m_ibScan;
+		if (ibScan == null)
+		{
+			return;
+		}
+		
 		try
 		{
 			SdkVersion sdkVersion;
 			
-			sdkVersion = this.m_ibScan.getSdkVersion();			
+			sdkVersion = ibScan.getSdkVersion();			
 			txtValue   = "SDK version: " + sdkVersion.file;
 		}
 		catch (IBScanException ibse)
@@ -598,6 +946,19 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 		});
 	}
 
+	/*
+	 * Replace the latest preview frame, taking over the caller's reference and releasing the
+	 * reference to the frame it replaces.
+	 */
+	private synchronized void setLatestFrame(final FrameStore.Frame frame)
+	{
+		if (this.m_latestFrame != null)
+		{
+			this.m_latestFrame.release();
+		}
+		this.m_latestFrame = frame;
+	}
+
 	/*
 	 * Set capture types.
 	 */
@@ -631,81 +992,386 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 			return;
 		}
 		
-		this.m_enlargedDialog = new Dialog(this, R.style.Enlarged);
-		this.m_enlargedDialog.setContentView(R.layout.enlarged);
-		this.m_enlargedDialog.setCancelable(false);
+		/* The dialog is created once and shown again for later images. */
+		if (this.m_enlargedDialog == null)
+		{
+			this.m_enlargedDialog = new Dialog(this, R.style.Enlarged);
+			this.m_enlargedDialog.setContentView(R.layout.enlarged);
+			this.m_enlargedDialog.setCancelable(false);
+			
+			this.m_enlargedView = (TiledImageView) this.m_enlargedDialog.findViewById(R.id.enlarged_image);
+			this.m_enlargedView.setOnClickListener(this.m_enlargedImageClickListener);
+		}
 		
-		final Bitmap    bitmap        = this.m_lastImage.toBitmap();
-		final ImageView enlargedView = (ImageView) this.m_enlargedDialog.findViewById(R.id.enlarged_image);
-		enlargedView.setImageBitmap(bitmap);
-		enlargedView.setOnClickListener(this.m_enlargedImageClickListener);
+		/* Use the pyramid built after capture, or build it now if that has not finished. */
+		ImagePyramid pyramid = this.m_lastPyramid;
+		if (pyramid == null)
+		{
+			pyramid = new ImagePyramid(this.m_lastImage);
+			this.m_lastPyramid = pyramid;
+		}
+		this.m_enlargedView.setImage(pyramid);
 		
 		this.m_enlargedDialog.show();
 	}
 	
 	/*
-	 * Compress the image and attach it to an e-mail using an installed e-mail client. 
+	 * Compress the image and attach it to an e-mail using an installed e-mail client.  The image is
+	 * compressed as PNG, which any recipient can open, unless the file name asks for an archive
+	 * master in the app's own lossless format, which is compressed straight from the SDK's buffer.
 	 */
 	private void sendImageInEmail(final ImageData imageData, final String fileName) 
 	{
-		File    file    = new File(Environment.getExternalStorageDirectory().getPath() + "/" + fileName);
+		File    file    = getExportFile(fileName);
 		boolean created = false;
 		try 
 		{
-			file.createNewFile();
-			
-			final FileOutputStream ostream = new FileOutputStream(file);
-			final Bitmap           bitmap  = imageData.toBitmap();
-			bitmap.compress(CompressFormat.PNG, 100, ostream);
-			ostream.close();
+			final OutputStream ostream = new BufferedOutputStream(new FileOutputStream(file));
+			try
+			{
+				if (fileName.toLowerCase(Locale.US).endsWith("." + LosslessImageCodec.FILE_EXTENSION))
+				{
+					LosslessImageCodec.write(imageData, ostream);
+				}
+				else
+				{
+					final Bitmap bitmap = imageData.toBitmap();
+					bitmap.compress(CompressFormat.PNG, 100, ostream);
+				}
+			}
+			finally
+			{
+				ostream.close();
+			}
 			created = true;
 		} 
 		catch (IOException ioe) 
 		{
-			Toast.makeText(getApplicationContext(), "Could not create image for e-mail", Toast.LENGTH_LONG).show();
+			showToastOnUiThread("Could not create image for e-mail", Toast.LENGTH_LONG);
+		}
+		catch (InterruptedException ie)
+		{
+			file.delete();
+			return;
 		}
 
 		/* If file was created, send the e-mail. */
 		if (created)
 		{
-			attachAndSendEmail(Uri.fromFile(file), "Fingerprint Image", fileName);
+			attachAndSendEmail(file, "Fingerprint Image", file.getName());
+		}
+		else
+		{
+			file.delete();
 		}
 	}
 
 	/*
-	 * Attach file to e-mail and send.
+	 * Write the templates of the last capture as an ISO/IEC 19794-2 record and attach it to an
+	 * e-mail.
 	 */
-	private void attachAndSendEmail(final Uri uri, final String subject, final String message)
+	private void sendTemplateInEmail(final FingerTemplate[] templates)
 	{
-	 	final Intent i = new Intent(Intent.ACTION_SEND);
-		i.setType("message/rfc822");
-		i.putExtra(Intent.EXTRA_EMAIL,   new String[] { "" });
-		i.putExtra(Intent.EXTRA_SUBJECT, subject);
-		i.putExtra(Intent.EXTRA_STREAM,  uri);
-		i.putExtra(Intent.EXTRA_TEXT,    message);
-
+		if (templates == null)
+		{
+			showToastOnUiThread("No template for last image", Toast.LENGTH_SHORT);
+			return;
+		}
+		
+		final String fileName = FILE_NAME_DEFAULT + "." + "ist";
+		File         file     = getExportFile(fileName);
+		boolean      created  = false;
 		try 
 		{
-			startActivity(Intent.createChooser(i, "Send mail..."));
+			final OutputStream ostream = new BufferedOutputStream(new FileOutputStream(file));
+			try
+			{
+				ostream.write(FingerTemplate.toRecord(FingerTemplate.Format.ISO_19794_2, templates));
+			}
+			finally
+			{
+				ostream.close();
+			}
+			created = true;
 		} 
-		catch (ActivityNotFoundException anfe) 
+		catch (IOException ioe) 
 		{
-			showToastOnUiThread("There are no e-mail clients installed", Toast.LENGTH_LONG);
+			showToastOnUiThread("Could not create template for e-mail", Toast.LENGTH_LONG);
+		}
+
+		/* If file was created, send the e-mail. */
+		if (created)
+		{
+			attachAndSendEmail(file, "Fingerprint Template", file.getName());
+		}
+		else
+		{
+			file.delete();
 		}
 	}
-	
+
 	/*
-	 * Prompt to send e-mail with image.
+	 * Write the last image and its fingers as an ANSI/NIST-ITL transaction and attach it to an e-mail,
+	 * compressing on background thread.
 	 */
-	private void promptForEmail(final ImageData imageData)
+	private void sendTransactionInEmail()
 	{
-		/* The dialog must be shown from the UI thread. */
-		runOnUiThread(new Runnable() 
-		{ 
-			@Override
-			public void run()
+		final ImageData       image    = this.m_lastImage;
+		final FingerSegment[] segments = this.m_lastSegments;
+		final IBScanDevice    device   = this.m_ibScanDevice;
+		if ((image == null) || (device == null))
+		{
+			showToastOnUiThread("No image for transaction", Toast.LENGTH_SHORT);
+			return;
+		}
+		
+		/* Single fingers go in Type-4 records; slaps and their fingers in Type-14 records. */
+		final AnsiNistWriter writer = new AnsiNistWriter(device, getCacheDir(), ANSI_NIST_TOT, ANSI_NIST_AGENCY, 
+				ANSI_NIST_AGENCY, Long.toString(System.currentTimeMillis()));
+		final boolean rolled = ImageType.ROLL_SINGLE_FINGER.equals(this.m_imageType);
+		final int impression = rolled ? AnsiNistWriter.IMPRESSION_ROLLED : AnsiNistWriter.IMPRESSION_PLAIN;
+		if ((rolled || ImageType.FLAT_SINGLE_FINGER.equals(this.m_imageType)) 
+				&& ((image.resolutionX <= 0) || (Math.round(image.resolutionX) == 500)))
+		{
+			writer.addType4(image, AnsiNistWriter.FINGER_UNKNOWN, impression);
+		}
+		else
+		{
+			writer.addType14(image, this.m_lastSlapPosition, impression);
+			if (segments != null)
 			{
-		    		final LayoutInflater      inflater     = SimpleScanActivity.this.getLayoutInflater();
+				final int[] fingerPositions = getSlapFingerPositions(segments, this.m_lastSlapPosition);
+				for (int i = 0; i < segments.length; i++)
+				{
+					writer.addType14(segments[i], fingerPositions[i], impression);
+				}
+			}
+		}
+		
+		final String fileName = FILE_NAME_DEFAULT + "." + "an2";
+		final File   file     = getExportFile(fileName);
+		Thread threadTransaction = new Thread() 
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					final OutputStream ostream = new BufferedOutputStream(new FileOutputStream(file));
+					try
+					{
+						writer.write(ostream);
+					}
+					finally
+					{
+						ostream.close();
+					}
+				}
+				catch (IOException ioe)
+				{
+					file.delete();
+					showToastOnUiThread("Could not create transaction for e-mail", Toast.LENGTH_LONG);
+					return;
+				}
+				
+				runOnUiThread(new Runnable() 
+				{
+					@Override
+					public void run()
+					{
+						attachAndSendEmail(file, "Fingerprint Transaction", file.getName());
+					}
+				});
+			}
+		};
+		threadTransaction.start();
+	}
+
+	/*
+	 * Write the last image's fingers as an ISO/IEC 19794-4 finger image record and attach it to an
+	 * e-mail, compressing on background thread.
+	 */
+	private void sendFingerImageRecordInEmail()
+	{
+		final ImageData       image    = this.m_lastImage;
+		final FingerSegment[] segments = this.m_lastSegments;
+		final IBScanDevice    device   = this.m_ibScanDevice;
+		if ((image == null) || (device == null))
+		{
+			showToastOnUiThread("No image for finger image record", Toast.LENGTH_SHORT);
+			return;
+		}
+
+		/* 
+		 * The fingers of a slap of a known hand are recorded at their positions; a slap without 
+		 * segments is recorded whole, at the position of the hand if known. 
+		 */
+		final int[] fingerPositions;
+		if ((segments != null) && (segments.length > 0))
+		{
+			fingerPositions = getSlapFingerPositions(segments, this.m_lastSlapPosition);
+		}
+		else
+		{
+			fingerPositions = new int[] { this.m_lastSlapPosition };
+		}
+		final int impression = ImageType.ROLL_SINGLE_FINGER.equals(this.m_imageType)
+				? FingerImageRecordWriter.IMPRESSION_ROLLED : FingerImageRecordWriter.IMPRESSION_PLAIN;
+		final FingerImageRecordWriter writer = new FingerImageRecordWriter(device, getCacheDir(),
+				FingerImageRecordWriter.Compression.WSQ);
+
+		final String fileName = FILE_NAME_DEFAULT + "." + "fir";
+		final File   file     = getExportFile(fileName);
+		Thread threadRecord = new Thread()
+		{
+			@Override
+			public void run()
+			{
+				final FingerImageRecordWriter.Timings timings;
+				try
+				{
+					final OutputStream ostream = new BufferedOutputStream(new FileOutputStream(file));
+					try
+					{
+						timings = writer.write(image, segments, fingerPositions, impression, ostream);
+					}
+					finally
+					{
+						ostream.close();
+					}
+				}
+				catch (IOException ioe)
+				{
+					file.delete();
+					showToastOnUiThread("Could not create finger image record for e-mail", Toast.LENGTH_LONG);
+					return;
+				}
+				catch (InterruptedException ie)
+				{
+					file.delete();
+					return;
+				}
+
+				long slowest = 0;
+				for (int i = 0; i < timings.encodeMillis.length; i++)
+				{
+					slowest = Math.max(slowest, timings.cropMillis[i] + timings.encodeMillis[i]);
+				}
+				showToastOnUiThread("Encoded " + timings.encodeMillis.length + " fingers in " + timings.encodeWallMillis
+						+ " ms (slowest " + slowest + " ms), wrote in " + timings.writeMillis + " ms", Toast.LENGTH_LONG);
+
+				runOnUiThread(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						attachAndSendEmail(file, "Finger Image Record", file.getName());
+					}
+				});
+			}
+		};
+		threadRecord.start();
+	}
+
+	/*
+	 * Get the finger position of each segment of a slap of a known hand, or FINGER_UNKNOWN for all if
+	 * the hand is unknown or not all four fingers were found.  Seen from the platen, the fingers of a
+	 * right hand run from index to little finger left to right, and those of a left hand from little
+	 * to index finger.  ISO/IEC 19794-4 uses the same codes as ANSI/NIST-ITL.
+	 */
+	private static int[] getSlapFingerPositions(final FingerSegment[] segments, final int slapPosition)
+	{
+		final int[] positions = new int[segments.length];
+		if ((segments.length != 4) || ((slapPosition != AnsiNistWriter.FINGER_LEFT_FOUR) 
+				&& (slapPosition != AnsiNistWriter.FINGER_RIGHT_FOUR)))
+		{
+			Arrays.fill(positions, AnsiNistWriter.FINGER_UNKNOWN);
+			return (positions);
+		}
+		
+		/* Rank each segment by the position of its center from the left. */
+		for (int i = 0; i < segments.length; i++)
+		{
+			int rank = 0;
+			for (int j = 0; j < segments.length; j++)
+			{
+				final int centerI = 2 * segments[i].left + segments[i].width;
+				final int centerJ = 2 * segments[j].left + segments[j].width;
+				if ((centerJ < centerI) || ((centerJ == centerI) && (j < i)))
+				{
+					rank++;
+				}
+			}
+			positions[i] = (slapPosition == AnsiNistWriter.FINGER_RIGHT_FOUR) 
+					? (AnsiNistWriter.FINGER_RIGHT_INDEX + rank) : (AnsiNistWriter.FINGER_LEFT_INDEX + 3 - rank);
+		}
+		return (positions);
+	}
+	
+	/*
+	 * Get the file in the app's private cache to which a file name is exported.  Exports are e-mailed,
+	 * so they are written plain for any recipient to open, but never to shared storage; the e-mail
+	 * client reads them through ExportProvider, and they are deleted once shared.
+	 */
+	private File getExportFile(final String fileName)
+	{
+		return (new File(ExportProvider.getDirectory(this), fileName));
+	}
+
+	/*
+	 * Attach file to e-mail and send.  The e-mail client is granted access to this file only, and the
+	 * file is deleted when the client returns.
+	 */
+	private void attachAndSendEmail(final File file, final String subject, final String message)
+	{
+	 	final Intent i = new Intent(Intent.ACTION_SEND);
+		i.setType("message/rfc822");
+		i.putExtra(Intent.EXTRA_EMAIL,   new String[] { "" });
+		i.putExtra(Intent.EXTRA_SUBJECT, subject);
+		i.putExtra(Intent.EXTRA_STREAM,  ExportProvider.getUri(file));
+		i.putExtra(Intent.EXTRA_TEXT,    message);
+		i.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+
+		/* Only one share is tracked; an export still waiting for its client is dropped. */
+		deleteSharedExport();
+		try 
+		{
+			final Intent chooser = Intent.createChooser(i, "Send mail...");
+			chooser.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+			startActivityForResult(chooser, REQUEST_SEND_EXPORT);
+			this.m_sharedExport = file;
+		} 
+		catch (ActivityNotFoundException anfe) 
+		{
+			file.delete();
+			showToastOnUiThread("There are no e-mail clients installed", Toast.LENGTH_LONG);
+		}
+	}
+	
+	/*
+	 * Delete the export handed to an e-mail client, if any.
+	 */
+	private void deleteSharedExport()
+	{
+		if (this.m_sharedExport != null)
+		{
+			this.m_sharedExport.delete();
+			this.m_sharedExport = null;
+		}
+	}
+	
+	/*
+	 * Prompt to send e-mail with image.
+	 */
+	private void promptForEmail(final ImageData imageData)
+	{
+		/* The dialog must be shown from the UI thread. */
+		runOnUiThread(new Runnable() 
+		{ 
+			@Override
+			public void run()
+			{
+		    		final LayoutInflater      inflater     = SimpleScanActivity.this.getLayoutInflater();
 		    		final View                fileNameView = inflater.inflate(R.layout.file_name_dialog, null);
 		    		final AlertDialog.Builder builder      = new AlertDialog.Builder(SimpleScanActivity.this)
 		    			.setView(fileNameView)
@@ -739,6 +1405,415 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 		});
 	}
 	
+	/*
+	 * Map the watch-list gallery, if one is installed, and prepare the identification engine.
+	 */
+	private void loadGallery()
+	{
+		final File file = new File(Environment.getExternalStorageDirectory().getPath() + "/" + GALLERY_FILE_NAME);
+		if (!file.exists())
+		{
+			return;
+		}
+		
+		try
+		{
+			final TemplateGallery gallery = TemplateGallery.open(file);
+			this.m_patternIndex         = new PatternIndex(gallery);
+			this.m_identificationEngine = new IdentificationEngine(gallery);
+			showToastOnUiThread("Watch list loaded with " + gallery.getCount() + " templates", Toast.LENGTH_SHORT);
+		}
+		catch (IOException ioe)
+		{
+			Log.e(TAG, "Could not load watch list " + ioe.getMessage());
+		}
+	}
+	
+	/*
+	 * Search the watch list for each template, visiting the bin of the finger's pattern class 
+	 * first, and report the best candidate.
+	 */
+	private void identifyTemplates(final FingerTemplate[] templates, final PatternClassifier.PatternClass[] classes) 
+			throws InterruptedException
+	{
+		final IdentificationEngine engine = this.m_identificationEngine;
+		final PatternIndex         index  = this.m_patternIndex;
+		if ((engine == null) || (index == null))
+		{
+			return;
+		}
+		
+		for (int i = 0; i < templates.length; i++)
+		{
+			final int[] order = index.getSearchOrder(classes[i]);
+			final IdentificationEngine.Result result = engine.identify(templates[i], order, order.length, 
+					IDENTIFY_CANDIDATES, IDENTIFY_HIT_SCORE, IDENTIFY_BUDGET_MILLIS);
+			if ((result.scores.length > 0) && (result.scores[0] >= IDENTIFY_HIT_SCORE))
+			{
+				showToastOnUiThread("Finger " + (i + 1) + " matches watch-list subject " + result.ids[0] 
+						+ " (score " + result.scores[0] + ", " + result.elapsedMillis + " ms)", Toast.LENGTH_LONG);
+			}
+			else if (result.stoppedOnBudget)
+			{
+				showToastOnUiThread("Watch-list search for finger " + (i + 1) + " exceeded time budget after " 
+						+ result.searched + " templates", Toast.LENGTH_SHORT);
+			}
+		}
+	}
+	
+	/*
+	 * Set the open scanner's power-save mode as the power policy decides, if it is waiting to 
+	 * capture, and evaluate the policy again when its decision may change.  Must be called on the 
+	 * UI thread.
+	 */
+	private void applyPowerPolicy()
+	{
+		this.m_powerHandler.removeCallbacks(this.m_powerPolicyRunnable);
+		
+		final IBScanDevice device = this.m_ibScanDevice;
+		if ((device == null) || (this.m_savedData.state != AppState.INITIALIZED))
+		{
+			return;
+		}
+		
+		final long    now   = SystemClock.uptimeMillis();
+		final boolean sleep = this.m_powerPolicy.shouldSleep(now);
+		if ((this.m_powerSave == null) || (this.m_powerSave.booleanValue() != sleep))
+		{
+			try
+			{
+				device.setProperty(PropertyId.ENABLE_POWER_SAVE_MODE, sleep ? "TRUE" : "FALSE");
+				this.m_powerSave = Boolean.valueOf(sleep);
+				this.m_eventLog.log(EventLog.INFO, "powerSave", null, sleep ? 1 : 0, 0);
+			}
+			catch (IBScanException ibse)
+			{
+				/* 
+				 * We could not set power save mode. This is non-essential, so we continue on and 
+				 * try again at the next evaluation. 
+				 */
+				Log.e(TAG, "Could not set power save mode " + ibse.getType().toString());
+			}
+		}
+		this.m_powerHandler.postDelayed(this.m_powerPolicyRunnable, this.m_powerPolicy.getEvaluateDelay(now));
+	}
+	
+	/*
+	 * Evaluate the power policy, from the power handler.
+	 */
+	private Runnable m_powerPolicyRunnable = new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			applyPowerPolicy();
+		}
+	};
+	
+	/*
+	 * Re-opens the scanner after a communication break, from the recovery thread.
+	 */
+	private BreakRecoveryEngine.Link<IBScanDevice> m_breakRecoveryLink = new BreakRecoveryEngine.Link<IBScanDevice>()
+	{
+		@Override
+		public IBScanDevice open(final String serialNumber) throws Exception
+		{
+			final IBScan ibScan = SimpleScanActivity.this.m_ibScan;
+			final int    count  = ibScan.getDeviceCount();
+			for (int i = 0; i < count; i++)
+			{
+				if (serialNumber.equals(ibScan.getDeviceDescription(i).serialNumber))
+				{
+					return (ibScan.openDevice(i));
+				}
+			}
+			throw new IllegalStateException("Scanner " + serialNumber + " is not attached");
+		}
+		
+		@Override
+		public void restore(final IBScanDevice device) throws Exception
+		{
+			final Boolean powerSave = SimpleScanActivity.this.m_recoveryPowerSave;
+			if (powerSave != null)
+			{
+				device.setProperty(PropertyId.ENABLE_POWER_SAVE_MODE, powerSave.booleanValue() ? "TRUE" : "FALSE");
+			}
+		}
+		
+		@Override
+		public void close(final IBScanDevice device)
+		{
+			try
+			{
+				device.close();
+			}
+			catch (IBScanException ibse)
+			{
+				Log.e(TAG, "Could not close device " + ibse.getType().toString());
+			}
+		}
+	};
+	
+	/*
+	 * Hears how recovery from a communication break ended, on the recovery thread.
+	 */
+	private BreakRecoveryEngine.Listener<IBScanDevice> m_breakRecoveryListener = new BreakRecoveryEngine.Listener<IBScanDevice>()
+	{
+		@Override
+		public void onRecovered(final IBScanDevice device, final int attempts, final long millis)
+		{
+			SimpleScanActivity.this.m_eventLog.log(EventLog.INFO, "breakRecovered", null, millis, attempts);
+			Log.i(TAG, "Communication break " + SimpleScanActivity.this.m_breakRecovery.getReport());
+			showToastOnUiThread("Device recovered after " + millis + " ms", Toast.LENGTH_SHORT);
+			transitionToInitialized(device);
+		}
+		
+		@Override
+		public void onFailed(final int attempts, final long millis)
+		{
+			SimpleScanActivity.this.m_eventLog.log(EventLog.WARN, "breakRecoveryFailed", null, millis, attempts);
+			showToastOnUiThread("Device could not be recovered after " + attempts + " attempts", Toast.LENGTH_SHORT);
+			transitionToClosing();
+		}
+	};
+	
+	/*
+	 * Probe the scanner for the capture availability of a profile that came from the cache, and
+	 * correct the capture types offered if the scanner disagrees.
+	 */
+	private void revalidateProfile(final IBScanDevice device, final DeviceProfile profile, final String serialNumber)
+	{
+		Thread threadRevalidate = new Thread() 
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					final DeviceProfile corrected = DeviceProfileRegistry.revalidate(device, profile, serialNumber, 
+							SimpleScanActivity.this.m_capabilityCache);
+					if (corrected == null)
+					{
+						return;
+					}
+					
+					runOnUiThread(new Runnable()
+					{
+						@Override
+						public void run()
+						{
+							/* 
+							 * Ignore the result if the scanner has been closed or replaced meanwhile, or its
+							 * availability is no longer the one checked.  The registry hands out the same
+							 * profile each time a scanner is opened, so identity alone cannot tell.
+							 */
+							final DeviceProfile current = SimpleScanActivity.this.m_deviceProfile;
+							if ((current == null) || (SimpleScanActivity.this.m_ibScanDevice != device)
+									|| !Arrays.equals(current.getCaptureAvailability(), profile.getCaptureAvailability()))
+							{
+								return;
+							}
+							SimpleScanActivity.this.m_deviceProfile = corrected;
+							devicekojak = corrected.fingerLeds;
+							final String[] typeArray = corrected.getCaptureTypes();
+							setCaptureTypes(typeArray, (typeArray.length > 1) ? 1 : 0);
+						}
+					});
+				}
+				catch (IBScanException ibse)
+				{
+					Log.e(TAG, "Could not re-validate capture availability " + ibse.getType().toString());
+				}
+			}
+		};
+		threadRevalidate.start();
+	}
+	
+	/*
+	 * Get the directory of flight recordings in the app's private storage, creating it if needed.
+	 */
+	private File getRecordingDirectory()
+	{
+		final File directory = new File(getFilesDir(), FLIGHT_RECORDING_DIRECTORY_NAME);
+		directory.mkdirs();
+		return (directory);
+	}
+	
+	/*
+	 * Write the flight recorder's recent history, encrypted, to private storage on background thread.
+	 * Recordings hold raw frames, so they never leave the device.
+	 */
+	private void saveFlightRecording(final String reason)
+	{
+		final File file = new File(getRecordingDirectory(), FLIGHT_RECORDING_PREFIX + System.currentTimeMillis()
+				+ FLIGHT_RECORDING_EXTENSION + "." + EncryptedStorage.FILE_EXTENSION);
+		this.m_flightRecorder.recordEvent("dump " + reason);
+		
+		Thread threadDump = new Thread() 
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					final OutputStream ostream = SimpleScanActivity.this.m_encryptedStorage.openOutput(file);
+					try
+					{
+						SimpleScanActivity.this.m_flightRecorder.dump(ostream);
+					}
+					finally
+					{
+						ostream.close();
+					}
+					showToastOnUiThread("Flight recording saved to " + file.getName(), Toast.LENGTH_SHORT);
+				}
+				catch (IOException ioe)
+				{
+					Log.e(TAG, "Could not save flight recording " + ioe.getMessage());
+				}
+			}
+		};
+		threadDump.start();
+	}
+	
+	/*
+	 * Start capturing the SDK's trace output into the event log, or stop if capturing already, on
+	 * background thread.
+	 */
+	private void toggleSdkTrace()
+	{
+		Thread threadTrace = new Thread() 
+		{
+			@Override
+			public void run()
+			{
+				synchronized (SimpleScanActivity.this.m_eventLog)
+				{
+					final IBScan ibScan = SimpleScanActivity.this.m_ibScan;
+					if (ibScan == null)
+					{
+						showToastOnUiThread("SDK not loaded yet", Toast.LENGTH_SHORT);
+						return;
+					}
+					final boolean trace = !SimpleScanActivity.this.m_sdkTrace;
+					try
+					{
+						ibScan.enableTraceLog(trace);
+					}
+					catch (IBScanException ibse)
+					{
+						SimpleScanActivity.this.m_eventLog.log(EventLog.ERROR, "enableTraceLog", ibse.getType().name());
+						showToastOnUiThread("Could not change SDK trace", Toast.LENGTH_SHORT);
+						return;
+					}
+					SimpleScanActivity.this.m_eventLog.setLogcatCapture(trace);
+					SimpleScanActivity.this.m_sdkTrace = trace;
+					showToastOnUiThread(trace ? "Capturing SDK trace" : "SDK trace stopped", Toast.LENGTH_SHORT);
+				}
+			}
+		};
+		threadTrace.start();
+	}
+	
+	/*
+	 * Start streaming preview frames to workstations, or stop if streaming already, on background
+	 * thread.  The server listens on loopback only and serves clients that present a token chosen
+	 * afresh each time, which is shown to the operator.  The stream itself is not encrypted.
+	 */
+	private void togglePreviewStream()
+	{
+		Thread threadStream = new Thread() 
+		{
+			@Override
+			public void run()
+			{
+				synchronized (SimpleScanActivity.this)
+				{
+					final PreviewStreamServer server = SimpleScanActivity.this.m_previewServer;
+					if (server != null)
+					{
+						SimpleScanActivity.this.m_previewServer = null;
+						server.stop();
+						showToastOnUiThread("Preview streaming stopped", Toast.LENGTH_SHORT);
+						return;
+					}
+					try
+					{
+						final byte[] random = new byte[PREVIEW_STREAM_TOKEN_BYTES];
+						new SecureRandom().nextBytes(random);
+						final StringBuilder token = new StringBuilder();
+						for (byte b : random)
+						{
+							token.append(String.format(Locale.US, "%02x", b & 0xFF));
+						}
+						SimpleScanActivity.this.m_previewServer = new PreviewStreamServer(PREVIEW_STREAM_PORT,
+								InetAddress.getByAddress(PREVIEW_STREAM_ADDRESS), token.toString());
+						showToastOnUiThread("Streaming preview on port " + PREVIEW_STREAM_PORT + " with token " + token,
+								Toast.LENGTH_LONG);
+					}
+					catch (IOException ioe)
+					{
+						Log.e(TAG, "Could not stream preview " + ioe.getMessage());
+						showToastOnUiThread("Could not stream preview", Toast.LENGTH_SHORT);
+					}
+				}
+			}
+		};
+		threadStream.start();
+	}
+	
+	/*
+	 * Replay the newest flight recording to the preview stream's clients, decrypting it as it is
+	 * read, on background thread.
+	 */
+	private void replayFlightRecording()
+	{
+		Thread threadReplay = new Thread() 
+		{
+			@Override
+			public void run()
+			{
+				final PreviewStreamServer server = SimpleScanActivity.this.m_previewServer;
+				if (server == null)
+				{
+					showToastOnUiThread("Start streaming preview to replay a recording", Toast.LENGTH_SHORT);
+					return;
+				}
+				
+				File newest = null;
+				final File[] files = getRecordingDirectory().listFiles();
+				if (files != null)
+				{
+					for (File file : files)
+					{
+						if (file.getName().endsWith(FLIGHT_RECORDING_EXTENSION + "." + EncryptedStorage.FILE_EXTENSION)
+								&& ((newest == null) || (file.lastModified() > newest.lastModified())))
+						{
+							newest = file;
+						}
+					}
+				}
+				if (newest == null)
+				{
+					showToastOnUiThread("No flight recording saved", Toast.LENGTH_SHORT);
+					return;
+				}
+				
+				try
+				{
+					server.replay(SimpleScanActivity.this.m_encryptedStorage.openInput(newest));
+					showToastOnUiThread("Replaying " + newest.getName(), Toast.LENGTH_SHORT);
+				}
+				catch (IOException ioe)
+				{
+					Log.e(TAG, "Could not open flight recording " + ioe.getMessage());
+					showToastOnUiThread("Could not open flight recording", Toast.LENGTH_SHORT);
+				}
+			}
+		};
+		threadReplay.start();
+	}
+	
 	/*
 	 * Exit application.
 	 */
@@ -762,6 +1837,8 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 		public boolean handleMessage(final Message msg) 
 		{
 			final AppState nextState = AppState.values()[msg.what];
+			SimpleScanActivity.this.m_flightRecorder.recordState(SimpleScanActivity.this.m_savedData.state.toString(), 
+					nextState.toString());
 			
 			switch (nextState)
 			{
@@ -778,7 +1855,15 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 				}
 				
 				case REFRESH:
-					handleTransitionToRefresh();
+					if (msg.arg1 == REFRESH_LISTED)
+					{
+						handleTransitionToRefresh(true, (String[])msg.obj);
+						finishStartupTrace();
+					}
+					else
+					{
+						handleTransitionToRefresh(false, null);
+					}
 					break;
 					
 				case INITIALIZING:
@@ -817,7 +1902,8 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 					final ImageData   imageData       = (ImageData)objects[0];
 					final ImageType   imageType       = (ImageType)objects[1];
 					final ImageData[] splitImageArray = (ImageData[])objects[2];
-					handleTransitionToImageCaptured(imageData, imageType, splitImageArray);
+					final SegmentPosition[] segmentPositionArray = (SegmentPosition[])objects[3];
+					handleTransitionToImageCaptured(imageData, imageType, splitImageArray, segmentPositionArray);
 					break;
 				}
 				
@@ -848,6 +1934,18 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 		final Message msg = this.m_scanHandler.obtainMessage(AppState.REFRESH.ordinal());
 		this.m_scanHandler.sendMessage(msg);
 	}
+	private void transitionToRefresh(final String[] scanners)
+	{
+		final Message msg = this.m_scanHandler.obtainMessage(AppState.REFRESH.ordinal(), REFRESH_LISTED, 0, scanners);
+		this.m_scanHandler.sendMessage(msg);
+	}
+	private void transitionToRefreshDebounced()
+	{
+		final long    delayMillis = this.m_refreshEngine.requestDelay();
+		final Message msg         = this.m_scanHandler.obtainMessage(AppState.REFRESH.ordinal(), REFRESH_DEBOUNCE_TOKEN);
+		this.m_scanHandler.removeMessages(AppState.REFRESH.ordinal(), REFRESH_DEBOUNCE_TOKEN);
+		this.m_scanHandler.sendMessageDelayed(msg, delayMillis);
+	}
 	private void transitionToInitializing(final int deviceIndex)
 	{
 		final Message msg = this.m_scanHandler.obtainMessage(AppState.INITIALIZING.ordinal(), deviceIndex, 0);
@@ -884,10 +1982,10 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 		this.m_scanHandler.sendMessageDelayed(msg, delayMillis);
 	}
 	private void transitionToImageCaptured(final ImageData image, final ImageType imageType, 
-			final ImageData[] splitImageArray)
+			final ImageData[] splitImageArray, final SegmentPosition[] segmentPositionArray)
 	{
 		final Message msg = this.m_scanHandler.obtainMessage(AppState.IMAGE_CAPTURED.ordinal(), 0, 0, 
-				new Object[] {image, imageType, splitImageArray} );
+				new Object[] {image, imageType, splitImageArray, segmentPositionArray} );
 		this.m_scanHandler.sendMessage(msg);
 	}
 	private void transitionToCommunicationBreak()
@@ -958,10 +2056,87 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 	}
 	
 	/*
-	 * Handle transition to refresh state.
+	 * List the accessible scanners, or return null if they could not be listed.  Also requests
+	 * permission for newly attached scanners.  May be called off the UI thread.
+	 */
+	private String[] listScanners()
+	{
+		/*
+		 * Make sure there are no newly attached USB devices that are IB scanners for which permission 
+		 * has not been granted.  For any that are found, request permission; we should receive a 
+		 * callback when permission is granted or denied and then when IBScan recognizes that new
+		 * devices are connected, which will result in another refresh.  Devices seen by an earlier
+		 * refresh are not checked again.
+		 */
+		final UsbManager manager = (UsbManager)this.getApplicationContext().getSystemService(Context.USB_SERVICE);
+		for (UsbDevice device : this.m_refreshEngine.updateUsbDevices(manager.getDeviceList()))
+		{
+			final boolean hasPermission = manager.hasPermission(device);
+			if (!hasPermission)
+			{
+				this.m_ibScan.requestPermission(device.getDeviceId());
+			}
+		}
+		
+		/* List the accessible scanners. */
+		String[] scanners;
+		try
+		{
+			final int deviceCount = this.m_ibScan.getDeviceCount();
+			scanners = new String[deviceCount];
+			for (int i = 0; i < deviceCount; i++)
+			{
+				final DeviceDesc deviceDesc = this.m_ibScan.getDeviceDescription(i);
+				scanners[i] = deviceDesc.productName + " - " + deviceDesc.serialNumber;
+			}
+		}
+		catch (IBScanException ibse)
+		{
+			Log.e(TAG, "Received exception listing devices " + ibse.getType().toString());
+			scanners = null;
+			this.m_refreshEngine.invalidate();
+		}
+		return (scanners);
+	}
+	
+	/*
+	 * Log and save the startup trace on background thread, once startup has reached interactive.
+	 */
+	private void finishStartupTrace()
+	{
+		this.m_startupTrace.mark("interactive");
+		Thread threadTrace = new Thread() 
+		{
+			@Override
+			public void run()
+			{
+				String release;
+				try
+				{
+					release = getPackageManager().getPackageInfo(getPackageName(), 0).versionName;
+				}
+				catch (PackageManager.NameNotFoundException nnfe)
+				{
+					release = "unknown";
+				}
+				SimpleScanActivity.this.m_startupTrace.finish(release);
+			}
+		};
+		threadTrace.start();
+	}
+	
+	/*
+	 * Handle transition to refresh state, listing the scanners unless they were listed in the 
+	 * background.
 	 */
-	private void handleTransitionToRefresh()
+	private void handleTransitionToRefresh(final boolean listed, final String[] listedScanners)
 	{
+		/* Until the startup stage has loaded the SDK, there is nothing to list; it will refresh. */
+		if (this.m_ibScan == null)
+		{
+			return;
+		}
+		
 		/* Sanity check state. */
 		switch (this.m_savedData.state)
 		{
@@ -1009,6 +2184,18 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 				return;
 		}
 		
+		/* This refresh serves every request of the current burst. */
+		this.m_refreshEngine.refreshStarted();
+		final String[] scanners = listed ? listedScanners : listScanners();
+		
+		/* If the scanners are the same as at the last refresh, the display is already correct. */
+		final boolean changed = (scanners == null) || this.m_refreshEngine.updateScanners(scanners);
+		if (!changed && ((this.m_savedData.state == AppState.NO_SCANNER_ATTACHED) 
+				|| (this.m_savedData.state == AppState.SCANNER_ATTACHED)))
+		{
+			return;
+		}
+		
 		/* Move to this state. */
 		this.m_savedData.state = AppState.REFRESH;
 		
@@ -1018,57 +2205,16 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 		setFrameTime(FRAME_TIME_DEFAULT);
 		setCaptureTypes(new String[0], 0);
 
-		/*
-		 * Make sure there are no USB devices attached that are IB scanners for which permission has
-		 * not been granted.  For any that are found, request permission; we should receive a 
-		 * callback when permission is granted or denied and then when IBScan recognizes that new
-		 * devices are connected, which will result in another refresh.
-		 */
-		final UsbManager                 manager        = (UsbManager)this.getApplicationContext().getSystemService(Context.USB_SERVICE);
-		final HashMap<String, UsbDevice> deviceList     = manager.getDeviceList();
-		final Iterator<UsbDevice>        deviceIterator = deviceList.values().iterator();
-		while (deviceIterator.hasNext())
-		{
-		    final UsbDevice device       = deviceIterator.next();
-		    final boolean   isScanDevice = IBScan.isScanDevice(device);		    
-		    if (isScanDevice)
-		    {
-		    	final boolean hasPermission = manager.hasPermission(device);
-		    	if (!hasPermission)
-		    	{
-		    		this.m_ibScan.requestPermission(device.getDeviceId());
-		    	}
-		    }
-		}
-		
 		/* 
 		 * Determine the next state according to device count.  A state transition always occurs,
 		 * either to NO_SCANNER_ATTACHED or SCANNER_ATTACHED.
 		 */
-		try
+		if ((scanners != null) && (scanners.length > INITIALIZING_DEVICE_INDEX))
 		{
-			final int deviceCount = this.m_ibScan.getDeviceCount();
-			if (deviceCount > 0)
-			{
-				try
-				{
-					final DeviceDesc deviceDesc = this.m_ibScan.getDeviceDescription(INITIALIZING_DEVICE_INDEX);
-					transitionToScannerAttached(deviceDesc.productName + " - " + deviceDesc.serialNumber, deviceCount);
-				}
-				catch (IBScanException ibse)
-				{
-					Log.e(TAG, "Received exception getting device description " + ibse.getType().toString());
-					transitionToNoScannerAttached();					
-				}
-			}
-			else
-			{
-				transitionToNoScannerAttached();
-			}
+			transitionToScannerAttached(scanners[INITIALIZING_DEVICE_INDEX], scanners.length);
 		}
-		catch (IBScanException ibse)
+		else
 		{
-			Log.e(TAG, "Received exception getting device count " + ibse.getType().toString());
 			transitionToNoScannerAttached();
 		}
 	}
@@ -1100,6 +2246,25 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 		this.m_imagePreviewImage.setLongClickable(false);
 		this.m_savedData.imagePreviewImageClickable = false;
 		this.m_lastImage = null;
+		this.m_lastPyramid = null;
+		this.m_lastSegments = null;
+		this.m_lastTemplates = null;
+		this.m_deviceProfile = null;
+		setLatestFrame(null);
+		this.m_frameStore = null;
+		
+		/* A newly opened scanner starts a new session for duplicate detection. */
+		this.m_duplicateDetector.reset();
+		
+		/* Note the serial number, which keys the scanner's cached capabilities. */
+		try
+		{
+			this.m_openingSerialNumber = this.m_ibScan.getDeviceDescription(deviceIndex).serialNumber;
+		}
+		catch (IBScanException ibse)
+		{
+			this.m_openingSerialNumber = null;
+		}
 			
 		/* Start device initialization. */
 		try
@@ -1131,6 +2296,13 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 			case STOPPING_CAPTURE:
 			case IMAGE_CAPTURED:
 				break;
+			case COMMUNICATION_BREAK:
+				/* The scanner was re-opened after the break. */
+				if (this.m_recovering)
+				{
+					break;
+				}
+				/* falls through */
 			default:
 				Log.e(TAG, "Received unexpected transition to INITIALIZED from " + this.m_savedData.state.toString());
 				return;
@@ -1149,7 +2321,8 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 			try {
 				OnlyRIGHTFOUR =0;
 				OnlyLEFTFOUR =0;
-				SimpleScanActivity.this.m_ibScanDevice.setLEDs(IBScanDevice.LED_NONE);
+				final IBScanDevice ledDevice = (device != null) ? device : SimpleScanActivity.this.m_ibScanDevice;
+				ledDevice.setLEDs(IBScanDevice.LED_NONE);
 			} catch (IBScanException e) {
 				// TODO Auto-generated catch block
 				e.printStackTrace();
@@ -1159,90 +2332,85 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 				
 		
 		/* If the device is null, we have already passed through this state. */
+		int resumeCaptureType = CAPTURE_TYPE_INVALID;
 		if (device != null)
 		{
-			/* Enable power save mode. */
-			try
+			if (this.m_recovering)
 			{
-				//setProperty
-				device.setProperty(PropertyId.ENABLE_POWER_SAVE_MODE, "TRUE");
-				
-				this.m_savedData.deviceName = device.getProperty(PropertyId.PRODUCT_ID);
-				final String deviceName = this.m_savedData.deviceName;
-				
-				//getProperty device Width,Height
-				String imageW = device.getProperty(PropertyId.IMAGE_WIDTH);
-				String imageH =device.getProperty(PropertyId.IMAGE_HEIGHT);
-				int	imageWidth = Integer.parseInt(imageW);
-				int	imageHeight = Integer.parseInt(imageH);
-				this.m_BitmapImage = SimpleScanActivity.this.toDrawBitmap(imageWidth, imageHeight);
-				
-				if(deviceName.equals("KOJAK") || deviceName.equals("FIVE-0"))
-				{
-					//Kojak_Five-0
-					String kojakRollimageW = device.getProperty(PropertyId.ROLLED_IMAGE_WIDTH);
-					String kojakRollimageH =device.getProperty(PropertyId.ROLLED_IMAGE_HEIGHT);
-				int	imageKojakRollWidth = Integer.parseInt(kojakRollimageW);
-				int	imageKojakRollHeight = Integer.parseInt(kojakRollimageH);
-				//draw bitmap.
-				this.m_BitmapKojakRollImage = SimpleScanActivity.this.toDrawBitmap(imageKojakRollWidth, imageKojakRollHeight);
-				
-				}
-				
-			
+				/* A re-opened scanner already has its power-save mode restored. */
+				this.m_recovering = false;
+				this.m_powerSave  = this.m_recoveryPowerSave;
+				resumeCaptureType = this.m_resumeCaptureType;
 			}
-			catch (IBScanException ibse)
+			else
 			{
-				/* 
-				 * We could not enable power save mode. This is was non-essential, so we continue on and 
-				 * see whether we can start capture. 
-				 */
-				Log.e(TAG, "Could not begin enable power save mode " + ibse.getType().toString());			
+				/* Opening the scanner counts as activity, so it stays awake for the first capture. */
+				this.m_powerSave = null;
+				this.m_powerPolicy.onOperatorActivity(SystemClock.uptimeMillis());
 			}
 			
-			/* Get list of acceptable capture types. */
-			Vector<String> typeVector = new Vector<String>();
-			for (ImageType imageType : ImageType.values())
+			/* 
+			 * Resolve the scanner's capabilities once; the frame callbacks read only the profile's 
+			 * final fields. 
+			 */
+			try
 			{
-				try
+				final DeviceProfile profile = DeviceProfileRegistry.resolve(device, this.m_openingSerialNumber, 
+						this.m_capabilityCache);
+				this.m_deviceProfile        = profile;
+				this.m_savedData.deviceName = profile.productId;
+				
+				this.m_BitmapImage = SimpleScanActivity.this.toDrawBitmap(profile.imageWidth, profile.imageHeight);
+				if (profile.separateRollImage)
 				{
-					boolean available = device.isCaptureAvailable(imageType, ImageResolution.RESOLUTION_500);
-					if (available)
-					{
-						typeVector.add(imageType.toDescription());
-						devicekojak =false;
-					}
-					
-					final String deviceName = this.m_savedData.deviceName;
-					if(typeVector.size()>4 && deviceName.equals("KOJAK"))
-					{
-						typeVector.remove(3);
-						typeVector.add("Left Four-finger flat fingerprint");
-						typeVector.add("Right Four-finger flat fingerprint");
-						devicekojak =true;
-					}
+					this.m_BitmapKojakRollImage = SimpleScanActivity.this.toDrawBitmap(profile.rollImageWidth, profile.rollImageHeight);
+				}
+				
+				/* Work arrays for template extraction are sized once for the largest image. */
+				this.m_minutiaeExtractor = new MinutiaeExtractor(profile.maxImageWidth, profile.maxImageHeight);
+				this.m_patternClassifier = new PatternClassifier(profile.maxImageWidth, profile.maxImageHeight);
+				this.m_previewEstimator  = new PreviewQualityEstimator(profile.maxImageWidth, profile.maxImageHeight);
+				this.m_frameStore        = new FrameStore(profile.maxImageWidth, profile.maxImageHeight, FRAME_STORE_FRAMES);
 				
+				/* Get list of acceptable capture types. */
+				devicekojak = profile.fingerLeds;
+				final String[] typeArray = profile.getCaptureTypes();
+				if ((resumeCaptureType != CAPTURE_TYPE_INVALID) && (resumeCaptureType < typeArray.length))
+				{
+					setCaptureTypes(typeArray, resumeCaptureType);
 				}
-				catch (IBScanException ibse)
+				else
 				{
-					Log.e(TAG, "Could not check capture availability " + ibse.getType().toString());					
+					resumeCaptureType = CAPTURE_TYPE_INVALID;
+					setCaptureTypes(typeArray, (typeArray.length > 1) ? 1 : 0);
+				}
+				
+				/* Confirm cached capture availability with the scanner on background thread. */
+				if (profile.availabilityCached)
+				{
+					revalidateProfile(device, profile, this.m_openingSerialNumber);
 				}
 			}
-			String[] typeArray = new String[0];
-			typeArray = typeVector.toArray(typeArray);
-			if (typeVector.size() > 1)
-			{
-				setCaptureTypes(typeArray, 1);
-			}
-			else
+			catch (IBScanException ibse)
 			{
-				setCaptureTypes(typeArray, 0);
+				Log.e(TAG, "Could not read scanner capabilities " + ibse.getType().toString());
+				setCaptureTypes(new String[0], 0);
 			}
 
 			/* Save device. */
 			this.m_ibScanDevice = device;
 		}
 		
+		/* Set power-save mode as the policy decides now, and again whenever the decision may change. */
+		applyPowerPolicy();
+		
+		/* Resume the capture interrupted by a communication break. */
+		if (resumeCaptureType != CAPTURE_TYPE_INVALID)
+		{
+			showToastOnUiThread("Resuming capture after communication break", Toast.LENGTH_SHORT);
+			transitionToStartingCapture();
+		}
+		
 		/*
 		 * Stay in this state waiting to perform scans. 
 		 */
@@ -1273,6 +2441,17 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 		setStatus("closing");
 		setFrameTime(FRAME_TIME_DEFAULT);
 		
+		/* No more rolling line readings are needed. */
+		this.m_rollingTracker.stop();
+		
+		/* Any recovery from a communication break has ended. */
+		this.m_recovering = false;
+		
+		/* Stop applying the power policy, and report its effect for this scanner. */
+		this.m_powerHandler.removeCallbacks(this.m_powerPolicyRunnable);
+		this.m_powerSave = null;
+		Log.i(TAG, "Power policy " + this.m_powerPolicy.getLatencyReport());
+		
 		/* Close & null device. */
 		if (this.m_ibScanDevice != null)
 		{
@@ -1286,6 +2465,7 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 			}
 			this.m_ibScanDevice = null;
 		}
+		ScannerOwnership.release(this);
 		
 		/*
 		 * Refresh the list of devices. 
@@ -1328,12 +2508,12 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 					break;
 				}else
 				{
-					if(this.m_spinnerCaptureType.getSelectedItem().equals("Left Four-finger flat fingerprint"))
+					if(this.m_spinnerCaptureType.getSelectedItem().equals(DeviceProfile.LEFT_FOUR_DESCRIPTION))
 					{
 						OnlyLEFTFOUR =1;
 						break;
 					}
-					if(this.m_spinnerCaptureType.getSelectedItem().equals("Right Four-finger flat fingerprint"))
+					if(this.m_spinnerCaptureType.getSelectedItem().equals(DeviceProfile.RIGHT_FOUR_DESCRIPTION))
 					{
 						OnlyRIGHTFOUR =1;
 						break;
@@ -1376,7 +2556,33 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 				imageType = ImageType.FLAT_FOUR_FINGERS;
 			}
 			
-			this.m_ibScanDevice.beginCaptureImage(imageType, ImageResolution.RESOLUTION_500, 
+			/* Start the preview quality estimate and the early capture trigger afresh for this capture. */
+			this.m_lastPreviewEstimate = null;
+			if (this.m_previewEstimator != null)
+			{
+				this.m_previewEstimator.reset();
+			}
+			this.m_captureTrigger.reset(CaptureTrigger.getExpectedFingers(imageType));
+			if (imageType == ImageType.ROLL_SINGLE_FINGER)
+			{
+				this.m_rollingTracker.start(this.m_ibScanDevice);
+			}
+			else
+			{
+				this.m_rollingTracker.stop();
+			}
+			
+			/* Capture at the highest resolution the scanner offers for the type. */
+			final DeviceProfile   profile    = this.m_deviceProfile;
+			final ImageResolution resolution = (profile != null) 
+					? profile.getCaptureResolution(imageType) : ImageResolution.RESOLUTION_500;
+			
+			/* Time the first preview frame, noting whether the policy had left the scanner asleep. */
+			final long startUptime = SystemClock.uptimeMillis();
+			this.m_powerPolicy.onCaptureStarted(startUptime);
+			this.m_captureStartAsleep = Boolean.TRUE.equals(this.m_powerSave);
+			this.m_captureStartUptime = startUptime;
+			this.m_ibScanDevice.beginCaptureImage(imageType, resolution, 
 					IBScanDevice.OPTION_AUTO_CAPTURE | IBScanDevice.OPTION_AUTO_CONTRAST);
 
 			/* Save this device and image type for later use. */
@@ -1451,6 +2657,9 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 		resetButtonsForState(AppState.STOPPING_CAPTURE);
 		setStatus("stopping");
 		setFrameTime(FRAME_TIME_DEFAULT);
+		
+		/* No more rolling line readings are needed. */
+		this.m_rollingTracker.stop();
 
 		/* Cancel capture if necessary. */
 		boolean done = false;		
@@ -1505,7 +2714,8 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 	 * Handle transition to image captured state.
 	 */
 	private void handleTransitionToImageCaptured(final ImageData image, 
-			final ImageType imageType, final ImageData[] splitImageArray)
+			final ImageType imageType, final ImageData[] splitImageArray, 
+			final SegmentPosition[] segmentPositionArray)
 	{
 		/* Sanity check state. */
 		switch (this.m_savedData.state)
@@ -1524,14 +2734,36 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 		resetButtonsForState(AppState.IMAGE_CAPTURED);
 		setStatus("captured");
 		setFrameTime(FRAME_TIME_DEFAULT);
+		
+		/* No more rolling line readings are needed. */
+		this.m_rollingTracker.stop();
 
 		/* 
 		 * Save information in case we later show the enlarged image and allow long clicks on the
 		 * image view to show that view. 
 		 */
 		this.m_lastImage = image;
+		this.m_lastPyramid = null;
+		this.m_lastSegments = FingerSegment.fromResult(image, segmentPositionArray);
+		this.m_lastSlapPosition = (OnlyLEFTFOUR == 1) ? AnsiNistWriter.FINGER_LEFT_FOUR 
+				: ((OnlyRIGHTFOUR == 1) ? AnsiNistWriter.FINGER_RIGHT_FOUR : AnsiNistWriter.FINGER_UNKNOWN);
 		this.m_savedData.imagePreviewImageClickable = true;
 		this.m_imagePreviewImage.setLongClickable(true);
+		
+		/* Build the zoom levels of the enlarged view on background thread. */
+		Thread threadPyramid = new Thread() 
+		{
+			@Override
+			public void run()
+			{
+				final ImagePyramid pyramid = new ImagePyramid(image);
+				if (SimpleScanActivity.this.m_lastImage == image)
+				{
+					SimpleScanActivity.this.m_lastPyramid = pyramid;
+				}
+			}
+		};
+		threadPyramid.start();
 			
 		try {
 			if(OnlyLEFTFOUR ==1)
@@ -1572,6 +2804,7 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 		}
 			
 		/* Calculate NFIQ score on background thread. */
+		final PreviewQualityEstimator.Estimate previewEstimate = this.m_lastPreviewEstimate;
 		Thread t = new Thread() 
 		{
 			@Override
@@ -1581,6 +2814,13 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 				{
 					int nfiqScore = SimpleScanActivity.this.m_ibScanDevice.calculateNfiqScore(image);
 					showToastOnUiThread("NFIQ score for print is " + nfiqScore, Toast.LENGTH_SHORT);
+					
+					/* Log the prediction against the real score so that the estimator can be tuned. */
+					if (previewEstimate != null)
+					{
+						Log.i(TAG, "NFIQ predicted " + previewEstimate.predictedNfiq + " (score " + previewEstimate.score 
+								+ ", " + previewEstimate.frames + " frames), actual " + nfiqScore);
+					}
 				}
 				catch (IBScanException ibse)
 				{
@@ -1602,6 +2842,101 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 			}
 		};
 		t.start();
+		
+		/* 
+		 * Check segments, or the whole image of a capture without segments, against earlier captures 
+		 * of this session on background thread. 
+		 */
+		Thread threadDuplicate = new Thread() 
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					final DuplicateFingerDetector.Result result = SimpleScanActivity.this.m_duplicateDetector.addCapture(image, splitImageArray);
+					if (result.isHandDuplicate())
+					{
+						final DuplicateFingerDetector.Match match = result.matches.get(0);
+						showToastOnUiThread("Same hand as capture " + (match.earlierCaptureIndex + 1) + " presented again", Toast.LENGTH_LONG);
+					}
+					else if (result.hasDuplicate())
+					{
+						final DuplicateFingerDetector.Match match = result.matches.get(0);
+						showToastOnUiThread("Finger " + (match.segmentIndex + 1) + " duplicates finger " + (match.earlierSegmentIndex + 1) 
+								+ " of capture " + (match.earlierCaptureIndex + 1), Toast.LENGTH_LONG);
+					}
+				}
+				catch (InterruptedException ie)
+				{
+					Log.e(TAG, "Duplicate check interrupted");
+				}
+			}
+		};
+		threadDuplicate.start();
+		
+		/* Extract a template for each finger on background thread. */
+		final MinutiaeExtractor extractor  = this.m_minutiaeExtractor;
+		final PatternClassifier classifier = this.m_patternClassifier;
+		if ((extractor != null) && (classifier != null))
+		{
+			Thread threadTemplate = new Thread() 
+			{
+				@Override
+				public void run()
+				{
+					final ImageData[] fingers = ((splitImageArray != null) && (splitImageArray.length > 0)) 
+							? splitImageArray : new ImageData[] { image };
+					final FingerTemplate[] templates = new FingerTemplate[fingers.length];
+					final PatternClassifier.PatternClass[] classes = new PatternClassifier.PatternClass[fingers.length];
+					try
+					{
+						final long startTime = System.currentTimeMillis();
+						int minutiaeCount = 0;
+						for (int i = 0; i < fingers.length; i++)
+						{
+							final int resolution = (fingers[i].resolutionX > 0) ? (int)Math.round(fingers[i].resolutionX) : TEMPLATE_RESOLUTION_DEFAULT;
+							
+							/* Fingers captured above 500 ppi are reduced to it, which the extractor is tuned and sized for. */
+							final int factor = Integer.highestOneBit(Math.max(1, resolution / TEMPLATE_RESOLUTION_DEFAULT));
+							if (factor > 1)
+							{
+								final ImageData finger  = fingers[i];
+								final int       width   = finger.width / factor;
+								final int       height  = finger.height / factor;
+								final byte[]    reduced = new byte[width * height];
+								for (int y = 0; y < height; y++)
+								{
+									ImagePyramid.reduceRow(finger.buffer, finger.pitch, finger.width, finger.height, factor, y, reduced, y * width);
+								}
+								templates[i] = extractor.extract(reduced, width, width, height, false, resolution / factor);
+								classes[i] = classifier.classify(reduced, width, width, height);
+							}
+							else
+							{
+								templates[i] = extractor.extract(fingers[i], resolution);
+								classes[i] = classifier.classify(fingers[i]);
+							}
+							minutiaeCount += templates[i].count;
+						}
+						SimpleScanActivity.this.m_lastTemplates = templates;
+						showToastOnUiThread("Extracted " + minutiaeCount + " minutiae in " + (System.currentTimeMillis() - startTime) + " ms", Toast.LENGTH_SHORT);
+						
+						/* Check the watch list with the new templates. */
+						identifyTemplates(templates, classes);
+					}
+					catch (InterruptedException ie)
+					{
+						Log.e(TAG, "Template extraction interrupted");
+					}
+					catch (IllegalArgumentException iae)
+					{
+						Log.e(TAG, "Could not extract template " + iae.getMessage());
+					}
+				}
+			};
+			threadTemplate.start();
+		}
 			
 		/* Move back to initialized state. */
 		transitionToInitialized(null);
@@ -1623,6 +2958,7 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 				Log.e(TAG, "Received unexpected transition to COMMUNICATION_BREAK from " + this.m_savedData.state.toString());
 				return;
 		}
+		final boolean wasCapturing = (this.m_savedData.state == AppState.CAPTURING);
 		
 		/* Move to this state. */
 		this.m_savedData.state = AppState.COMMUNICATION_BREAK;
@@ -1632,8 +2968,39 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 		setStatus("comm break");
 		setFrameTime(FRAME_TIME_DEFAULT);
 		
-		/* Transition to closing, then to refresh. */
-		transitionToClosing();
+		/* No more rolling line readings are needed. */
+		this.m_rollingTracker.stop();
+		
+		/* Without a serial number the scanner cannot be found again; transition to closing, then to refresh. */
+		if (this.m_openingSerialNumber == null)
+		{
+			transitionToClosing();
+			return;
+		}
+		
+		/* Let go of the broken scanner, remembering what to restore and resume on the re-opened one. */
+		this.m_recovering        = true;
+		this.m_recoveryPowerSave = this.m_powerSave;
+		this.m_resumeCaptureType = wasCapturing ? this.m_savedData.captureType : CAPTURE_TYPE_INVALID;
+		if (this.m_ibScanDevice != null)
+		{
+			try
+			{
+				this.m_ibScanDevice.close();
+			}
+			catch (IBScanException ibse)
+			{
+				Log.e(TAG, "Could not close device " + ibse.getType().toString());				
+			}
+			this.m_ibScanDevice = null;
+		}
+		
+		/* 
+		 * Re-open the scanner in the background.  On success it transitions to initialized; if it 
+		 * cannot be re-opened, to closing, then to refresh.
+		 */
+		setStatus("recovering");
+		this.m_breakRecovery.start(this.m_openingSerialNumber, this.m_breakRecoveryListener);
 	}
 
 	/*
@@ -1753,6 +3120,13 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 			
 			devicekojak =false;
 	
+			/* The capture service may be serving another app with the scanners. */
+			if (!ScannerOwnership.acquire(SimpleScanActivity.this, SCANNER_OWNER_NAME))
+			{
+				showToastOnUiThread("Scanner busy: in use by " + ScannerOwnership.getOwnerName(), Toast.LENGTH_LONG);
+				return;
+			}
+	
 			/* Transition to initializing state. */
 			transitionToInitializing(INITIALIZING_DEVICE_INDEX);
 		}
@@ -1809,6 +3183,27 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 			            case R.id.enlarge:
 			            	showEnlargedImage();
 			            	return (true);
+			            case R.id.email_template:
+			            	sendTemplateInEmail(SimpleScanActivity.this.m_lastTemplates);
+			            	return (true);
+			            case R.id.email_transaction:
+			            	sendTransactionInEmail();
+			            	return (true);
+			            case R.id.email_image_record:
+			            	sendFingerImageRecordInEmail();
+			            	return (true);
+			            case R.id.save_recording:
+			            	saveFlightRecording("on demand");
+			            	return (true);
+			            case R.id.stream_preview:
+			            	togglePreviewStream();
+			            	return (true);
+			            case R.id.replay_recording:
+			            	replayFlightRecording();
+			            	return (true);
+			            case R.id.sdk_trace:
+			            	toggleSdkTrace();
+			            	return (true);
 			            default:
 			            	return (false);
 			        }
@@ -1843,7 +3238,8 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 					return;
 			}
 			
-			/* Transition to refresh state. */
+			/* Transition to refresh state, enumerating every device afresh. */
+			SimpleScanActivity.this.m_refreshEngine.invalidate();
 			transitionToRefresh();		
 		}
 	};
@@ -1859,6 +3255,10 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 		{
 			/* Save capture type for screen orientation change. */
 			SimpleScanActivity.this.m_savedData.captureType = pos;
+			
+			/* Choosing a capture type means a capture is coming; wake the scanner for it. */
+			SimpleScanActivity.this.m_powerPolicy.onOperatorActivity(SystemClock.uptimeMillis());
+			applyPowerPolicy();
 		}
 		
 		@Override
@@ -1878,8 +3278,7 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 		{
 			if (SimpleScanActivity.this.m_enlargedDialog != null)
 			{
-				SimpleScanActivity.this.m_enlargedDialog.cancel();
-				SimpleScanActivity.this.m_enlargedDialog = null;
+				SimpleScanActivity.this.m_enlargedDialog.dismiss();
 			}
 		}	
 	};
@@ -1891,6 +3290,7 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 	@Override
 	public void scanDeviceAttached(final int deviceId) 
 	{
+		this.m_flightRecorder.recordEvent("scanDeviceAttached " + deviceId);
 		showToastOnUiThread("Device " + deviceId + " attached", Toast.LENGTH_SHORT);
 		
 		/* 
@@ -1912,12 +3312,14 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 		 * whereupon we can refresh the display.  If our device has detached while scanning, we 
 		 * should receive a deviceCommunicationBreak() callback as well.
 		 */
+		this.m_flightRecorder.recordEvent("scanDeviceDetached " + deviceId);
 		showToastOnUiThread("Device " + deviceId + " detached", Toast.LENGTH_SHORT);
 	}
 
 	@Override
 	public void scanDevicePermissionGranted(final int deviceId, final boolean granted) 
 	{
+		this.m_flightRecorder.recordEvent("scanDevicePermissionGranted " + deviceId + " " + granted);
 		if (granted)
 		{
 			/*
@@ -1935,15 +3337,17 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 	@Override
 	public void scanDeviceCountChanged(final int deviceCount)
 	{
+		this.m_flightRecorder.recordEvent("scanDeviceCountChanged " + deviceCount);
 		final String verb   = (deviceCount == 1) ? "is" : "are";
 		final String plural = (deviceCount == 1) ? ""   : "s";
 		showToastOnUiThread("There " + verb + " now " + deviceCount + " accessible device" + plural, Toast.LENGTH_SHORT);
 
 		/*
 		 * The number of recognized accessible scanners has changed.  If there are not zero scanners
-		 * and we were not already in the SCANNER_ATTACHED state, let's go there.
+		 * and we were not already in the SCANNER_ATTACHED state, let's go there.  A burst of changes
+		 * results in a single refresh.
 		 */
-		transitionToRefresh();
+		transitionToRefreshDebounced();
 	}
 	
 	@Override
@@ -1956,6 +3360,8 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 	public void scanDeviceOpenComplete(final int deviceIndex, final IBScanDevice device, 
 			final IBScanException exception) 
 	{
+		this.m_flightRecorder.recordEvent("scanDeviceOpenComplete " + deviceIndex + " " 
+				+ ((exception == null) ? "ok" : exception.getType().toString()));
 		if (device != null)
 		{
 			/*
@@ -1986,13 +3392,16 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 		 * A communication break occurred with a scanner during capture.  Let's cleanup after the 
 		 * break and then refresh.
 		 */
+		this.m_flightRecorder.recordEvent("deviceCommunicationBroken");
 		showToastOnUiThread("Communication break with device", Toast.LENGTH_SHORT);	
+		saveFlightRecording("communication break");
 		transitionToCommunicationBreak();
 	}
 
 	@Override
 	public void deviceFingerCountChanged(final IBScanDevice device, final FingerCountState fingerState) 
 	{
+		this.m_flightRecorder.recordEvent("deviceFingerCountChanged " + fingerState.toString());
 		
 		if(OnlyLEFTFOUR ==1)
 		{
@@ -2058,6 +3467,7 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 	@Override
 	public void deviceAcquisitionBegun(final IBScanDevice device, final ImageType imageType) 
 	{
+		this.m_flightRecorder.recordEvent("deviceAcquisitionBegun " + imageType.toString());
 		if (imageType.equals(ImageType.ROLL_SINGLE_FINGER))
 		{
 			showToastOnUiThread("Beginning acquisition...roll finger left", Toast.LENGTH_SHORT);
@@ -2067,6 +3477,7 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 	@Override
 	public void deviceAcquisitionCompleted(final IBScanDevice device, final ImageType imageType) 
 	{
+		this.m_flightRecorder.recordEvent("deviceAcquisitionCompleted " + imageType.toString());
 		if (imageType.equals(ImageType.ROLL_SINGLE_FINGER))
 		{
 			showToastOnUiThread("Completed acquisition...roll finger right", Toast.LENGTH_SHORT);
@@ -2079,6 +3490,14 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 	@Override
 	public void deviceFingerQualityChanged(final IBScanDevice device, final FingerQualityState[] fingerQualities) 
 	{
+		final StringBuilder event = new StringBuilder("deviceFingerQualityChanged");
+		for (FingerQualityState fingerQuality : fingerQualities)
+		{
+			event.append(' ').append(fingerQuality.toString());
+		}
+		this.m_flightRecorder.recordEvent(event.toString());
+		this.m_captureTrigger.setFingerQualities(fingerQualities);
+		
 		/* Make sure this occurs on the UI thread. */
 		runOnUiThread(new Runnable()
 		{
@@ -2143,14 +3562,23 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 	@Override
 	public void deviceImagePreviewAvailable(final IBScanDevice device, final ImageData image) 
 	{
+		/* Time the first frame of the capture. */
+		final long startUptime = this.m_captureStartUptime;
+		if (startUptime >= 0)
+		{
+			this.m_captureStartUptime = -1;
+			final long latency = SystemClock.uptimeMillis() - startUptime;
+			this.m_powerPolicy.recordFirstFrameLatency(this.m_captureStartAsleep, latency);
+			this.m_eventLog.log(EventLog.INFO, "firstFrame", null, latency, this.m_captureStartAsleep ? 1 : 0);
+		}
 
 		try
 		{
 			/*
 			 * Preserve aspect ratio of image while resizing.
 			 */
-//			final String deviceName = SimpleScanActivity.this.m_ibScanDevice.getProperty(PropertyId.PRODUCT_ID);
-			final String deviceName = this.m_savedData.deviceName;
+			final DeviceProfile profile = this.m_deviceProfile;
+			final boolean separateRoll = (profile != null) && profile.separateRollImage;
 			int dstWidth      = this.m_imagePreviewImage.getWidth();
 			int dstHeight     = this.m_imagePreviewImage.getHeight();
 			int dstHeightTemp = (dstWidth * image.height) / image.width;
@@ -2170,46 +3598,84 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 			
 			if (this.m_imageType.equals(ImageType.ROLL_SINGLE_FINGER))
 			{
-				RollingData rollingData;
-				try
-				{
-					rollingData = this.m_ibScanDevice.getRollingInfo();
-				}
-				catch (IBScanException ibse)
+				/* Use the latest rolling state read in the background rather than wait for a new one. */
+				final RollingTracker.Snapshot rollingData = this.m_rollingTracker.onFrame();
+				if (this.m_rollingTracker.takeTooFastWarning())
 				{
-					rollingData = null;
-					Log.e("Simple Scan", "failure getting rolling line " + ibse.getType().toString());
+					showToastOnUiThread("Rolling too fast...roll more slowly", Toast.LENGTH_SHORT);
 				}
 				if (rollingData != null)
 				{
 					int rollingLineWidth = 4;
-					if(deviceName.equals("KOJAK") || deviceName.equals("FIVE-0"))
+					if(separateRoll)
 					{						
-						SimpleScanActivity.this.m_ibScanDevice.createBmpEx(image.buffer, m_BitmapKojakRollImage);
-						SimpleScanActivity.this.drawBitmapRollingLine(m_BitmapKojakRollImage,dstWidth, dstHeight, image.width,image.height,rollingData.rollingState, rollingData.rollingLineX, rollingLineWidth);
+						SimpleScanActivity.this.drawImage(image, m_BitmapKojakRollImage);
+						SimpleScanActivity.this.drawBitmapRollingLine(m_BitmapKojakRollImage,dstWidth, dstHeight, m_BitmapKojakRollImage.getWidth(),
+								m_BitmapKojakRollImage.getHeight(),rollingData.rollingState, rollingData.rollingLineX * m_BitmapKojakRollImage.getWidth() / image.width, rollingLineWidth);
 					}else
 					{
-						SimpleScanActivity.this.m_ibScanDevice.createBmpEx(image.buffer, m_BitmapImage);
-						SimpleScanActivity.this.drawBitmapRollingLine(m_BitmapImage,dstWidth, dstHeight, image.width,image.height,rollingData.rollingState, rollingData.rollingLineX, rollingLineWidth);
+						SimpleScanActivity.this.drawImage(image, m_BitmapImage);
+						SimpleScanActivity.this.drawBitmapRollingLine(m_BitmapImage,dstWidth, dstHeight, m_BitmapImage.getWidth(),
+								m_BitmapImage.getHeight(),rollingData.rollingState, rollingData.rollingLineX * m_BitmapImage.getWidth() / image.width, rollingLineWidth);
 					}
 				} 
 				else
 				{
-					if(deviceName.equals("KOJAK")|| deviceName.equals("FIVE-0"))
+					if(separateRoll)
 					{						
-						SimpleScanActivity.this.m_ibScanDevice.createBmpEx(image.buffer, m_BitmapKojakRollImage);
+						SimpleScanActivity.this.drawImage(image, m_BitmapKojakRollImage);
 					}else
 					{
-						SimpleScanActivity.this.m_ibScanDevice.createBmpEx(image.buffer, m_BitmapImage);
+						SimpleScanActivity.this.drawImage(image, m_BitmapImage);
 					}
 				}
 			}
 			else
 			{
-				SimpleScanActivity.this.m_ibScanDevice.createBmpEx(image.buffer, m_BitmapImage);
+				SimpleScanActivity.this.drawImage(image, m_BitmapImage);
 			
 			}
 
+			/* Copy the frame into the store once; consumers share the copy rather than the SDK's array. */
+			final FrameStore       store = this.m_frameStore;
+			final FrameStore.Frame frame = (store != null) ? store.store(image) : null;
+			
+			/* Update the running quality estimate with this frame. */
+			final PreviewQualityEstimator estimator = this.m_previewEstimator;
+			PreviewQualityEstimator.Estimate estimateTemp = null;
+			if (estimator != null)
+			{
+				estimateTemp = (frame != null) ? estimator.estimate(frame) : estimator.estimate(image);
+			}
+			final PreviewQualityEstimator.Estimate estimate = estimateTemp;
+			this.m_lastPreviewEstimate = estimate;
+			
+			/* Record the frame, then keep it as the latest, passing on the reference from the store. */
+			if (frame != null)
+			{
+				this.m_flightRecorder.recordFrame(frame, (estimate != null) ? estimate.score : -1);
+				final PreviewStreamServer server = this.m_previewServer;
+				if (server != null)
+				{
+					server.publish(frame);
+				}
+				setLatestFrame(frame);
+			}
+			
+			/* Capture now if the quality has stopped improving, rather than wait for the SDK. */
+			if ((estimate != null) && this.m_captureTrigger.onFrame(estimate.score, System.currentTimeMillis()))
+			{
+				try
+				{
+					this.m_ibScanDevice.captureImageManually();
+					this.m_eventLog.log(EventLog.INFO, "earlyCapture", null, estimate.frames, estimate.predictedNfiq);
+				}
+				catch (IBScanException ibse)
+				{
+					this.m_eventLog.log(EventLog.ERROR, "earlyCaptureFailed", ibse.getType().name());
+				}
+			}
+			
 			if (m_BitmapImage != null || m_BitmapKojakRollImage != null)
 			{
 				/* Make sure this occurs on UI thread. */
@@ -2218,9 +3684,16 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 					@Override
 					public void run()
 					{
-						SimpleScanActivity.this.setFrameTime(String.format("%1$.3f", image.frameTime));
+						if (estimate != null)
+						{
+							SimpleScanActivity.this.setFrameTime(String.format("%1$.3f  NFIQ~%2$d", image.frameTime, estimate.predictedNfiq));
+						}
+						else
+						{
+							SimpleScanActivity.this.setFrameTime(String.format("%1$.3f", image.frameTime));
+						}
 						
-						if (SimpleScanActivity.this.m_imageType.equals(ImageType.ROLL_SINGLE_FINGER) && (deviceName.equals("KOJAK") || deviceName.equals("FIVE-0")) )
+						if (SimpleScanActivity.this.m_imageType.equals(ImageType.ROLL_SINGLE_FINGER) && separateRoll)
 						{
 							
 							SimpleScanActivity.this.m_savedData.imageBitmap = m_BitmapKojakRollImage;
@@ -2237,9 +3710,9 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 		}
 	    catch(IllegalArgumentException ae)
 	    {
-			Log.e("Simple Scan", "failure gettin Exception line ");
+			this.m_eventLog.log(EventLog.ERROR, "previewDrawFailed");
 		}catch (IBScanException e) {
-			Log.e("Simple Scan",e.getMessage());
+			this.m_eventLog.log(EventLog.ERROR, "previewDrawFailed", e.getType().name());
 		}
 	}
 
@@ -2258,7 +3731,8 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 		/*
 		 * Preserve aspect ratio of image while resizing.
 		 */
-		final String deviceName = this.m_savedData.deviceName;
+		final DeviceProfile profile = this.m_deviceProfile;
+		final boolean separateRoll = (profile != null) && profile.separateRollImage;
 		int dstWidth      = this.m_imagePreviewImage.getWidth();
 		int dstHeight     = this.m_imagePreviewImage.getHeight();
 		int dstHeightTemp = (dstWidth * image.height) / image.width;
@@ -2278,18 +3752,18 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 		{
 			if (this.m_imageType.equals(ImageType.ROLL_SINGLE_FINGER))
 			{
-				if(deviceName.equals("KOJAK")|| deviceName.equals("FIVE-0"))
+				if(separateRoll)
 				{						
-					SimpleScanActivity.this.m_ibScanDevice.createBmpEx(image.buffer, m_BitmapKojakRollImage);
+					SimpleScanActivity.this.drawImage(image, m_BitmapKojakRollImage);
 				}
 				else
 				{
-					SimpleScanActivity.this.m_ibScanDevice.createBmpEx(image.buffer, m_BitmapImage);
+					SimpleScanActivity.this.drawImage(image, m_BitmapImage);
 				}
 			}
 			else
 			{
-				SimpleScanActivity.this.m_ibScanDevice.createBmpEx(image.buffer, m_BitmapImage);
+				SimpleScanActivity.this.drawImage(image, m_BitmapImage);
 		
 			}
 
@@ -2301,7 +3775,7 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 				@Override
 				public void run()
 				{
-						if (SimpleScanActivity.this.m_imageType.equals(ImageType.ROLL_SINGLE_FINGER) && (deviceName.equals("KOJAK") || deviceName.equals("FIVE-0")) )
+						if (SimpleScanActivity.this.m_imageType.equals(ImageType.ROLL_SINGLE_FINGER) && separateRoll)
 					{
 						SimpleScanActivity.this.m_beeper.playSound();
 							SimpleScanActivity.this.m_savedData.imageBitmap = m_BitmapKojakRollImage;
@@ -2320,9 +3794,9 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 		}
 	    catch(IllegalArgumentException ae)
 	    {
-			Log.e("Simple Scan", "failure gettin Exception line ");
+			this.m_eventLog.log(EventLog.ERROR, "resultDrawFailed");
 		}catch (IBScanException e) {
-			Log.e("Simple Scan",e.getMessage());
+			this.m_eventLog.log(EventLog.ERROR, "resultDrawFailed", e.getType().name());
 		}
 
 		/*
@@ -2335,24 +3809,33 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 			 * If an image status is returned, then there was an error during image acquisition.
 			 */
 			showToastOnUiThread("Image capture ended with error: " + imageStatus.getType().toString(), Toast.LENGTH_SHORT);			
+			this.m_flightRecorder.recordEvent("deviceImageResultExtendedAvailable " + imageStatus.getType().toString());
+			saveFlightRecording("capture error");
 		}
 		else
 		{
+			this.m_flightRecorder.recordEvent("deviceImageResultExtendedAvailable " + imageType.toString() 
+					+ " " + detectedFingerCount);
 			showToastOnUiThread("Image result available", Toast.LENGTH_SHORT);
 		}
-		transitionToImageCaptured(image, imageType, segmentImageArray);    	
+		transitionToImageCaptured(image, imageType, segmentImageArray, segmentPositionArray);    	
 	
     }
 	
 	@Override
 	public void devicePlatenStateChanged(final IBScanDevice device, final PlatenState platenState) 
 	{
-		/* TODO: REPORT EVENT */
+		this.m_flightRecorder.recordEvent("devicePlatenStateChanged " + platenState.toString());
+		
+		/* Fingers on the platen keep the scanner awake; apply the policy on the UI thread. */
+		this.m_powerPolicy.onPlatenState(platenState == PlatenState.HAS_FINGERS, SystemClock.uptimeMillis());
+		this.m_powerHandler.post(this.m_powerPolicyRunnable);
 	}
 
 	@Override
 	public void deviceWarningReceived(final IBScanDevice device, final IBScanException warning) 
 	{
+		this.m_flightRecorder.recordEvent("deviceWarningReceived " + warning.getType().toString());
 		showToastOnUiThread("Warning received " + warning.getType().toString(), Toast.LENGTH_SHORT);
 	}
 	@Override
@@ -2386,27 +3869,56 @@ public class SimpleScanActivity extends Activity implements IBScanListener, IBSc
 		final Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
 		if (bitmap != null)
 		{
-        	final byte[] imageBuffer = new byte[width * height * 4];
-        	/* 
-        	 * The image in the buffer is flipped vertically from what the Bitmap class expects; 
-        	 * we will flip it to compensate while moving it into the buffer. 
-        	 */
-    		for (int y = 0; y < height; y++) 
-    		{
-    			for (int x = 0; x < width; x++) 
-    			{
-    				imageBuffer[(y * width + x) * 4] = 
-    						imageBuffer[(y * width + x) * 4 + 1] = 
-    								imageBuffer[(y * width + x) * 4 + 2] = 
-    										(byte) 128;
-    				imageBuffer[(y * width + x) * 4 + 3] = (byte)255;
-    			}
-    		}        	
-    		bitmap.copyPixelsFromBuffer(ByteBuffer.wrap(imageBuffer));
+			/* Fill with gray in place rather than through an ARGB copy of the whole bitmap. */
+			bitmap.eraseColor(Color.rgb(128, 128, 128));
 		}
 		return (bitmap);
     }	
 	
+	/*
+	 * Draw an image into a display bitmap.  An image of the bitmap's size is drawn by the SDK; a
+	 * larger one, such as a 1000 ppi capture, is reduced to fit a band of rows at a time, so no
+	 * bitmap or copy of the image at full resolution is made.
+	 */
+	private synchronized void drawImage(final ImageData image, final Bitmap bitmap) throws IBScanException
+	{
+		final int width  = bitmap.getWidth();
+		final int height = bitmap.getHeight();
+		if ((image.width == width) && (image.height == height))
+		{
+			this.m_ibScanDevice.createBmpEx(image.buffer, bitmap);
+			return;
+		}
+		
+		final int factor        = ImagePyramid.getReduction(image.width, image.height, width, height);
+		final int reducedWidth  = Math.min(width, image.width / factor);
+		final int reducedHeight = Math.min(height, image.height / factor);
+		if ((this.m_displayRow == null) || (this.m_displayRow.length < image.width))
+		{
+			this.m_displayRow  = new byte[image.width];
+			this.m_displayBand = new int[width * DISPLAY_BAND_ROWS];
+		}
+		if (this.m_displayBand.length < width * DISPLAY_BAND_ROWS)
+		{
+			this.m_displayBand = new int[width * DISPLAY_BAND_ROWS];
+		}
+		for (int top = 0; top < reducedHeight; top += DISPLAY_BAND_ROWS)
+		{
+			final int rows = Math.min(DISPLAY_BAND_ROWS, reducedHeight - top);
+			for (int y = 0; y < rows; y++)
+			{
+				ImagePyramid.reduceRow(image.buffer, image.pitch, image.width, image.height, factor, top + y, 
+						this.m_displayRow, 0);
+				for (int x = 0; x < reducedWidth; x++)
+				{
+					final int gray = this.m_displayRow[x] & 0xFF;
+					this.m_displayBand[y * width + x] = 0xFF000000 | (gray << 16) | (gray << 8) | gray;
+				}
+			}
+			bitmap.setPixels(this.m_displayBand, 0, width, 0, top, reducedWidth, rows);
+		}
+	}
+	
 	public void PlayLed(int ledColor, boolean bBlink ,int imageTypeOnlyFOur) 
 	{
 		setLeds =0;
@@ -0,0 +1,142 @@
+/* *************************************************************************************************
+ * StartupTrace.java
+ *
+ * DESCRIPTION:
+ *     Trace of startup stages for SimpleScan demo app for IBScanUltimate
+ *     http://www.integratedbiometrics.com
+ *
+ * NOTES:
+ *     Copyright (c) Integrated Biometrics, 2012-2013
+ *
+ * HISTORY:
+ *     2026/10/19  First version.
+************************************************************************************************ */
+
+package com.integratedbiometrics.ibsimplescan;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Records how long after the activity was created each stage of startup finished, so that time to
+ * interactive can be compared between releases.  Stages may be marked from any thread.  When
+ * startup finishes, the trace is logged and appended as one line to a file in private storage:
+ *
+ *     release  wall-clock time (ms)  stage=elapsed ms  stage=elapsed ms ...
+ *
+ * Stages marked after the trace is finished are only logged.  The file is started afresh once it
+ * grows past MAX_FILE_BYTES, which keeps several hundred launches.
+ */
+public class StartupTrace
+{
+	/* *********************************************************************************************
+	 * PRIVATE CONSTANTS
+	 ******************************************************************************************** */
+
+	/* The tag for log messages. */
+	private static final String  TAG            = "StartupTrace";
+
+	/* The size past which the file is started afresh. */
+	private static final long    MAX_FILE_BYTES = 64 * 1024;
+
+	/* The encoding of the file. */
+	private static final Charset UTF_8          = Charset.forName("UTF-8");
+
+	/* *********************************************************************************************
+	 * PRIVATE FIELDS
+	 ******************************************************************************************** */
+
+	/* The file of traces. */
+	private final File              m_file;
+
+	/* The uptime at which the activity was created. */
+	private final long              m_startUptime;
+
+	/* The stages marked so far, and the elapsed time of each. */
+	private final ArrayList<String> m_stages  = new ArrayList<String>();
+	private final ArrayList<Long>   m_elapsed = new ArrayList<Long>();
+
+	/* Whether the trace has been finished. */
+	private boolean                 m_finished;
+
+	/* *********************************************************************************************
+	 * CONSTRUCTOR
+	 ******************************************************************************************** */
+
+	/*
+	 * Start a trace, timing stages from now.
+	 */
+	public StartupTrace(final File file)
+	{
+		this.m_file        = file;
+		this.m_startUptime = SystemClock.uptimeMillis();
+	}
+
+	/* *********************************************************************************************
+	 * PUBLIC METHODS
+	 ******************************************************************************************** */
+
+	/*
+	 * Record that a stage has finished.
+	 */
+	public synchronized void mark(final String stage)
+	{
+		final long elapsed = SystemClock.uptimeMillis() - this.m_startUptime;
+		if (this.m_finished)
+		{
+			Log.i(TAG, stage + " after " + elapsed + " ms, after startup finished");
+			return;
+		}
+		this.m_stages.add(stage);
+		this.m_elapsed.add(elapsed);
+	}
+
+	/*
+	 * Finish the trace, log it and append it to the file under a release name.  Writes to storage,
+	 * so should be called off the UI thread.  Returns the line, or null if already finished.
+	 */
+	public String finish(final String release)
+	{
+		final StringBuilder line = new StringBuilder();
+		synchronized (this)
+		{
+			if (this.m_finished)
+			{
+				return (null);
+			}
+			this.m_finished = true;
+
+			line.append(release).append(' ').append(System.currentTimeMillis());
+			for (int i = 0; i < this.m_stages.size(); i++)
+			{
+				line.append(' ').append(this.m_stages.get(i)).append('=').append(this.m_elapsed.get(i));
+			}
+		}
+		Log.i(TAG, line.toString());
+
+		try
+		{
+			final boolean          append = (this.m_file.length() < MAX_FILE_BYTES);
+			final FileOutputStream out    = new FileOutputStream(this.m_file, append);
+			try
+			{
+				out.write((line.toString() + "\n").getBytes(UTF_8));
+			}
+			finally
+			{
+				out.close();
+			}
+		}
+		catch (IOException ioe)
+		{
+			Log.e(TAG, "Could not write startup trace " + ioe.getMessage());
+		}
+		return (line.toString());
+	}
+}
@@ -0,0 +1,237 @@
+/* *************************************************************************************************
+ * TemplateGallery.java
+ *
+ * DESCRIPTION:
+ *     Memory-mapped gallery of minutiae templates for SimpleScan demo app for IBScanUltimate
+ *     http://www.integratedbiometrics.com
+ *
+ * NOTES:
+ *     Copyright (c) Integrated Biometrics, 2012-2013
+ *
+ * HISTORY:
+ *     2026/10/19  First version.
+************************************************************************************************ */
+
+package com.integratedbiometrics.ibsimplescan;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A read-only gallery of enrolled templates, stored as flat records in a file that is memory-mapped
+ * rather than read onto the heap.  The gallery holds no per-template objects: a template is
+ * identified by its index, and its minutiae are copied on demand into caller-owned primitive
+ * arrays.
+ *
+ * File layout (big-endian):
+ *     int     magic ("SSGL")
+ *     int     version
+ *     int     template count N
+ *     int     total minutia count M
+ *     int[N]  subject identifiers
+ *     int[N+1] index of each template's first minutia (the last entry is M)
+ *     byte[N] pattern class code of each template (version 2 and later)
+ *     M x { short x, short y, byte angle, byte type }
+ */
+public class TemplateGallery
+{
+	/* *********************************************************************************************
+	 * PRIVATE CONSTANTS
+	 ******************************************************************************************** */
+
+	/* The file identifier and version. */
+	private static final int MAGIC          = 0x5353474C;  /* "SSGL" */
+	private static final int VERSION        = 2;
+
+	/* The first version that stores pattern classes. */
+	private static final int VERSION_CLASSES = 2;
+
+	/* The sizes of the fixed parts of the file. */
+	private static final int HEADER_LENGTH  = 16;
+	private static final int MINUTIA_LENGTH = 6;
+
+	/* *********************************************************************************************
+	 * PRIVATE FIELDS
+	 ******************************************************************************************** */
+
+	/* The mapped file. */
+	private final ByteBuffer m_buffer;
+
+	/* The number of templates and the positions of the tables within the file. */
+	private final int        m_count;
+	private final int        m_idsPosition;
+	private final int        m_offsetsPosition;
+	private final int        m_classesPosition;
+	private final int        m_minutiaePosition;
+
+	/* *********************************************************************************************
+	 * CONSTRUCTOR
+	 ******************************************************************************************** */
+
+	private TemplateGallery(final ByteBuffer buffer) throws IOException
+	{
+		if ((buffer.capacity() < HEADER_LENGTH) || (buffer.getInt(0) != MAGIC) || (buffer.getInt(4) < 1)
+				|| (buffer.getInt(4) > VERSION))
+		{
+			throw new IOException("not a template gallery");
+		}
+		final boolean hasClasses = (buffer.getInt(4) >= VERSION_CLASSES);
+		this.m_buffer           = buffer;
+		this.m_count            = buffer.getInt(8);
+		this.m_idsPosition      = HEADER_LENGTH;
+		this.m_offsetsPosition  = this.m_idsPosition + 4 * this.m_count;
+		this.m_classesPosition  = hasClasses ? this.m_offsetsPosition + 4 * (this.m_count + 1) : -1;
+		this.m_minutiaePosition = this.m_offsetsPosition + 4 * (this.m_count + 1) + (hasClasses ? this.m_count : 0);
+
+		final int minutiaCount = buffer.getInt(12);
+		if (buffer.capacity() < this.m_minutiaePosition + MINUTIA_LENGTH * minutiaCount)
+		{
+			throw new IOException("template gallery is truncated");
+		}
+	}
+
+	/* *********************************************************************************************
+	 * PUBLIC METHODS
+	 ******************************************************************************************** */
+
+	/*
+	 * Map a gallery file into memory.
+	 */
+	public static TemplateGallery open(final File file) throws IOException
+	{
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try
+		{
+			final FileChannel channel = raf.getChannel();
+			return (new TemplateGallery(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())));
+		}
+		finally
+		{
+			/* The mapping remains valid after the file is closed. */
+			raf.close();
+		}
+	}
+
+	/*
+	 * Write a gallery file from subject identifiers and their templates, with unknown classes.
+	 */
+	public static void write(final File file, final int[] ids, final FingerTemplate[] templates) throws IOException
+	{
+		write(file, ids, templates, new PatternClassifier.PatternClass[templates.length]);
+	}
+
+	/*
+	 * Write a gallery file from subject identifiers, their templates and their pattern classes (a
+	 * null class is stored as unknown).
+	 */
+	public static void write(final File file, final int[] ids, final FingerTemplate[] templates,
+			final PatternClassifier.PatternClass[] classes) throws IOException
+	{
+		int minutiaCount = 0;
+		for (FingerTemplate template : templates)
+		{
+			minutiaCount += template.count;
+		}
+
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try
+		{
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(templates.length);
+			out.writeInt(minutiaCount);
+			for (int id : ids)
+			{
+				out.writeInt(id);
+			}
+			int offset = 0;
+			for (FingerTemplate template : templates)
+			{
+				out.writeInt(offset);
+				offset += template.count;
+			}
+			out.writeInt(offset);
+			for (PatternClassifier.PatternClass patternClass : classes)
+			{
+				out.writeByte((patternClass != null) ? patternClass.ordinal() : PatternClassifier.PatternClass.UNKNOWN.ordinal());
+			}
+			for (FingerTemplate template : templates)
+			{
+				for (int i = 0; i < template.count; i++)
+				{
+					out.writeShort(template.x[i]);
+					out.writeShort(template.y[i]);
+					out.writeByte(template.angle[i]);
+					out.writeByte(template.type[i]);
+				}
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	/*
+	 * Get the number of templates.
+	 */
+	public int getCount()
+	{
+		return (this.m_count);
+	}
+
+	/*
+	 * Get the subject identifier of a template.
+	 */
+	public int getId(final int index)
+	{
+		return (this.m_buffer.getInt(this.m_idsPosition + 4 * index));
+	}
+
+	/*
+	 * Get the pattern class of a template.
+	 */
+	public PatternClassifier.PatternClass getPatternClass(final int index)
+	{
+		if (this.m_classesPosition < 0)
+		{
+			return (PatternClassifier.PatternClass.UNKNOWN);
+		}
+		return (PatternClassifier.PatternClass.fromCode(this.m_buffer.get(this.m_classesPosition + index)));
+	}
+
+	/*
+	 * Get an independent view of the mapped file for use by one thread.
+	 */
+	ByteBuffer newView()
+	{
+		return (this.m_buffer.duplicate());
+	}
+
+	/*
+	 * Copy the minutiae of a template into the arrays, with angles in 0-255 units, and return the
+	 * number copied (at most the array length).
+	 */
+	int copyMinutiae(final ByteBuffer view, final int index, final int[] x, final int[] y,
+			final int[] angle, final int[] type)
+	{
+		final int first = view.getInt(this.m_offsetsPosition + 4 * index);
+		final int count = Math.min(x.length, view.getInt(this.m_offsetsPosition + 4 * (index + 1)) - first);
+		int position = this.m_minutiaePosition + MINUTIA_LENGTH * first;
+		for (int i = 0; i < count; i++)
+		{
+			x[i]      = view.getShort(position);
+			y[i]      = view.getShort(position + 2);
+			angle[i]  = view.get(position + 4) & 0xFF;
+			type[i]   = view.get(position + 5);
+			position += MINUTIA_LENGTH;
+		}
+		return (count);
+	}
+}
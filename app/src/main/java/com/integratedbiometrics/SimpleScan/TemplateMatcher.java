@@ -0,0 +1,251 @@
+/* *************************************************************************************************
+ * TemplateMatcher.java
+ *
+ * DESCRIPTION:
+ *     Minutiae template comparison for SimpleScan demo app for IBScanUltimate
+ *     http://www.integratedbiometrics.com
+ *
+ * NOTES:
+ *     Copyright (c) Integrated Biometrics, 2012-2013
+ *
+ * HISTORY:
+ *     2026/10/19  First version.
+************************************************************************************************ */
+
+package com.integratedbiometrics.ibsimplescan;
+
+/**
+ * Compares a probe template with gallery templates.  The best rigid alignment is found by Hough
+ * voting over pairs of same-type minutiae, then minutiae are paired greedily under that alignment.
+ * The score is 100 * paired^2 / (probe count * gallery count).  A matcher owns all of its work
+ * arrays and must only be used by one thread; the probe is set once and compared against many
+ * gallery templates.
+ */
+final class TemplateMatcher
+{
+	/* *********************************************************************************************
+	 * PRIVATE CONSTANTS
+	 ******************************************************************************************** */
+
+	/* Angle units per full turn. */
+	private static final int    ANGLE_UNITS        = 256;
+
+	/* The largest rotation considered between two impressions (45 degrees) and its bin width. */
+	private static final int    MAX_ROTATION       = 32;
+	private static final int    ROTATION_BIN       = 8;
+	private static final int    ROTATION_BINS      = 2 * MAX_ROTATION / ROTATION_BIN + 1;
+
+	/* The translation bin width and the number of bins on each axis, in pixels. */
+	private static final int    TRANSLATION_BIN    = 16;
+	private static final int    TRANSLATION_BINS   = 64;
+
+	/* The tolerances for two aligned minutiae to pair. */
+	private static final int    DISTANCE_TOLERANCE = 16;
+	private static final int    ANGLE_TOLERANCE    = 16;
+
+	/* The fewest paired minutiae for a non-zero score. */
+	private static final int    MIN_PAIRED         = 4;
+
+	/* Cosine and sine for each angle unit. */
+	private static final double[] COS = new double[ANGLE_UNITS];
+	private static final double[] SIN = new double[ANGLE_UNITS];
+	static
+	{
+		for (int i = 0; i < ANGLE_UNITS; i++)
+		{
+			COS[i] = Math.cos(2 * Math.PI * i / ANGLE_UNITS);
+			SIN[i] = Math.sin(2 * Math.PI * i / ANGLE_UNITS);
+		}
+	}
+
+	/* *********************************************************************************************
+	 * PRIVATE FIELDS
+	 ******************************************************************************************** */
+
+	/* The probe minutiae, with y negated so that angles and rotations are counter-clockwise. */
+	private final int[]     m_probeX     = new int[FingerTemplate.MAX_MINUTIAE];
+	private final int[]     m_probeY     = new int[FingerTemplate.MAX_MINUTIAE];
+	private final int[]     m_probeAngle = new int[FingerTemplate.MAX_MINUTIAE];
+	private final int[]     m_probeType  = new int[FingerTemplate.MAX_MINUTIAE];
+	private int             m_probeCount;
+
+	/* The gallery minutiae being compared. */
+	final int[]             galleryX     = new int[FingerTemplate.MAX_MINUTIAE];
+	final int[]             galleryY     = new int[FingerTemplate.MAX_MINUTIAE];
+	final int[]             galleryAngle = new int[FingerTemplate.MAX_MINUTIAE];
+	final int[]             galleryType  = new int[FingerTemplate.MAX_MINUTIAE];
+
+	/* The Hough accumulator and running sums of the exact parameters voted into each cell. */
+	private final int[]     m_votes      = new int[ROTATION_BINS * TRANSLATION_BINS * TRANSLATION_BINS];
+	private final int[]     m_sumRot     = new int[ROTATION_BINS * TRANSLATION_BINS * TRANSLATION_BINS];
+	private final int[]     m_sumDx      = new int[ROTATION_BINS * TRANSLATION_BINS * TRANSLATION_BINS];
+	private final int[]     m_sumDy      = new int[ROTATION_BINS * TRANSLATION_BINS * TRANSLATION_BINS];
+
+	/* The accumulator cells touched by the last comparison, so only they need clearing. */
+	private final int[]     m_touched    = new int[FingerTemplate.MAX_MINUTIAE * FingerTemplate.MAX_MINUTIAE];
+
+	/* Pairing state. */
+	private final boolean[] m_paired     = new boolean[FingerTemplate.MAX_MINUTIAE];
+
+	/* *********************************************************************************************
+	 * PUBLIC METHODS
+	 ******************************************************************************************** */
+
+	/*
+	 * Set the probe for subsequent comparisons.
+	 */
+	void setProbe(final FingerTemplate probe)
+	{
+		this.m_probeCount = probe.count;
+		for (int i = 0; i < probe.count; i++)
+		{
+			this.m_probeX[i]     = probe.x[i];
+			this.m_probeY[i]     = -probe.y[i];
+			this.m_probeAngle[i] = probe.angle[i] & 0xFF;
+			this.m_probeType[i]  = probe.type[i];
+		}
+	}
+
+	/*
+	 * Compare the probe with the first count gallery minutiae loaded into the gallery arrays (y
+	 * as stored in the template) and return the score, 0-100.
+	 */
+	int compare(final int count)
+	{
+		if ((this.m_probeCount < MIN_PAIRED) || (count < MIN_PAIRED))
+		{
+			return (0);
+		}
+		for (int j = 0; j < count; j++)
+		{
+			this.galleryY[j] = -this.galleryY[j];
+		}
+
+		/* Vote for the rotation and translation that maps each probe minutia onto a gallery one. */
+		int touchedCount = 0;
+		int bestCell     = -1;
+		int bestVotes    = 0;
+		for (int i = 0; i < this.m_probeCount; i++)
+		{
+			final int px = this.m_probeX[i];
+			final int py = this.m_probeY[i];
+			for (int j = 0; j < count; j++)
+			{
+				if (this.m_probeType[i] != this.galleryType[j])
+				{
+					continue;
+				}
+				final int rotation = signedAngle(this.galleryAngle[j] - this.m_probeAngle[i]);
+				if ((rotation < -MAX_ROTATION) || (rotation > MAX_ROTATION))
+				{
+					continue;
+				}
+				final int r  = rotation & (ANGLE_UNITS - 1);
+				final int dx = this.galleryX[j] - (int)Math.round(COS[r] * px - SIN[r] * py);
+				final int dy = this.galleryY[j] - (int)Math.round(SIN[r] * px + COS[r] * py);
+				final int ox = dx + TRANSLATION_BIN * TRANSLATION_BINS / 2;
+				final int oy = dy + TRANSLATION_BIN * TRANSLATION_BINS / 2;
+				if ((ox < 0) || (ox >= TRANSLATION_BIN * TRANSLATION_BINS) || (oy < 0) || (oy >= TRANSLATION_BIN * TRANSLATION_BINS))
+				{
+					continue;
+				}
+				final int bx = ox / TRANSLATION_BIN;
+				final int by = oy / TRANSLATION_BIN;
+				final int cell = (((rotation + MAX_ROTATION) / ROTATION_BIN) * TRANSLATION_BINS + by) * TRANSLATION_BINS + bx;
+				if (this.m_votes[cell] == 0)
+				{
+					this.m_touched[touchedCount++] = cell;
+				}
+				this.m_votes[cell]++;
+				this.m_sumRot[cell] += rotation;
+				this.m_sumDx[cell]  += dx;
+				this.m_sumDy[cell]  += dy;
+				if (this.m_votes[cell] > bestVotes)
+				{
+					bestVotes = this.m_votes[cell];
+					bestCell  = cell;
+				}
+			}
+		}
+
+		int score = 0;
+		if (bestVotes >= MIN_PAIRED)
+		{
+			final int rotation = Math.round((float)this.m_sumRot[bestCell] / bestVotes);
+			final int dx       = Math.round((float)this.m_sumDx[bestCell] / bestVotes);
+			final int dy       = Math.round((float)this.m_sumDy[bestCell] / bestVotes);
+			final int paired   = pair(count, rotation, dx, dy);
+			if (paired >= MIN_PAIRED)
+			{
+				score = 100 * paired * paired / (this.m_probeCount * count);
+			}
+		}
+
+		/* Clear only the cells that were used. */
+		for (int t = 0; t < touchedCount; t++)
+		{
+			final int cell = this.m_touched[t];
+			this.m_votes[cell]  = 0;
+			this.m_sumRot[cell] = 0;
+			this.m_sumDx[cell]  = 0;
+			this.m_sumDy[cell]  = 0;
+		}
+		return (score);
+	}
+
+	/* *********************************************************************************************
+	 * PRIVATE METHODS
+	 ******************************************************************************************** */
+
+	/*
+	 * Count the probe minutiae that pair with a distinct gallery minutia under the alignment.
+	 */
+	private int pair(final int count, final int rotation, final int dx, final int dy)
+	{
+		final int r = rotation & (ANGLE_UNITS - 1);
+		for (int j = 0; j < count; j++)
+		{
+			this.m_paired[j] = false;
+		}
+
+		int paired = 0;
+		for (int i = 0; i < this.m_probeCount; i++)
+		{
+			final double x     = COS[r] * this.m_probeX[i] - SIN[r] * this.m_probeY[i] + dx;
+			final double y     = SIN[r] * this.m_probeX[i] + COS[r] * this.m_probeY[i] + dy;
+			final int    angle = this.m_probeAngle[i] + rotation;
+
+			int    best         = -1;
+			double bestDistance = DISTANCE_TOLERANCE * DISTANCE_TOLERANCE;
+			for (int j = 0; j < count; j++)
+			{
+				if (this.m_paired[j] || (Math.abs(signedAngle(this.galleryAngle[j] - angle)) > ANGLE_TOLERANCE))
+				{
+					continue;
+				}
+				final double ex       = this.galleryX[j] - x;
+				final double ey       = this.galleryY[j] - y;
+				final double distance = ex * ex + ey * ey;
+				if (distance <= bestDistance)
+				{
+					bestDistance = distance;
+					best         = j;
+				}
+			}
+			if (best >= 0)
+			{
+				this.m_paired[best] = true;
+				paired++;
+			}
+		}
+		return (paired);
+	}
+
+	/*
+	 * Reduce an angle difference to [-128, 128).
+	 */
+	private static int signedAngle(final int difference)
+	{
+		return (((difference + ANGLE_UNITS / 2) & (ANGLE_UNITS - 1)) - ANGLE_UNITS / 2);
+	}
+}
@@ -0,0 +1,310 @@
+/* *************************************************************************************************
+ * TiledImageView.java
+ *
+ * DESCRIPTION:
+ *     Pan and zoom view of a tiled image for SimpleScan demo app for IBScanUltimate
+ *     http://www.integratedbiometrics.com
+ *
+ * NOTES:
+ *     Copyright (c) Integrated Biometrics, 2012-2013
+ *
+ * HISTORY:
+ *     2026/10/19  First version.
+************************************************************************************************ */
+
+package com.integratedbiometrics.ibsimplescan;
+
+import java.util.ArrayDeque;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.util.AttributeSet;
+import android.util.LruCache;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.view.View;
+
+/**
+ * Shows an ImagePyramid with pan and zoom.  Only the tiles in view are drawn, from the pyramid level
+ * closest to the current zoom, so a large image opens at once and draws no more pixels than the
+ * view has.  Tiles are converted to 16-bit bitmaps when first drawn and kept in an LRU cache; the
+ * bitmaps of evicted tiles are reused from the next draw on, when nothing drawn refers to them any
+ * more.  Drag pans, pinch zooms, double tap switches between fitting the view and 1:1, and a single
+ * tap clicks the view.
+ */
+public class TiledImageView extends View
+{
+	/* *********************************************************************************************
+	 * PRIVATE CONSTANTS
+	 ******************************************************************************************** */
+
+	/* The number of tile bitmaps kept in the cache. */
+	private static final int   TILE_CACHE_TILES = 64;
+
+	/* The largest zoom, in view pixels per image pixel. */
+	private static final float MAX_SCALE        = 4.0f;
+
+	/* *********************************************************************************************
+	 * PRIVATE FIELDS
+	 ******************************************************************************************** */
+
+	/* The image shown, or null if none. */
+	private ImagePyramid                m_pyramid;
+
+	/* The zoom, in view pixels per image pixel, the zoom that fits the view, and where the image starts. */
+	private float                       m_scale       = 1.0f;
+	private float                       m_fitScale    = 1.0f;
+	private float                       m_originX;
+	private float                       m_originY;
+
+	/* The tile bitmaps, keyed by level, column and row, and evicted bitmaps before and after a draw. */
+	private final LruCache<Long, Bitmap> m_tiles;
+	private final ArrayDeque<Bitmap>    m_evicted     = new ArrayDeque<Bitmap>();
+	private final ArrayDeque<Bitmap>    m_spare       = new ArrayDeque<Bitmap>();
+
+	/* Work buffers for converting and drawing tiles. */
+	private final int[]                 m_tilePixels  = new int[ImagePyramid.TILE_SIZE * ImagePyramid.TILE_SIZE];
+	private final Rect                  m_source      = new Rect();
+	private final RectF                 m_destination = new RectF();
+	private final Paint                 m_paint       = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+	/* The gesture detectors. */
+	private final ScaleGestureDetector  m_scaleDetector;
+	private final GestureDetector       m_gestureDetector;
+
+	/* *********************************************************************************************
+	 * CONSTRUCTORS
+	 ******************************************************************************************** */
+
+	public TiledImageView(final Context context)
+	{
+		this(context, null);
+	}
+
+	public TiledImageView(final Context context, final AttributeSet attrs)
+	{
+		super(context, attrs);
+
+		this.m_tiles = new LruCache<Long, Bitmap>(TILE_CACHE_TILES)
+		{
+			@Override
+			protected void entryRemoved(final boolean evicted, final Long key, final Bitmap oldValue, final Bitmap newValue)
+			{
+				TiledImageView.this.m_evicted.add(oldValue);
+			}
+		};
+		this.m_scaleDetector   = new ScaleGestureDetector(context, this.m_scaleListener);
+		this.m_gestureDetector = new GestureDetector(context, this.m_gestureListener);
+	}
+
+	/* *********************************************************************************************
+	 * PUBLIC METHODS
+	 ******************************************************************************************** */
+
+	/*
+	 * Show an image, fitted to the view, or nothing if the image is null.
+	 */
+	public void setImage(final ImagePyramid pyramid)
+	{
+		this.m_pyramid = pyramid;
+		this.m_tiles.evictAll();
+		fit();
+		invalidate();
+	}
+
+	@Override
+	public boolean onTouchEvent(final MotionEvent event)
+	{
+		this.m_scaleDetector.onTouchEvent(event);
+		this.m_gestureDetector.onTouchEvent(event);
+		return (true);
+	}
+
+	/* *********************************************************************************************
+	 * PROTECTED METHODS
+	 ******************************************************************************************** */
+
+	@Override
+	protected void onSizeChanged(final int w, final int h, final int oldw, final int oldh)
+	{
+		fit();
+	}
+
+	@Override
+	protected void onDraw(final Canvas canvas)
+	{
+		canvas.drawColor(Color.WHITE);
+		this.m_spare.addAll(this.m_evicted);
+		this.m_evicted.clear();
+
+		final ImagePyramid pyramid = this.m_pyramid;
+		if (pyramid == null)
+		{
+			return;
+		}
+
+		/* Use the smallest level that still has at least one pixel per view pixel. */
+		int level = 0;
+		while ((level + 1 < pyramid.getLevelCount()) && (this.m_scale * (1 << (level + 1)) <= 1.0f))
+		{
+			level++;
+		}
+		final float levelScale = this.m_scale * (1 << level);
+		final float tileExtent = ImagePyramid.TILE_SIZE * levelScale;
+
+		/* Draw the tiles that intersect the view. */
+		final int firstColumn = Math.max(0, (int)Math.floor(-this.m_originX / tileExtent));
+		final int firstRow    = Math.max(0, (int)Math.floor(-this.m_originY / tileExtent));
+		final int lastColumn  = Math.min(pyramid.getTileColumns(level) - 1, (int)Math.floor((getWidth() - this.m_originX) / tileExtent));
+		final int lastRow     = Math.min(pyramid.getTileRows(level) - 1, (int)Math.floor((getHeight() - this.m_originY) / tileExtent));
+		for (int row = firstRow; row <= lastRow; row++)
+		{
+			for (int column = firstColumn; column <= lastColumn; column++)
+			{
+				final int tileWidth  = pyramid.getTileWidth(level, column);
+				final int tileHeight = pyramid.getTileHeight(level, row);
+				final float left     = this.m_originX + column * tileExtent;
+				final float top      = this.m_originY + row * tileExtent;
+				this.m_source.set(0, 0, tileWidth, tileHeight);
+				this.m_destination.set(left, top, left + tileWidth * levelScale, top + tileHeight * levelScale);
+				canvas.drawBitmap(getTileBitmap(pyramid, level, column, row), this.m_source, this.m_destination, this.m_paint);
+			}
+		}
+	}
+
+	/* *********************************************************************************************
+	 * PRIVATE METHODS
+	 ******************************************************************************************** */
+
+	/*
+	 * Get the bitmap of a tile from the cache, converting the tile if it is not there.
+	 */
+	private Bitmap getTileBitmap(final ImagePyramid pyramid, final int level, final int column, final int row)
+	{
+		final Long key    = Long.valueOf(((long)level << 48) | ((long)column << 24) | row);
+		Bitmap     bitmap = this.m_tiles.get(key);
+		if (bitmap == null)
+		{
+			bitmap = this.m_spare.poll();
+			if (bitmap == null)
+			{
+				bitmap = Bitmap.createBitmap(ImagePyramid.TILE_SIZE, ImagePyramid.TILE_SIZE, Bitmap.Config.RGB_565);
+			}
+			pyramid.getTile(level, column, row, this.m_tilePixels);
+			bitmap.setPixels(this.m_tilePixels, 0, ImagePyramid.TILE_SIZE, 0, 0,
+					pyramid.getTileWidth(level, column), pyramid.getTileHeight(level, row));
+			this.m_tiles.put(key, bitmap);
+		}
+		return (bitmap);
+	}
+
+	/*
+	 * Zoom to fit the image in the view, centered.
+	 */
+	private void fit()
+	{
+		final ImagePyramid pyramid = this.m_pyramid;
+		if ((pyramid == null) || (getWidth() == 0) || (getHeight() == 0))
+		{
+			return;
+		}
+		this.m_fitScale = Math.min((float)getWidth() / pyramid.getWidth(0), (float)getHeight() / pyramid.getHeight(0));
+		this.m_scale    = this.m_fitScale;
+		this.m_originX  = (getWidth() - pyramid.getWidth(0) * this.m_scale) / 2;
+		this.m_originY  = (getHeight() - pyramid.getHeight(0) * this.m_scale) / 2;
+	}
+
+	/*
+	 * Zoom about a point in the view, keeping the zoom between fitting the view and MAX_SCALE.
+	 */
+	private void zoom(final float scale, final float focusX, final float focusY)
+	{
+		final float newScale = Math.max(Math.min(this.m_fitScale, 1.0f), Math.min(MAX_SCALE, scale));
+		this.m_originX = focusX - (focusX - this.m_originX) * newScale / this.m_scale;
+		this.m_originY = focusY - (focusY - this.m_originY) * newScale / this.m_scale;
+		this.m_scale   = newScale;
+		constrain();
+		invalidate();
+	}
+
+	/*
+	 * Keep the image over the view, centering it along a direction in which it is smaller than the view.
+	 */
+	private void constrain()
+	{
+		final ImagePyramid pyramid = this.m_pyramid;
+		if (pyramid == null)
+		{
+			return;
+		}
+		final float width  = pyramid.getWidth(0) * this.m_scale;
+		final float height = pyramid.getHeight(0) * this.m_scale;
+		this.m_originX = (width <= getWidth()) ? (getWidth() - width) / 2
+				: Math.max(getWidth() - width, Math.min(0.0f, this.m_originX));
+		this.m_originY = (height <= getHeight()) ? (getHeight() - height) / 2
+				: Math.max(getHeight() - height, Math.min(0.0f, this.m_originY));
+	}
+
+	/* *********************************************************************************************
+	 * GESTURE LISTENERS
+	 ******************************************************************************************** */
+
+	/*
+	 * Zoom with a pinch.
+	 */
+	private ScaleGestureDetector.SimpleOnScaleGestureListener m_scaleListener = new ScaleGestureDetector.SimpleOnScaleGestureListener()
+	{
+		@Override
+		public boolean onScale(final ScaleGestureDetector detector)
+		{
+			zoom(TiledImageView.this.m_scale * detector.getScaleFactor(), detector.getFocusX(), detector.getFocusY());
+			return (true);
+		}
+	};
+
+	/*
+	 * Pan with a drag, switch between fit and 1:1 with a double tap, and click with a single tap.
+	 */
+	private GestureDetector.SimpleOnGestureListener m_gestureListener = new GestureDetector.SimpleOnGestureListener()
+	{
+		@Override
+		public boolean onDown(final MotionEvent e)
+		{
+			return (true);
+		}
+
+		@Override
+		public boolean onScroll(final MotionEvent e1, final MotionEvent e2, final float distanceX, final float distanceY)
+		{
+			if (TiledImageView.this.m_scaleDetector.isInProgress())
+			{
+				return (false);
+			}
+			TiledImageView.this.m_originX -= distanceX;
+			TiledImageView.this.m_originY -= distanceY;
+			constrain();
+			invalidate();
+			return (true);
+		}
+
+		@Override
+		public boolean onDoubleTap(final MotionEvent e)
+		{
+			final float scale = (TiledImageView.this.m_scale < 1.0f) ? 1.0f : TiledImageView.this.m_fitScale;
+			zoom(scale, e.getX(), e.getY());
+			return (true);
+		}
+
+		@Override
+		public boolean onSingleTapConfirmed(final MotionEvent e)
+		{
+			return (performClick());
+		}
+	};
+}
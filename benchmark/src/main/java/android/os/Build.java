@@ -0,0 +1,28 @@
+/* *************************************************************************************************
+ * Build.java
+ *
+ * DESCRIPTION:
+ *     Stand-in for android.os.Build for the SimpleScan demo app for IBScanUltimate benchmarks
+ *     http://www.integratedbiometrics.com
+ *
+ * NOTES:
+ *     Copyright (c) Integrated Biometrics, 2012-2013
+ *
+ * HISTORY:
+ *     2026/10/19  First version.
+************************************************************************************************ */
+
+package android.os;
+
+/**
+ * The part of android.os.Build that encrypted storage uses.  A desktop JVM takes GCMParameterSpec,
+ * as Android does from API 19, and has no AndroidKeyStore, as Android before API 23, so it stands
+ * in for API 19.
+ */
+public class Build
+{
+	public static class VERSION
+	{
+		public static final int SDK_INT = 19;
+	}
+}
@@ -0,0 +1,28 @@
+/* *************************************************************************************************
+ * Process.java
+ *
+ * DESCRIPTION:
+ *     Stand-in for android.os.Process for the SimpleScan demo app for IBScanUltimate benchmarks
+ *     http://www.integratedbiometrics.com
+ *
+ * NOTES:
+ *     Copyright (c) Integrated Biometrics, 2012-2013
+ *
+ * HISTORY:
+ *     2026/10/19  First version.
+************************************************************************************************ */
+
+package android.os;
+
+/**
+ * The part of android.os.Process that the shared processing pool uses, so the app's pure-Java
+ * classes run on a desktop JVM.  Thread priorities are left to the JVM.
+ */
+public class Process
+{
+	public static final int THREAD_PRIORITY_BACKGROUND = 10;
+
+	public static void setThreadPriority(final int priority)
+	{
+	}
+}
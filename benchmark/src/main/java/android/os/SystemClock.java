@@ -0,0 +1,39 @@
+/* *************************************************************************************************
+ * SystemClock.java
+ *
+ * DESCRIPTION:
+ *     Stand-in for android.os.SystemClock for the SimpleScan demo app for IBScanUltimate benchmarks
+ *     http://www.integratedbiometrics.com
+ *
+ * NOTES:
+ *     Copyright (c) Integrated Biometrics, 2012-2013
+ *
+ * HISTORY:
+ *     2026/10/19  First version.
+************************************************************************************************ */
+
+package android.os;
+
+/**
+ * The part of android.os.SystemClock that the flight recorder and the preview stream server use.
+ * Uptime is taken from System.nanoTime().
+ */
+public class SystemClock
+{
+	public static long uptimeMillis()
+	{
+		return (System.nanoTime() / 1000000);
+	}
+
+	public static void sleep(final long ms)
+	{
+		try
+		{
+			Thread.sleep(ms);
+		}
+		catch (InterruptedException ie)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+}
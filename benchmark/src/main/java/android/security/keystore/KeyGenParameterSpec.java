@@ -0,0 +1,51 @@
+/* *************************************************************************************************
+ * KeyGenParameterSpec.java
+ *
+ * DESCRIPTION:
+ *     Stand-in for android.security.keystore.KeyGenParameterSpec for the SimpleScan demo app for IBScanUltimate benchmarks
+ *     http://www.integratedbiometrics.com
+ *
+ * NOTES:
+ *     Copyright (c) Integrated Biometrics, 2012-2013
+ *
+ * HISTORY:
+ *     2026/10/19  First version.
+************************************************************************************************ */
+
+package android.security.keystore;
+
+import java.security.spec.AlgorithmParameterSpec;
+
+/**
+ * The builder of android.security.keystore.KeyGenParameterSpec that encrypted storage names.  It
+ * is only used from API 23, so never on the desktop JVM.
+ */
+public final class KeyGenParameterSpec implements AlgorithmParameterSpec
+{
+	public static final class Builder
+	{
+		public Builder(final String keystoreAlias, final int purposes)
+		{
+		}
+
+		public Builder setBlockModes(final String... blockModes)
+		{
+			return (this);
+		}
+
+		public Builder setEncryptionPaddings(final String... paddings)
+		{
+			return (this);
+		}
+
+		public Builder setKeySize(final int keySize)
+		{
+			return (this);
+		}
+
+		public KeyGenParameterSpec build()
+		{
+			return (new KeyGenParameterSpec());
+		}
+	}
+}
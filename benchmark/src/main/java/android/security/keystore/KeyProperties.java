@@ -0,0 +1,28 @@
+/* *************************************************************************************************
+ * KeyProperties.java
+ *
+ * DESCRIPTION:
+ *     Stand-in for android.security.keystore.KeyProperties for the SimpleScan demo app for IBScanUltimate benchmarks
+ *     http://www.integratedbiometrics.com
+ *
+ * NOTES:
+ *     Copyright (c) Integrated Biometrics, 2012-2013
+ *
+ * HISTORY:
+ *     2026/10/19  First version.
+************************************************************************************************ */
+
+package android.security.keystore;
+
+/**
+ * The constants of android.security.keystore.KeyProperties that encrypted storage names.  They are
+ * only used from API 23, so never on the desktop JVM.
+ */
+public abstract class KeyProperties
+{
+	public static final int    PURPOSE_ENCRYPT         = 1;
+	public static final int    PURPOSE_DECRYPT         = 2;
+	public static final String KEY_ALGORITHM_AES       = "AES";
+	public static final String BLOCK_MODE_GCM          = "GCM";
+	public static final String ENCRYPTION_PADDING_NONE = "NoPadding";
+}
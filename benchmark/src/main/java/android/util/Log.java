@@ -0,0 +1,42 @@
+/* *************************************************************************************************
+ * Log.java
+ *
+ * DESCRIPTION:
+ *     Stand-in for android.util.Log for the SimpleScan demo app for IBScanUltimate benchmarks
+ *     http://www.integratedbiometrics.com
+ *
+ * NOTES:
+ *     Copyright (c) Integrated Biometrics, 2012-2013
+ *
+ * HISTORY:
+ *     2026/10/19  First version.
+************************************************************************************************ */
+
+package android.util;
+
+/**
+ * The part of android.util.Log that the app's pure-Java classes use, printing to standard error.
+ */
+public final class Log
+{
+	public static int e(final String tag, final String msg)
+	{
+		return (print("E", tag, msg));
+	}
+
+	public static int w(final String tag, final String msg)
+	{
+		return (print("W", tag, msg));
+	}
+
+	public static int i(final String tag, final String msg)
+	{
+		return (print("I", tag, msg));
+	}
+
+	private static int print(final String level, final String tag, final String msg)
+	{
+		System.err.println(level + "/" + tag + ": " + msg);
+		return (0);
+	}
+}
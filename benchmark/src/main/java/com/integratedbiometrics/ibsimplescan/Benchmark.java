@@ -0,0 +1,132 @@
+/* *************************************************************************************************
+ * Benchmark.java
+ *
+ * DESCRIPTION:
+ *     Timing harness for the SimpleScan demo app for IBScanUltimate benchmarks
+ *     http://www.integratedbiometrics.com
+ *
+ * NOTES:
+ *     Copyright (c) Integrated Biometrics, 2012-2013
+ *
+ * HISTORY:
+ *     2026/10/19  First version.
+************************************************************************************************ */
+
+package com.integratedbiometrics.ibsimplescan;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Runs a task a number of times after warming it up, and prints the fastest, median and mean time
+ * of the timed runs.  Also makes reproducible synthetic fingerprint images, so the benchmarks need
+ * no scanner and give the same input on every machine.
+ */
+final class Benchmark
+{
+	/* *********************************************************************************************
+	 * PUBLIC INTERFACES
+	 ******************************************************************************************** */
+
+	/*
+	 * The work timed by one run.
+	 */
+	interface Task
+	{
+		void run() throws Exception;
+	}
+
+	/* *********************************************************************************************
+	 * PRIVATE CONSTANTS
+	 ******************************************************************************************** */
+
+	/* The distance between ridges, in pixels at 500 ppi. */
+	private static final double RIDGE_PERIOD = 9.0;
+
+	/* The number of ridge endings and bifurcations per million pixels. */
+	private static final int    MINUTIAE_PER_MEGAPIXEL = 200;
+
+	/* *********************************************************************************************
+	 * PUBLIC METHODS
+	 ******************************************************************************************** */
+
+	/*
+	 * Run a task warmup times untimed and then iterations times timed, and print the times in
+	 * milliseconds.  Returns the median.
+	 */
+	static double measure(final String name, final int warmup, final int iterations, final Task task)
+			throws Exception
+	{
+		for (int i = 0; i < warmup; i++)
+		{
+			task.run();
+		}
+
+		final double[] millis = new double[iterations];
+		double         total  = 0;
+		for (int i = 0; i < iterations; i++)
+		{
+			final long startTime = System.nanoTime();
+			task.run();
+			millis[i] = (System.nanoTime() - startTime) / 1e6;
+			total    += millis[i];
+		}
+		Arrays.sort(millis);
+
+		final double median = millis[iterations / 2];
+		System.out.println(String.format("%-40s min %9.3f ms  median %9.3f ms  mean %9.3f ms", name,
+				millis[0], median, total / iterations));
+		return (median);
+	}
+
+	/*
+	 * Make an 8-bit top-down image of a finger: dark whorl-like ridges on a light background, in an
+	 * ellipse filling most of the image, with noise from a seed.  Each point where the ridge phase
+	 * turns by a full period makes a ridge ending or bifurcation.
+	 */
+	static byte[] syntheticFinger(final int width, final int height, final long seed)
+	{
+		final Random random  = new Random(seed);
+		final byte[] pixels  = new byte[width * height];
+		final double centerX = width  * (0.45 + 0.1 * random.nextDouble());
+		final double centerY = height * (0.45 + 0.1 * random.nextDouble());
+		final double radiusX = width  * 0.42;
+		final double radiusY = height * 0.45;
+		final double twist   = 2.0 + 2.0 * random.nextDouble();
+
+		final int      minutiae = (int)((long)width * height * MINUTIAE_PER_MEGAPIXEL / 1000000);
+		final double[] pointX   = new double[minutiae];
+		final double[] pointY   = new double[minutiae];
+		final double[] turn     = new double[minutiae];
+		for (int i = 0; i < minutiae; i++)
+		{
+			pointX[i] = centerX + radiusX * 0.8 * (2.0 * random.nextDouble() - 1.0);
+			pointY[i] = centerY + radiusY * 0.8 * (2.0 * random.nextDouble() - 1.0);
+			turn[i]   = random.nextBoolean() ? 1.0 : -1.0;
+		}
+
+		for (int y = 0; y < height; y++)
+		{
+			for (int x = 0; x < width; x++)
+			{
+				final double dx = (x - centerX) / radiusX;
+				final double dy = (y - centerY) / radiusY;
+				int value = 235;
+				if (dx * dx + dy * dy < 1.0)
+				{
+					final double r     = Math.hypot(x - centerX, y - centerY);
+					final double theta = Math.atan2(y - centerY, x - centerX);
+					double phase = 2.0 * Math.PI * (r + twist * Math.sin(2.0 * theta)) / RIDGE_PERIOD;
+					for (int i = 0; i < minutiae; i++)
+					{
+						phase += turn[i] * Math.atan2(y - pointY[i], x - pointX[i]);
+					}
+					value = (int)(128 + 90 * Math.cos(phase));
+				}
+				value += (int)(random.nextGaussian() * 8);
+				pixels[y * width + x] = (byte)Math.max(0, Math.min(255, value));
+			}
+		}
+		return (pixels);
+	}
+}
@@ -0,0 +1,335 @@
+/* *************************************************************************************************
+ * BreakRecoveryCheck.java
+ *
+ * DESCRIPTION:
+ *     Check of recovery from communication breaks against a simulated scanner for SimpleScan demo
+ *     app for IBScanUltimate
+ *     http://www.integratedbiometrics.com
+ *
+ * NOTES:
+ *     Copyright (c) Integrated Biometrics, 2012-2013
+ *
+ * HISTORY:
+ *     2026/10/19  First version.
+************************************************************************************************ */
+
+package com.integratedbiometrics.ibsimplescan;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import android.os.SystemClock;
+
+/**
+ * Drives the break recovery engine with a simulated scanner that fails to open a set number of
+ * times and then recovers, checking that attempts follow the backoff schedule, that a scanner
+ * which cannot be restored is closed, that the engine gives up after eight attempts, that a
+ * cancelled recovery neither retries nor reports and closes a scanner it opens late, and that the
+ * scanner is never closed while the engine's lock is held.  Prints the engine's report with the
+ * mean time to recover.  Takes about half a minute, as the engine waits in real time.  Exits with
+ * status 1 if a check fails.  Run with
+ *
+ *     gradlew :benchmark:breakRecoveryCheck
+ */
+public class BreakRecoveryCheck
+{
+	/* *********************************************************************************************
+	 * PRIVATE CONSTANTS
+	 ******************************************************************************************** */
+
+	/* The engine's waits before each attempt. */
+	private static final long[] SCHEDULE_MILLIS  = {250, 500, 1000, 2000, 4000, 4000, 4000, 4000};
+
+	/* How late an attempt may be, allowing for the scheduler. */
+	private static final long   SLACK_MILLIS     = 200;
+
+	/* How long to wait for a recovery to end. */
+	private static final long   TIMEOUT_MILLIS   = 30000;
+
+	/* The serial number of the simulated scanner. */
+	private static final String SERIAL_NUMBER    = "SIM-0001";
+
+	/* *********************************************************************************************
+	 * PRIVATE CLASSES
+	 ******************************************************************************************** */
+
+	/*
+	 * A scanner that fails to open or restore a set number of times, recording every call.
+	 */
+	private static class SimulatedLink implements BreakRecoveryEngine.Link<Integer>
+	{
+		/* The engine, to check its lock is not held. */
+		BreakRecoveryEngine<Integer> engine;
+
+		/* The failures still to come. */
+		int                          openFailures;
+		int                          restoreFailures;
+
+		/* Whether open() waits for release() before returning. */
+		boolean                      blocking;
+		private boolean              m_released;
+
+		/* The times of the attempts, the scanners closed and the calls made under the engine's lock. */
+		final ArrayList<Long>        openTimes    = new ArrayList<Long>();
+		final ArrayList<Integer>     closed       = new ArrayList<Integer>();
+		int                          lockedCalls;
+		private int                  m_nextDevice = 1;
+
+		@Override
+		public synchronized Integer open(final String serialNumber) throws Exception
+		{
+			checkLock();
+			this.openTimes.add(SystemClock.uptimeMillis());
+			notifyAll();
+			while (this.blocking && !this.m_released)
+			{
+				/* Like the SDK's open, ignores interrupts. */
+				try
+				{
+					wait();
+				}
+				catch (InterruptedException ie)
+				{
+				}
+			}
+			if (this.openFailures > 0)
+			{
+				this.openFailures--;
+				throw new IOException("scanner not attached");
+			}
+			return (this.m_nextDevice++);
+		}
+
+		@Override
+		public synchronized void restore(final Integer device) throws Exception
+		{
+			checkLock();
+			if (this.restoreFailures > 0)
+			{
+				this.restoreFailures--;
+				throw new IOException("could not restore");
+			}
+		}
+
+		@Override
+		public synchronized void close(final Integer device)
+		{
+			checkLock();
+			this.closed.add(device);
+			notifyAll();
+		}
+
+		/*
+		 * Wait until open() has been called a number of times in all.
+		 */
+		synchronized void awaitOpens(final int count) throws InterruptedException
+		{
+			final long deadline = SystemClock.uptimeMillis() + TIMEOUT_MILLIS;
+			while ((this.openTimes.size() < count) && (SystemClock.uptimeMillis() < deadline))
+			{
+				wait(100);
+			}
+		}
+
+		/*
+		 * Wait until a scanner has been closed.
+		 */
+		synchronized void awaitClose() throws InterruptedException
+		{
+			final long deadline = SystemClock.uptimeMillis() + TIMEOUT_MILLIS;
+			while (this.closed.isEmpty() && (SystemClock.uptimeMillis() < deadline))
+			{
+				wait(100);
+			}
+		}
+
+		/*
+		 * Let a blocked open() return.
+		 */
+		synchronized void release()
+		{
+			this.m_released = true;
+			notifyAll();
+		}
+
+		/*
+		 * Clear the record of calls for the next scenario.
+		 */
+		synchronized void reset(final int openFailures, final int restoreFailures, final boolean blocking)
+		{
+			this.openFailures    = openFailures;
+			this.restoreFailures = restoreFailures;
+			this.blocking        = blocking;
+			this.m_released      = false;
+			this.openTimes.clear();
+			this.closed.clear();
+		}
+
+		private void checkLock()
+		{
+			if (Thread.holdsLock(this.engine))
+			{
+				this.lockedCalls++;
+			}
+		}
+	}
+
+	/*
+	 * Records how a recovery ended.
+	 */
+	private static class Outcome implements BreakRecoveryEngine.Listener<Integer>
+	{
+		private boolean m_ended;
+		boolean         recovered;
+		int             attempts;
+		long            millis;
+
+		@Override
+		public synchronized void onRecovered(final Integer device, final int attempts, final long millis)
+		{
+			end(true, attempts, millis);
+		}
+
+		@Override
+		public synchronized void onFailed(final int attempts, final long millis)
+		{
+			end(false, attempts, millis);
+		}
+
+		/*
+		 * Wait for the recovery to end, returning false if it has not ended in time.
+		 */
+		synchronized boolean await(final long timeoutMillis) throws InterruptedException
+		{
+			final long deadline = SystemClock.uptimeMillis() + timeoutMillis;
+			while (!this.m_ended && (SystemClock.uptimeMillis() < deadline))
+			{
+				wait(100);
+			}
+			return (this.m_ended);
+		}
+
+		private void end(final boolean recovered, final int attempts, final long millis)
+		{
+			this.m_ended    = true;
+			this.recovered  = recovered;
+			this.attempts   = attempts;
+			this.millis     = millis;
+			notifyAll();
+		}
+	}
+
+	/* *********************************************************************************************
+	 * PRIVATE FIELDS
+	 ******************************************************************************************** */
+
+	/* Whether every check so far has passed. */
+	private static boolean s_passed = true;
+
+	/* *********************************************************************************************
+	 * PUBLIC METHODS
+	 ******************************************************************************************** */
+
+	public static void main(final String[] args) throws Exception
+	{
+		final SimulatedLink                link   = new SimulatedLink();
+		final BreakRecoveryEngine<Integer> engine = new BreakRecoveryEngine<Integer>(link);
+		link.engine = engine;
+
+		/* The scanner comes back on the fourth attempt. */
+		link.reset(3, 0, false);
+		long start = SystemClock.uptimeMillis();
+		Outcome outcome = new Outcome();
+		engine.start(SERIAL_NUMBER, outcome);
+		check("Recovered after 3 failed opens", outcome.await(TIMEOUT_MILLIS) && outcome.recovered
+				&& (outcome.attempts == 4) && !engine.isRecovering());
+		check("Attempts followed the backoff schedule", followsSchedule(start, link.openTimes));
+		final long firstMillis = outcome.millis;
+
+		/* The scanner opens but cannot be restored the first time. */
+		link.reset(0, 1, false);
+		outcome = new Outcome();
+		engine.start(SERIAL_NUMBER, outcome);
+		check("Recovered after a failed restore", outcome.await(TIMEOUT_MILLIS) && outcome.recovered
+				&& (outcome.attempts == 2));
+		check("Scanner that could not be restored was closed", link.closed.size() == 1);
+		final long secondMillis = outcome.millis;
+
+		/* The scanner never comes back. */
+		link.reset(Integer.MAX_VALUE, 0, false);
+		start   = SystemClock.uptimeMillis();
+		outcome = new Outcome();
+		engine.start(SERIAL_NUMBER, outcome);
+		check("Gave up after 8 attempts", outcome.await(TIMEOUT_MILLIS) && !outcome.recovered
+				&& (outcome.attempts == 8) && (link.openTimes.size() == 8) && !engine.isRecovering());
+		check("Attempts followed the backoff schedule", followsSchedule(start, link.openTimes));
+
+		/* Cancelled while an attempt is failing: no further attempts, no report. */
+		link.reset(Integer.MAX_VALUE, 0, true);
+		outcome = new Outcome();
+		engine.start(SERIAL_NUMBER, outcome);
+		link.awaitOpens(1);
+		engine.cancel();
+		link.release();
+		check("Cancelled recovery made no further attempts",
+				!outcome.await(SCHEDULE_MILLIS[1] + SLACK_MILLIS) && (link.openTimes.size() == 1));
+
+		/* Cancelled while an attempt is opening: the late scanner is closed, no report. */
+		link.reset(0, 0, true);
+		outcome = new Outcome();
+		engine.start(SERIAL_NUMBER, outcome);
+		link.awaitOpens(1);
+		engine.cancel();
+		link.release();
+		link.awaitClose();
+		check("Cancelled recovery closed its late scanner", (link.closed.size() == 1)
+				&& !outcome.await(SLACK_MILLIS) && !engine.isRecovering());
+
+		check("Scanner was never opened or closed under the engine's lock", link.lockedCalls == 0);
+
+		/* The cancelled recoveries count neither way. */
+		final String report = engine.getReport();
+		System.out.println("Report: " + report);
+		check("Mean time to recover is the mean of the recoveries",
+				engine.getMeanTimeToRecover() == (firstMillis + secondMillis) / 2);
+		check("Report counts 2 recovered and 1 failed", report.startsWith("recovered 2 ")
+				&& report.endsWith("failed 1"));
+
+		System.out.println(s_passed ? "Break recovery check passed" : "Break recovery check FAILED");
+		System.exit(s_passed ? 0 : 1);
+	}
+
+	/* *********************************************************************************************
+	 * PRIVATE METHODS
+	 ******************************************************************************************** */
+
+	/*
+	 * Print the result of one check.
+	 */
+	private static void check(final String name, final boolean passed)
+	{
+		System.out.println((passed ? "ok      " : "FAILED  ") + name);
+		s_passed &= passed;
+	}
+
+	/*
+	 * Determine whether each attempt came after the scheduled wait since the previous one, and not
+	 * much later.
+	 */
+	private static boolean followsSchedule(final long start, final ArrayList<Long> openTimes)
+	{
+		long previous = start;
+		for (int i = 0; i < openTimes.size(); i++)
+		{
+			final long gap = openTimes.get(i) - previous;
+			if ((gap < SCHEDULE_MILLIS[i]) || (gap > SCHEDULE_MILLIS[i] + SLACK_MILLIS))
+			{
+				System.out.println("        attempt " + (i + 1) + " after " + gap + " ms, expected "
+						+ SCHEDULE_MILLIS[i] + " ms");
+				return (false);
+			}
+			previous = openTimes.get(i);
+		}
+		return (true);
+	}
+}
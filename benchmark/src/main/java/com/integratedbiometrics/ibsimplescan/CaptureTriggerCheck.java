@@ -0,0 +1,365 @@
+/* *************************************************************************************************
+ * CaptureTriggerCheck.java
+ *
+ * DESCRIPTION:
+ *     Offline check of the early capture trigger against recorded sessions for SimpleScan demo app
+ *     for IBScanUltimate
+ *     http://www.integratedbiometrics.com
+ *
+ * NOTES:
+ *     Copyright (c) Integrated Biometrics, 2012-2013
+ *
+ * HISTORY:
+ *     2026/10/19  First version.
+************************************************************************************************ */
+
+package com.integratedbiometrics.ibsimplescan;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import com.integratedbiometrics.ibscanultimate.IBScanDevice.FingerQualityState;
+import com.integratedbiometrics.ibscanultimate.IBScanDevice.ImageType;
+
+/**
+ * Replays the captures in flight recordings through CaptureTrigger.replay() and compares them with
+ * the manual baseline, the SDK's own auto-capture.  A capture runs from its deviceAcquisitionBegun
+ * event to its deviceAcquisitionCompleted event; the frames between carry their preview scores,
+ * and the deviceFingerQualityChanged events give the fingers placed well at each frame.  For each
+ * capture the check reports the time to capture and the predicted NFIQ at capture with and without
+ * the trigger, then the medians over all captures; a capture the trigger never fires for counts at
+ * its baseline.  The recorder keeps at most four frames a second while the trigger sees every
+ * preview live, so a replayed time to capture is an upper bound on the live one.
+ * <p>
+ * Plain (decrypted) dumps are named on the command line; without any, sessions synthesized in the
+ * dump format are replayed.  Exits with status 1 if the trigger never fires, or if its median
+ * predicted NFIQ is worse than the baseline's.  Run with
+ *
+ *     gradlew :benchmark:captureTriggerCheck [-Pdumps=a.ibfr,b.ibfr]
+ */
+public class CaptureTriggerCheck
+{
+	/* *********************************************************************************************
+	 * PRIVATE CONSTANTS
+	 ******************************************************************************************** */
+
+	/* The captures of the synthesized sessions; a rolled capture is skipped by the trigger. */
+	private static final ImageType[] SYNTHETIC_TYPES     = {ImageType.FLAT_FOUR_FINGERS,
+			ImageType.FLAT_SINGLE_FINGER, ImageType.FLAT_TWO_FINGERS, ImageType.ROLL_SINGLE_FINGER,
+			ImageType.FLAT_FOUR_FINGERS, ImageType.FLAT_SINGLE_FINGER, ImageType.FLAT_TWO_FINGERS,
+			ImageType.FLAT_THREE_FINGERS};
+
+	/* The score each synthesized capture settles at; one never reaches the trigger's minimum. */
+	private static final int[]       SYNTHETIC_PLATEAUS  = {84, 62, 78, 80, 45, 88, 66, 79};
+
+	/* The interval of synthesized frames, the flight recorder's shortest. */
+	private static final long        SYNTHETIC_INTERVAL  = 250;
+
+	/* *********************************************************************************************
+	 * PRIVATE CLASSES
+	 ******************************************************************************************** */
+
+	/*
+	 * The outcome of one replayed capture.
+	 */
+	private static class Outcome
+	{
+		String imageType;
+		long   baselineMillis;
+		int    baselineScore;
+		long   triggerMillis = -1;
+		int    triggerScore;
+	}
+
+	/*
+	 * Collects the captures of a recording as it is played back.
+	 */
+	private static class SessionCollector implements FlightRecorder.FrameHandler, FlightRecorder.EventHandler
+	{
+		private final ArrayList<Outcome> m_outcomes;
+
+		/* The capture in progress, or null if none. */
+		private String                   m_imageType;
+		private int                      m_expectedFingers;
+		private long                     m_begun;
+		private int                      m_readyFingers;
+
+		/* The frames of the capture in progress. */
+		private final ArrayList<long[]>  m_frames = new ArrayList<long[]>();
+
+		SessionCollector(final ArrayList<Outcome> outcomes)
+		{
+			this.m_outcomes = outcomes;
+		}
+
+		@Override
+		public void onFrame(final long uptime, final int width, final int height, final int score,
+				final byte[] pixels)
+		{
+			if ((this.m_imageType != null) && (score >= 0))
+			{
+				this.m_frames.add(new long[] {uptime, score, this.m_readyFingers});
+			}
+		}
+
+		@Override
+		public void onEvent(final long uptime, final byte type, final String text)
+		{
+			final String[] words = text.split(" ");
+			if (words[0].equals("deviceAcquisitionBegun") && (words.length > 1))
+			{
+				this.m_imageType       = words[1];
+				this.m_expectedFingers = CaptureTrigger.getExpectedFingers(ImageType.valueOf(words[1]));
+				this.m_begun           = uptime;
+				this.m_readyFingers    = 0;
+				this.m_frames.clear();
+			}
+			else if (words[0].equals("deviceFingerQualityChanged"))
+			{
+				/* A poor or misplaced finger counts as no finger ready, which restarts the trend. */
+				int     ready   = 0;
+				boolean problem = false;
+				for (int i = 1; i < words.length; i++)
+				{
+					final FingerQualityState quality = FingerQualityState.valueOf(words[i]);
+					if ((quality == FingerQualityState.GOOD) || (quality == FingerQualityState.FAIR))
+					{
+						ready++;
+					}
+					else if (quality != FingerQualityState.FINGER_NOT_PRESENT)
+					{
+						problem = true;
+					}
+				}
+				this.m_readyFingers = problem ? 0 : ready;
+			}
+			else if (words[0].equals("deviceAcquisitionCompleted") && (this.m_imageType != null))
+			{
+				if ((this.m_expectedFingers > 0) && !this.m_frames.isEmpty())
+				{
+					this.m_outcomes.add(replay(uptime));
+				}
+				this.m_imageType = null;
+			}
+			else if (words[0].equals("deviceCommunicationBroken"))
+			{
+				this.m_imageType = null;
+			}
+		}
+
+		/*
+		 * Replay the frames of the capture in progress, which the SDK completed at an uptime.
+		 */
+		private Outcome replay(final long completed)
+		{
+			final int    count        = this.m_frames.size();
+			final int[]  scores       = new int[count];
+			final int[]  readyFingers = new int[count];
+			final long[] timesMillis  = new long[count];
+			for (int i = 0; i < count; i++)
+			{
+				final long[] frame = this.m_frames.get(i);
+				timesMillis[i]  = frame[0];
+				scores[i]       = (int)frame[1];
+				readyFingers[i] = (int)frame[2];
+			}
+
+			final Outcome outcome = new Outcome();
+			outcome.imageType      = this.m_imageType;
+			outcome.baselineMillis = completed - this.m_begun;
+			outcome.baselineScore  = scores[count - 1];
+			final int fired = CaptureTrigger.replay(this.m_expectedFingers, scores, readyFingers, timesMillis);
+			if (fired >= 0)
+			{
+				outcome.triggerMillis = timesMillis[fired] - this.m_begun;
+				outcome.triggerScore  = scores[fired];
+			}
+			return (outcome);
+		}
+	}
+
+	/* *********************************************************************************************
+	 * PUBLIC METHODS
+	 ******************************************************************************************** */
+
+	public static void main(final String[] args) throws Exception
+	{
+		final ArrayList<Outcome> outcomes  = new ArrayList<Outcome>();
+		final SessionCollector   collector = new SessionCollector(outcomes);
+		if (args.length == 0)
+		{
+			System.out.println("No recordings named; replaying synthesized sessions");
+			FlightRecorder.play(new ByteArrayInputStream(synthesize()), collector, collector);
+		}
+		for (String name : args)
+		{
+			final InputStream in = new FileInputStream(name);
+			try
+			{
+				FlightRecorder.play(in, collector, collector);
+			}
+			finally
+			{
+				in.close();
+			}
+		}
+
+		final int     count         = outcomes.size();
+		final long[]  baselineTimes = new long[count];
+		final long[]  triggerTimes  = new long[count];
+		final long[]  baselineNfiq  = new long[count];
+		final long[]  triggerNfiq   = new long[count];
+		int           fired         = 0;
+		System.out.println(String.format("%-20s %12s %12s %10s %10s", "Capture", "Baseline ms", "Trigger ms",
+				"Base NFIQ", "Trig NFIQ"));
+		for (int i = 0; i < count; i++)
+		{
+			final Outcome outcome = outcomes.get(i);
+			final boolean early   = (outcome.triggerMillis >= 0);
+			baselineTimes[i] = outcome.baselineMillis;
+			baselineNfiq[i]  = PreviewQualityEstimator.predictNfiq(outcome.baselineScore);
+			triggerTimes[i]  = early ? outcome.triggerMillis : outcome.baselineMillis;
+			triggerNfiq[i]   = early ? PreviewQualityEstimator.predictNfiq(outcome.triggerScore) : baselineNfiq[i];
+			if (early)
+			{
+				fired++;
+			}
+			System.out.println(String.format("%-20s %12d %12s %10d %10s", outcome.imageType, baselineTimes[i],
+					early ? Long.toString(triggerTimes[i]) : "-", baselineNfiq[i],
+					early ? Long.toString(triggerNfiq[i]) : "-"));
+		}
+		if (count == 0)
+		{
+			System.out.println("No flat captures found");
+			System.out.println("Capture trigger check FAILED");
+			System.exit(1);
+		}
+
+		System.out.println(String.format("Trigger fired in %d of %d captures", fired, count));
+		System.out.println(String.format("Median time to capture: %d ms with trigger, %d ms baseline",
+				median(triggerTimes), median(baselineTimes)));
+		System.out.println(String.format("Median predicted NFIQ:  %d with trigger, %d baseline",
+				median(triggerNfiq), median(baselineNfiq)));
+
+		final boolean passed = (fired > 0) && (median(triggerNfiq) <= median(baselineNfiq));
+		System.out.println(passed ? "Capture trigger check passed" : "Capture trigger check FAILED");
+		System.exit(passed ? 0 : 1);
+	}
+
+	/* *********************************************************************************************
+	 * PRIVATE METHODS
+	 ******************************************************************************************** */
+
+	/*
+	 * Get the median of some values, the lower of the middle two for an even count.
+	 */
+	private static long median(final long[] values)
+	{
+		final long[] sorted = values.clone();
+		Arrays.sort(sorted);
+		return (sorted[(sorted.length - 1) / 2]);
+	}
+
+	/*
+	 * Synthesize a dump of captures as the activity records them.  Each capture's fingers land
+	 * poorly placed, settle after half a second, and the score rises towards a plateau with a little
+	 * noise until the SDK's auto-capture completes a few seconds later.
+	 */
+	private static byte[] synthesize() throws IOException
+	{
+		final ByteArrayOutputStream dump   = new ByteArrayOutputStream();
+		final DataOutputStream      out    = new DataOutputStream(dump);
+		final Random                random = new Random(1);
+		out.write(new byte[] {'I', 'B', 'F', 'R'});
+		out.writeShort(FlightRecorder.VERSION);
+		out.writeLong(System.currentTimeMillis());
+		out.writeLong(0);
+
+		long now = 0;
+		for (int session = 0; session < SYNTHETIC_TYPES.length; session++)
+		{
+			final ImageType type      = SYNTHETIC_TYPES[session];
+			final int       fingers   = Math.max(1, CaptureTrigger.getExpectedFingers(type));
+			final int       plateau   = SYNTHETIC_PLATEAUS[session];
+			final long      placed    = 500 + random.nextInt(1000);
+			final long      settled   = placed + 500;
+			final long      completed = settled + 2500 + random.nextInt(1500);
+
+			writeText(out, FlightRecorder.TYPE_EVENT, now, "deviceAcquisitionBegun " + type);
+			writeText(out, FlightRecorder.TYPE_EVENT, now, qualities(fingers, FingerQualityState.FINGER_NOT_PRESENT));
+			boolean wasPlaced  = false;
+			boolean wasSettled = false;
+			for (long t = 0; t < completed; t += SYNTHETIC_INTERVAL)
+			{
+				if (!wasPlaced && (t >= placed))
+				{
+					writeText(out, FlightRecorder.TYPE_EVENT, now + t, qualities(fingers, FingerQualityState.POOR));
+					wasPlaced = true;
+				}
+				if (!wasSettled && (t >= settled))
+				{
+					writeText(out, FlightRecorder.TYPE_EVENT, now + t, qualities(fingers, FingerQualityState.GOOD));
+					wasSettled = true;
+				}
+				final int score = (t < placed) ? 5 : (int)Math.round(plateau
+						- (plateau - 10) * Math.exp(-(t - placed) / 600.0) + random.nextInt(3) - 1);
+				writeFrame(out, now + t, Math.max(0, Math.min(100, score)));
+			}
+			writeText(out, FlightRecorder.TYPE_EVENT, now + completed, "deviceAcquisitionCompleted " + type);
+			now += completed + 2000;
+		}
+		out.flush();
+		return (dump.toByteArray());
+	}
+
+	/*
+	 * Describe a finger quality event with every finger in one state.
+	 */
+	private static String qualities(final int fingers, final FingerQualityState quality)
+	{
+		final StringBuilder event = new StringBuilder("deviceFingerQualityChanged");
+		for (int i = 0; i < fingers; i++)
+		{
+			event.append(' ').append(quality.toString());
+		}
+		return (event.toString());
+	}
+
+	/*
+	 * Write an EVENT or STATE record.
+	 */
+	private static void writeText(final DataOutputStream out, final byte type, final long uptime,
+			final String text) throws IOException
+	{
+		final byte[] bytes = text.getBytes("UTF-8");
+		out.writeByte(type);
+		out.writeLong(uptime);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/*
+	 * Write a FRAME record of a small blank frame with a score.
+	 */
+	private static void writeFrame(final DataOutputStream out, final long uptime, final int score)
+			throws IOException
+	{
+		final int width  = 8;
+		final int height = 10;
+		out.writeByte(FlightRecorder.TYPE_FRAME);
+		out.writeLong(uptime);
+		out.writeInt(2 + 2 + 1 + 1 + width * height);
+		out.writeShort(width);
+		out.writeShort(height);
+		out.writeByte(4);
+		out.writeByte(score);
+		out.write(new byte[width * height]);
+	}
+}
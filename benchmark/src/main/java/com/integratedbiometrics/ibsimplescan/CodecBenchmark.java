@@ -0,0 +1,123 @@
+/* *************************************************************************************************
+ * CodecBenchmark.java
+ *
+ * DESCRIPTION:
+ *     Benchmark of lossless image compression for SimpleScan demo app for IBScanUltimate
+ *     http://www.integratedbiometrics.com
+ *
+ * NOTES:
+ *     Copyright (c) Integrated Biometrics, 2012-2013
+ *
+ * HISTORY:
+ *     2026/10/19  First version.
+************************************************************************************************ */
+
+package com.integratedbiometrics.ibsimplescan;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Compares LosslessImageCodec with PNG on synthetic captures: the time to encode and decode, and
+ * the compressed size.  PNG is written by ImageIO from an 8-bit gray image, which is what a PNG
+ * encoder given the capture buffer would do; the app's Bitmap path writes ARGB and is larger still.
+ * Each codec's output is checked to decode to the original pixels.  Run with
+ *
+ *     gradlew :benchmark:codecBenchmark
+ */
+public class CodecBenchmark
+{
+	/* *********************************************************************************************
+	 * PRIVATE CONSTANTS
+	 ******************************************************************************************** */
+
+	/* The untimed and timed runs of each task. */
+	private static final int WARMUP     = 10;
+	private static final int ITERATIONS = 30;
+
+	/* *********************************************************************************************
+	 * PUBLIC METHODS
+	 ******************************************************************************************** */
+
+	public static void main(final String[] args) throws Exception
+	{
+		System.out.println("Processors " + Runtime.getRuntime().availableProcessors());
+		bench("flat finger",       400,  500);
+		bench("four-finger slap", 1600, 1500);
+	}
+
+	/* *********************************************************************************************
+	 * PRIVATE METHODS
+	 ******************************************************************************************** */
+
+	private static void bench(final String name, final int width, final int height) throws Exception
+	{
+		final byte[] pixels = Benchmark.syntheticFinger(width, height, 2);
+		final String label  = name + " " + width + "x" + height;
+
+		/* The app's codec. */
+		final byte[] ibls = LosslessImageCodec.encode(pixels, width, width, height);
+		if (!Arrays.equals(LosslessImageCodec.decode(ibls), pixels))
+		{
+			throw new IllegalStateException("ibls did not round-trip");
+		}
+		Benchmark.measure("ibls encode " + label, WARMUP, ITERATIONS, new Benchmark.Task()
+		{
+			@Override
+			public void run() throws Exception
+			{
+				LosslessImageCodec.encode(pixels, width, width, height);
+			}
+		});
+		Benchmark.measure("ibls decode " + label, WARMUP, ITERATIONS, new Benchmark.Task()
+		{
+			@Override
+			public void run() throws Exception
+			{
+				LosslessImageCodec.decode(ibls);
+			}
+		});
+
+		/* PNG through ImageIO. */
+		final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+		image.getRaster().setDataElements(0, 0, width, height, pixels);
+		final byte[] png = writePng(image);
+		final byte[] decoded = new byte[width * height];
+		ImageIO.read(new ByteArrayInputStream(png)).getRaster().getDataElements(0, 0, width, height, decoded);
+		if (!Arrays.equals(decoded, pixels))
+		{
+			throw new IllegalStateException("png did not round-trip");
+		}
+		Benchmark.measure("png encode " + label, WARMUP, ITERATIONS, new Benchmark.Task()
+		{
+			@Override
+			public void run() throws Exception
+			{
+				writePng(image);
+			}
+		});
+		Benchmark.measure("png decode " + label, WARMUP, ITERATIONS, new Benchmark.Task()
+		{
+			@Override
+			public void run() throws Exception
+			{
+				ImageIO.read(new ByteArrayInputStream(png));
+			}
+		});
+
+		System.out.println(String.format("    raw %d bytes, ibls %d bytes (%.2f:1), png %d bytes (%.2f:1)",
+				pixels.length, ibls.length, (double)pixels.length / ibls.length,
+				png.length, (double)pixels.length / png.length));
+	}
+
+	private static byte[] writePng(final BufferedImage image) throws Exception
+	{
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(image, "png", out);
+		return (out.toByteArray());
+	}
+}
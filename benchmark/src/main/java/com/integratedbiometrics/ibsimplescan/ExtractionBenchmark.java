@@ -0,0 +1,79 @@
+/* *************************************************************************************************
+ * ExtractionBenchmark.java
+ *
+ * DESCRIPTION:
+ *     Benchmark of minutiae extraction for SimpleScan demo app for IBScanUltimate
+ *     http://www.integratedbiometrics.com
+ *
+ * NOTES:
+ *     Copyright (c) Integrated Biometrics, 2012-2013
+ *
+ * HISTORY:
+ *     2026/10/19  First version.
+************************************************************************************************ */
+
+package com.integratedbiometrics.ibsimplescan;
+
+/**
+ * Times MinutiaeExtractor on a flat single finger and on a rolled finger at 500 ppi, and the
+ * encoding of the resulting templates as ISO/IEC 19794-2 and ANSI INCITS 378 records.  Run with
+ *
+ *     gradlew :benchmark:extractionBenchmark
+ */
+public class ExtractionBenchmark
+{
+	/* *********************************************************************************************
+	 * PRIVATE CONSTANTS
+	 ******************************************************************************************** */
+
+	/* The image resolution, in pixels per inch. */
+	private static final int RESOLUTION = 500;
+
+	/* The untimed and timed runs of each task. */
+	private static final int WARMUP     = 20;
+	private static final int ITERATIONS = 50;
+
+	/* *********************************************************************************************
+	 * PUBLIC METHODS
+	 ******************************************************************************************** */
+
+	public static void main(final String[] args) throws Exception
+	{
+		System.out.println("Processors " + Runtime.getRuntime().availableProcessors());
+		bench("flat finger",   400, 500);
+		bench("rolled finger", 800, 750);
+	}
+
+	/* *********************************************************************************************
+	 * PRIVATE METHODS
+	 ******************************************************************************************** */
+
+	private static void bench(final String name, final int width, final int height) throws Exception
+	{
+		final byte[]            pixels    = Benchmark.syntheticFinger(width, height, 1);
+		final MinutiaeExtractor extractor = new MinutiaeExtractor(width, height);
+
+		Benchmark.measure("extract " + name + " " + width + "x" + height, WARMUP, ITERATIONS, new Benchmark.Task()
+		{
+			@Override
+			public void run() throws Exception
+			{
+				extractor.extract(pixels, width, width, height, false, RESOLUTION);
+			}
+		});
+
+		final FingerTemplate template = extractor.extract(pixels, width, width, height, false, RESOLUTION);
+		System.out.println("    " + template.count + " minutiae");
+		for (final FingerTemplate.Format format : FingerTemplate.Format.values())
+		{
+			Benchmark.measure("encode " + name + " " + format, WARMUP * 50, ITERATIONS * 50, new Benchmark.Task()
+			{
+				@Override
+				public void run()
+				{
+					template.toRecord(format);
+				}
+			});
+		}
+	}
+}
@@ -0,0 +1,277 @@
+/* *************************************************************************************************
+ * PreviewStreamCheck.java
+ *
+ * DESCRIPTION:
+ *     Loopback check of preview streaming and replay for SimpleScan demo app for IBScanUltimate
+ *     http://www.integratedbiometrics.com
+ *
+ * NOTES:
+ *     Copyright (c) Integrated Biometrics, 2012-2013
+ *
+ * HISTORY:
+ *     2026/10/19  First version.
+************************************************************************************************ */
+
+package com.integratedbiometrics.ibsimplescan;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import com.integratedbiometrics.ibscanultimate.IBScanDevice.ImageData;
+
+/**
+ * Records synthetic preview frames with the flight recorder, saves the recording through encrypted
+ * storage as the app does, and replays it through a preview stream server on loopback, checking
+ * that a client presenting the token receives the recorded frames pixel for pixel and that a
+ * client presenting another token is dropped.  Exits with status 1 if a check fails.  Run with
+ *
+ *     gradlew :benchmark:previewStreamCheck
+ */
+public class PreviewStreamCheck
+{
+	/* *********************************************************************************************
+	 * PRIVATE CONSTANTS
+	 ******************************************************************************************** */
+
+	/* The size of the synthetic previews, and the number recorded. */
+	private static final int    WIDTH          = 400;
+	private static final int    HEIGHT         = 500;
+	private static final int    FRAMES         = 5;
+
+	/* The gap between recorded frames, longer than the flight recorder's frame interval. */
+	private static final long   GAP_MILLIS     = 300;
+
+	/* The token of the server, and the magic number and version of the stream. */
+	private static final String TOKEN          = "loopback-check";
+	private static final byte[] MAGIC          = {'I', 'B', 'P', 'V'};
+
+	/* How long the client waits for a message. */
+	private static final int    TIMEOUT_MILLIS = 5000;
+
+	/* *********************************************************************************************
+	 * PUBLIC METHODS
+	 ******************************************************************************************** */
+
+	public static void main(final String[] args) throws Exception
+	{
+		final File directory = File.createTempFile("previewstream", "");
+		directory.delete();
+		directory.mkdirs();
+		final EncryptedStorage storage = new EncryptedStorage(new File(directory, "storage.key"));
+		final File             file    = new File(directory, "flight.ibfr." + EncryptedStorage.FILE_EXTENSION);
+
+		/* Record and save, keeping the frames as read back from the plain recording. */
+		final byte[]            recording = record();
+		final ArrayList<int[]>  sizes     = new ArrayList<int[]>();
+		final ArrayList<byte[]> expected  = new ArrayList<byte[]>();
+		FlightRecorder.play(new ByteArrayInputStream(recording), new FlightRecorder.FrameHandler()
+		{
+			@Override
+			public void onFrame(final long uptime, final int width, final int height, final int score,
+					final byte[] pixels)
+			{
+				sizes.add(new int[] {width, height});
+				expected.add(Arrays.copyOf(pixels, width * height));
+			}
+		});
+		final OutputStream out = storage.openOutput(file);
+		try
+		{
+			out.write(recording);
+		}
+		finally
+		{
+			out.close();
+		}
+
+		final InetAddress         loopback = InetAddress.getByAddress(new byte[] {127, 0, 0, 1});
+		final PreviewStreamServer server   = new PreviewStreamServer(0, loopback, TOKEN);
+		boolean passed = false;
+		try
+		{
+			final boolean refused = checkRefused(loopback, server.getPort());
+			System.out.println("Client with wrong token " + (refused ? "refused" : "SERVED"));
+
+			final Socket socket = connect(loopback, server.getPort(), TOKEN);
+			try
+			{
+				final DataInputStream in    = new DataInputStream(socket.getInputStream());
+				final byte[]          magic = new byte[MAGIC.length];
+				in.readFully(magic);
+				if (!Arrays.equals(magic, MAGIC) || (in.readUnsignedByte() != PreviewStreamServer.VERSION))
+				{
+					throw new IOException("bad greeting");
+				}
+
+				server.replay(storage.openInput(file));
+				final int received = receive(in, expected, sizes);
+				System.out.println("Replayed " + received + " of " + expected.size() + " recorded frames intact");
+				passed = refused && (received == expected.size());
+			}
+			finally
+			{
+				socket.close();
+			}
+		}
+		finally
+		{
+			server.stop();
+			file.delete();
+			new File(directory, "storage.key").delete();
+			directory.delete();
+		}
+
+		System.out.println(passed ? "Loopback check passed" : "Loopback check FAILED");
+		System.exit(passed ? 0 : 1);
+	}
+
+	/* *********************************************************************************************
+	 * PRIVATE METHODS
+	 ******************************************************************************************** */
+
+	/*
+	 * Record synthetic previews with the flight recorder and return its dump.
+	 */
+	private static byte[] record() throws Exception
+	{
+		final FrameStore     store    = new FrameStore(WIDTH, HEIGHT, 2);
+		final FlightRecorder recorder = new FlightRecorder(4 * 1024 * 1024, 60000);
+		for (int i = 0; i < FRAMES; i++)
+		{
+			final byte[]    pixels = Benchmark.syntheticFinger(WIDTH, HEIGHT, i);
+			final ImageData image  = new ImageData(pixels, WIDTH, HEIGHT, 500, 500, 0, WIDTH, (short)8, 0, true, 0)
+			{
+			};
+			final FrameStore.Frame frame = store.store(image);
+			recorder.recordFrame(frame, 50);
+			frame.release();
+			recorder.recordEvent("frame " + i);
+			Thread.sleep(GAP_MILLIS);
+		}
+		final ByteArrayOutputStream dump = new ByteArrayOutputStream();
+		recorder.dump(dump);
+		return (dump.toByteArray());
+	}
+
+	/*
+	 * Connect to the server and send the greeting with a token.
+	 */
+	private static Socket connect(final InetAddress address, final int port, final String token) throws IOException
+	{
+		final Socket socket = new Socket(address, port);
+		socket.setSoTimeout(TIMEOUT_MILLIS);
+		final byte[]           bytes = token.getBytes("UTF-8");
+		final DataOutputStream out   = new DataOutputStream(socket.getOutputStream());
+		out.write(MAGIC);
+		out.writeByte(PreviewStreamServer.VERSION);
+		out.writeByte(bytes.length);
+		out.write(bytes);
+		out.flush();
+		return (socket);
+	}
+
+	/*
+	 * Determine whether the server drops a client with the wrong token without answering.
+	 */
+	private static boolean checkRefused(final InetAddress address, final int port) throws IOException
+	{
+		final Socket socket = connect(address, port, TOKEN + "?");
+		try
+		{
+			return (socket.getInputStream().read() < 0);
+		}
+		catch (SocketException se)
+		{
+			/* Reset by the server. */
+			return (true);
+		}
+		finally
+		{
+			socket.close();
+		}
+	}
+
+	/*
+	 * Read messages until the last recorded frame arrives, checking each against the recording in
+	 * order, and return the number of recorded frames received.  A frame the server skipped for a
+	 * slow client shows as a shorter count; a frame that matches none fails the check.
+	 */
+	private static int receive(final DataInputStream in, final ArrayList<byte[]> expected,
+			final ArrayList<int[]> sizes) throws IOException
+	{
+		final Inflater inflater = new Inflater();
+		byte[]         previous = null;
+		int            next     = 0;
+		int            received = 0;
+		try
+		{
+			while (next < expected.size())
+			{
+				final int    type   = in.readUnsignedByte();
+				in.readInt();
+				final int    width  = in.readUnsignedShort();
+				final int    height = in.readUnsignedShort();
+				final byte[] data   = new byte[in.readInt()];
+				in.readFully(data);
+
+				final byte[] pixels = new byte[width * height];
+				inflater.reset();
+				inflater.setInput(data);
+				if (inflater.inflate(pixels) != pixels.length)
+				{
+					throw new IOException("short frame");
+				}
+				if (type == PreviewStreamServer.TYPE_DELTA)
+				{
+					for (int i = 0; i < pixels.length; i++)
+					{
+						pixels[i] += previous[i];
+					}
+				}
+				else if (type != PreviewStreamServer.TYPE_KEYFRAME)
+				{
+					throw new IOException("unknown message " + type);
+				}
+				previous = pixels;
+
+				while ((next < expected.size()) && !((sizes.get(next)[0] == width)
+						&& (sizes.get(next)[1] == height) && Arrays.equals(expected.get(next), pixels)))
+				{
+					next++;
+				}
+				if (next == expected.size())
+				{
+					throw new IOException("frame does not match the recording");
+				}
+				next++;
+				received++;
+			}
+		}
+		catch (EOFException eofe)
+		{
+			/* The server went away. */
+		}
+		catch (DataFormatException dfe)
+		{
+			throw new IOException("corrupt frame", dfe);
+		}
+		finally
+		{
+			inflater.end();
+		}
+		return (received);
+	}
+}